@@ -590,6 +590,51 @@ public class HiveConf extends Configuration {
     SAMPLE_SIZE_LEVEL_3("quicksilver.sample.level.size.3", 8),
     SAMPLE_SIZE_LEVEL_4("quicksilver.sample.level.size.4", 16),
     SAMPLE_SIZE_LEVEL_5("quicksilver.sample.level.size.5", 32),
+    // reservoir or bernoulli; see org.apache.hadoop.hive.ql.sampling.SampleBuilder
+    QUICKSILVER_SAMPLE_BUILD_MODE("quicksilver.sample.build.mode", "reservoir"),
+    QUICKSILVER_SAMPLE_BUILD_RATE("quicksilver.sample.build.rate", (float) 0.01),
+    // rows of a bernoulli sample built without a rate, which is sized from an
+    // estimate of the rows of the table; 0 uses quicksilver.sample.build.rate
+    QUICKSILVER_SAMPLE_BUILD_ROWS("quicksilver.sample.build.rows", 0L),
+    // maximum number of rows kept per stratum of a stratified sample
+    QUICKSILVER_SAMPLE_STRATUM_CAP("quicksilver.sample.stratum.cap", 100),
+    // update the samples of a table with the rows appended by INSERT INTO and
+    // LOAD DATA; see org.apache.hadoop.hive.ql.sampling.SampleMaintenance
+    QUICKSILVER_SAMPLE_MAINTAIN("quicksilver.sample.maintain", false),
+    // used by WITHIN/ERROR queries for samples without measured values;
+    // scan rate in bytes per second, cv is the coefficient of variation
+    QUICKSILVER_SAMPLE_SCAN_RATE("quicksilver.sample.scan.rate", 50L * 1024 * 1024),
+    QUICKSILVER_SAMPLE_PILOT_CV("quicksilver.sample.pilot.cv", (float) 1.0),
+    // size ERROR queries by running their aggregates on the smallest sample
+    // first; see org.apache.hadoop.hive.ql.sampling.PilotSamplePlanner
+    QUICKSILVER_SAMPLE_PILOT("quicksilver.sample.pilot", false),
+    // confidence level of the intervals of approx_* and of ERROR bounds
+    // without AT CONFIDENCE
+    QUICKSILVER_APPROX_CONFIDENCE("quicksilver.approx.confidence", (float) 0.99),
+    // number of Poisson weighted replicates kept by bootstrap_<udaf>
+    QUICKSILVER_BOOTSTRAP_REPLICATES("quicksilver.bootstrap.replicates", 100),
+    // skip whole RCFile row groups for SAMPLEWITH instead of sampling rows;
+    // approx_* then widen their intervals by the design effect estimated from
+    // the row groups read
+    QUICKSILVER_SAMPLE_PUSHDOWN("quicksilver.sample.pushdown", false),
+    // set per split by HiveInputFormat, not by users
+    QUICKSILVER_SAMPLE_INPUT_RATE("quicksilver.sample.input.rate", (float) 1.0),
+    // publish running estimates of approx_* aggregates without GROUP BY while
+    // the job runs, every interval milliseconds per mapper
+    QUICKSILVER_ONLINE_ENABLE("quicksilver.online.enable", false),
+    QUICKSILVER_ONLINE_INTERVAL("quicksilver.online.interval", 5000L),
+    // answer sum, count and avg over tables with uniform samples from the
+    // smallest sample whose estimated error meets the bound, scaled up to the
+    // table; see org.apache.hadoop.hive.ql.optimizer.ApproxRewriter
+    QUICKSILVER_APPROX_REWRITE("quicksilver.approx.rewrite", false),
+    QUICKSILVER_APPROX_REWRITE_ERROR("quicksilver.approx.rewrite.error", (float) 0.05),
+    // sizes of a SampleClean sample and of the table it was drawn from, by
+    // which SELECTRAWSC and SELECTNSC scale count and sum up to the table
+    SAMPLECLEAN_SAMPLE_SIZE("sampleclean.sample.size", 0L),
+    SAMPLECLEAN_DATASET_SIZE("sampleclean.dataset.size", 0L),
+    // number of parsed SampleClean query templates kept in memory, 0 to parse
+    // every query; see org.apache.hadoop.hive.ql.parse.SampleCleanSemanticAnalyzer
+    SAMPLECLEAN_TEMPLATE_CACHE_SIZE("sampleclean.template.cache.size", 64),
     ;
 
     ;
@@ -18,25 +18,398 @@
 
 package org.apache.hadoop.hive.ql.estimation;
 
-import java.util.Iterator;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PositionedReadable;
+import org.apache.hadoop.hive.ql.io.RCFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Estimates the number of rows of a file by block sampling.
+ *
+ * The estimator reads a few small blocks at random offsets, resynchronizes
+ * each block on the next line (or record, or row group) boundary and counts
+ * the complete rows it contains. The row count of the file is estimated with
+ * the ratio of rows to bytes over all blocks, and its confidence interval with
+ * the variance of that ratio across blocks. Rows of variable length and header
+ * lines therefore only add to the interval instead of biasing the estimate.
+ *
+ * Text files (optionally compressed), SequenceFiles and RCFiles are supported.
+ */
 public class BlinkDBStream {
 
-	public int estimateRows (List <String> sample, long fileSize)
-	{
-			int _sampleRowCount = 0;
-			int _sampleSize = 0;
-			Iterator<String> iterate = sample.iterator();
-			while(iterate.hasNext())
-			{
-				_sampleRowCount ++;
-				_sampleSize += iterate.next().length();
-			}
+  public static final int DEFAULT_NUM_BLOCKS = 16;
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+  // 95% two sided normal quantile
+  private static final double Z = 1.96;
+  private static final double CONFIDENCE = 0.95;
+
+  private final int numBlocks;
+  private final int blockSize;
+  private final Random rnd;
+
+  public BlinkDBStream() {
+    this(DEFAULT_NUM_BLOCKS, DEFAULT_BLOCK_SIZE, new Random());
+  }
+
+  public BlinkDBStream(int numBlocks, int blockSize, Random rnd) {
+    this.numBlocks = Math.max(2, numBlocks);
+    this.blockSize = blockSize;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Estimates the row count of the files of a table or partition directory,
+   * hidden files left out. The estimates and the bounds of the files add up;
+   * the confidence is that of the least confident file.
+   */
+  public RowEstimate estimateDirectoryRows(FileSystem fs, Path dir, Configuration conf)
+      throws IOException {
+    FileStatus status = fs.getFileStatus(dir);
+    if (!status.isDir()) {
+      return estimateRows(fs, dir, conf);
+    }
+    long estimate = 0;
+    long lower = 0;
+    long upper = 0;
+    double confidence = 1.0;
+    for (FileStatus file : fs.listStatus(dir)) {
+      String name = file.getPath().getName();
+      if (name.startsWith("_") || name.startsWith(".")) {
+        continue;
+      }
+      RowEstimate rows = estimateDirectoryRows(fs, file.getPath(), conf);
+      estimate += rows.getEstimate();
+      lower += rows.getLower();
+      upper += rows.getUpper();
+      confidence = Math.min(confidence, rows.getConfidence());
+    }
+    return new RowEstimate(estimate, lower, upper, lower == upper ? 1.0 : confidence);
+  }
+
+  /**
+   * Estimates the row count of a text, SequenceFile or RCFile file.
+   */
+  public RowEstimate estimateRows(FileSystem fs, Path path, Configuration conf)
+      throws IOException {
+    long fileSize = fs.getFileStatus(path).getLen();
+    if (fileSize == 0) {
+      return RowEstimate.exact(0);
+    }
+
+    FSDataInputStream in = fs.open(path);
+    try {
+      byte[] magic = new byte[3];
+      int n = in.read(0, magic, 0, magic.length);
+      if (n == magic.length && magic[0] == 'R' && magic[1] == 'C' && magic[2] == 'F') {
+        return estimateRCFileRows(fs, path, conf, fileSize);
+      }
+      if (n == magic.length && magic[0] == 'S' && magic[1] == 'E' && magic[2] == 'Q') {
+        return estimateSequenceFileRows(fs, path, conf, fileSize);
+      }
+
+      CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(path);
+      if (codec != null) {
+        return estimateCompressedTextRows(in, codec, fileSize);
+      }
+      return estimateTextRows(in, fileSize);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Estimates the row count of an uncompressed text file. Positioned reads are
+   * used, so the current position of the stream is left unchanged.
+   */
+  public RowEstimate estimateTextRows(PositionedReadable in, long fileSize) throws IOException {
+    byte[] buf = new byte[blockSize];
+
+    if (fileSize <= (long) numBlocks * blockSize) {
+      // Small enough to count exactly
+      long rows = 0;
+      byte last = '\n';
+      for (long offset = 0; offset < fileSize; offset += blockSize) {
+        int len = readFully(in, offset, buf, (int) Math.min(blockSize, fileSize - offset));
+        for (int i = 0; i < len; i++) {
+          if (buf[i] == '\n') {
+            rows++;
+          }
+        }
+        if (len > 0) {
+          last = buf[len - 1];
+        }
+      }
+      return RowEstimate.exact(last == '\n' ? rows : rows + 1);
+    }
+
+    double[] rows = new double[numBlocks];
+    double[] bytes = new double[numBlocks];
+    int k = 0;
+    for (int b = 0; b < numBlocks; b++) {
+      long offset = (long) (rnd.nextDouble() * (fileSize - blockSize));
+      int len = readFully(in, offset, buf, blockSize);
+
+      // Resynchronize on the first line boundary in the block
+      int start = 0;
+      while (start < len && buf[start] != '\n') {
+        start++;
+      }
+      start++;
+
+      int lines = 0;
+      int end = start;
+      for (int i = start; i < len; i++) {
+        if (buf[i] == '\n') {
+          lines++;
+          end = i + 1;
+        }
+      }
+      if (lines > 0) {
+        rows[k] = lines;
+        bytes[k] = end - start;
+        k++;
+      }
+    }
+
+    if (k == 0) {
+      // Rows are longer than a block, so there are fewer rows than blocks
+      long upper = fileSize / blockSize;
+      return new RowEstimate(Math.max(1, upper / 2), 1, Math.max(1, upper), 1.0);
+    }
+    return ratioEstimate(rows, bytes, k, fileSize, (double) k * blockSize / fileSize);
+  }
+
+  /**
+   * Estimates the row count of a compressed text file, which cannot be read at
+   * random offsets. Leading blocks of the decompressed stream are read, and
+   * their rows are related to the compressed bytes they were read from.
+   */
+  public RowEstimate estimateCompressedTextRows(FSDataInputStream in, CompressionCodec codec,
+      long fileSize) throws IOException {
+    in.seek(0);
+    InputStream cin = codec.createInputStream(in);
+    byte[] buf = new byte[blockSize];
+
+    double[] rows = new double[numBlocks];
+    double[] bytes = new double[numBlocks];
+    long total = 0;
+    long prevPos = 0;
+    int k = 0;
+    while (k < numBlocks) {
+      int len = readFully(cin, buf);
+      if (len <= 0) {
+        // Reached the end of the file, the count is exact
+        return RowEstimate.exact(total);
+      }
+      long lines = 0;
+      for (int i = 0; i < len; i++) {
+        if (buf[i] == '\n') {
+          lines++;
+        }
+      }
+      if (len < blockSize && buf[len - 1] != '\n') {
+        lines++;
+      }
+      total += lines;
+      long pos = in.getPos();
+      rows[k] = lines;
+      bytes[k] = pos - prevPos;
+      prevPos = pos;
+      k++;
+      if (len < blockSize) {
+        return RowEstimate.exact(total);
+      }
+    }
+    return ratioEstimate(rows, bytes, k, fileSize, 0);
+  }
+
+  /**
+   * Estimates the row count of a SequenceFile by syncing to random offsets
+   * and reading whole records (or compressed blocks of records).
+   */
+  public RowEstimate estimateSequenceFileRows(FileSystem fs, Path path, Configuration conf,
+      long fileSize) throws IOException {
+    SequenceFile.Reader reader = new SequenceFile.Reader(fs, path, conf);
+    try {
+      if (RCFile.KeyBuffer.class.getName().equals(reader.getKeyClassName())) {
+        // An RCFile written with the original SEQ header
+        return estimateRCFileRows(fs, path, conf, fileSize);
+      }
+
+      Writable key = (Writable) ReflectionUtils.newInstance(reader.getKeyClass(), conf);
+      Writable value = (Writable) ReflectionUtils.newInstance(reader.getValueClass(), conf);
+
+      double[] rows = new double[numBlocks];
+      double[] bytes = new double[numBlocks];
+      int k = 0;
+      long read = 0;
+      for (int b = 0; b < numBlocks; b++) {
+        reader.sync((long) (rnd.nextDouble() * fileSize));
+        long start = reader.getPosition();
+        long prev = start;
+        long seen = 0;
+        long counted = 0;
+        long covered = 0;
+        boolean first = true;
+
+        // The position moves when the first record of a new record or block
+        // is read; everything read before that belongs to complete units.
+        while (covered < blockSize && reader.next(key, value)) {
+          long pos = reader.getPosition();
+          if (pos != prev) {
+            if (!first) {
+              counted = seen;
+              covered = prev - start;
+            }
+            first = false;
+            prev = pos;
+          }
+          seen++;
+        }
+        if (counted > 0) {
+          rows[k] = counted;
+          bytes[k] = covered;
+          k++;
+        }
+        read += prev - start;
+        if (read >= (long) numBlocks * blockSize && k >= 2) {
+          break;
+        }
+      }
+      return blockEstimate(rows, bytes, k, fileSize, read);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Estimates the row count of an RCFile by syncing to random offsets and
+   * reading the row counts of the following row groups. Only the key part of
+   * each row group is read; column data is skipped.
+   */
+  @SuppressWarnings("deprecation")
+  public RowEstimate estimateRCFileRows(FileSystem fs, Path path, Configuration conf,
+      long fileSize) throws IOException {
+    double[] rows = new double[numBlocks];
+    double[] bytes = new double[numBlocks];
+    int k = 0;
+    long read = 0;
+    for (int b = 0; b < numBlocks; b++) {
+      // A fresh reader per probe, since the reader keeps the state of the
+      // current row group across sync() calls
+      RCFile.Reader reader = new RCFile.Reader(fs, path, conf);
+      try {
+        reader.sync((long) (rnd.nextDouble() * fileSize));
+        long start = reader.getPosition();
+        long seen = 0;
+        long counted = 0;
+        long covered = 0;
+        int groups = 0;
+        while (covered < blockSize && reader.nextColumnsBatch()) {
+          if (groups > 0) {
+            counted = seen;
+            covered = reader.getPosition() - start;
+          }
+          seen += reader.getCurrentKeyBufferObj().getNumberRows();
+          groups++;
+        }
+        if (counted > 0) {
+          rows[k] = counted;
+          bytes[k] = covered;
+          k++;
+        }
+        read += covered;
+      } finally {
+        reader.close();
+      }
+      if (read >= (long) numBlocks * blockSize && k >= 2) {
+        break;
+      }
+    }
+    return blockEstimate(rows, bytes, k, fileSize, read);
+  }
+
+  private RowEstimate blockEstimate(double[] rows, double[] bytes, int k, long fileSize,
+      long read) {
+    if (k == 0) {
+      // Not a single complete unit found: the file holds at most one
+      return new RowEstimate(1, 0, fileSize, 1.0);
+    }
+    return ratioEstimate(rows, bytes, k, fileSize, Math.min(1.0, ((double) read) / fileSize));
+  }
+
+  /**
+   * Ratio estimator of the row count: rows per byte over all blocks, times the
+   * file size. The variance of the ratio is estimated from the per-block
+   * residuals, with a finite population correction for the fraction read.
+   */
+  static RowEstimate ratioEstimate(double[] rows, double[] bytes, int k, long fileSize,
+      double fractionRead) {
+    double sumRows = 0;
+    double sumBytes = 0;
+    for (int i = 0; i < k; i++) {
+      sumRows += rows[i];
+      sumBytes += bytes[i];
+    }
+    double ratio = sumRows / sumBytes;
+    long estimate = Math.round(ratio * fileSize);
+
+    if (k < 2) {
+      // No variance estimate; only the trivial bounds hold
+      return new RowEstimate(estimate, (long) sumRows, fileSize, 1.0);
+    }
+
+    double meanBytes = sumBytes / k;
+    double ss = 0;
+    for (int i = 0; i < k; i++) {
+      double residual = rows[i] - ratio * bytes[i];
+      ss += residual * residual;
+    }
+    double varRatio = (ss / (k - 1)) / (k * meanBytes * meanBytes)
+        * Math.max(0, 1 - fractionRead);
+    double halfWidth = Z * fileSize * Math.sqrt(varRatio);
 
-			double avgRowLength = ((double)_sampleSize)/_sampleRowCount;
+    long lower = Math.max((long) sumRows, (long) Math.floor(estimate - halfWidth));
+    long upper = Math.min(fileSize, (long) Math.ceil(estimate + halfWidth));
+    return new RowEstimate(estimate, Math.min(lower, estimate), Math.max(upper, estimate),
+        CONFIDENCE);
+  }
 
-			return (int) (fileSize/avgRowLength);
-	}
+  private static int readFully(PositionedReadable in, long offset, byte[] buf, int len)
+      throws IOException {
+    int total = 0;
+    while (total < len) {
+      int n = in.read(offset + total, buf, total, len - total);
+      if (n < 0) {
+        break;
+      }
+      total += n;
+    }
+    return total;
+  }
 
-}
\ No newline at end of file
+  private static int readFully(InputStream in, byte[] buf) throws IOException {
+    int total = 0;
+    while (total < buf.length) {
+      int n = in.read(buf, total, buf.length - total);
+      if (n < 0) {
+        break;
+      }
+      total += n;
+    }
+    return total;
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.estimation;
+
+/**
+ * An estimated row count together with its confidence interval.
+ */
+public class RowEstimate {
+
+  private final long estimate;
+  private final long lower;
+  private final long upper;
+  private final double confidence;
+
+  public RowEstimate(long estimate, long lower, long upper, double confidence) {
+    this.estimate = estimate;
+    this.lower = lower;
+    this.upper = upper;
+    this.confidence = confidence;
+  }
+
+  /**
+   * An exact count, e.g. when the whole file was read.
+   */
+  public static RowEstimate exact(long rows) {
+    return new RowEstimate(rows, rows, rows, 1.0);
+  }
+
+  public long getEstimate() {
+    return estimate;
+  }
+
+  public long getLower() {
+    return lower;
+  }
+
+  public long getUpper() {
+    return upper;
+  }
+
+  public double getConfidence() {
+    return confidence;
+  }
+
+  public boolean isExact() {
+    return lower == upper;
+  }
+
+  @Override
+  public String toString() {
+    if (isExact()) {
+      return Long.toString(estimate);
+    }
+    return estimate + " [" + lower + ", " + upper + "] (" + (confidence * 100) + "% Confidence)";
+  }
+}
@@ -139,6 +139,7 @@ import org.apache.hadoop.hive.ql.plan.ShowTablesDesc;
 import org.apache.hadoop.hive.ql.plan.SwitchDatabaseDesc;
 import org.apache.hadoop.hive.ql.plan.UnlockTableDesc;
 import org.apache.hadoop.hive.ql.plan.api.StageType;
+import org.apache.hadoop.hive.ql.sampling.SampleCatalog;
 import org.apache.hadoop.hive.ql.security.authorization.Privilege;
 import org.apache.hadoop.hive.serde.Constants;
 import org.apache.hadoop.hive.serde2.Deserializer;
@@ -2936,6 +2937,29 @@ public class DDLTask extends Task<DDLWork> implements Serializable {
    * @throws HiveException
    *           Throws this exception if an unexpected error occurs.
    */
+  /**
+   * Removes a table that is being dropped from the sample catalog: a sample
+   * from the catalog of its base table, a base table with its samples.
+   */
+  private void dropSamples(Table tbl) {
+    Map<String, String> params = tbl.getParameters();
+    if (SampleCatalog.getBaseTable(params) == null
+        && SampleCatalog.getSamples(params).isEmpty()) {
+      return;
+    }
+    SampleCatalog catalog = null;
+    try {
+      catalog = new SampleCatalog(conf);
+      catalog.dropTable(tbl.getDbName(), tbl.getTableName(), params);
+    } catch (HiveException e) {
+      LOG.warn("Unable to remove " + tbl.getTableName() + " from the sample catalog", e);
+    } finally {
+      if (catalog != null) {
+        catalog.close();
+      }
+    }
+  }
+
   private int dropTable(Hive db, DropTableDesc dropTbl)
       throws HiveException {
     // We need to fetch the table before it is dropped so that it can be passed
@@ -2986,6 +3010,10 @@ public class DDLTask extends Task<DDLWork> implements Serializable {
         }
       }
 
+      if (tbl != null && !tbl.isView()) {
+        dropSamples(tbl);
+      }
+
       // drop the table
       db.dropTable(dropTbl.getTableName());
       if (tbl != null) {
@@ -68,6 +68,8 @@ import org.apache.hadoop.hive.ql.plan.MapredWork;
 import org.apache.hadoop.hive.ql.plan.PartitionDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.api.StageType;
+import org.apache.hadoop.hive.ql.sampling.OnlineAggregation;
+import org.apache.hadoop.hive.ql.sampling.SampleLevelFilter;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
 import org.apache.hadoop.hive.ql.stats.StatsFactory;
@@ -406,6 +408,8 @@ public class ExecDriver extends Task<MapredWork> implements Serializable, Hadoop
       }
 
       addInputPaths(job, work, emptyScratchDirStr, ctx);
+      SampleLevelFilter.configure(job, work);
+      OnlineAggregation.configure(job, new Path(ctx.getMRTmpFileURI(), "online-" + getId()));
 
       Utilities.setMapRedWork(job, work, ctx.getMRTmpFileURI());
       // remove the pwd from conf file so that job tracker doesn't show this
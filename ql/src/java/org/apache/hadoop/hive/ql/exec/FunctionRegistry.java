@@ -126,8 +126,15 @@ import org.apache.hadoop.hive.ql.udf.UDFUpper;
 import org.apache.hadoop.hive.ql.udf.UDFWeekOfYear;
 import org.apache.hadoop.hive.ql.udf.UDFYear;
 import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFAverage;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFBootstrap;
 import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFCount;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFCountDistinct;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFNdv;
 import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFSum;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFTopK;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFUniverseSum;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDFLower;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDFUpper;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFAverage;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFBridge;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFCollectSet;
@@ -210,9 +217,11 @@ import org.apache.hadoop.hive.ql.udf.generic.GenericUDTFParseUrlTuple;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDTFStack;
 
 import org.apache.hadoop.hive.ql.udf.UDFCleanExport;
+import org.apache.hadoop.hive.ql.udf.UDFCleanFormat;
 import org.apache.hadoop.hive.ql.udf.approx_clean.ApproxUDAFAverageClean;
 import org.apache.hadoop.hive.ql.udf.approx_clean.ApproxUDAFSumClean;
 import org.apache.hadoop.hive.ql.udf.approx_clean.ApproxUDAFCountClean;
+import org.apache.hadoop.hive.ql.udf.approx_clean.ApproxUDAFOutlierBoundsClean;
 
 import org.apache.hadoop.hive.ql.udf.generic.SimpleGenericUDAFParameterInfo;
 import org.apache.hadoop.hive.ql.udf.xml.GenericUDFXPath;
@@ -251,9 +260,11 @@ public final class FunctionRegistry {
   static {
 
     registerGenericUDTF("clean_export", UDFCleanExport.class);
+    registerGenericUDF("clean_format", UDFCleanFormat.class);
     registerGenericUDAF("approx_count_clean", new ApproxUDAFCountClean());
     registerGenericUDAF("approx_sum_clean", new ApproxUDAFSumClean());
     registerGenericUDAF("approx_avg_clean", new ApproxUDAFAverageClean());
+    registerGenericUDAF("outlier_bounds_clean", new ApproxUDAFOutlierBoundsClean());
 
     registerUDF("concat", UDFConcat.class, false);
     registerUDF("substr", UDFSubstr.class, false);
@@ -425,7 +436,13 @@ public final class FunctionRegistry {
     // Approximate Aggregate functions
     registerGenericUDAF("approx_avg", new ApproxUDAFAverage());
     registerGenericUDAF("approx_count", new ApproxUDAFCount());
+    registerGenericUDAF("approx_count_distinct", new ApproxUDAFCountDistinct());
+    registerGenericUDAF("approx_ndv", new ApproxUDAFNdv());
     registerGenericUDAF("approx_sum", new ApproxUDAFSum());
+    registerGenericUDAF("approx_topk", new ApproxUDAFTopK());
+    registerGenericUDAF("approx_universe_sum", new ApproxUDAFUniverseSum());
+    registerGenericUDF("ci_lower", ApproxUDFLower.class);
+    registerGenericUDF("ci_upper", ApproxUDFUpper.class);
 
 
     registerGenericUDAF("std", new GenericUDAFStd());
@@ -567,7 +584,29 @@ public final class FunctionRegistry {
   }
 
   public static FunctionInfo getFunctionInfo(String functionName) {
-    return mFunctions.get(functionName.toLowerCase());
+    FunctionInfo finfo = mFunctions.get(functionName.toLowerCase());
+    if (finfo == null) {
+      finfo = getBootstrapFunctionInfo(functionName.toLowerCase());
+    }
+    return finfo;
+  }
+
+  /**
+   * Prefix of the Poisson bootstrap of an aggregate: bootstrap_max(x) is the
+   * bootstrap of max(x).
+   */
+  public static final String BOOTSTRAP_PREFIX = "bootstrap_";
+
+  private static FunctionInfo getBootstrapFunctionInfo(String functionName) {
+    if (!functionName.startsWith(BOOTSTRAP_PREFIX)) {
+      return null;
+    }
+    FunctionInfo finfo = mFunctions.get(functionName.substring(BOOTSTRAP_PREFIX.length()));
+    if (finfo == null || finfo.getGenericUDAFResolver() == null) {
+      return null;
+    }
+    return new FunctionInfo(finfo.isNative(), functionName,
+        new ApproxUDAFBootstrap(finfo.getGenericUDAFResolver()));
   }
 
   /**
@@ -870,7 +909,7 @@ public final class FunctionRegistry {
     if (LOG.isDebugEnabled()) {
       LOG.debug("Looking up GenericUDAF: " + functionName);
     }
-    FunctionInfo finfo = mFunctions.get(functionName.toLowerCase());
+    FunctionInfo finfo = getFunctionInfo(functionName);
     if (finfo == null) {
       return null;
     }
@@ -42,6 +42,7 @@ import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.GroupByDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
+import org.apache.hadoop.hive.ql.sampling.OnlineAggregation;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
 import org.apache.hadoop.hive.serde2.lazy.LazyPrimitive;
@@ -110,6 +111,10 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   // Used by hash-based GroupBy: Mode = HASH, PARTIALS
   protected transient HashMap<KeyWrapper, AggregationBuffer[]> hashAggregations;
 
+  // Publishes running approximate aggregates of map-side aggregations
+  // without keys, if online aggregation is on
+  protected transient OnlineAggregation.Publisher onlinePublisher;
+
   // Used by hash distinct aggregations when hashGrpKeyNotRedKey is true
   protected transient HashSet<KeyWrapper> keysCurrentGroup;
 
@@ -308,6 +313,7 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     for (int i = 0; i < aggregationEvaluators.length; i++) {
       AggregationDesc agg = conf.getAggregators().get(i);
       aggregationEvaluators[i] = agg.getGenericUDAFEvaluator();
+      aggregationEvaluators[i].configure(hconf);
     }
 
     // init objectInspectors
@@ -333,6 +339,10 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       hashAggr = true;
       keyPositionsSize = new ArrayList<Integer>();
       aggrPositions = new ArrayList<varLenFields>();
+      if (keyFields.length == 0) {
+        onlinePublisher = OnlineAggregation.newPublisher(hconf, conf.getAggregators(),
+            aggregationEvaluators);
+      }
       groupbyMapAggrInterval = HiveConf.getIntVar(hconf,
           HiveConf.ConfVars.HIVEGROUPBYMAPINTERVAL);
 
@@ -723,6 +733,10 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       } else {
         processAggr(row, rowInspector, newKeys);
       }
+      if (onlinePublisher != null) {
+        onlinePublisher.rowProcessed(hashAggr ? hashAggregations.get(newKeys) : aggregations,
+            reporter);
+      }
 
       firstRowInGroup = false;
 
@@ -967,6 +981,9 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   public void closeOp(boolean abort) throws HiveException {
     if (!abort) {
       try {
+        if (onlinePublisher != null) {
+          onlinePublisher.close(reporter);
+        }
         // If there is no grouping key and no row came to this operator
         if (firstRow && (keyFields.length == 0)) {
           firstRow = false;
@@ -40,6 +40,7 @@ import org.apache.hadoop.hive.ql.exec.Operator.ProgressCounter;
 import org.apache.hadoop.hive.ql.exec.errors.ErrorAndSolution;
 import org.apache.hadoop.hive.ql.exec.errors.TaskLogProcessor;
 import org.apache.hadoop.hive.ql.history.HiveHistory.Keys;
+import org.apache.hadoop.hive.ql.sampling.OnlineAggregation;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
 import org.apache.hadoop.hive.ql.stats.ClientStatsPublisher;
@@ -359,6 +360,7 @@ public class HadoopJobExecHelper {
           this.callBackObj.logPlanProgress(ss);
         }
         console.printInfo(output);
+        OnlineAggregation.report(job, console);
         lastReport = report;
         reportTime = System.currentTimeMillis();
       }
@@ -49,6 +49,7 @@ import org.apache.hadoop.hive.ql.plan.LoadMultiFilesDesc;
 import org.apache.hadoop.hive.ql.plan.LoadTableDesc;
 import org.apache.hadoop.hive.ql.plan.MoveWork;
 import org.apache.hadoop.hive.ql.plan.api.StageType;
+import org.apache.hadoop.hive.ql.sampling.SampleMaintenance;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.util.StringUtils;
 
@@ -227,6 +228,13 @@ public class MoveTask extends Task<MoveWork> implements Serializable {
           }
         }
 
+        // Update the samples of the table from the new rows, while they are
+        // still apart from the existing ones
+        SampleMaintenance maintenance = null;
+        if (SampleMaintenance.isEnabled(conf, table)) {
+          maintenance = prepareSampleMaintenance(table, tbd, driverContext);
+        }
+
         // Create a data container
         DataContainer dc = null;
         if (tbd.getPartitionSpec().size() == 0) {
@@ -315,6 +323,16 @@ public class MoveTask extends Task<MoveWork> implements Serializable {
           SessionState.get().getLineageState().setLineage(tbd.getSourceDir(), dc,
               table.getCols());
         }
+        if (maintenance != null) {
+          try {
+            maintenance.commit();
+          } catch (HiveException e) {
+            // The rows are loaded, only the sample records are out of date
+            console.printError("Unable to record the samples of " + table.getTableName()
+                + ", they must be rebuilt: " + e.getMessage(), "\n"
+                + StringUtils.stringifyException(e));
+          }
+        }
       }
 
       return 0;
@@ -325,6 +343,36 @@ public class MoveTask extends Task<MoveWork> implements Serializable {
     }
   }
 
+  /**
+   * Builds the updated samples of the loaded table.
+   */
+  private SampleMaintenance prepareSampleMaintenance(Table table, LoadTableDesc tbd,
+      DriverContext driverContext) {
+    Path src = new Path(tbd.getSourceDir());
+    boolean replace = tbd.getReplace();
+    List<Path> deltas = new ArrayList<Path>();
+    try {
+      DynamicPartitionCtx dpCtx = tbd.getDPCtx();
+      if (dpCtx != null && dpCtx.getNumDPCols() > 0) {
+        FileSystem fs = src.getFileSystem(conf);
+        for (FileStatus dir : Utilities.getFileStatusRecurse(src, dpCtx.getNumDPCols(), fs)) {
+          deltas.add(dir.getPath());
+        }
+      } else {
+        deltas.add(src);
+        if (replace && tbd.getPartitionSpec().size() > 0) {
+          // Overwriting a new partition only adds rows
+          replace = db.getPartition(table, tbd.getPartitionSpec(), false) != null;
+        }
+      }
+    } catch (Exception e) {
+      LOG.warn("Unable to list the new rows of " + table.getTableName(), e);
+      return SampleMaintenance.stale(conf, table, "the new rows could not be listed");
+    }
+    return SampleMaintenance.prepare(conf, db, table, deltas, replace,
+        new Path(driverContext.getCtx().getMRTmpFileURI(), "samples"));
+  }
+
   /*
    * Does the move task involve moving to a local file system
    */
@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.Context;
+import org.apache.hadoop.hive.ql.DriverContext;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.PilotSampleWork;
+import org.apache.hadoop.hive.ql.plan.api.StageType;
+import org.apache.hadoop.hive.ql.sampling.ApproxBound;
+import org.apache.hadoop.hive.ql.sampling.PilotSamplePlanner;
+import org.apache.hadoop.hive.ql.sampling.SampleCatalog;
+import org.apache.hadoop.hive.ql.sampling.SampleInfo;
+import org.apache.hadoop.hive.ql.sampling.SampleSelector;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxScaledEvaluator;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * PilotSampleTask implementation: runs the pilot query of a query with an
+ * ERROR bound (see {@link PilotSamplePlanner}) before the query itself, and
+ * points the MapReduce jobs of the query, which were planned on the base
+ * table, at the sample the bound needs: the table scan reads the sample
+ * directory instead, and the sums and counts of the query are scaled up by
+ * the rows of the table over those of the sample. When no sample is large
+ * enough the table itself is sampled at the rate needed, and when the pilot
+ * finds nothing the query runs on the whole table.
+ *
+ * The coefficient of variation measured by the pilot only holds for the
+ * aggregates and predicate of this query, so it is used for its own sample
+ * selection and not recorded in the catalog.
+ **/
+public class PilotSampleTask extends Task<PilotSampleWork> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private static transient final Log LOG = LogFactory.getLog(PilotSampleTask.class);
+
+  public PilotSampleTask() {
+    super();
+  }
+
+  @Override
+  protected int execute(DriverContext driverContext) {
+    try {
+      Table tab = db.getTable(work.getDbName(), work.getTableName());
+      List<SampleInfo> samples = SampleCatalog.getSamples(tab.getParameters());
+      SampleInfo pilot = PilotSamplePlanner.getPilotSample(samples);
+      if (pilot == null) {
+        console.printInfo("No sample of " + tab.getTableName()
+            + " for a pilot query, scanning the whole table");
+        return 0;
+      }
+
+      ApproxBound bound = ApproxBound.error(work.getError(), work.getConfidence());
+      PilotSamplePlanner planner = new PilotSamplePlanner(conf, tab, work.getAlias());
+      for (int i = 0; i < work.getFunctions().size(); i++) {
+        planner.addAggregate(work.getFunctions().get(i), work.getArguments().get(i));
+      }
+      for (String expr : work.getGroupBy()) {
+        planner.addGroupBy(expr);
+      }
+      planner.setWhere(work.getWhere());
+
+      console.printInfo("Running pilot query on sample " + pilot.getTableName() + " of "
+          + tab.getTableName());
+      double fraction = planner.getRequiredFraction(pilot, bound);
+      double cv = PilotSamplePlanner.getEquivalentCv(fraction, pilot.getSourceRows(), bound);
+      LOG.info("Pilot needs " + fraction + " of " + tab.getTableName() + ", cv " + cv);
+      if (fraction <= 0 || cv <= 0) {
+        console.printInfo("The pilot query needs the whole table " + tab.getTableName());
+        return 0;
+      }
+
+      for (SampleInfo sample : samples) {
+        sample.setCv(cv);
+      }
+      SampleInfo chosen = new SampleSelector(conf).select(samples, bound);
+      List<MapredWork> mrWorks = getMapRedWorks();
+      if (chosen == null) {
+        if (!work.isSampleTable()) {
+          console.printInfo("No sample of " + tab.getTableName() + " meets " + bound
+              + ", scanning the whole table");
+          return 0;
+        }
+        console.printInfo("No sample of " + tab.getTableName() + " meets " + bound
+            + ", sampling " + fraction + " of the table");
+        for (MapredWork mrWork : mrWorks) {
+          setSampleRate(mrWork, fraction);
+        }
+        setScale(mrWorks, 1 / fraction);
+        return 0;
+      }
+
+      console.printInfo("Answering from sample " + chosen.getTableName() + " of "
+          + tab.getTableName() + " (" + chosen.getRows() + " of " + chosen.getSourceRows()
+          + " rows" + (chosen.isNested() ? ", level " + chosen.getLevel() : "") + ")");
+      Table sample = db.getTable(work.getDbName(), chosen.getTableName());
+      for (MapredWork mrWork : mrWorks) {
+        scanSample(mrWork, tab, sample, chosen);
+      }
+      if (chosen.getRows() > 0) {
+        setScale(mrWorks, ((double) chosen.getSourceRows()) / chosen.getRows());
+      }
+      return 0;
+    } catch (Exception e) {
+      console.printError("Failed with exception " + e.getMessage(), "\n"
+          + StringUtils.stringifyException(e));
+      return 1;
+    }
+  }
+
+  /**
+   * @return the plans of the MapReduce jobs of the query
+   */
+  private List<MapredWork> getMapRedWorks() {
+    List<MapredWork> mrWorks = new ArrayList<MapredWork>();
+    for (ExecDriver task : Utilities.getMRTasks(getChildTasks())) {
+      mrWorks.add(task.getWork());
+    }
+    return mrWorks;
+  }
+
+  /**
+   * Points the table scan of the query at the directory of the sample.
+   */
+  private void scanSample(MapredWork mrWork, Table tab, Table sample, SampleInfo chosen) {
+    String aliasId = work.getAliasId();
+    if (!mrWork.getAliasToWork().containsKey(aliasId)) {
+      return;
+    }
+    String base = tab.getPath().toUri().getPath();
+    PartitionDesc part = new PartitionDesc(Utilities.getTableDesc(sample), null);
+    for (String path : new ArrayList<String>(mrWork.getPathToAliases().keySet())) {
+      if (!new Path(path).toUri().getPath().equals(base)
+          || !mrWork.getPathToAliases().get(path).contains(aliasId)) {
+        continue;
+      }
+      String samplePath = sample.getPath().toString();
+      mrWork.getPathToAliases().put(samplePath, mrWork.getPathToAliases().remove(path));
+      mrWork.getPathToPartitionInfo().remove(path);
+      mrWork.getPathToPartitionInfo().put(samplePath, part);
+    }
+    if (mrWork.getAliasToPartnInfo() != null
+        && mrWork.getAliasToPartnInfo().containsKey(aliasId)) {
+      mrWork.getAliasToPartnInfo().put(aliasId, part);
+    }
+    if (chosen.isPrefix()) {
+      if (mrWork.getNameToSampleLevel() == null) {
+        mrWork.setNameToSampleLevel(new HashMap<String, Integer>());
+      }
+      mrWork.getNameToSampleLevel().put(aliasId, chosen.getLevel());
+    }
+  }
+
+  /**
+   * Sets the rate of the SAMPLEWITH filter planned on the table scan, or of
+   * its push down to the record reader.
+   */
+  private void setSampleRate(MapredWork mrWork, double rate) {
+    String aliasId = work.getAliasId();
+    if (mrWork.getNameToSampleRate() != null
+        && mrWork.getNameToSampleRate().containsKey(aliasId)) {
+      mrWork.getNameToSampleRate().put(aliasId, rate);
+    }
+    Operator<? extends Serializable> top = mrWork.getAliasToWork().get(aliasId);
+    if (top == null) {
+      return;
+    }
+    for (Operator<? extends Serializable> op : getOperators(top)) {
+      if (op instanceof SamplingOperator) {
+        ((SamplingOperator) op).getConf().setProbability(rate);
+      }
+    }
+  }
+
+  /**
+   * Sets the factor by which the sums and counts of the query are scaled.
+   */
+  private static void setScale(List<MapredWork> mrWorks, double scale) {
+    List<Operator<? extends Serializable>> ops = new ArrayList<Operator<? extends Serializable>>();
+    for (MapredWork mrWork : mrWorks) {
+      for (Operator<? extends Serializable> top : mrWork.getAliasToWork().values()) {
+        ops.addAll(getOperators(top));
+      }
+      if (mrWork.getReducer() != null) {
+        ops.addAll(getOperators(mrWork.getReducer()));
+      }
+    }
+    for (Operator<? extends Serializable> op : ops) {
+      if (!(op instanceof GroupByOperator)) {
+        continue;
+      }
+      for (AggregationDesc agg : ((GroupByOperator) op).getConf().getAggregators()) {
+        if (agg.getGenericUDAFEvaluator() instanceof ApproxScaledEvaluator) {
+          ((ApproxScaledEvaluator) agg.getGenericUDAFEvaluator()).setScale(scale);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the operator and all operators below it
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Operator<? extends Serializable>> getOperators(Operator<?> top) {
+    List<Operator<? extends Serializable>> ops = new ArrayList<Operator<? extends Serializable>>();
+    List<Operator<? extends Serializable>> pending = new ArrayList<Operator<? extends Serializable>>();
+    pending.add((Operator<? extends Serializable>) top);
+    while (!pending.isEmpty()) {
+      Operator<? extends Serializable> op = pending.remove(pending.size() - 1);
+      if (ops.contains(op)) {
+        continue;
+      }
+      ops.add(op);
+      if (op.getChildOperators() != null) {
+        pending.addAll(op.getChildOperators());
+      }
+    }
+    return ops;
+  }
+
+  @Override
+  public StageType getType() {
+    return StageType.MAPRED;
+  }
+
+  @Override
+  public String getName() {
+    return "PILOT";
+  }
+
+  @Override
+  protected void localizeMRTmpFilesImpl(Context ctx) {
+    // The pilot query is compiled and run by the task itself
+  }
+}
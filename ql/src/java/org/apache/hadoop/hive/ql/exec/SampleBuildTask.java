@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.Context;
+import org.apache.hadoop.hive.ql.DriverContext;
+import org.apache.hadoop.hive.ql.estimation.BlinkDBStream;
+import org.apache.hadoop.hive.ql.estimation.RowEstimate;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.plan.SampleBuildWork;
+import org.apache.hadoop.hive.ql.plan.api.StageType;
+import org.apache.hadoop.hive.ql.sampling.SampleBuilder;
+import org.apache.hadoop.hive.ql.sampling.SampleCatalog;
+import org.apache.hadoop.hive.ql.sampling.SampleInfo;
+import org.apache.hadoop.hive.ql.sampling.StratifiedSampleBuilder;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * SampleBuildTask implementation: creates the sample table with the schema
+ * and storage of its base table and fills it with a MapReduce build job, a
+ * {@link SampleBuilder} job for a uniform (by default nested) sample or a
+ * {@link StratifiedSampleBuilder} job for a stratified one. The sample is then
+ * recorded in the {@link SampleCatalog} of the base table.
+ **/
+public class SampleBuildTask extends Task<SampleBuildWork> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private static transient final Log LOG = LogFactory.getLog(SampleBuildTask.class);
+
+  public SampleBuildTask() {
+    super();
+  }
+
+  @Override
+  protected int execute(DriverContext driverContext) {
+    Table sample = null;
+    try {
+      Table base = db.getTable(work.getDbName(), work.getBaseTable());
+      sample = createSampleTable();
+
+      Path[] srcs = new Path[] {base.getPath()};
+      Path output = new Path(driverContext.getCtx().getExternalTmpFileURI(
+          sample.getDataLocation()));
+      console.printInfo("Building sample " + sample.getTableName() + " of "
+          + base.getTableName());
+
+      SampleInfo info = work.getStrata().isEmpty()
+          ? buildUniform(srcs, output)
+          : buildStratified(base, srcs, output);
+      info.setBytes(install(output, sample.getPath()));
+
+      SampleCatalog catalog = new SampleCatalog(conf);
+      try {
+        catalog.registerSample(work.getDbName(), work.getBaseTable(), info);
+      } finally {
+        catalog.close();
+      }
+      console.printInfo("Sample " + info);
+      return 0;
+    } catch (Exception e) {
+      console.printError("Failed with exception " + e.getMessage(), "\n"
+          + StringUtils.stringifyException(e));
+      if (sample != null) {
+        dropSampleTable(sample);
+      }
+      return 1;
+    }
+  }
+
+  /**
+   * Builds a bernoulli sample at the rate of the statement or of the
+   * configuration, or a nested reservoir sample with the configured sizes.
+   */
+  private SampleInfo buildUniform(Path[] srcs, Path output) throws IOException {
+    SampleBuilder builder = new SampleBuilder();
+    String mode = work.getRate() > 0 ? SampleBuilder.MODE_BERNOULLI
+        : HiveConf.getVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_BUILD_MODE);
+    if (SampleBuilder.MODE_RESERVOIR.equalsIgnoreCase(mode)) {
+      RunningJob rj = builder.buildNested(srcs, output, conf);
+      return SampleBuilder.getNestedSampleInfo(rj, work.getSampleTable());
+    }
+
+    float rate = work.getRate() > 0 ? work.getRate() : getBuildRate(srcs);
+    RunningJob rj = builder.build(srcs, output, conf, mode, 0, rate);
+    long[] counts = SampleBuilder.getRowCounts(rj);
+    return new SampleInfo(work.getSampleTable(), 0, counts[1], counts[0], 0);
+  }
+
+  /**
+   * @return the configured build rate, or the rate that draws the configured
+   *         number of rows from the base table, whose rows are estimated by
+   *         {@link BlinkDBStream} from a few blocks of its files
+   */
+  private float getBuildRate(Path[] srcs) throws IOException {
+    long rows = HiveConf.getLongVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_BUILD_ROWS);
+    if (rows <= 0) {
+      return HiveConf.getFloatVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_BUILD_RATE);
+    }
+    BlinkDBStream stream = new BlinkDBStream();
+    long sourceRows = 0;
+    for (Path src : srcs) {
+      RowEstimate estimate = stream.estimateDirectoryRows(src.getFileSystem(conf), src, conf);
+      LOG.info("Estimated rows of " + src + ": " + estimate);
+      sourceRows += estimate.getEstimate();
+    }
+    float rate = sourceRows <= rows ? 1 : ((float) rows) / sourceRows;
+    console.printInfo("Sampling " + rate + " of about " + sourceRows + " rows");
+    return rate;
+  }
+
+  private SampleInfo buildStratified(Table base, Path[] srcs, Path output) throws IOException {
+    List<FieldSchema> cols = base.getCols();
+    int[] positions = new int[work.getStrata().size()];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = -1;
+      for (int j = 0; j < cols.size(); j++) {
+        if (cols.get(j).getName().equalsIgnoreCase(work.getStrata().get(i))) {
+          positions[i] = j;
+        }
+      }
+      if (positions[i] < 0) {
+        throw new IOException("Unknown stratification column " + work.getStrata().get(i));
+      }
+    }
+    String delimiter = base.getSerdeParam(Constants.FIELD_DELIM);
+    int cap = HiveConf.getIntVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_STRATUM_CAP);
+
+    RunningJob rj = new StratifiedSampleBuilder().build(srcs, output, conf, positions,
+        delimiter == null ? StratifiedSampleBuilder.DEFAULT_DELIMITER : delimiter, cap);
+    long[] counts = SampleBuilder.getRowCounts(rj);
+    SampleInfo info = new SampleInfo(work.getSampleTable(), 0, counts[1], counts[0], 0);
+    info.setStrata(work.getStrata());
+    return info;
+  }
+
+  /**
+   * Creates the sample table, with the columns, the storage and the serde of
+   * its base table. A stratified sample has two more columns, the number of
+   * rows of the stratum of every row in the base table and in the sample.
+   */
+  private Table createSampleTable() throws HiveException, IOException {
+    Table sample = db.getTable(work.getDbName(), work.getBaseTable());
+    sample.setTableName(work.getSampleTable());
+    sample.unsetDataLocation();
+    sample.getParameters().clear();
+    sample.setOwner(conf.getUser());
+    sample.setCreateTime((int) (System.currentTimeMillis() / 1000));
+    if (!work.getStrata().isEmpty()) {
+      List<FieldSchema> cols = new ArrayList<FieldSchema>(sample.getCols());
+      cols.add(new FieldSchema(StratifiedSampleBuilder.STRATUM_ROWS,
+          Constants.BIGINT_TYPE_NAME, null));
+      cols.add(new FieldSchema(StratifiedSampleBuilder.STRATUM_SAMPLE_ROWS,
+          Constants.BIGINT_TYPE_NAME, null));
+      sample.setFields(cols);
+    }
+    db.createTable(sample);
+    return db.getTable(work.getDbName(), work.getSampleTable());
+  }
+
+  private void dropSampleTable(Table sample) {
+    try {
+      db.dropTable(sample.getDbName(), sample.getTableName());
+    } catch (HiveException e) {
+      LOG.warn("Unable to drop sample table " + sample.getTableName(), e);
+    }
+  }
+
+  /**
+   * Moves the files built into the sample table directory.
+   *
+   * @return the size of the sample in bytes
+   */
+  private long install(Path output, Path dir) throws IOException {
+    FileSystem fs = dir.getFileSystem(conf);
+    fs.mkdirs(dir);
+    long size = 0;
+    FileStatus[] files = fs.listStatus(output);
+    if (files != null) {
+      for (FileStatus file : files) {
+        String name = file.getPath().getName();
+        if (name.startsWith("_") || name.startsWith(".")) {
+          continue;
+        }
+        if (!fs.rename(file.getPath(), new Path(dir, name))) {
+          throw new IOException("Unable to move " + file.getPath() + " to " + dir);
+        }
+        size += file.getLen();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public StageType getType() {
+    return StageType.MAPRED;
+  }
+
+  @Override
+  public String getName() {
+    return "SAMPLE";
+  }
+
+  @Override
+  protected void localizeMRTmpFilesImpl(Context ctx) {
+    // The build jobs are submitted by the task itself
+  }
+}
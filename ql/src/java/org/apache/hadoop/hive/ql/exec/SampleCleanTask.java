@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.Serializable;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.Context;
+import org.apache.hadoop.hive.ql.Driver;
+import org.apache.hadoop.hive.ql.DriverContext;
+import org.apache.hadoop.hive.ql.plan.SampleCleanWork;
+import org.apache.hadoop.hive.ql.plan.api.StageType;
+import org.apache.hadoop.hive.ql.processors.CommandProcessorResponse;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * SampleCleanTask implementation: runs the HiveQL statements a SampleClean
+ * statement expands into, in order. Their SET statements are applied to a
+ * copy of the configuration the statements after them run under, so that
+ * they do not change the settings of the session.
+ **/
+public class SampleCleanTask extends Task<SampleCleanWork> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public SampleCleanTask() {
+    super();
+  }
+
+  @Override
+  protected int execute(DriverContext driverContext) {
+    HiveConf statementConf = new HiveConf(conf, SampleCleanTask.class);
+    for (String command : work.getCommands()) {
+      String trimmed = command.trim();
+      int eq = trimmed.indexOf('=');
+      if (trimmed.toUpperCase().startsWith("SET ") && eq > 0) {
+        statementConf.set(trimmed.substring(4, eq).trim(), trimmed.substring(eq + 1).trim());
+        continue;
+      }
+
+      Driver driver = new Driver(statementConf);
+      try {
+        CommandProcessorResponse response = driver.run(trimmed);
+        if (response.getResponseCode() != 0) {
+          console.printError("Failed to update SampleClean view " + work.getViewName()
+              + ": " + response.getErrorMessage(), "Statement: " + trimmed);
+          return response.getResponseCode();
+        }
+      } catch (Exception e) {
+        console.printError("Failed with exception " + e.getMessage(), "\n"
+            + StringUtils.stringifyException(e));
+        return 1;
+      } finally {
+        driver.close();
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public StageType getType() {
+    return StageType.MAPRED;
+  }
+
+  @Override
+  public String getName() {
+    return "SAMPLECLEAN";
+  }
+
+  @Override
+  protected void localizeMRTmpFilesImpl(Context ctx) {
+    // The statements are compiled and run by the task itself
+  }
+}
@@ -19,18 +19,27 @@
 package org.apache.hadoop.hive.ql.exec;
 
 import java.io.Serializable;
+import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.SampleDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
-import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
-import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.io.LongWritable;
 
 /**
  * Sample operator implementation.
+ *
+ * Keeps every row independently with the sampling probability p. Instead of
+ * drawing a random number per row, the operator draws the number of rows to
+ * skip before the next kept row, which is geometrically distributed:
+ * floor(ln(U) / ln(1 - p)). A rejected row then only costs a decrement.
+ *
+ * The generator is seeded from hive.sample.seednumber, the task partition and
+ * the id of the sample in the query, so re-running a query draws the same
+ * sample, while the samples of a query that run in one task, as the inputs
+ * of a union, are drawn independently.
  **/
 public class SamplingOperator extends Operator<SampleDesc> implements
     Serializable {
@@ -46,17 +55,20 @@ public class SamplingOperator extends Operator<SampleDesc> implements
   }
 
   private final transient LongWritable filtered_count, passed_count;
-  //private transient ExprNodeEvaluator conditionEvaluator;
   private double probability;
-  private transient PrimitiveObjectInspector conditionInspector;
-  private transient int consecutiveFails;
+  private transient Random rnd;
+  private transient double logQ;
+  // rows of the current skip, and the rows of it still to be rejected
+  private transient long skip;
+  private transient long remaining;
+  // value of remaining at which the next heartbeat is sent
+  private transient long nextHeartbeat;
   transient int heartbeatInterval;
 
   public SamplingOperator() {
     super();
     filtered_count = new LongWritable();
     passed_count = new LongWritable();
-    consecutiveFails = 0;
   }
 
   @Override
@@ -65,34 +77,73 @@ public class SamplingOperator extends Operator<SampleDesc> implements
       heartbeatInterval = HiveConf.getIntVar(hconf,
           HiveConf.ConfVars.HIVESENDHEARTBEAT);
       probability = conf.getProbability();
-      LOG.info("------------- " + probability + " ---------");
       statsMap.put(Counter.FILTERED, filtered_count);
       statsMap.put(Counter.PASSED, passed_count);
-      conditionInspector = null;
+
+      long seed = getSeed(hconf, conf.getSampleId());
+      rnd = new Random(seed);
+      logQ = Math.log(1 - probability);
+      LOG.info("Sampling with probability " + probability + " and seed " + seed);
+      nextSkip();
     } catch (Throwable e) {
       throw new HiveException(e);
     }
     initializeChildren(hconf);
   }
 
-  @Override
-  public void processOp(Object row, int tag) throws HiveException {
-    ObjectInspector rowInspector = inputObjInspectors[tag];
+  static long getSeed(Configuration hconf, String sampleId) {
+    long seed = HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVESAMPLERANDOMNUM);
+    seed = seed * 31 + hconf.getInt("mapred.task.partition", 0);
+    return sampleId == null ? seed : seed * 31 + sampleId.hashCode();
+  }
+
+  /**
+   * @param logQ
+   *          ln(1 - p)
+   * @return the number of rows to reject before the next kept row
+   */
+  static long drawSkip(Random rnd, double probability, double logQ) {
+    if (probability >= 1) {
+      return 0;
+    } else if (probability <= 0) {
+      return Long.MAX_VALUE;
+    }
+    // 1 - nextDouble() is in (0, 1], so the log is finite
+    double s = Math.floor(Math.log(1 - rnd.nextDouble()) / logQ);
+    return s >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) s;
+  }
 
-    if(Math.random() <= probability ) {
-      forward(row, rowInspector);
-      passed_count.set(passed_count.get() + 1);
-      consecutiveFails = 0;
-    } else {
-      filtered_count.set(filtered_count.get() + 1);
-      consecutiveFails++;
+  private void nextSkip() {
+    skip = drawSkip(rnd, probability, logQ);
+    remaining = skip;
+    nextHeartbeat = remaining - heartbeatInterval;
+  }
 
+  @Override
+  public void processOp(Object row, int tag) throws HiveException {
+    if (remaining > 0) {
       // In case of a lot of consecutive failures, send a heartbeat in order to
       // avoid timeout
-      if (((consecutiveFails % heartbeatInterval) == 0) && (reporter != null)) {
-        reporter.progress();
+      if (--remaining == nextHeartbeat) {
+        nextHeartbeat -= heartbeatInterval;
+        if (reporter != null) {
+          reporter.progress();
+        }
       }
+      return;
     }
+
+    forward(row, inputObjInspectors[tag]);
+    passed_count.set(passed_count.get() + 1);
+    filtered_count.set(filtered_count.get() + skip);
+    nextSkip();
+  }
+
+  @Override
+  protected void closeOp(boolean abort) throws HiveException {
+    // Count the rows rejected since the last kept row
+    filtered_count.set(filtered_count.get() + skip - remaining);
+    skip = remaining;
   }
 
   /**
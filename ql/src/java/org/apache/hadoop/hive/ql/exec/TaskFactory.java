@@ -34,6 +34,9 @@ import org.apache.hadoop.hive.ql.plan.FunctionWork;
 import org.apache.hadoop.hive.ql.plan.MapredLocalWork;
 import org.apache.hadoop.hive.ql.plan.MapredWork;
 import org.apache.hadoop.hive.ql.plan.MoveWork;
+import org.apache.hadoop.hive.ql.plan.PilotSampleWork;
+import org.apache.hadoop.hive.ql.plan.SampleBuildWork;
+import org.apache.hadoop.hive.ql.plan.SampleCleanWork;
 import org.apache.hadoop.hive.ql.plan.StatsWork;
 
 /**
@@ -78,6 +81,12 @@ public final class TaskFactory {
         StatsTask.class));
     taskvec.add(new taskTuple<MergeWork>(MergeWork.class,
         BlockMergeTask.class));
+    taskvec.add(new taskTuple<SampleBuildWork>(SampleBuildWork.class,
+        SampleBuildTask.class));
+    taskvec.add(new taskTuple<PilotSampleWork>(PilotSampleWork.class,
+        PilotSampleTask.class));
+    taskvec.add(new taskTuple<SampleCleanWork>(SampleCleanWork.class,
+        SampleCleanTask.class));
 
 
   }
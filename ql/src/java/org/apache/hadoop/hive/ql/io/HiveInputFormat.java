@@ -25,6 +25,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -33,6 +34,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.io.HiveIOExceptionHandlerUtil;
 import org.apache.hadoop.hive.ql.exec.Operator;
 import org.apache.hadoop.hive.ql.exec.TableScanOperator;
@@ -432,5 +434,29 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
         pushFilters(jobConf, tableScan);
       }
     }
+
+    pushSampleRate(jobConf, aliases);
+  }
+
+  /**
+   * Pushes the SAMPLEWITH rate of the aliases reading a path down to the
+   * record reader. Rows are only skipped if every alias reading the path is
+   * sampled, at the largest of their rates.
+   */
+  private void pushSampleRate(JobConf jobConf, List<String> aliases) {
+    Map<String, Double> rates = this.mrwork.getNameToSampleRate();
+    double rate = 1.0;
+    if (rates != null && !rates.isEmpty() && !aliases.isEmpty()) {
+      rate = 0.0;
+      for (String alias : aliases) {
+        Double aliasRate = rates.get(alias);
+        if (aliasRate == null) {
+          rate = 1.0;
+          break;
+        }
+        rate = Math.max(rate, aliasRate.doubleValue());
+      }
+    }
+    HiveConf.setFloatVar(jobConf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_INPUT_RATE, (float) rate);
   }
 }
@@ -224,6 +224,11 @@ public class RCFile {
       return columnNumber;
     }
 
+    // return the number of rows in this block
+    public int getNumberRows() {
+      return numberRows;
+    }
+
     @SuppressWarnings("unused")
     @Deprecated
     public KeyBuffer(){
@@ -1596,7 +1601,9 @@ public class RCFile {
         passedRowsNum++;
         rowFetched = false;
         return true;
-      } else {
+      } else if (currentValue.inited) {
+        // Keep the key of a skipped row group, so that nextKeyBuffer() skips
+        // its column data
         keyInit = false;
       }
 
@@ -1642,6 +1649,16 @@ public class RCFile {
       return ret;
     }
 
+    /**
+     * Skips the rows of the current row group that were not read yet. The
+     * column data of the row group is not read or decompressed, unless a row
+     * of it was already fetched.
+     */
+    public synchronized void skipRowGroup() {
+      passedRowsNum += (recordsNumInValBuffer - readRowsIndexInBuffer);
+      readRowsIndexInBuffer = recordsNumInValBuffer;
+    }
+
     public boolean hasRecordsInBuffer() {
       return readRowsIndexInBuffer < recordsNumInValBuffer;
     }
@@ -19,10 +19,12 @@
 package org.apache.hadoop.hive.ql.io;
 
 import java.io.IOException;
+import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.io.RCFile.Reader;
 import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -33,6 +35,10 @@ import org.apache.hadoop.util.ReflectionUtils;
 /**
  * RCFileRecordReader.
  *
+ * If a SAMPLEWITH rate was pushed down for the split (see
+ * HiveInputFormat#pushSampleRate), each row group is kept with that
+ * probability and the others are skipped without reading their column data.
+ *
  * @param <K>
  * @param <V>
  */
@@ -44,6 +50,8 @@ public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayW
   private final long end;
   private boolean more = true;
   protected Configuration conf;
+  private final double sampleRate;
+  private final Random rnd;
 
   public RCFileRecordReader(Configuration conf, FileSplit split)
       throws IOException {
@@ -59,6 +67,15 @@ public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayW
 
     this.start = in.getPosition();
     more = start < end;
+
+    sampleRate = HiveConf.getFloatVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_INPUT_RATE);
+    if (sampleRate < 1) {
+      // Seeded per split so that re-running a query reads the same row groups
+      long seed = HiveConf.getIntVar(conf, HiveConf.ConfVars.HIVESAMPLERANDOMNUM);
+      rnd = new Random((seed * 31 + path.toString().hashCode()) * 31 + split.getStart());
+    } else {
+      rnd = null;
+    }
   }
 
   public Class<?> getKeyClass() {
@@ -95,7 +112,13 @@ public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayW
       return false;
     }
 
+    boolean newRowGroup = !in.hasRecordsInBuffer();
     more = in.next(key);
+    while (more && newRowGroup && rnd != null && in.lastSeenSyncPos() < end
+        && rnd.nextDouble() >= sampleRate) {
+      in.skipRowGroup();
+      more = in.next(key);
+    }
     if (!more) {
       return false;
     }
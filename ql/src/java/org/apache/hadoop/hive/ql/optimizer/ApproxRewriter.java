@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.FilterOperator;
+import org.apache.hadoop.hive.ql.exec.GroupByOperator;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
+import org.apache.hadoop.hive.ql.exec.SelectOperator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.hooks.ReadEntity;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.parse.ParseContext;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.sampling.ApproxBound;
+import org.apache.hadoop.hive.ql.sampling.SampleCatalog;
+import org.apache.hadoop.hive.ql.sampling.SampleInfo;
+import org.apache.hadoop.hive.ql.sampling.SampleSelector;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxScaledEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
+
+/**
+ * Answers exact aggregates over a table from one of its uniform samples
+ * (quicksilver.approx.rewrite), so that existing queries run at the speed of
+ * the sample without being rewritten by hand.
+ *
+ * The query must scan a single unpartitioned table, without TABLESAMPLE or
+ * SAMPLEWITH, and aggregate it through filters and projections only with
+ * sum, count and avg, none of them DISTINCT. The table scan is then pointed
+ * at the smallest sample whose estimated error meets
+ * quicksilver.approx.rewrite.error (see {@link SampleSelector}); if none does,
+ * the query is left alone. The sums and counts are scaled up by the rows of
+ * the table over the rows of the sample, as approx_sum and approx_count do,
+ * while averages need no scaling. Their types stay the same, so the result
+ * schema of the query does not change.
+ */
+public class ApproxRewriter implements Transform {
+
+  static final Log LOG = LogFactory.getLog(ApproxRewriter.class.getName());
+
+  @Override
+  public ParseContext transform(ParseContext pctx) throws SemanticException {
+    if (pctx.getTopOps().size() != 1 || !pctx.getLoadTableWork().isEmpty()) {
+      return pctx;
+    }
+    Map.Entry<String, Operator<? extends Serializable>> top =
+        pctx.getTopOps().entrySet().iterator().next();
+    if (!(top.getValue() instanceof TableScanOperator)) {
+      return pctx;
+    }
+    String aliasId = top.getKey();
+    TableScanOperator ts = (TableScanOperator) top.getValue();
+    Table tab = pctx.getTopToTable().get(ts);
+    if (tab == null || tab.isPartitioned()
+        || pctx.getNameToSplitSample().containsKey(aliasId)
+        || pctx.getNameToSampleRate().containsKey(aliasId)) {
+      return pctx;
+    }
+
+    List<AggregationDesc> totals = new ArrayList<AggregationDesc>();
+    if (!getTotals(ts, totals)) {
+      return pctx;
+    }
+    List<SampleInfo> samples = SampleCatalog.getSamples(tab.getParameters());
+    if (samples.isEmpty()) {
+      return pctx;
+    }
+
+    HiveConf conf = pctx.getConf();
+    ApproxBound bound = ApproxBound.error(
+        HiveConf.getFloatVar(conf, HiveConf.ConfVars.QUICKSILVER_APPROX_REWRITE_ERROR),
+        HiveConf.getFloatVar(conf, HiveConf.ConfVars.QUICKSILVER_APPROX_CONFIDENCE));
+    SampleInfo chosen = new SampleSelector(conf).select(samples, bound);
+    if (chosen == null || chosen.getRows() <= 0) {
+      return pctx;
+    }
+
+    Table sample;
+    try {
+      sample = Hive.get(conf).getTable(tab.getDbName(), chosen.getTableName());
+    } catch (HiveException e) {
+      throw new SemanticException(e);
+    }
+    pctx.getTopToTable().put(ts, sample);
+    pctx.getSemanticInputs().add(new ReadEntity(sample));
+    if (chosen.isPrefix()) {
+      pctx.getNameToSampleLevel().put(aliasId, chosen.getLevel());
+    }
+
+    double scale = ((double) chosen.getSourceRows()) / chosen.getRows();
+    for (AggregationDesc agg : totals) {
+      ApproxScaledEvaluator scaled = new ApproxScaledEvaluator();
+      scaled.setEvaluator(agg.getGenericUDAFEvaluator());
+      scaled.setScale(scale);
+      agg.setGenericUDAFEvaluator(scaled);
+    }
+
+    String msg = "Answering from sample " + chosen.getTableName() + " of "
+        + tab.getTableName() + " (" + chosen.getRows() + " of " + chosen.getSourceRows()
+        + " rows" + (chosen.isNested() ? ", level " + chosen.getLevel() : "")
+        + "), results are approximate";
+    LOG.info(msg);
+    if (SessionState.getConsole() != null) {
+      SessionState.getConsole().printInfo(msg);
+    }
+    return pctx;
+  }
+
+  /**
+   * Collects the sums and counts of the aggregation of the table, through all
+   * its map and reduce side stages.
+   *
+   * @return whether the rows of the table reach a single aggregation that can
+   *         be answered from a sample
+   */
+  private static boolean getTotals(TableScanOperator ts, List<AggregationDesc> totals) {
+    Operator<? extends Serializable> op = ts;
+    while (!(op instanceof GroupByOperator)) {
+      if (op.getChildOperators() == null || op.getChildOperators().size() != 1) {
+        return false;
+      }
+      op = op.getChildOperators().get(0);
+      if (op instanceof FilterOperator
+          && ((FilterOperator) op).getConf().getIsSamplingPred()) {
+        return false;
+      }
+      if (!(op instanceof FilterOperator || op instanceof SelectOperator
+          || op instanceof ReduceSinkOperator || op instanceof GroupByOperator)) {
+        return false;
+      }
+    }
+
+    List<AggregationDesc> aggs = ((GroupByOperator) op).getConf().getAggregators();
+    if (aggs.isEmpty()) {
+      return false;
+    }
+    for (AggregationDesc agg : aggs) {
+      String name = agg.getGenericUDAFName().toLowerCase();
+      if (agg.getDistinct()
+          || !(name.equals("sum") || name.equals("count") || name.equals("avg"))) {
+        return false;
+      }
+    }
+
+    // The later stages of the same aggregation merge partial aggregations
+    while (true) {
+      for (AggregationDesc agg : ((GroupByOperator) op).getConf().getAggregators()) {
+        String name = agg.getGenericUDAFName().toLowerCase();
+        if (name.equals("sum") || name.equals("count")) {
+          totals.add(agg);
+        }
+      }
+      Operator<? extends Serializable> rs = getOnlyChild(op);
+      if (!(rs instanceof ReduceSinkOperator)) {
+        break;
+      }
+      Operator<? extends Serializable> next = getOnlyChild(rs);
+      if (!(next instanceof GroupByOperator) || !isMerge((GroupByOperator) next)) {
+        break;
+      }
+      op = next;
+    }
+    return true;
+  }
+
+  private static Operator<? extends Serializable> getOnlyChild(
+      Operator<? extends Serializable> op) {
+    List<Operator<? extends Serializable>> children = op.getChildOperators();
+    return children == null || children.size() != 1 ? null : children.get(0);
+  }
+
+  private static boolean isMerge(GroupByOperator gby) {
+    for (AggregationDesc agg : gby.getConf().getAggregators()) {
+      if (agg.getMode() != Mode.PARTIAL2 && agg.getMode() != Mode.FINAL) {
+        return false;
+      }
+    }
+    return !gby.getConf().getAggregators().isEmpty();
+  }
+}
@@ -617,6 +617,8 @@ public final class GenMapRedUtils {
     PrunedPartitionList partsList = pList;
 
     plan.setNameToSplitSample(parseCtx.getNameToSplitSample());
+    plan.setNameToSampleRate(parseCtx.getNameToSampleRate());
+    plan.setNameToSampleLevel(parseCtx.getNameToSampleLevel());
 
     if (partsList == null) {
       try {
@@ -913,6 +915,8 @@ public final class GenMapRedUtils {
   public static MapredWork getMapRedWork(ParseContext parseCtx) {
     MapredWork work = getMapRedWorkFromConf(parseCtx.getConf());
     work.setNameToSplitSample(parseCtx.getNameToSplitSample());
+    work.setNameToSampleRate(parseCtx.getNameToSampleRate());
+    work.setNameToSampleLevel(parseCtx.getNameToSampleLevel());
     return work;
   }
 
@@ -47,6 +47,10 @@ public class Optimizer {
     transformations = new ArrayList<Transform>();
     // Add the transformation that computes the lineage information.
     transformations.add(new Generator());
+    // Point the table scan at a sample before its partitions are pruned
+    if (HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.QUICKSILVER_APPROX_REWRITE)) {
+      transformations.add(new ApproxRewriter());
+    }
     if (HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.HIVEOPTCP)) {
       transformations.add(new ColumnPruner());
     }
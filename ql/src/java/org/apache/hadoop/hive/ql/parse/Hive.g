@@ -179,6 +179,7 @@ TOK_TABLELOCATION;
 TOK_PARTITIONLOCATION;
 TOK_TABLEBUCKETSAMPLE;
 TOK_TABLESPLITSAMPLE;
+TOK_TABLEUNIVERSESAMPLE;
 TOK_TMP_FILE;
 TOK_TABSORTCOLNAMEASC;
 TOK_TABSORTCOLNAMEDESC;
@@ -258,6 +259,20 @@ TOK_TABSRC;
 TOK_RESTRICT;
 TOK_CASCADE;
 TOK_SAMPLE_WITH;
+TOK_APPROX_TIME;
+TOK_APPROX_ERROR;
+TOK_SCINITIALIZE;
+TOK_SCRESET;
+TOK_SCCOMPACT;
+TOK_SCOUTLIER;
+TOK_SCFORMAT;
+TOK_SCFORMAT_STEP;
+TOK_SCFILTER;
+TOK_SCSHOW;
+TOK_SCCOUNT;
+TOK_SELECTRAWSC;
+TOK_SELECTNSC;
+TOK_CREATESAMPLE;
 }
 
 
@@ -300,6 +315,7 @@ execStatement
     | exportStatement
     | importStatement
     | ddlStatement
+    | sampleCleanStatement
     ;
 
 loadStatement
@@ -323,6 +339,34 @@ importStatement
     -> ^(TOK_IMPORT $path $tab? $ext? tableLocation?)
     ;
 
+sampleCleanStatement
+@init { msgs.push("sampleclean statement"); }
+@after { msgs.pop(); }
+    : KW_SCINITIALIZE name=Identifier LPAREN columnNameList RPAREN KW_FROM tab=tableName KW_WITHSAMPLING prob=Number
+    -> ^(TOK_SCINITIALIZE $name columnNameList $tab $prob)
+    | KW_SCRESET name=Identifier -> ^(TOK_SCRESET $name)
+    | KW_SCCOMPACT name=Identifier -> ^(TOK_SCCOMPACT $name)
+    | KW_SCOUTLIER name=Identifier attr=Identifier method=Identifier alpha=Number
+    -> ^(TOK_SCOUTLIER $name $attr $method $alpha)
+    | KW_SCFORMAT name=Identifier sampleCleanFormat (COMMA sampleCleanFormat)*
+    -> ^(TOK_SCFORMAT $name sampleCleanFormat+)
+    | KW_SCFILTER name=Identifier searchCondition -> ^(TOK_SCFILTER $name searchCondition)
+    | KW_SCSHOW name=Identifier searchCondition? -> ^(TOK_SCSHOW $name searchCondition?)
+    | KW_SCCOUNT name=Identifier searchCondition? -> ^(TOK_SCCOUNT $name searchCondition?)
+    | KW_SELECTRAWSC function KW_FROM name=Identifier whereClause? groupByClause?
+    -> ^(TOK_SELECTRAWSC function $name whereClause? groupByClause?)
+    | KW_SELECTNSC function KW_FROM name=Identifier whereClause? groupByClause?
+    -> ^(TOK_SELECTNSC function $name whereClause? groupByClause?)
+    ;
+
+sampleCleanFormat
+@init { msgs.push("sampleclean format"); }
+@after { msgs.pop(); }
+    : attr=Identifier format=(Identifier | KW_REPLACE | StringLiteral)
+      (pattern=StringLiteral replacement=StringLiteral)?
+    -> ^(TOK_SCFORMAT_STEP $attr $format $pattern? $replacement?)
+    ;
+
 ddlStatement
 @init { msgs.push("ddl statement"); }
 @after { msgs.pop(); }
@@ -330,6 +374,7 @@ ddlStatement
     | switchDatabaseStatement
     | dropDatabaseStatement
     | createTableStatement
+    | createSampleStatement
     | dropTableStatement
     | alterStatement
     | descStatement
@@ -871,6 +916,15 @@ unlockStatement
     : KW_UNLOCK KW_TABLE tableName partitionSpec?  -> ^(TOK_UNLOCKTABLE tableName partitionSpec?)
     ;
 
+createSampleStatement
+@init { msgs.push("create sample statement"); }
+@after { msgs.pop(); }
+    : KW_CREATE KW_TABLESAMPLE name=Identifier KW_ON base=Identifier
+      (KW_CLUSTERED KW_BY LPAREN columnNameList RPAREN)?
+      sampleWithClause?
+    -> ^(TOK_CREATESAMPLE $name $base columnNameList? sampleWithClause?)
+    ;
+
 createRoleStatement
 @init { msgs.push("create role"); }
 @after { msgs.pop(); }
@@ -1373,10 +1427,10 @@ regular_body
    clusterByClause?
    distributeByClause?
    sortByClause?
-   sampleWithClause?
+   (sampleWithClause | approxBoundClause)?
    limitClause? -> ^(TOK_QUERY fromClause ^(TOK_INSERT insertClause
                      selectClause whereClause? groupByClause? havingClause? orderByClause? clusterByClause?
-                     distributeByClause? sortByClause? sampleWithClause? limitClause?))
+                     distributeByClause? sortByClause? sampleWithClause? approxBoundClause? limitClause?))
    |
    selectStatement
    ;
@@ -1392,10 +1446,10 @@ selectStatement
    clusterByClause?
    distributeByClause?
    sortByClause?
-   sampleWithClause?
+   (sampleWithClause | approxBoundClause)?
    limitClause? -> ^(TOK_QUERY fromClause ^(TOK_INSERT ^(TOK_DESTINATION ^(TOK_DIR TOK_TMP_FILE))
                      selectClause whereClause? groupByClause? havingClause? orderByClause? clusterByClause?
-                     distributeByClause? sortByClause? sampleWithClause? limitClause?))
+                     distributeByClause? sortByClause? sampleWithClause? approxBoundClause? limitClause?))
    ;
 
 
@@ -1410,10 +1464,10 @@ body
    clusterByClause?
    distributeByClause?
    sortByClause?
-   sampleWithClause?
+   (sampleWithClause | approxBoundClause)?
    limitClause? -> ^(TOK_INSERT insertClause?
                      selectClause whereClause? groupByClause? havingClause? orderByClause? clusterByClause?
-                     distributeByClause? sortByClause? sampleWithClause? limitClause?)
+                     distributeByClause? sortByClause? sampleWithClause? approxBoundClause? limitClause?)
    |
    selectClause
    whereClause?
@@ -1423,10 +1477,10 @@ body
    clusterByClause?
    distributeByClause?
    sortByClause?
-   sampleWithClause?
+   (sampleWithClause | approxBoundClause)?
    limitClause? -> ^(TOK_INSERT ^(TOK_DESTINATION ^(TOK_DIR TOK_TMP_FILE))
                      selectClause whereClause? groupByClause? havingClause? orderByClause? clusterByClause?
-                     distributeByClause? sortByClause? sampleWithClause? limitClause?)
+                     distributeByClause? sortByClause? sampleWithClause? approxBoundClause? limitClause?)
    ;
 
 insertClause
@@ -1461,6 +1515,15 @@ sampleWithClause
   KW_SAMPLE_WITH num=Number -> ^(TOK_SAMPLE_WITH $num)
   ;
 
+approxBoundClause
+@init { msgs.push("approximation bound clause");}
+@after {msgs.pop(); }
+  :
+  kwWithin num=Number kwSeconds -> ^(TOK_APPROX_TIME $num)
+  |
+  kwError err=Number (kwAt kwConfidence conf=Number)? -> ^(TOK_APPROX_ERROR $err $conf?)
+  ;
+
 //----------------------- Rules for parsing selectClause -----------------------------
 // select a,b,c ...
 selectClause
@@ -1680,6 +1743,13 @@ tableBucketSample
     KW_TABLESAMPLE LPAREN KW_BUCKET (numerator=Number) KW_OUT KW_OF (denominator=Number) (KW_ON expr+=expression (COMMA expr+=expression)*)? RPAREN -> ^(TOK_TABLEBUCKETSAMPLE $numerator $denominator $expr*)
     ;
 
+tableUniverseSample
+@init { msgs.push("table universe sample specification"); }
+@after { msgs.pop(); }
+    :
+    KW_TABLESAMPLE LPAREN kwUniverse (numerator=Number) KW_OUT KW_OF (denominator=Number) KW_ON expr+=expression (COMMA expr+=expression)* RPAREN -> ^(TOK_TABLEUNIVERSESAMPLE $numerator $denominator $expr+)
+    ;
+
 splitSample
 @init { msgs.push("table split sample specification"); }
 @after { msgs.pop(); }
@@ -1692,6 +1762,7 @@ tableSample
 @after { msgs.pop(); }
     :
     tableBucketSample |
+    tableUniverseSample |
     splitSample
     ;
 
@@ -2165,6 +2236,30 @@ kwInner
 :
 {input.LT(1).getText().equalsIgnoreCase("inner")}? Identifier;
 
+kwWithin
+:
+{input.LT(1).getText().equalsIgnoreCase("within")}? Identifier;
+
+kwSeconds
+:
+{input.LT(1).getText().equalsIgnoreCase("seconds")}? Identifier;
+
+kwError
+:
+{input.LT(1).getText().equalsIgnoreCase("error")}? Identifier;
+
+kwAt
+:
+{input.LT(1).getText().equalsIgnoreCase("at")}? Identifier;
+
+kwConfidence
+:
+{input.LT(1).getText().equalsIgnoreCase("confidence")}? Identifier;
+
+kwUniverse
+:
+{input.LT(1).getText().equalsIgnoreCase("universe")}? Identifier;
+
 KW_TRUE : 'TRUE';
 KW_FALSE : 'FALSE';
 KW_ALL : 'ALL';
@@ -2375,6 +2470,17 @@ KW_UPDATE: 'UPDATE';
 KW_RESTRICT: 'RESTRICT';
 KW_CASCADE: 'CASCADE';
 KW_SAMPLE_WITH: 'SAMPLEWITH';
+KW_SCINITIALIZE: 'SCINITIALIZE';
+KW_WITHSAMPLING: 'WITHSAMPLING';
+KW_SCRESET: 'SCRESET';
+KW_SCCOMPACT: 'SCCOMPACT';
+KW_SCOUTLIER: 'SCOUTLIER';
+KW_SCFORMAT: 'SCFORMAT';
+KW_SCFILTER: 'SCFILTER';
+KW_SCSHOW: 'SCSHOW';
+KW_SCCOUNT: 'SCCOUNT';
+KW_SELECTRAWSC: 'SELECTRAWSC';
+KW_SELECTNSC: 'SELECTNSC';
 
 
 // Operators
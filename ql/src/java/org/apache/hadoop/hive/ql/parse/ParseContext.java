@@ -68,6 +68,8 @@ public class ParseContext {
   private Map<MapJoinOperator, QBJoinTree> mapJoinContext;
   private HashMap<TableScanOperator, Table> topToTable;
   private HashMap<String, SplitSample> nameToSplitSample;
+  private HashMap<String, Double> nameToSampleRate;
+  private HashMap<String, Integer> nameToSampleLevel;
   private List<LoadTableDesc> loadTableWork;
   private List<LoadFileDesc> loadFileWork;
   private Context ctx;
@@ -343,6 +345,28 @@ public class ParseContext {
     this.nameToSplitSample = nameToSplitSample;
   }
 
+  /**
+   * @return the SAMPLEWITH rates pushed down to the record readers, by alias
+   */
+  public HashMap<String, Double> getNameToSampleRate() {
+    return nameToSampleRate;
+  }
+
+  public void setNameToSampleRate(HashMap<String, Double> nameToSampleRate) {
+    this.nameToSampleRate = nameToSampleRate;
+  }
+
+  /**
+   * @return the number of levels to read of nested samples, by alias
+   */
+  public HashMap<String, Integer> getNameToSampleLevel() {
+    return nameToSampleLevel;
+  }
+
+  public void setNameToSampleLevel(HashMap<String, Integer> nameToSampleLevel) {
+    this.nameToSampleLevel = nameToSampleLevel;
+  }
+
   /**
    * @return the loadTableWork
    */
@@ -56,6 +56,7 @@ public class QBParseInfo {
   private boolean isInsertToTable;  // used for insert overwrite command (statistics)
 
   private final HashMap<String, ASTNode> destToSampleExpr; // used for sampling
+  private final HashMap<String, ASTNode> destToApproxBound; // WITHIN or ERROR bound
   private final HashMap<String, tableSpec> tableSpecs; // used for statistics
 
   /**
@@ -107,6 +108,7 @@ public class QBParseInfo {
     destToLimit = new HashMap<String, Integer>();
     insertIntoTables = new HashSet<String>();
     destToSampleExpr = new HashMap<String, ASTNode>(); //sameerag
+    destToApproxBound = new HashMap<String, ASTNode>();
     destToAggregationExprs = new LinkedHashMap<String, LinkedHashMap<String, ASTNode>>();
     destToDistinctFuncExprs = new HashMap<String, List<ASTNode>>();
 
@@ -170,6 +172,10 @@ public class QBParseInfo {
     destToSampleExpr.put(clause, ast);
   }
 
+  public void setApproxBoundForClause(String clause, ASTNode ast) {
+    destToApproxBound.put(clause, ast);
+  }
+
   public void setGroupByExprForClause(String clause, ASTNode ast) {
     destToGroupby.put(clause, ast);
   }
@@ -239,6 +245,14 @@ public class QBParseInfo {
     return destToSampleExpr.get(clause);
   }
 
+  public ASTNode getApproxBoundForClause(String clause) {
+    return destToApproxBound.get(clause);
+  }
+
+  public HashMap<String, ASTNode> getDestToApproxBound() {
+    return destToApproxBound;
+  }
+
   public ASTNode getWhrForClause(String clause) {
     return destToWhereExpr.get(clause);
   }
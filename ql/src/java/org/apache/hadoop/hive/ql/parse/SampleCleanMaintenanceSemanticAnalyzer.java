@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse;
+
+import java.util.ArrayList;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.ql.exec.TaskFactory;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.SampleCleanWork;
+import org.apache.hadoop.hive.ql.sampleclean.SampleCleanSQLExtensionParser;
+
+/**
+ * SampleCleanMaintenanceSemanticAnalyzer: plans the SampleClean statements
+ * that change the clean view of a sample, SCINITIALIZE, SCRESET, SCCOMPACT,
+ * SCOUTLIER, SCFORMAT and SCFILTER. Each is expanded by
+ * SampleCleanSQLExtensionParser into HiveQL statements, which a
+ * SampleCleanTask runs in order.
+ *
+ */
+public class SampleCleanMaintenanceSemanticAnalyzer extends BaseSemanticAnalyzer {
+
+  public SampleCleanMaintenanceSemanticAnalyzer(HiveConf conf) throws SemanticException {
+    super(conf);
+  }
+
+  @Override
+  public void analyzeInternal(ASTNode ast) throws SemanticException {
+    String viewName = unescapeIdentifier(ast.getChild(0).getText());
+    SampleCleanSQLExtensionParser parser = new SampleCleanSQLExtensionParser(
+        conf.getLongVar(ConfVars.SAMPLECLEAN_DATASET_SIZE),
+        conf.getLongVar(ConfVars.SAMPLECLEAN_SAMPLE_SIZE));
+    parser.setHiveConf(conf);
+
+    ArrayList<String> commands;
+    try {
+      commands = parser.exec(ast, ctx.getCmd());
+    } catch (HiveException e) {
+      throw new SemanticException(e);
+    }
+    if (commands == null) {
+      throw new SemanticException(ErrorMsg.GENERIC_ERROR.getMsg(ast,
+          "Not a SampleClean statement"));
+    }
+    rootTasks.add(TaskFactory.get(new SampleCleanWork(viewName, commands), conf));
+  }
+}
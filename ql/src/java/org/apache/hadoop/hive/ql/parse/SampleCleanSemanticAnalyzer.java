@@ -0,0 +1,306 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.runtime.CommonToken;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.exec.ExecDriver;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.SMBMapJoinOperator;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.io.BucketizedHiveInputFormat;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.sampleclean.SampleCleanQueryBuilder;
+
+/**
+ * Compiles the SampleClean queries over the clean view of a sample,
+ * SELECTRAWSC, SELECTNSC, SCSHOW and SCCOUNT, into operator trees: the
+ * statement is rewritten into the AST of the query over the clean view, which
+ * is analyzed as any other query.
+ *
+ * That query is built as text by SampleCleanQueryBuilder with placeholders
+ * for the attribute, the predicate and the grouping, parsed, and filled in
+ * with the subtrees of the statement, so that they are not printed and
+ * parsed again. It only depends on the database, the view, the verb and the
+ * aggregate of the statement, and on the sizes and the clean schema of the
+ * sample, so the parsed templates are kept, up to
+ * sampleclean.template.cache.size of them, and each statement fills in a copy.
+ *
+ * The other verbs run as several HiveQL statements, see
+ * SampleCleanMaintenanceSemanticAnalyzer.
+ */
+public class SampleCleanSemanticAnalyzer extends SemanticAnalyzer {
+
+  private static final String ATTR = "`$attr`";
+  private static final String WHERE = "`$where`";
+  private static final String GROUPBY = "`$groupby`";
+
+  // parsed templates, least recently used first
+  private static final Map<String, ASTNode> templates =
+      new LinkedHashMap<String, ASTNode>(16, 0.75f, true);
+
+  private final SampleCleanQueryBuilder queryBuilder = new SampleCleanQueryBuilder();
+
+  public SampleCleanSemanticAnalyzer(HiveConf conf) throws SemanticException {
+    super(conf);
+  }
+
+  @Override
+  public void analyzeInternal(ASTNode ast) throws SemanticException {
+    if (ast.getToken().getType() != HiveParser.TOK_SELECTNSC) {
+      super.analyzeInternal(rewrite(ast));
+      return;
+    }
+
+    // the dirty sample and the deltas are joined as a sort-merge bucket map
+    // join, which is planned under these settings for this query only
+    boolean bucketMapJoin = conf.getBoolVar(ConfVars.HIVEOPTBUCKETMAPJOIN);
+    boolean sortMergeJoin = conf.getBoolVar(ConfVars.HIVEOPTSORTMERGEBUCKETMAPJOIN);
+    conf.setBoolVar(ConfVars.HIVEOPTBUCKETMAPJOIN, true);
+    conf.setBoolVar(ConfVars.HIVEOPTSORTMERGEBUCKETMAPJOIN, true);
+    try {
+      super.analyzeInternal(rewrite(ast));
+    } finally {
+      conf.setBoolVar(ConfVars.HIVEOPTBUCKETMAPJOIN, bucketMapJoin);
+      conf.setBoolVar(ConfVars.HIVEOPTSORTMERGEBUCKETMAPJOIN, sortMergeJoin);
+    }
+    for (ExecDriver task : Utilities.getMRTasks(rootTasks)) {
+      if (hasSortMergeJoin(task.getWork())) {
+        task.getWork().setInputformat(BucketizedHiveInputFormat.class.getName());
+      }
+    }
+  }
+
+  private static boolean hasSortMergeJoin(MapredWork work) {
+    List<Operator<? extends Serializable>> pending =
+        new ArrayList<Operator<? extends Serializable>>(work.getAliasToWork().values());
+    while (!pending.isEmpty()) {
+      Operator<? extends Serializable> op = pending.remove(pending.size() - 1);
+      if (op instanceof SMBMapJoinOperator) {
+        return true;
+      }
+      if (op.getChildOperators() != null) {
+        pending.addAll(op.getChildOperators());
+      }
+    }
+    return false;
+  }
+
+  private ASTNode rewrite(ASTNode ast) throws SemanticException {
+    switch (ast.getToken().getType()) {
+    case HiveParser.TOK_SCSHOW:
+    case HiveParser.TOK_SCCOUNT: {
+      String view = unescapeIdentifier(ast.getChild(0).getText());
+      boolean show = ast.getToken().getType() == HiveParser.TOK_SCSHOW;
+      ASTNode template = getTemplate(key(view, show ? "show" : "count"),
+          show ? queryBuilder.showQuery(view, WHERE) : queryBuilder.countQuery(view, WHERE));
+
+      ASTNode where = null;
+      if (ast.getChildCount() > 1) {
+        where = new ASTNode(new CommonToken(HiveParser.TOK_WHERE, "TOK_WHERE"));
+        where.addChild(ast.getChild(1));
+      }
+      return fill(template, null, where, null, false);
+    }
+    case HiveParser.TOK_SELECTRAWSC:
+    case HiveParser.TOK_SELECTNSC: {
+      ASTNode function = (ASTNode) ast.getChild(0);
+      String view = unescapeIdentifier(ast.getChild(1).getText());
+      String aggFunc = unescapeIdentifier(function.getChild(0).getText()).toLowerCase();
+      ASTNode attr;
+      if (function.getToken().getType() == HiveParser.TOK_FUNCTIONSTAR) {
+        attr = new ASTNode(new CommonToken(HiveParser.Number, "1"));
+      } else if (function.getToken().getType() == HiveParser.TOK_FUNCTION
+          && function.getChildCount() == 2) {
+        attr = (ASTNode) function.getChild(1);
+      } else {
+        throw new SemanticException("SampleClean aggregates take one attribute: "
+            + function.toStringTree());
+      }
+      ASTNode where = null;
+      ASTNode groupBy = null;
+      for (int i = 2; i < ast.getChildCount(); i++) {
+        ASTNode clause = (ASTNode) ast.getChild(i);
+        if (clause.getToken().getType() == HiveParser.TOK_WHERE) {
+          where = clause;
+        } else {
+          groupBy = clause;
+        }
+      }
+
+      long sampleSize = conf.getLongVar(ConfVars.SAMPLECLEAN_SAMPLE_SIZE);
+      long datasetSize = conf.getLongVar(ConfVars.SAMPLECLEAN_DATASET_SIZE);
+      if ((aggFunc.equals("count") || aggFunc.equals("sum"))
+          && (sampleSize <= 0 || datasetSize <= 0)) {
+        throw new SemanticException("SampleClean " + aggFunc + " needs "
+            + ConfVars.SAMPLECLEAN_SAMPLE_SIZE.varname + " and "
+            + ConfVars.SAMPLECLEAN_DATASET_SIZE.varname);
+      }
+
+      if (ast.getToken().getType() == HiveParser.TOK_SELECTRAWSC) {
+        ASTNode template = getTemplate(key(view, "raw", aggFunc, sampleSize, datasetSize),
+            queryBuilder.rawSCQuery(view, aggFunc, ATTR, WHERE, GROUPBY,
+            new ArrayList<String>(), sampleSize, datasetSize));
+        return fill(template, attr, where, groupBy, false);
+      }
+
+      ArrayList<String> schema = getCleanSchema(view);
+      ASTNode template = getTemplate(
+          key(view, "normalized", aggFunc, sampleSize, datasetSize, schema),
+          queryBuilder.normalizedSCQuery(view, aggFunc, ATTR, WHERE, GROUPBY, schema,
+          sampleSize, datasetSize));
+      return fill(template, attr, where, groupBy, false);
+    }
+    default:
+      throw new SemanticException("SampleClean statements other than queries are planned by"
+          + " SampleCleanMaintenanceSemanticAnalyzer");
+    }
+  }
+
+  private ArrayList<String> getCleanSchema(String view) throws SemanticException {
+    ArrayList<String> schema = new ArrayList<String>();
+    try {
+      for (FieldSchema field : db.getTable(view + "_clean").getCols()) {
+        schema.add(field.getName().toLowerCase());
+      }
+    } catch (HiveException e) {
+      throw new SemanticException(e);
+    }
+    return schema;
+  }
+
+  private String key(String view, Object... parts) {
+    StringBuilder key = new StringBuilder(db.getCurrentDatabase()).append('.')
+        .append(view.toLowerCase());
+    for (Object part : parts) {
+      key.append(' ').append(part);
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return a copy of the parsed template of a query, parsed and kept if it is
+   *         not kept already
+   */
+  private ASTNode getTemplate(String key, String query) throws SemanticException {
+    int cacheSize = HiveConf.getIntVar(conf, ConfVars.SAMPLECLEAN_TEMPLATE_CACHE_SIZE);
+    ASTNode template;
+    synchronized (templates) {
+      template = templates.get(key);
+    }
+    if (template == null) {
+      template = parse(query);
+      synchronized (templates) {
+        templates.put(key, template);
+        Iterator<String> eldest = templates.keySet().iterator();
+        while (templates.size() > cacheSize) {
+          eldest.next();
+          eldest.remove();
+        }
+      }
+    }
+    return copy(template);
+  }
+
+  private static ASTNode parse(String query) throws SemanticException {
+    try {
+      return ParseUtils.findRootNonNullToken(new ParseDriver().parse(query));
+    } catch (ParseException e) {
+      throw new SemanticException(e);
+    }
+  }
+
+  private static boolean isPlaceholder(ASTNode node, String name) {
+    return node.getToken().getType() == HiveParser.TOK_TABLE_OR_COL
+        && node.getChild(0).getText().equals(name);
+  }
+
+  /**
+   * Copies a template, replacing its placeholders with the given subtrees and
+   * dropping the WHERE and GROUP BY clauses of those that are null. Inside
+   * the subquery over the dirty sample and its deltas, the columns of the
+   * attribute are those of the dirty sample.
+   */
+  private static ASTNode fill(ASTNode node, ASTNode attr, ASTNode where, ASTNode groupBy,
+      boolean dirty) {
+    if (isPlaceholder(node, ATTR)) {
+      return dirty ? qualify(attr, "d") : copy(attr);
+    }
+    ASTNode filled = new ASTNode(node.getToken());
+    for (int i = 0; i < node.getChildCount(); i++) {
+      ASTNode child = (ASTNode) node.getChild(i);
+      int type = child.getToken().getType();
+      if (type == HiveParser.TOK_WHERE && isPlaceholder((ASTNode) child.getChild(0), WHERE)) {
+        if (where != null) {
+          filled.addChild(copy(where));
+        }
+      } else if (type == HiveParser.TOK_GROUPBY
+          && isPlaceholder((ASTNode) child.getChild(0), GROUPBY)) {
+        if (groupBy != null) {
+          filled.addChild(copy(groupBy));
+        }
+      } else {
+        filled.addChild(fill(child, attr, where, groupBy,
+            dirty || type == HiveParser.TOK_SUBQUERY));
+      }
+    }
+    return filled;
+  }
+
+  private static ASTNode copy(ASTNode node) {
+    ASTNode copy = new ASTNode(new CommonToken(node.getToken()));
+    for (int i = 0; i < node.getChildCount(); i++) {
+      copy.addChild(copy((ASTNode) node.getChild(i)));
+    }
+    return copy;
+  }
+
+  /**
+   * Copies an expression, qualifying its unqualified columns with an alias.
+   */
+  private static ASTNode qualify(ASTNode node, String alias) {
+    if (node.getToken().getType() == HiveParser.DOT) {
+      return copy(node);
+    }
+    if (node.getToken().getType() == HiveParser.TOK_TABLE_OR_COL) {
+      ASTNode table = new ASTNode(new CommonToken(HiveParser.TOK_TABLE_OR_COL,
+          "TOK_TABLE_OR_COL"));
+      table.addChild(new ASTNode(new CommonToken(HiveParser.Identifier, alias)));
+      ASTNode column = new ASTNode(new CommonToken(HiveParser.DOT, "."));
+      column.addChild(table);
+      column.addChild(copy((ASTNode) node.getChild(0)));
+      return column;
+    }
+    ASTNode copy = new ASTNode(node.getToken());
+    for (int i = 0; i < node.getChildCount(); i++) {
+      copy.addChild(qualify((ASTNode) node.getChild(i), alias));
+    }
+    return copy;
+  }
+}
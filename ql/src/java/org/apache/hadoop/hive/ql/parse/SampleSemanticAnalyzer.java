@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.exec.TaskFactory;
+import org.apache.hadoop.hive.ql.hooks.ReadEntity;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.plan.SampleBuildWork;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+/**
+ * SampleSemanticAnalyzer: plans CREATE TABLESAMPLE sample ON table
+ * [CLUSTERED BY (columns)] [SAMPLEWITH rate], which builds a uniform or a
+ * stratified sample table of a text table as a MapReduce job.
+ *
+ */
+public class SampleSemanticAnalyzer extends BaseSemanticAnalyzer {
+
+  public SampleSemanticAnalyzer(HiveConf conf) throws SemanticException {
+    super(conf);
+  }
+
+  @Override
+  public void analyzeInternal(ASTNode ast) throws SemanticException {
+    String sampleName = unescapeIdentifier(ast.getChild(0).getText()).toLowerCase();
+    String baseName = unescapeIdentifier(ast.getChild(1).getText()).toLowerCase();
+    String dbName = db.getCurrentDatabase();
+
+    float rate = 0;
+    List<String> strata = new ArrayList<String>();
+    for (int i = 2; i < ast.getChildCount(); i++) {
+      ASTNode child = (ASTNode) ast.getChild(i);
+      if (child.getToken().getType() == HiveParser.TOK_TABCOLNAME) {
+        strata = getColumnNames(child);
+      } else {
+        ASTNode rateNode = (ASTNode) child.getChild(0);
+        rate = Float.parseFloat(rateNode.getText());
+        if (rate <= 0 || rate > 1) {
+          throw new SemanticException(ErrorMsg.GENERIC_ERROR.getMsg(rateNode,
+              "The sampling rate must be in (0, 1]"));
+        }
+      }
+    }
+    if (!strata.isEmpty() && rate > 0) {
+      throw new SemanticException(ErrorMsg.GENERIC_ERROR.getMsg(ast,
+          "A stratified sample keeps a fixed number of rows per stratum and has no rate"));
+    }
+
+    Table base;
+    try {
+      base = db.getTable(dbName, baseName, false);
+      if (base == null) {
+        throw new SemanticException(ErrorMsg.INVALID_TABLE.getMsg(baseName));
+      }
+      if (db.getTable(dbName, sampleName, false) != null) {
+        throw new SemanticException(ErrorMsg.TABLE_ALREADY_EXISTS.getMsg(sampleName));
+      }
+    } catch (HiveException e) {
+      throw new SemanticException(e);
+    }
+    if (base.isView() || base.isPartitioned()
+        || !TextInputFormat.class.equals(base.getInputFormatClass())) {
+      throw new SemanticException(ErrorMsg.GENERIC_ERROR.getMsg(ast,
+          "Samples can only be built for unpartitioned text tables"));
+    }
+    for (String column : strata) {
+      boolean found = false;
+      for (FieldSchema col : base.getCols()) {
+        found |= col.getName().equalsIgnoreCase(column);
+      }
+      if (!found) {
+        throw new SemanticException(ErrorMsg.INVALID_COLUMN.getMsg(column));
+      }
+    }
+
+    inputs.add(new ReadEntity(base));
+    SampleBuildWork work = new SampleBuildWork(dbName, baseName, sampleName, rate);
+    work.setStrata(new ArrayList<String>(strata));
+    rootTasks.add(TaskFactory.get(work, conf));
+  }
+}
@@ -33,6 +33,7 @@ import java.util.TreeSet;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.tree.Tree;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.fs.ContentSummary;
@@ -78,6 +79,7 @@ import org.apache.hadoop.hive.ql.hooks.WriteEntity;
 import org.apache.hadoop.hive.ql.io.CombineHiveInputFormat;
 import org.apache.hadoop.hive.ql.io.HiveFileFormatUtils;
 import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
+import org.apache.hadoop.hive.ql.io.RCFileInputFormat;
 import org.apache.hadoop.hive.ql.lib.DefaultGraphWalker;
 import org.apache.hadoop.hive.ql.lib.DefaultRuleDispatcher;
 import org.apache.hadoop.hive.ql.lib.Dispatcher;
@@ -142,6 +144,7 @@ import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.MapredWork;
 import org.apache.hadoop.hive.ql.plan.MoveWork;
 import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.PilotSampleWork;
 import org.apache.hadoop.hive.ql.plan.PlanUtils;
 import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
 import org.apache.hadoop.hive.ql.plan.SampleDesc;
@@ -151,8 +154,17 @@ import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.ql.plan.UDTFDesc;
 import org.apache.hadoop.hive.ql.plan.UnionDesc;
+import org.apache.hadoop.hive.ql.sampling.ApproxBound;
+import org.apache.hadoop.hive.ql.sampling.PilotSamplePlanner;
+import org.apache.hadoop.hive.ql.sampling.SampleCatalog;
+import org.apache.hadoop.hive.ql.sampling.SampleInfo;
+import org.apache.hadoop.hive.ql.sampling.SampleSelector;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.ql.session.SessionState.ResourceType;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxEvaluator;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxScaledEvaluator;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFUniverseSum.ApproxUDAFUniverseSumEvaluator;
+import org.apache.hadoop.hive.ql.udf.approx.RowGroupEvaluator;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDFHash;
@@ -201,6 +213,18 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
    * that describes percentage and number.
    */
   private final HashMap<String, SplitSample> nameToSplitSample;
+  /**
+   * SAMPLEWITH rates pushed down to RCFile row groups, by alias id.
+   */
+  private final HashMap<String, Double> nameToSampleRate;
+  /**
+   * Number of levels to read of nested samples, by alias id.
+   */
+  private final HashMap<String, Integer> nameToSampleLevel;
+  /**
+   * TABLESAMPLE(UNIVERSE ...) clauses, by alias id.
+   */
+  private final HashMap<String, TableSample> nameToUniverseSample;
   Map<GroupByOperator, Set<String>> groupOpToInputTables;
   Map<String, PrunedPartitionList> prunedPartitions;
   private List<FieldSchema> resultSchema;
@@ -209,6 +233,12 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
   private ASTNode viewSelect;
   private final UnparseTranslator unparseTranslator;
   private final GlobalLimitCtx globalLimitCtx = new GlobalLimitCtx();
+  // WITHIN or ERROR bound of the query, answered from table samples
+  private ApproxBound approxBound;
+  // Rows of the tables over the rows read from their samples, for sum and count
+  private double approxScale;
+  // Pilot query choosing the sample of an ERROR query when it runs
+  private PilotSampleWork pilotWork;
 
   //prefix for column names auto generated by hive
   private final String autogenColAliasPrfxLbl;
@@ -272,6 +302,9 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
     opToPartList = new HashMap<TableScanOperator, PrunedPartitionList>();
     opToSamplePruner = new HashMap<TableScanOperator, sampleDesc>();
     nameToSplitSample = new HashMap<String, SplitSample>();
+    nameToSampleRate = new HashMap<String, Double>();
+    nameToSampleLevel = new HashMap<String, Integer>();
+    nameToUniverseSample = new HashMap<String, TableSample>();
     topOps = new HashMap<String, Operator<? extends Serializable>>();
     topSelOps = new HashMap<String, Operator<? extends Serializable>>();
     loadTableWork = new ArrayList<LoadTableDesc>();
@@ -285,6 +318,7 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
     groupOpToInputTables = new HashMap<GroupByOperator, Set<String>>();
     prunedPartitions = new HashMap<String, PrunedPartitionList>();
     unparseTranslator = new UnparseTranslator();
+    approxScale = 1;
     autogenColAliasPrfxLbl = HiveConf.getVar(conf,
         HiveConf.ConfVars.HIVE_AUTOGEN_COLUMNALIAS_PREFIX_LABEL);
     autogenColAliasPrfxIncludeFuncName = HiveConf.getBoolVar(conf,
@@ -304,6 +338,12 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
     qb = null;
     ast = null;
     uCtx = null;
+    approxBound = null;
+    approxScale = 1;
+    pilotWork = null;
+    nameToSampleRate.clear();
+    nameToSampleLevel.clear();
+    nameToUniverseSample.clear();
     joinContext.clear();
     opParseCtx.clear();
     groupOpToInputTables.clear();
@@ -332,11 +372,14 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
   }
 
   public ParseContext getParseContext() {
-    return new ParseContext(conf, qb, ast, opToPartPruner, opToPartList, topOps,
+    ParseContext pCtx = new ParseContext(conf, qb, ast, opToPartPruner, opToPartList, topOps,
         topSelOps, opParseCtx, joinContext, topToTable, loadTableWork,
         loadFileWork, ctx, idToTableNameMap, destTableId, uCtx,
         listMapJoinOpsNoReducer, groupOpToInputTables, prunedPartitions,
         opToSamplePruner, globalLimitCtx, nameToSplitSample, inputs, rootTasks);
+    pCtx.setNameToSampleRate(nameToSampleRate);
+    pCtx.setNameToSampleLevel(nameToSampleLevel);
+    return pCtx;
   }
 
   @SuppressWarnings("nls")
@@ -477,7 +520,8 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
       // OR
       // tablename alias
       ASTNode ct = (ASTNode) tabref.getChild(1);
-      if (ct.getToken().getType() == HiveParser.TOK_TABLEBUCKETSAMPLE) {
+      if (ct.getToken().getType() == HiveParser.TOK_TABLEBUCKETSAMPLE
+          || ct.getToken().getType() == HiveParser.TOK_TABLEUNIVERSESAMPLE) {
         tableSamplePresent = true;
       } else if (ct.getToken().getType() == HiveParser.TOK_TABLESPLITSAMPLE) {
         splitSamplePresent = true;
@@ -488,7 +532,8 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
       // table name table sample alias
       aliasIndex = 2;
       ASTNode ct = (ASTNode) tabref.getChild(1);
-      if (ct.getToken().getType() == HiveParser.TOK_TABLEBUCKETSAMPLE) {
+      if (ct.getToken().getType() == HiveParser.TOK_TABLEBUCKETSAMPLE
+          || ct.getToken().getType() == HiveParser.TOK_TABLEUNIVERSESAMPLE) {
         tableSamplePresent = true;
       } else if (ct.getToken().getType() == HiveParser.TOK_TABLESPLITSAMPLE) {
         splitSamplePresent = true;
@@ -514,19 +559,21 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
               sampleCols.add((ASTNode) sampleClause.getChild(i));
             }
           }
+          boolean universe =
+              sampleClause.getToken().getType() == HiveParser.TOK_TABLEUNIVERSESAMPLE;
           // TODO: For now only support sampling on up to two columns
           // Need to change it to list of columns
-          if (sampleCols.size() > 2) {
+          if (sampleCols.size() > 2 && !universe) {
             throw new SemanticException(generateErrorMessage(
                 (ASTNode) tabref.getChild(0),
                 ErrorMsg.SAMPLE_RESTRICTION.getMsg()));
           }
-          qb.getParseInfo().setTabSample(
-              alias,
-              new TableSample(
-                  unescapeIdentifier(sampleClause.getChild(0).getText()),
-                  unescapeIdentifier(sampleClause.getChild(1).getText()),
-                  sampleCols));
+          TableSample tabSample = new TableSample(
+              unescapeIdentifier(sampleClause.getChild(0).getText()),
+              unescapeIdentifier(sampleClause.getChild(1).getText()),
+              sampleCols);
+          tabSample.setUniverse(universe);
+          qb.getParseInfo().setTabSample(alias, tabSample);
           if (unparseTranslator.isEnabled()) {
             for (ASTNode sampleCol : sampleCols) {
               unparseTranslator.addIdentifierTranslation((ASTNode) sampleCol
@@ -741,6 +788,12 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
         qbp.setSampleExprForClause(ctx_1.dest, ast);
         break;
 
+      case HiveParser.TOK_APPROX_TIME:
+      case HiveParser.TOK_APPROX_ERROR:
+        approxBound = parseApproxBound(ast);
+        qbp.setApproxBoundForClause(ctx_1.dest, ast);
+        break;
+
       case HiveParser.TOK_INSERT_INTO:
         String tab_name = getUnescapedName((ASTNode)ast.getChild(0).
             getChild(0));
@@ -947,6 +1000,249 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
   }
 
   @SuppressWarnings("nls")
+  private ApproxBound parseApproxBound(ASTNode ast) throws SemanticException {
+    try {
+      double value = Double.parseDouble(ast.getChild(0).getText());
+      if (ast.getToken().getType() == HiveParser.TOK_APPROX_TIME) {
+        return ApproxBound.within(value);
+      }
+      double confidence = ast.getChildCount() > 1
+          ? Double.parseDouble(ast.getChild(1).getText())
+          : HiveConf.getFloatVar(conf, HiveConf.ConfVars.QUICKSILVER_APPROX_CONFIDENCE);
+      return ApproxBound.error(value, confidence);
+    } catch (IllegalArgumentException e) {
+      throw new SemanticException(generateErrorMessage(ast, e.getMessage()));
+    }
+  }
+
+  /**
+   * Computes the intervals of the approximate aggregates of the query at the
+   * confidence level of its error bound, rather than that of the session.
+   */
+  private void setApproxConfidence(double confidence) {
+    for (Operator<? extends Serializable> op : opParseCtx.keySet()) {
+      if (!(op instanceof GroupByOperator)) {
+        continue;
+      }
+      for (AggregationDesc agg : ((GroupByOperator) op).getConf().getAggregators()) {
+        if (agg.getGenericUDAFEvaluator() instanceof ApproxEvaluator) {
+          ((ApproxEvaluator) agg.getGenericUDAFEvaluator()).setConfidence(confidence);
+        }
+      }
+    }
+  }
+
+  /**
+   * Widens the intervals of the approximate aggregates over the aliases whose
+   * SAMPLEWITH was pushed down to RCFile row groups by the design effect of
+   * the row groups read, see {@link RowGroupEvaluator}. Aggregates over other
+   * aliases keep intervals of a sample of rows.
+   */
+  private void setRowGroupSampled() {
+    for (Map.Entry<String, Double> entry : nameToSampleRate.entrySet()) {
+      Operator<? extends Serializable> top = topOps.get(entry.getKey());
+      if (top != null && entry.getValue() < 1) {
+        setRowGroupSampled(top);
+      }
+    }
+  }
+
+  private void setRowGroupSampled(Operator<? extends Serializable> op) {
+    if (op instanceof GroupByOperator) {
+      for (AggregationDesc agg : ((GroupByOperator) op).getConf().getAggregators()) {
+        if (agg.getGenericUDAFEvaluator() instanceof RowGroupEvaluator) {
+          ((RowGroupEvaluator) agg.getGenericUDAFEvaluator()).setRowGroupSampled(true);
+        }
+      }
+    }
+    if (op.getChildOperators() != null) {
+      for (Operator<? extends Serializable> child : op.getChildOperators()) {
+        setRowGroupSampled(child);
+      }
+    }
+  }
+
+  /**
+   * Checks the approximate aggregates over the universe samples of the query.
+   * approx_universe_sum is given the buckets of the TABLESAMPLE clause, which
+   * its evaluators check against their arguments. approx_sum and
+   * approx_count are rejected: they scale by the rows of the sample they are
+   * given rather than by the buckets kept, and their intervals assume rows
+   * sampled one by one rather than whole keys.
+   */
+  private void checkUniverseAggregates() throws SemanticException {
+    for (Map.Entry<String, TableSample> entry : nameToUniverseSample.entrySet()) {
+      Operator<? extends Serializable> top = topOps.get(entry.getKey());
+      if (top != null) {
+        checkUniverseAggregates(top, entry.getValue());
+      }
+    }
+  }
+
+  private void checkUniverseAggregates(Operator<? extends Serializable> op, TableSample ts)
+      throws SemanticException {
+    if (op instanceof GroupByOperator) {
+      for (AggregationDesc agg : ((GroupByOperator) op).getConf().getAggregators()) {
+        String name = agg.getGenericUDAFName().toLowerCase();
+        if (name.equals("approx_sum") || name.equals("approx_count")) {
+          throw new SemanticException(ErrorMsg.GENERIC_ERROR.getMsg(name
+              + " cannot be computed over TABLESAMPLE(UNIVERSE " + ts.getNumerator()
+              + " OUT OF " + ts.getDenominator() + "), use approx_universe_sum"));
+        }
+        if (!(agg.getGenericUDAFEvaluator() instanceof ApproxUDAFUniverseSumEvaluator)) {
+          continue;
+        }
+        ApproxUDAFUniverseSumEvaluator evaluator =
+            (ApproxUDAFUniverseSumEvaluator) agg.getGenericUDAFEvaluator();
+        if (evaluator.getSampleBuckets() > 0
+            && (evaluator.getSampleUniverse() != ts.getNumerator()
+            || evaluator.getSampleBuckets() != ts.getDenominator())) {
+          throw new SemanticException(ErrorMsg.GENERIC_ERROR.getMsg(
+              "approx_universe_sum over universe samples of different buckets"));
+        }
+        evaluator.setSampleUniverse(ts.getNumerator());
+        evaluator.setSampleBuckets(ts.getDenominator());
+      }
+    }
+    if (op.getChildOperators() != null) {
+      for (Operator<? extends Serializable> child : op.getChildOperators()) {
+        checkUniverseAggregates(child, ts);
+      }
+    }
+  }
+
+  /**
+   * Scales the sums and counts of a query answered from samples up to the
+   * tables they were drawn from, see {@link ApproxScaledEvaluator}. Averages
+   * and the approx_* aggregates, which take the sample and table row counts as
+   * arguments, are left alone; other aggregates, DISTINCT aggregates and
+   * aggregates of aggregates have no unbiased estimate from a sample and are
+   * rejected. The scale of a query planned by a pilot is set when the pilot
+   * has run.
+   */
+  private void scaleApproxAggregates() throws SemanticException {
+    if (approxScale == 1 && pilotWork == null) {
+      return;
+    }
+    int finalAggregations = 0;
+    for (Operator<? extends Serializable> op : opParseCtx.keySet()) {
+      if (!(op instanceof GroupByOperator)) {
+        continue;
+      }
+      boolean isFinal = false;
+      for (AggregationDesc agg : ((GroupByOperator) op).getConf().getAggregators()) {
+        String name = agg.getGenericUDAFName().toLowerCase();
+        if (name.startsWith("approx_") || (name.equals("avg") && !agg.getDistinct())) {
+          continue;
+        }
+        if (agg.getDistinct() || !(name.equals("sum") || name.equals("count"))) {
+          throw new SemanticException(ErrorMsg.GENERIC_ERROR.getMsg(
+              (agg.getDistinct() ? name + "(DISTINCT)" : name)
+              + " cannot be answered from a sample within " + approxBound));
+        }
+        isFinal |= agg.getMode() == Mode.FINAL || agg.getMode() == Mode.COMPLETE;
+        ApproxScaledEvaluator scaled = new ApproxScaledEvaluator();
+        scaled.setEvaluator(agg.getGenericUDAFEvaluator());
+        scaled.setScale(approxScale);
+        agg.setGenericUDAFEvaluator(scaled);
+      }
+      if (isFinal && ++finalAggregations > 1) {
+        throw new SemanticException(ErrorMsg.GENERIC_ERROR.getMsg(
+            "Nested aggregations cannot be answered from a sample within " + approxBound));
+      }
+    }
+  }
+
+  /**
+   * @return the sample of the table that meets the approximation bound of the
+   *         query, or null to scan the table itself. When only the first levels
+   *         of a nested sample are needed, they are recorded for the alias.
+   */
+  private Table getSampleForBound(Table tab, String alias, QB qb) throws HiveException {
+    List<SampleInfo> samples = SampleCatalog.getSamples(tab.getParameters());
+    if (samples.isEmpty()) {
+      return null;
+    }
+    if (approxBound.getKind() == ApproxBound.Kind.ERROR
+        && conf.getBoolVar(ConfVars.QUICKSILVER_SAMPLE_PILOT)
+        && planPilot(tab, samples, alias, qb)) {
+      console.printInfo("The sample of " + tab.getTableName()
+          + " is chosen by a pilot query before the query runs");
+      return null;
+    }
+    SampleInfo chosen = new SampleSelector(conf).select(samples, approxBound);
+    if (chosen == null) {
+      console.printInfo("No sample of " + tab.getTableName() + " meets " + approxBound
+          + ", scanning the whole table");
+      return null;
+    }
+    console.printInfo("Answering from sample " + chosen.getTableName() + " of "
+        + tab.getTableName() + " (" + chosen.getRows() + " of " + chosen.getSourceRows()
+        + " rows" + (chosen.isNested() ? ", level " + chosen.getLevel() : "") + ")");
+    if (chosen.isPrefix()) {
+      nameToSampleLevel.put(getAliasId(alias, qb), chosen.getLevel());
+    }
+    if (chosen.getRows() > 0) {
+      approxScale *= ((double) chosen.getSourceRows()) / chosen.getRows();
+    }
+    return db.getTable(tab.getDbName(), chosen.getTableName());
+  }
+
+  /**
+   * Plans a pilot query for a query over a single table with approx_*
+   * aggregates, which runs on the smallest sample of the table before the
+   * query and then points the query at the sample the bound needs (see
+   * {@link org.apache.hadoop.hive.ql.exec.PilotSampleTask}). The query is
+   * planned on the table itself, with a SAMPLEWITH filter first passing every
+   * row, which the pilot lowers when no sample is large enough.
+   *
+   * @return whether the sample of the query is chosen by a pilot query
+   */
+  private boolean planPilot(Table tab, List<SampleInfo> samples, String alias, QB qb) {
+    QBParseInfo qbp = qb.getParseInfo();
+    if (PilotSamplePlanner.getPilotSample(samples) == null || qb.getId() != null
+        || qb.getTabAliases().size() != 1 || !qb.getSubqAliases().isEmpty()
+        || qbp.getClauseNames().size() != 1) {
+      return false;
+    }
+    String dest = qbp.getClauseNames().iterator().next();
+    PilotSampleWork work = new PilotSampleWork(tab.getDbName(), tab.getTableName(), alias,
+        getAliasId(alias, qb), approxBound.getError(), approxBound.getConfidence());
+    for (ASTNode agg : qbp.getAggregationExprsForClause(dest).values()) {
+      if (agg.getToken().getType() != HiveParser.TOK_FUNCTION || agg.getChildCount() < 2) {
+        continue;
+      }
+      String function = unescapeIdentifier(agg.getChild(0).getText());
+      if (PilotSamplePlanner.isPlanned(function)) {
+        work.getFunctions().add(function.toLowerCase());
+        work.getArguments().add(getOriginalText((ASTNode) agg.getChild(1)));
+      }
+    }
+    if (work.getFunctions().isEmpty()) {
+      return false;
+    }
+    for (ASTNode expr : getGroupByForClause(qbp, dest)) {
+      work.getGroupBy().add(getOriginalText(expr));
+    }
+    if (qbp.getWhrForClause(dest) != null) {
+      work.setWhere(getOriginalText((ASTNode) qbp.getWhrForClause(dest).getChild(0)));
+    }
+    if (qbp.getSampleForClause(dest) == null) {
+      ASTNode sampleExpr = new ASTNode(new CommonToken(HiveParser.TOK_SAMPLE_WITH,
+          "TOK_SAMPLE_WITH"));
+      sampleExpr.addChild(new ASTNode(new CommonToken(HiveParser.Number, "1.0")));
+      qbp.setSampleExprForClause(dest, sampleExpr);
+      work.setSampleTable(true);
+    }
+    pilotWork = work;
+    return true;
+  }
+
+  private String getOriginalText(ASTNode node) {
+    return ctx.getTokenRewriteStream().toString(node.getTokenStartIndex(),
+        node.getTokenStopIndex());
+  }
+
   public void getMetaData(QB qb) throws SemanticException {
     try {
 
@@ -967,6 +1263,18 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
               .getParseInfo().getSrcForAlias(alias)));
         }
 
+        // Answer WITHIN/ERROR queries from the sample meeting the bound
+        if (approxBound != null && !tab.isView()
+            && !qb.getParseInfo().isAnalyzeCommand()
+            && !qb.getParseInfo().isInsertIntoTable(tab_name)) {
+          Table sample = getSampleForBound(tab, alias, qb);
+          if (sample != null) {
+            tab_name = sample.getDbName() + "." + sample.getTableName();
+            qb.setTabAlias(alias, tab_name);
+            tab = sample;
+          }
+        }
+
         // Disallow INSERT INTO on bucketized tables
         if(qb.getParseInfo().isInsertIntoTable(tab_name) &&
             tab.getNumBuckets() > 0) {
@@ -1563,7 +1871,33 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
   private Operator genSamplePlan(String dest, QB qb, Operator input)
       throws SemanticException {
     ASTNode sampleExpr = qb.getParseInfo().getSampleForClause(dest);
-    return genSamplePlan(qb, (ASTNode) sampleExpr.getChild(0), input);
+    ASTNode rate = (ASTNode) sampleExpr.getChild(0);
+    if (pushSampleRate(qb, Double.parseDouble(rate.getText()))) {
+      return input;
+    }
+    return genSamplePlan(qb, dest, rate, input);
+  }
+
+  /**
+   * Pushes the SAMPLEWITH rate down to the RCFile record reader, which then
+   * skips whole row groups without reading or decompressing them. This is
+   * only done when a single RCFile table feeds a single insert clause, since
+   * the skipped rows are lost for every consumer of the table scan.
+   */
+  private boolean pushSampleRate(QB qb, double rate) {
+    if (!conf.getBoolVar(ConfVars.QUICKSILVER_SAMPLE_PUSHDOWN)
+        || qb.getTabAliases().size() != 1 || !qb.getSubqAliases().isEmpty()
+        || qb.getParseInfo().getClauseNames().size() != 1) {
+      return false;
+    }
+    String alias = qb.getTabAliases().iterator().next();
+    Table tab = qb.getMetaData().getSrcForAlias(alias);
+    if (tab == null || !RCFileInputFormat.class.equals(tab.getInputFormatClass())) {
+      return false;
+    }
+    nameToSampleRate.put(getAliasId(alias, qb), rate);
+    console.printInfo("Sampling " + rate + " of the row groups of " + tab.getTableName());
+    return true;
   }
 
   /**
@@ -1599,13 +1933,15 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
    *
    * @param qb
    *          current query block
+   * @param dest
+   *          the clause the sample is drawn for
    * @param condn
    *          The condition to be resolved
    * @param input
    *          the input operator
    */
   @SuppressWarnings("nls")
-  private Operator genSamplePlan(QB qb, ASTNode condn, Operator input)
+  private Operator genSamplePlan(QB qb, String dest, ASTNode condn, Operator input)
       throws SemanticException {
 
     OpParseContext inputCtx = opParseCtx.get(input);
@@ -1616,9 +1952,10 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
        inputRR.getColumnInfos()), input), inputRR);
      */
 
+    SampleDesc sampleDesc = new SampleDesc(Double.parseDouble(condn.token.getText()), false);
+    sampleDesc.setSampleId(getAliasId(dest, qb));
     Operator output = putOpInsertMap(OperatorFactory.getAndMakeChild(
-        new SampleDesc(Double.parseDouble(condn.token.getText()), false), new RowSchema(
-            inputRR.getColumnInfos()), input), inputRR);
+        sampleDesc, new RowSchema(inputRR.getColumnInfos()), input), inputRR);
 
     if (LOG.isDebugEnabled()) {
       LOG.debug("Created Sample Plan for " + qb.getId() + " row schema: "
@@ -6415,6 +6752,11 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
    *
    * ((hash(expressions) & Integer.MAX_VALUE) % denominator) == numerator
    *
+   * or, for a universe sample, which keeps numerator buckets out of
+   * denominator:
+   *
+   * ((hash(expressions) & Integer.MAX_VALUE) % denominator) &lt; numerator
+   *
    * @param ts
    *          TABLESAMPLE clause information
    * @param bucketCols
@@ -6440,15 +6782,6 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
       RowResolver rwsch, QBMetaData qbm, ExprNodeDesc planExpr)
           throws SemanticException {
 
-    ExprNodeDesc numeratorExpr = new ExprNodeConstantDesc(
-        TypeInfoFactory.intTypeInfo, Integer.valueOf(ts.getNumerator() - 1));
-
-    ExprNodeDesc denominatorExpr = new ExprNodeConstantDesc(
-        TypeInfoFactory.intTypeInfo, Integer.valueOf(ts.getDenominator()));
-
-    ExprNodeDesc intMaxExpr = new ExprNodeConstantDesc(
-        TypeInfoFactory.intTypeInfo, Integer.valueOf(Integer.MAX_VALUE));
-
     ArrayList<ExprNodeDesc> args = new ArrayList<ExprNodeDesc>();
     if (planExpr != null) {
       args.add(planExpr);
@@ -6464,25 +6797,41 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
         args.add(genExprNodeDesc(expr, rwsch));
       }
     }
+    ExprNodeDesc equalsExpr = genSamplePredicate(ts, args);
+    LOG.info("equalsExpr = " + equalsExpr);
+    return equalsExpr;
+  }
+
+  /**
+   * Generates the sample predicate of a TABLESAMPLE clause over the given hash
+   * arguments.
+   */
+  static ExprNodeDesc genSamplePredicate(TableSample ts, ArrayList<ExprNodeDesc> args)
+      throws SemanticException {
+
+    ExprNodeDesc numeratorExpr = new ExprNodeConstantDesc(
+        TypeInfoFactory.intTypeInfo, Integer.valueOf(ts.isUniverse() ? ts.getNumerator()
+            : ts.getNumerator() - 1));
+
+    ExprNodeDesc denominatorExpr = new ExprNodeConstantDesc(
+        TypeInfoFactory.intTypeInfo, Integer.valueOf(ts.getDenominator()));
+
+    ExprNodeDesc intMaxExpr = new ExprNodeConstantDesc(
+        TypeInfoFactory.intTypeInfo, Integer.valueOf(Integer.MAX_VALUE));
 
     ExprNodeDesc equalsExpr = null;
     {
       ExprNodeDesc hashfnExpr = new ExprNodeGenericFuncDesc(
           TypeInfoFactory.intTypeInfo, new GenericUDFHash(), args);
       assert (hashfnExpr != null);
-      LOG.info("hashfnExpr = " + hashfnExpr);
       ExprNodeDesc andExpr = TypeCheckProcFactory.DefaultExprProcessor
           .getFuncExprNodeDesc("&", hashfnExpr, intMaxExpr);
       assert (andExpr != null);
-      LOG.info("andExpr = " + andExpr);
       ExprNodeDesc modExpr = TypeCheckProcFactory.DefaultExprProcessor
           .getFuncExprNodeDesc("%", andExpr, denominatorExpr);
       assert (modExpr != null);
-      LOG.info("modExpr = " + modExpr);
-      LOG.info("numeratorExpr = " + numeratorExpr);
       equalsExpr = TypeCheckProcFactory.DefaultExprProcessor
-          .getFuncExprNodeDesc("==", modExpr, numeratorExpr);
-      LOG.info("equalsExpr = " + equalsExpr);
+          .getFuncExprNodeDesc(ts.isUniverse() ? "<" : "==", modExpr, numeratorExpr);
       assert (equalsExpr != null);
     }
     return equalsExpr;
@@ -6612,10 +6961,21 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
       }
 
       // Check if input can be pruned
-      ts.setInputPruning((sampleExprs == null || sampleExprs.size() == 0 || colsEqual));
-
-      // check if input pruning is enough
-      if ((sampleExprs == null || sampleExprs.size() == 0 || colsEqual)
+      ts.setInputPruning(!ts.isUniverse()
+          && (sampleExprs == null || sampleExprs.size() == 0 || colsEqual));
+
+      if (ts.isUniverse()) {
+        // Keep the rows whose sample columns hash to the first num of den
+        // buckets: the same rows on every table sampled alike, so that joins
+        // on those columns still match. The buckets of the table are not used.
+        LOG.info("Need universe sample filter");
+        nameToUniverseSample.put(alias_id, ts);
+        ExprNodeDesc samplePredicate = genSamplePredicate(ts, tabBucketCols,
+            false, alias, rwsch, qb.getMetaData(), null);
+        tableOp = OperatorFactory.getAndMakeChild(new FilterDesc(
+            samplePredicate, true),
+            new RowSchema(rwsch.getColumnInfos()), top);
+      } else if ((sampleExprs == null || sampleExprs.size() == 0 || colsEqual)
           && (num == den || (den % numBuckets == 0 || numBuckets % den == 0))) {
 
         // input pruning is enough; add the filter for the optimizer to use it
@@ -7587,6 +7947,12 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
     // such as JDBC would prefer instead of the c0, c1 we'll end
     // up with later.
     Operator sinkOp = genPlan(qb);
+    if (approxBound != null && approxBound.getKind() == ApproxBound.Kind.ERROR) {
+      setApproxConfidence(approxBound.getConfidence());
+    }
+    setRowGroupSampled();
+    checkUniverseAggregates();
+    scaleApproxAggregates();
     resultSchema =
         convertRowSchemaToViewSchema(opParseCtx.get(sinkOp).getRowResolver());
 
@@ -7606,6 +7972,8 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
         loadTableWork, loadFileWork, ctx, idToTableNameMap, destTableId, uCtx,
         listMapJoinOpsNoReducer, groupOpToInputTables, prunedPartitions,
         opToSamplePruner, globalLimitCtx, nameToSplitSample, inputs, rootTasks);
+    pCtx.setNameToSampleRate(nameToSampleRate);
+    pCtx.setNameToSampleLevel(nameToSampleLevel);
 
     Optimizer optm = new Optimizer();
     optm.setPctx(pCtx);
@@ -7617,6 +7985,15 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
     // At this point we have the complete operator tree
     // from which we want to find the reduce operator
     genMapRedTasks(qb);
+    if (pilotWork != null && !rootTasks.isEmpty()) {
+      // The pilot query runs before every stage of the query
+      Task<? extends Serializable> pilotTask = TaskFactory.get(pilotWork, conf);
+      for (Task<? extends Serializable> rootTask : rootTasks) {
+        pilotTask.addDependentTask(rootTask);
+      }
+      rootTasks.clear();
+      rootTasks.add(pilotTask);
+    }
 
     LOG.info("Completed plan generation");
 
@@ -88,6 +88,17 @@ public final class SemanticAnalyzerFactory {
     commandType.put(HiveParser.TOK_SHOW_ROLE_GRANT, HiveOperation.SHOW_ROLE_GRANT);
     commandType.put(HiveParser.TOK_ALTERDATABASE_PROPERTIES, HiveOperation.ALTERDATABASE);
     commandType.put(HiveParser.TOK_DESCDATABASE, HiveOperation.DESCDATABASE);
+    commandType.put(HiveParser.TOK_SELECTRAWSC, HiveOperation.QUERY);
+    commandType.put(HiveParser.TOK_SELECTNSC, HiveOperation.QUERY);
+    commandType.put(HiveParser.TOK_SCSHOW, HiveOperation.QUERY);
+    commandType.put(HiveParser.TOK_SCCOUNT, HiveOperation.QUERY);
+    commandType.put(HiveParser.TOK_SCINITIALIZE, HiveOperation.SAMPLECLEAN);
+    commandType.put(HiveParser.TOK_SCRESET, HiveOperation.SAMPLECLEAN);
+    commandType.put(HiveParser.TOK_SCCOMPACT, HiveOperation.SAMPLECLEAN);
+    commandType.put(HiveParser.TOK_SCOUTLIER, HiveOperation.SAMPLECLEAN);
+    commandType.put(HiveParser.TOK_SCFORMAT, HiveOperation.SAMPLECLEAN);
+    commandType.put(HiveParser.TOK_SCFILTER, HiveOperation.SAMPLECLEAN);
+    commandType.put(HiveParser.TOK_CREATESAMPLE, HiveOperation.CREATESAMPLE);
   }
 
   static {
@@ -192,6 +203,20 @@ public final class SemanticAnalyzerFactory {
       case HiveParser.TOK_CREATEFUNCTION:
       case HiveParser.TOK_DROPFUNCTION:
         return new FunctionSemanticAnalyzer(conf);
+      case HiveParser.TOK_SELECTRAWSC:
+      case HiveParser.TOK_SELECTNSC:
+      case HiveParser.TOK_SCSHOW:
+      case HiveParser.TOK_SCCOUNT:
+        return new SampleCleanSemanticAnalyzer(conf);
+      case HiveParser.TOK_SCINITIALIZE:
+      case HiveParser.TOK_SCRESET:
+      case HiveParser.TOK_SCCOMPACT:
+      case HiveParser.TOK_SCOUTLIER:
+      case HiveParser.TOK_SCFORMAT:
+      case HiveParser.TOK_SCFILTER:
+        return new SampleCleanMaintenanceSemanticAnalyzer(conf);
+      case HiveParser.TOK_CREATESAMPLE:
+        return new SampleSemanticAnalyzer(conf);
       default:
         return new SemanticAnalyzer(conf);
       }
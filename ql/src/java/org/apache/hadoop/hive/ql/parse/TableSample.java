@@ -56,6 +56,12 @@ public class TableSample {
    */
   private boolean inputPruning;
 
+  /**
+   * Flag to indicate a universe sample, which keeps numerator buckets out of
+   * denominator instead of one.
+   */
+  private boolean universe;
+
   /**
    * Constructs the TableSample given the numerator, denominator and the list of
    * ON clause expressions.
@@ -154,4 +160,24 @@ public class TableSample {
   public void setInputPruning(boolean inputPruning) {
     this.inputPruning = inputPruning;
   }
+
+  /**
+   * Gets the flag that indicates a universe sample.
+   * 
+   * @return boolean
+   */
+  public boolean isUniverse() {
+    return universe;
+  }
+
+  /**
+   * Sets the flag that indicates a universe sample,
+   * TABLESAMPLE(UNIVERSE m OUT OF M ON expressions).
+   * 
+   * @param universe
+   *          true for a universe sample
+   */
+  public void setUniverse(boolean universe) {
+    this.universe = universe;
+  }
 }
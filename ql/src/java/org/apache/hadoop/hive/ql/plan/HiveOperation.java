@@ -88,6 +88,8 @@ public enum HiveOperation {
   DESCDATABASE("DESCDATABASE", null, null),
   ALTERTABLE_MERGEFILES("ALTER_TABLE_MERGE", new Privilege[] { Privilege.SELECT }, new Privilege[] { Privilege.ALTER_DATA }),
   ALTERPARTITION_MERGEFILES("ALTER_PARTITION_MERGE", new Privilege[] { Privilege.SELECT }, new Privilege[] { Privilege.ALTER_DATA }),
+  CREATESAMPLE("CREATESAMPLE", new Privilege[]{Privilege.SELECT}, new Privilege[]{Privilege.CREATE}),
+  SAMPLECLEAN("SAMPLECLEAN", new Privilege[]{Privilege.SELECT}, new Privilege[]{Privilege.ALTER_DATA, Privilege.CREATE}),
   ;
 
   private String operationName;
@@ -55,6 +55,12 @@ public class MapredWork implements Serializable {
 
   private HashMap<String, SplitSample> nameToSplitSample;
 
+  // SAMPLEWITH rates pushed down to the record readers, by alias
+  private HashMap<String, Double> nameToSampleRate;
+
+  // number of levels of nested samples to read, by alias
+  private HashMap<String, Integer> nameToSampleLevel;
+
   // map<->reduce interface
   // schema of the map-reduce 'key' object - this is homogeneous
   private TableDesc keyDesc;
@@ -220,6 +226,24 @@ public class MapredWork implements Serializable {
     this.nameToSplitSample = nameToSplitSample;
   }
 
+  @Explain(displayName = "Row Group Sample")
+  public HashMap<String, Double> getNameToSampleRate() {
+    return nameToSampleRate;
+  }
+
+  public void setNameToSampleRate(HashMap<String, Double> nameToSampleRate) {
+    this.nameToSampleRate = nameToSampleRate;
+  }
+
+  @Explain(displayName = "Sample Levels")
+  public HashMap<String, Integer> getNameToSampleLevel() {
+    return nameToSampleLevel;
+  }
+
+  public void setNameToSampleLevel(HashMap<String, Integer> nameToSampleLevel) {
+    this.nameToSampleLevel = nameToSampleLevel;
+  }
+
   public void setReducer(final Operator<?> reducer) {
     this.reducer = reducer;
   }
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.plan;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Runs the pilot query of a query with an ERROR bound and points the query at
+ * the sample it needs, see
+ * {@link org.apache.hadoop.hive.ql.sampling.PilotSamplePlanner}.
+ */
+@Explain(displayName = "Pilot Sample")
+public class PilotSampleWork implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private String dbName;
+  private String tableName;
+  private String alias;
+  private String aliasId;
+  private double error;
+  private double confidence;
+  private ArrayList<String> functions = new ArrayList<String>();
+  private ArrayList<String> arguments = new ArrayList<String>();
+  private ArrayList<String> groupBy = new ArrayList<String>();
+  private String where;
+  private boolean sampleTable;
+
+  public PilotSampleWork() {
+  }
+
+  /**
+   * @param alias
+   *          alias of the table in the expressions of the query
+   * @param aliasId
+   *          alias of the table scan in the plan of the query
+   */
+  public PilotSampleWork(String dbName, String tableName, String alias, String aliasId,
+      double error, double confidence) {
+    this.dbName = dbName;
+    this.tableName = tableName;
+    this.alias = alias;
+    this.aliasId = aliasId;
+    this.error = error;
+    this.confidence = confidence;
+  }
+
+  @Explain(displayName = "database")
+  public String getDbName() {
+    return dbName;
+  }
+
+  public void setDbName(String dbName) {
+    this.dbName = dbName;
+  }
+
+  @Explain(displayName = "table")
+  public String getTableName() {
+    return tableName;
+  }
+
+  public void setTableName(String tableName) {
+    this.tableName = tableName;
+  }
+
+  public String getAlias() {
+    return alias;
+  }
+
+  public void setAlias(String alias) {
+    this.alias = alias;
+  }
+
+  @Explain(displayName = "alias")
+  public String getAliasId() {
+    return aliasId;
+  }
+
+  public void setAliasId(String aliasId) {
+    this.aliasId = aliasId;
+  }
+
+  @Explain(displayName = "error")
+  public double getError() {
+    return error;
+  }
+
+  public void setError(double error) {
+    this.error = error;
+  }
+
+  @Explain(displayName = "confidence")
+  public double getConfidence() {
+    return confidence;
+  }
+
+  public void setConfidence(double confidence) {
+    this.confidence = confidence;
+  }
+
+  /**
+   * @return the approx_* aggregates planned for, in the order of their
+   *         arguments
+   */
+  @Explain(displayName = "aggregates")
+  public ArrayList<String> getFunctions() {
+    return functions;
+  }
+
+  public void setFunctions(ArrayList<String> functions) {
+    this.functions = functions;
+  }
+
+  public ArrayList<String> getArguments() {
+    return arguments;
+  }
+
+  public void setArguments(ArrayList<String> arguments) {
+    this.arguments = arguments;
+  }
+
+  @Explain(displayName = "group by")
+  public ArrayList<String> getGroupBy() {
+    return groupBy;
+  }
+
+  public void setGroupBy(ArrayList<String> groupBy) {
+    this.groupBy = groupBy;
+  }
+
+  @Explain(displayName = "predicate")
+  public String getWhere() {
+    return where;
+  }
+
+  public void setWhere(String where) {
+    this.where = where;
+  }
+
+  /**
+   * @return whether the query samples the table itself at the rate needed when
+   *         no sample is large enough
+   */
+  public boolean isSampleTable() {
+    return sampleTable;
+  }
+
+  public void setSampleTable(boolean sampleTable) {
+    this.sampleTable = sampleTable;
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.plan;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Builds a sample table of a base table, see
+ * {@link org.apache.hadoop.hive.ql.sampling.SampleBuilder}.
+ */
+@Explain(displayName = "Sample Build")
+public class SampleBuildWork implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private String dbName;
+  private String baseTable;
+  private String sampleTable;
+  private float rate;
+  private ArrayList<String> strata = new ArrayList<String>();
+
+  public SampleBuildWork() {
+  }
+
+  /**
+   * @param rate
+   *          row sampling probability of a bernoulli sample, or 0 to build
+   *          the sample in the configured build mode
+   */
+  public SampleBuildWork(String dbName, String baseTable, String sampleTable, float rate) {
+    this.dbName = dbName;
+    this.baseTable = baseTable;
+    this.sampleTable = sampleTable;
+    this.rate = rate;
+  }
+
+  @Explain(displayName = "database")
+  public String getDbName() {
+    return dbName;
+  }
+
+  public void setDbName(String dbName) {
+    this.dbName = dbName;
+  }
+
+  @Explain(displayName = "base table")
+  public String getBaseTable() {
+    return baseTable;
+  }
+
+  public void setBaseTable(String baseTable) {
+    this.baseTable = baseTable;
+  }
+
+  @Explain(displayName = "sample table")
+  public String getSampleTable() {
+    return sampleTable;
+  }
+
+  public void setSampleTable(String sampleTable) {
+    this.sampleTable = sampleTable;
+  }
+
+  @Explain(displayName = "rate")
+  public float getRate() {
+    return rate;
+  }
+
+  public void setRate(float rate) {
+    this.rate = rate;
+  }
+
+  /**
+   * @return the stratification columns, empty for a uniform sample
+   */
+  @Explain(displayName = "stratified on")
+  public ArrayList<String> getStrata() {
+    return strata;
+  }
+
+  public void setStrata(ArrayList<String> strata) {
+    this.strata = strata;
+  }
+}
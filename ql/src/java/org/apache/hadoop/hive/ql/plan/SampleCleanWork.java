@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.plan;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Runs a SampleClean statement that changes the clean view of a sample as the
+ * HiveQL statements it expands into, see
+ * {@link org.apache.hadoop.hive.ql.sampleclean.SampleCleanSQLExtensionParser}.
+ */
+@Explain(displayName = "SampleClean")
+public class SampleCleanWork implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private String viewName;
+  private ArrayList<String> commands = new ArrayList<String>();
+
+  public SampleCleanWork() {
+  }
+
+  public SampleCleanWork(String viewName, ArrayList<String> commands) {
+    this.viewName = viewName;
+    this.commands = commands;
+  }
+
+  @Explain(displayName = "view")
+  public String getViewName() {
+    return viewName;
+  }
+
+  public void setViewName(String viewName) {
+    this.viewName = viewName;
+  }
+
+  /**
+   * @return the HiveQL statements, run in order, the SET statements applying
+   *         to the statements after them only
+   */
+  @Explain(displayName = "statements")
+  public ArrayList<String> getCommands() {
+    return commands;
+  }
+
+  public void setCommands(ArrayList<String> commands) {
+    this.commands = commands;
+  }
+}
@@ -34,6 +34,7 @@ public class SampleDesc implements Serializable {
   //private org.apache.hadoop.hive.ql.plan.ExprNodeDesc predicate;
   double probability;
   private boolean isSamplingPred;
+  private String sampleId;
   //private transient sampleDesc sampleDescr;
 
   public SampleDesc() {
@@ -75,6 +76,18 @@ public class SampleDesc implements Serializable {
   }
   */
 
+  /**
+   * @return the id of the sample among those of the query, which seeds its
+   *         draws apart from the others
+   */
+  public String getSampleId() {
+    return sampleId;
+  }
+
+  public void setSampleId(String sampleId) {
+    this.sampleId = sampleId;
+  }
+
   @Explain(displayName = "isSamplingPred", normalExplain = false)
   public boolean getIsSamplingPred() {
     return isSamplingPred;
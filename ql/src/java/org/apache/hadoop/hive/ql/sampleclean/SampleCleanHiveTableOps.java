@@ -57,6 +57,24 @@ public class SampleCleanHiveTableOps {
         return cmd;
     } 
 
+    public String createBucketedTypedTableWithCSV(String tableName, ArrayList<String> schema, ArrayList<String> types, String bucketAttr, int buckets)
+    {
+        
+        String cmd = createTable(tableName)+"("+ schemaToTypedString(schema,types)+") " + bucketedBy(bucketAttr, buckets) + " ROW FORMAT DELIMITED FIELDS TERMINATED BY \'#\'";
+        return cmd;
+    } 
+
+    public String bucketedBy(String attr, int buckets)
+    {
+        return "CLUSTERED BY (" + attr + ") SORTED BY (" + attr + ") INTO " + buckets + " BUCKETS";
+    }
+
+    public String overwriteWith(String dest, String query)
+    {
+        String cmd = "INSERT OVERWRITE TABLE " + dest + " " + query;
+        return cmd;
+    }
+
     public String createTableAs(String tableName, String query)
     {
         
@@ -64,6 +82,12 @@ public class SampleCleanHiveTableOps {
         return cmd;
     }
 
+    public String createViewAs(String viewName, String query)
+    {
+        String cmd = "CREATE VIEW " + viewName + asQuery(query);
+        return cmd;
+    }
+
     public String materializeUDTFView(String udtf, String baseTable, ArrayList<String> schema, ArrayList<String> preSchema)
     {
         preSchema.addAll(schema);
@@ -77,6 +101,12 @@ public class SampleCleanHiveTableOps {
         return cmd;
     }
 
+    public String appendTo(String dest)
+    {
+        String cmd = "INSERT INTO TABLE " + dest + " ";
+        return cmd;
+    }
+
     public String asQuery(String query)
     {
         return " AS " + query + " ";
@@ -3,84 +3,58 @@ package org.apache.hadoop.hive.ql.sampleclean;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
 public class SampleCleanOutlierRemoval {
 
 	public static final String MAD = "nonparametric";
     public static final String NORM = "parametric";
     public static final String PROX = "proximity";
 
-    private static final String MAD_QUERY = "SELECT %v.hash AS hash, ROUND(ABS(%v.%a - t.med)) AS z FROM %v JOIN (SELECT PERCENTILE(ROUND(%a),0.5) AS med FROM %v) t on TRUE";
-    private static final String NORM_QUERY = "SELECT %v.hash AS hash, ABS(%v.%a - t.mu)/t.sigma AS z FROM %v JOIN (SELECT AVG(%a) AS mu ,STD(%a) AS sigma FROM %v) t ON TRUE";
     private static final String PROX_QUERY = "SELECT %v.hash AS hash, percentile(round(abs(%v.%a-t.%a)),0.25)/std(t.%a) as z FROM %v JOIN (select * from %v) t ON TRUE GROUP BY %v.hash";
 
-    private static final String NORM_THRESHOLD = "SELECT %p as thresh FROM %v_score LIMIT 1";
-    private static final String PROX_THRESHOLD = "SELECT %p as thresh FROM %v_score LIMIT 1";
-    private static final String MAD_THRESHOLD = "SELECT %p*PERCENTILE(z,0.5) as thresh FROM %v_score LIMIT 1";
-
-    private static final String FILTER_QUERY = "SELECT t.hash from (SELECT * FROM %v_score JOIN %v_threshold ON TRUE) t WHERE t.z <= t.thresh";
-    private static final String MERGE_BACK = "INSERT OVERWRITE TABLE %v SELECT * FROM %v LEFT SEMI JOIN %v_inliers on (%v.hash = %v_inliers.hash)";
-    //private static final String RULE_QUERY = "INSERT OVERWRITE TABLE %v SELECT * FROM %v WHERE ";
+    // The bounds are one row, computed in one aggregation job and joined map-side
+    // to every row of the view in a second job, with nothing materialized in between.
+    // Only the outliers are written, as deletions to the log of deltas of the view,
+    // one per hash. Values that are not numbers have no score and are kept.
+    private static final String BOUNDS_QUERY = "SELECT outlier_bounds_clean(%a, '%m', %p) AS b FROM %v";
+    private static final String FILTER_QUERY = "SELECT /*+ MAPJOIN(t) */ %v.*, %n AS version, 'D' AS op FROM %v JOIN (%q) t ON TRUE WHERE NOT COALESCE(%v.%a >= t.b.lower AND %v.%a <= t.b.upper, TRUE)";
+    private static final String PROX_FILTER_QUERY = "SELECT %v.*, %n AS version, 'D' AS op FROM %v LEFT SEMI JOIN (SELECT s.hash FROM (%q) s WHERE s.z > %p) o ON (%v.hash = o.hash)";
 
-    public String scoreQuery(String view, String attribute, String method)
+    public String boundsQuery(String view, String attribute, String method, String alpha)
     {
-        String query = "";
-        if (method.equals(MAD))
-            query = MAD_QUERY;
-        else if (method.equals(NORM))
-            query = NORM_QUERY;
-        else if (method.equals(PROX))
-            query = PROX_QUERY;
-
-        return "CREATE TABLE " + view+"_score" + " AS " + query.replaceAll("%v",view).replaceAll("%a",attribute);
+        return BOUNDS_QUERY.replace("%v",view).replace("%a",attribute).replace("%m",method).replace("%p",alpha);
     }
 
-
-    public String threshQuery(String view, String alpha, String method)
+    public String filterQuery(String view, ArrayList<String> schemaList, String attribute, String method, String alpha, long version)
     {
-        String query = "";
-        if (method.equals(MAD))
-            query = MAD_THRESHOLD;
-        else if (method.equals(NORM))
-            query = NORM_THRESHOLD;
-        else if (method.equals(PROX))
-            query = PROX_THRESHOLD;
-
-        return "CREATE TABLE " + view+"_threshold" + " AS " + query.replaceAll("%v",view).replaceAll("%p", alpha);
+        String bounds = boundsQuery(view+"_clean", attribute, method, alpha);
+        String outliers = FILTER_QUERY.replace("%q",bounds).replace("%v",view+"_clean").replace("%a",attribute).replace("%n",String.valueOf(version));
+        return appendDeletions(view, schemaList, outliers);
     }
 
-    public String joinAndFilter(String view)
+    public String proximityFilterQuery(String view, ArrayList<String> schemaList, String attribute, String alpha, long version)
     {
-
-        return "CREATE TABLE " + view+"_inliers" + " AS " + FILTER_QUERY.replaceAll("%v",view);
+        String score = PROX_QUERY.replace("%v",view+"_clean").replace("%a",attribute);
+        String outliers = PROX_FILTER_QUERY.replace("%q",score).replace("%v",view+"_clean").replace("%p",alpha).replace("%n",String.valueOf(version));
+        return appendDeletions(view, schemaList, outliers);
     }
 
-    public String merge(String view)
+    private String appendDeletions(String view, ArrayList<String> schemaList, String outliers)
     {
-        return MERGE_BACK.replaceAll("%v",view);
-    }
-
-    //public String ruleQuery(String view, String rule)
-    //{
-    //    return RULE_QUERY.replaceAll("%v",view) + " " + rule;
-    //}
-
-    public ArrayList<String> cleanup(String view)
-    {
-        ArrayList<String> commandList = new ArrayList<String>();
-        commandList.add("DROP TABLE " + view+"_score");
-        commandList.add("DROP TABLE " + view+"_threshold");
-        commandList.add("DROP TABLE " + view+"_inliers");
-        return commandList;
+        return "INSERT INTO TABLE " + view + "_log " + SampleCleanQueryBuilder.onePerHash(SampleCleanQueryBuilder.deltaColumns(schemaList), outliers);
     }
 
-    public ArrayList<String> buildOutlierRemovalQuery(String view, String method, String attr, String alpha)
+    public ArrayList<String> buildOutlierRemovalQuery(String view, ArrayList<String> schemaList, String method, String attr, String alpha, long version) throws HiveException
     {
     	ArrayList<String> commandList = new ArrayList<String>();
-    	view = view + "_clean";
-    	commandList.add(scoreQuery(view,attr,method));
-        commandList.add(threshQuery(view, alpha, method));
-        commandList.add(joinAndFilter(view));
-    	commandList.addAll(cleanup(view));
+        method = method.toLowerCase();
+        if (method.equals(PROX))
+            commandList.add(proximityFilterQuery(view, schemaList, attr, alpha.trim(), version));
+        else if (method.equals(MAD) || method.equals(NORM))
+            commandList.add(filterQuery(view, schemaList, attr, method, alpha.trim(), version));
+        else
+            throw new HiveException("Unknown outlier removal method " + method + ", expected " + NORM + ", " + MAD + " or " + PROX);
         return commandList;
     }
 
@@ -5,29 +5,92 @@ import java.util.Collection;
 
 public class SampleCleanQueryBuilder {
 
+	/**
+	 * The dirty sample and the deltas are bucketed and sorted on hash into as
+	 * many buckets, so that they join bucket by bucket in a sort-merge map join.
+	 */
+	public static final int DEFAULT_BUCKETS = 32;
+
 	private SampleCleanHiveTableOps tableOperator = null;
+	private long lastVersion = 0;
 
 	public SampleCleanQueryBuilder()
 	{
 		tableOperator = new SampleCleanHiveTableOps();
 	}
 
+	/**
+	 * Settings under which inserts into the dirty sample and the deltas keep
+	 * them bucketed and sorted on hash.
+	 */
+	public ArrayList<String> bucketingSettings()
+	{
+		ArrayList<String> commandList = new ArrayList<String>();
+		commandList.add("SET hive.enforce.bucketing=true");
+		commandList.add("SET hive.enforce.sorting=true");
+		return commandList;
+	}
+
+	public String createDirtyTable(String sampleName, ArrayList<String> schema)
+	{
+		ArrayList<String> dirtySchema = new ArrayList<String>();
+		dirtySchema.add("hash");
+		dirtySchema.add("dup");
+		dirtySchema.addAll(schema);
+
+		ArrayList<String> types = new ArrayList<String>();
+		types.add("string");
+		types.add("int");
+
+		for(int i=0;i<schema.size();i++)
+			types.add("string");
+
+		return tableOperator.createBucketedTypedTableWithCSV(sampleName+"_dirty", dirtySchema, types, "hash", DEFAULT_BUCKETS);
+	}
+
 	public String createSample(String sampleName, String baseTable, ArrayList<String> schema,  double samplingProb)
 	{
 		ArrayList<String> sampleCleanExtraSchema = new ArrayList<String>();
 		sampleCleanExtraSchema.add("hash");
 		sampleCleanExtraSchema.add("dup");
 
-		return tableOperator.createTableAs(sampleName+"_dirty",tableOperator.materializeUDTFView("clean_export", baseTable, schema, sampleCleanExtraSchema)) + tableOperator.withSampling(samplingProb);
+		return tableOperator.overwriteWith(sampleName+"_dirty",tableOperator.materializeUDTFView("clean_export", baseTable, schema, sampleCleanExtraSchema)) + tableOperator.withSampling(samplingProb);
 	}
 
-	public String createEmptyCleanTable(String sampleName, String baseTable, ArrayList<String> schema)
+	/**
+	 * The clean sample is not a table: it is a view of the dirty sample with
+	 * the latest delta of each row applied, so that a cleaning step only writes
+	 * deltas for the rows it deletes ('D') or updates ('U'). A delta holds the
+	 * whole clean row, followed by its version and operation.
+	 *
+	 * Bucketed tables do not support INSERT INTO, so a cleaning step appends
+	 * its deltas to the unbucketed log. The view applies the latest delta of
+	 * each row in the deltas and the log when it is read; SCCOMPACT folds the
+	 * log into the bucketed deltas, with at most one delta per row.
+	 */
+	public String createDeltaTable(String sampleName, ArrayList<String> schema)
 	{
-		ArrayList<String> sampleCleanExtraSchema = new ArrayList<String>();
-		sampleCleanExtraSchema.add("hash");
-		sampleCleanExtraSchema.add("dup");
-		sampleCleanExtraSchema.addAll(schema);
+		return tableOperator.createBucketedTypedTableWithCSV(sampleName+"_delta", deltaSchema(schema), deltaTypes(schema), "hash", DEFAULT_BUCKETS);
+	}
 
+	public String createDeltaLog(String sampleName, ArrayList<String> schema)
+	{
+		return tableOperator.createTypedTableWithCSV(sampleName+"_log", deltaSchema(schema), deltaTypes(schema));
+	}
+
+	private ArrayList<String> deltaSchema(ArrayList<String> schema)
+	{
+		ArrayList<String> deltaSchema = new ArrayList<String>();
+		deltaSchema.add("hash");
+		deltaSchema.add("dup");
+		deltaSchema.addAll(schema);
+		deltaSchema.add("version");
+		deltaSchema.add("op");
+		return deltaSchema;
+	}
+
+	private ArrayList<String> deltaTypes(ArrayList<String> schema)
+	{
 		ArrayList<String> types = new ArrayList<String>();
 		types.add("string");
 		types.add("int");
@@ -35,12 +98,192 @@ public class SampleCleanQueryBuilder {
 		for(int i=0;i<schema.size();i++)
 			types.add("string");
 
-		return tableOperator.createTypedTableWithCSV(sampleName+"_clean", sampleCleanExtraSchema, types);
+		types.add("bigint");
+		types.add("string");
+		return types;
+	}
+
+	public String createCleanView(String sampleName, ArrayList<String> schema)
+	{
+		ArrayList<String> cleanSchema = new ArrayList<String>();
+		cleanSchema.add("hash");
+		cleanSchema.add("dup");
+		cleanSchema.addAll(schema);
+		return tableOperator.createViewAs(sampleName+"_clean", "SELECT " + cleanColumns(cleanSchema) + applyDeltas(sampleName, cleanSchema));
+	}
+
+	/**
+	 * @return the columns of the clean sample, of the dirty row d unless it has a delta l
+	 */
+	public String cleanColumns(ArrayList<String> cleanSchema)
+	{
+		String columns = "";
+		for(String attr: cleanSchema)
+		{
+			if (columns.length() > 0)
+				columns += ", ";
+			if (attr.equalsIgnoreCase("hash"))
+				columns += "d.hash AS hash";
+			else
+				columns += "IF(l.hash IS NULL, d." + attr + ", l." + attr + ") AS " + attr;
+		}
+		return columns;
+	}
+
+	/**
+	 * Whether the latest delta g of the log is newer than the delta of j
+	 */
+	private static final String NEWER_LOG_DELTA = "g.hash IS NOT NULL AND (j.version IS NULL OR g.version > j.version)";
+
+	/**
+	 * @return the columns of the clean sample, of the row j of the dirty sample
+	 *         with its delta unless the latest delta g of the log is newer
+	 */
+	private String logColumns(ArrayList<String> cleanSchema)
+	{
+		String columns = "";
+		for(String attr: cleanSchema)
+		{
+			if (columns.length() > 0)
+				columns += ", ";
+			if (attr.equalsIgnoreCase("hash"))
+				columns += "j.hash AS hash";
+			else
+				columns += "IF(" + NEWER_LOG_DELTA + ", g." + attr + ", j." + attr + ") AS " + attr;
+		}
+		return columns;
+	}
+
+	public String applyDeltas(String sampleName, ArrayList<String> cleanSchema)
+	{
+		return " FROM " + sampleName + "_dirty d LEFT OUTER JOIN (" + latestDeltas(sampleName, cleanSchema) + ") l ON (d.hash = l.hash) WHERE l.hash IS NULL OR l.op = 'U' ";
+	}
+
+	/**
+	 * @return the latest delta of each hash in the deltas and the log, one row per hash
+	 */
+	public String latestDeltas(String sampleName, ArrayList<String> cleanSchema)
+	{
+		return latestPerHash(cleanSchema, "SELECT * FROM " + sampleName + "_delta UNION ALL SELECT * FROM " + sampleName + "_log");
+	}
+
+	/**
+	 * @return the latest delta of each hash in the log, one row per hash
+	 */
+	public String latestLogDeltas(String sampleName, ArrayList<String> cleanSchema)
+	{
+		return latestPerHash(cleanSchema, "SELECT * FROM " + sampleName + "_log");
+	}
+
+	/**
+	 * Keeps the delta of the latest version of each hash of a query returning
+	 * deltas, in one aggregation: the maximum of structs that start with the
+	 * version is the whole latest delta.
+	 */
+	public static String latestPerHash(ArrayList<String> cleanSchema, String query)
+	{
+		String fields = "'version', q.version";
+		String select = "t.hash AS hash";
+		for (String attr: cleanSchema)
+		{
+			if (attr.equalsIgnoreCase("hash"))
+				continue;
+			fields += ", '" + attr + "', q." + attr;
+			select += ", t.latest." + attr + " AS " + attr;
+		}
+		fields += ", 'op', q.op";
+		select += ", t.latest.version AS version, t.latest.op AS op";
+		return "SELECT " + select + " FROM (SELECT q.hash AS hash, MAX(named_struct(" + fields + ")) AS latest FROM (" + query + ") q GROUP BY q.hash) t";
+	}
+
+	/**
+	 * @return the columns of a delta, the clean columns followed by the version and the operation
+	 */
+	public static ArrayList<String> deltaColumns(ArrayList<String> cleanSchema)
+	{
+		ArrayList<String> columns = new ArrayList<String>(cleanSchema);
+		columns.add("version");
+		columns.add("op");
+		return columns;
+	}
+
+	/**
+	 * Keeps one row per hash of a query returning deltas. Rows of the dirty
+	 * sample with the same hash are copies of the same row, which a cleaning
+	 * step changes alike, so their deltas are the same and one of them is
+	 * enough; more would multiply the rows of the clean view that joins them.
+	 */
+	public static String onePerHash(ArrayList<String> columns, String query)
+	{
+		String select = "";
+		for (String attr: columns)
+		{
+			if (select.length() > 0)
+				select += ", ";
+			if (attr.equalsIgnoreCase("hash"))
+				select += "q.hash AS hash";
+			else
+				select += "MAX(q." + attr + ") AS " + attr;
+		}
+		return "SELECT " + select + " FROM (" + query + ") q GROUP BY q.hash";
+	}
+
+	/**
+	 * Appends the rows of a query over the clean view, which must select the
+	 * clean columns, to the log of deltas as the given operation, one per hash.
+	 */
+	public String appendDeltas(String sampleName, ArrayList<String> cleanSchema, String selectList, String fromWhere, String op, long version)
+	{
+		return tableOperator.appendTo(sampleName+"_log") + onePerHash(deltaColumns(cleanSchema), "SELECT " + selectList + ", " + version + " AS version, '" + op + "' AS op " + fromWhere);
+	}
+
+	public String deleteWhere(String sampleName, ArrayList<String> cleanSchema, String predicate, long version)
+	{
+		return appendDeltas(sampleName, cleanSchema, "*", "FROM " + sampleName + "_clean" + tableOperator.wherePredicate(predicate), "D", version);
+	}
+
+	/**
+	 * Drops every delta, which brings the clean view back to the dirty sample.
+	 */
+	public ArrayList<String> resetDeltas(String sampleName)
+	{
+		ArrayList<String> commandList = bucketingSettings();
+		commandList.add(tableOperator.copyTableTo(sampleName+"_delta", sampleName+"_delta") + " WHERE FALSE");
+		commandList.add(tableOperator.copyTableTo(sampleName+"_log", sampleName+"_log") + " WHERE FALSE");
+		return commandList;
+	}
+
+	/**
+	 * Folds the log into the deltas, keeping only the latest delta of each
+	 * row, which is all the clean view reads. Cleaning steps only append to
+	 * the log, so this runs on SCCOMPACT, once the log has grown enough to slow
+	 * down the reads of the view.
+	 */
+	public ArrayList<String> compactDeltas(String sampleName, ArrayList<String> cleanSchema)
+	{
+		ArrayList<String> commandList = bucketingSettings();
+		commandList.add(tableOperator.overwriteWith(sampleName + "_delta", latestDeltas(sampleName, cleanSchema)));
+		commandList.add(tableOperator.copyTableTo(sampleName+"_log", sampleName+"_log") + " WHERE FALSE");
+		return commandList;
+	}
+
+	/**
+	 * @return a version later than any returned before, for the deltas of one cleaning step
+	 */
+	public long nextVersion()
+	{
+		lastVersion = Math.max(lastVersion + 1, System.currentTimeMillis());
+		return lastVersion;
+	}
+
+	public String showQuery(String sampleName, String predicate)
+	{
+		return "SELECT * FROM " + sampleName + "_clean " + tableOperator.wherePredicate(predicate);
 	}
 
-	public String copyDirtyToClean(String sampleName)
+	public String countQuery(String sampleName, String predicate)
 	{
-		return tableOperator.copyTableTo(sampleName+"_dirty",sampleName+"_clean");
+		return "SELECT COUNT(1) FROM " + sampleName + "_clean " + tableOperator.wherePredicate(predicate);
 	}
 
 	public String rawSCQuery(String sampleName, String aggFunc, String attribute, String predicate, String groupBy, ArrayList<String> schema, long sampleSize, long datasetSize)
@@ -51,12 +294,26 @@ public class SampleCleanQueryBuilder {
 			return "SELECT approx_" + aggFunc + "_clean("+attribute+" , dup) FROM " + sampleName + "_clean "+ tableOperator.wherePredicate(predicate) + tableOperator.groupBy(groupBy);
 	}
 
+	/**
+	 * Joins the dirty sample with the deltas directly rather than with the
+	 * clean view, under a MAPJOIN hint: both are bucketed and sorted on hash,
+	 * so the join runs map-side as a sort-merge bucket map join. The latest
+	 * deltas of the log, which are not bucketed, are applied over its result
+	 * when they are newer.
+	 */
 	public String normalizedSCQuery(String sampleName, String aggFunc, String attribute, String predicate, String groupBy, ArrayList<String> schema, long sampleSize, long datasetSize)
 	{
+		ArrayList<String> cleanSchema = new ArrayList<String>(schema);
+		if (!cleanSchema.contains("dup"))
+			cleanSchema.add(0, "dup");
+		String dirtyAttr = schema.contains(attribute) ? "d." + attribute : attribute;
+		String deltas = "(SELECT /*+ MAPJOIN(l) */ " + dirtyAttr + " AS dirty_value, " + cleanColumns(cleanSchema) + ", l.version AS version, l.op AS op FROM " + sampleName + "_dirty d LEFT OUTER JOIN " + sampleName + "_delta l ON (d.hash = l.hash)) j";
+		String joined = "(SELECT j.dirty_value AS dirty_value, " + logColumns(cleanSchema) + " FROM " + deltas + " LEFT OUTER JOIN (" + latestLogDeltas(sampleName, cleanSchema) + ") g ON (j.hash = g.hash) WHERE COALESCE(IF(" + NEWER_LOG_DELTA + ", g.op, j.op), 'U') = 'U') c ";
+		String difference = " coalesce(dirty_value-0,0) - coalesce(" + attribute + "-0,0) ";
 		if (aggFunc.equalsIgnoreCase("COUNT") || aggFunc.equalsIgnoreCase("SUM") )
-			return "SELECT approx_sum_clean("+tableOperator.attrDifference(sampleName+"_dirty ",sampleName+"_clean ",attribute)+ " , " + tableOperator.accessAttr(sampleName+"_clean", "dup")+" , "+sampleSize +" , "+datasetSize+") " + tableOperator.rightOuterEquiJoin(sampleName+"_dirty",sampleName+"_clean","hash") + tableOperator.wherePredicate(predicate,sampleName + "_clean",schema) + tableOperator.groupBy(groupBy,sampleName + "_clean",schema);
+			return "SELECT approx_sum_clean("+difference+ " , dup , "+sampleSize +" , "+datasetSize+") FROM " + joined + tableOperator.wherePredicate(predicate) + tableOperator.groupBy(groupBy);
 		else
-			return "SELECT approx_" + aggFunc + "_clean("+tableOperator.attrDifference(sampleName+"_dirty ",sampleName+"_clean ",attribute)+" , "+ tableOperator.accessAttr(sampleName+"_clean", "dup")+") " + tableOperator.rightOuterEquiJoin(sampleName+"_dirty",sampleName+"_clean","hash") + tableOperator.wherePredicate(predicate,sampleName + "_clean",schema) + tableOperator.groupBy(groupBy,sampleName + "_clean",schema);
+			return "SELECT approx_" + aggFunc + "_clean("+difference+" , dup) FROM " + joined + tableOperator.wherePredicate(predicate) + tableOperator.groupBy(groupBy);
 	}
 
 }
\ No newline at end of file
@@ -1,19 +1,26 @@
 package org.apache.hadoop.hive.ql.sampleclean;
 
-import java.util.HashMap;
 import java.util.ArrayList;
-import java.util.Scanner;
 import java.util.List;
-import java.util.Arrays;
 
+import org.antlr.runtime.CommonToken;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
 import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.ASTNode;
+import org.apache.hadoop.hive.ql.parse.BaseSemanticAnalyzer;
+import org.apache.hadoop.hive.ql.parse.HiveParser;
+import org.apache.hadoop.hive.ql.parse.ParseDriver;
+import org.apache.hadoop.hive.ql.parse.ParseUtils;
 
 public class SampleCleanSQLExtensionParser{
 
-	private static HashMap<String,ArrayList<String>> schemaManager;
+	private static final Log LOG = LogFactory.getLog(SampleCleanSQLExtensionParser.class.getName());
 
 	private SampleCleanQueryBuilder scQueryBuilder;
 	private SampleCleanOutlierRemoval outlierRemoval;
@@ -24,43 +31,11 @@ public class SampleCleanSQLExtensionParser{
 	public long datasetSize = 0;
 	public long sampleSize = 0;
 
-	private static final int INIT_QUERY = 0;
-	private static final String INIT_QUERY_KEYWORD = "scinitialize";
-
-	private static final int RESET_QUERY = 1;
-	private static final String RESET_QUERY_KEYWORD = "screset";
-
-	private static final int SCAGG_QUERY = 2;
-	private static final String SCAGG_QUERY_KEYWORD = "selectrawsc";
-
-	private static final int OUTLIER_QUERY = 3;
-	private static final String OUTLIER_QUERY_KEYWORD = "scoutlier";
-
-	private static final int TEXT_FORMAT_QUERY = 4;
-	private static final String TEXT_FORMAT_QUERY_KEYWORD = "scformat";
-
-	private static final int BCAGG_QUERY = 5;
-	private static final String BCAGG_QUERY_KEYWORD = "selectnsc";
-
-	private static final int REMOVE_QUERY = 6;
-	private static final String REMOVE_QUERY_KEYWORD = "scfilter";
-
-	private static final int SELECT_QUERY = 7;
-	private static final String SELECT_QUERY_KEYWORD = "scshow";
-
-	private static final int COUNT_QUERY = 8;
-	private static final String COUNT_QUERY_KEYWORD = "sccount";
-
-	//private static final int FORK_QUERY = 6;
-	//private static final String FORK_QUERY_KEYWORD = "fork";
-
-
 	public SampleCleanSQLExtensionParser(long datasetSize,long sampleSize)
 	{
 		this.datasetSize = datasetSize;
 		this.sampleSize = sampleSize;
 
-		schemaManager = new HashMap<String,ArrayList<String>>();
 		scQueryBuilder = new SampleCleanQueryBuilder();
 		outlierRemoval = new SampleCleanOutlierRemoval();
 		textTransform = new SampleCleanTextTransformations();
@@ -81,132 +56,77 @@ public class SampleCleanSQLExtensionParser{
 		this.conf = conf;
 	}
 
+	/**
+	 * Parses a SampleClean statement with the Hive grammar and expands it into
+	 * the HiveQL statements that run it.
+	 */
 	public ArrayList<String> parse(String scQuery)
 	{
-		Scanner queryScanner = new Scanner(scQuery.replace("("," ("));
-		String firstToken = queryScanner.next();
 		try{
-			return exec(classifyQuery(firstToken), queryScanner);
+			ASTNode tree = ParseUtils.findRootNonNullToken(new ParseDriver().parse(scQuery));
+			return exec(tree, scQuery);
 		}
 		catch(Exception e)
 		{
+			LOG.error("Unable to run SampleClean statement " + scQuery, e);
 			return null;
 		}
 	}
 
-	public int classifyQuery(String firstToken)
+	/**
+	 * Expands a SampleClean statement into the HiveQL statements that run it.
+	 * Their SET statements only apply to the statements after them, see
+	 * SampleCleanTask.
+	 */
+	public ArrayList<String> exec(ASTNode tree, String scQuery) throws HiveException
 	{
-		firstToken = firstToken.trim().toLowerCase();
-		if (firstToken.equals(INIT_QUERY_KEYWORD))
-			return INIT_QUERY;
-		else if (firstToken.equals(RESET_QUERY_KEYWORD))
-			return RESET_QUERY;
-		else if (firstToken.equals(SCAGG_QUERY_KEYWORD))
-			return SCAGG_QUERY;
-		else if (firstToken.equals(OUTLIER_QUERY_KEYWORD))
-			return OUTLIER_QUERY;
-		else if (firstToken.equals(TEXT_FORMAT_QUERY_KEYWORD))
-			return TEXT_FORMAT_QUERY;
-		else if (firstToken.equals(BCAGG_QUERY_KEYWORD))
-			return BCAGG_QUERY;
-		else if (firstToken.equals(REMOVE_QUERY_KEYWORD))
-			return REMOVE_QUERY;
-		else if (firstToken.equals(SELECT_QUERY_KEYWORD))
-			return SELECT_QUERY;
-		else if (firstToken.equals(COUNT_QUERY_KEYWORD))
-			return COUNT_QUERY;
-		else 
-			return -1;	
-	}
-
-	public ArrayList<String> exec(int query, Scanner queryScannerRemainingTokens)
-	{
-		String viewName = queryScannerRemainingTokens.next();
-		String materializedScanner = materializeScanner(queryScannerRemainingTokens);
-		switch(query)
+		switch(tree.getToken().getType())
 		{
-			case INIT_QUERY: return execInitQuery(viewName, parseInitQuery(new Scanner(materializedScanner)));
-			case RESET_QUERY: return execResetQuery(viewName);
-			case SCAGG_QUERY: return execRawSC(viewName + " " + materializedScanner);
-			case OUTLIER_QUERY: return execOutlierQuery(viewName, parseOutlierQuery(new Scanner(materializedScanner)));
-			case TEXT_FORMAT_QUERY: return execTextQuery(viewName, parseTextQuery(new Scanner(materializedScanner)));
-			case BCAGG_QUERY: return execNormalizedSC(viewName + " " + materializedScanner);
-			case REMOVE_QUERY: return execRemove(viewName, materializedScanner);
-			case SELECT_QUERY: return execSelect(viewName, materializedScanner);
-			case COUNT_QUERY: return execCount(viewName, materializedScanner);
+			case HiveParser.TOK_SCINITIALIZE: return execInitQuery(viewName(tree), parseInitQuery(tree));
+			case HiveParser.TOK_SCRESET: return execResetQuery(viewName(tree));
+			case HiveParser.TOK_SCOUTLIER: return execOutlierQuery(viewName(tree), parseArguments(tree));
+			case HiveParser.TOK_SCFORMAT: return execTextQuery(viewName(tree), parseFormats(tree));
+			case HiveParser.TOK_SCFILTER: return execRemove(viewName(tree), textAfter((ASTNode) tree.getChild(0), scQuery));
+			case HiveParser.TOK_SCCOMPACT: return execCompactQuery(viewName(tree));
+			case HiveParser.TOK_SELECTRAWSC:
+			case HiveParser.TOK_SELECTNSC:
+			case HiveParser.TOK_SCSHOW:
+			case HiveParser.TOK_SCCOUNT: return execCompiledQuery(scQuery);
 			default: return null;
 		}
 	}
 
-	public String materializeScanner(Scanner queryScannerRemainingTokens)
-	{
-		String tmp ="";
-		while (queryScannerRemainingTokens.hasNext())
-			tmp += queryScannerRemainingTokens.next() + " ";
-		return tmp;
-	}
-
-	public ArrayList<String> execRemove(String viewName, String predicate)
+	public String viewName(ASTNode tree)
 	{
-		viewName = viewName + "_clean";
-		String query_template = "INSERT OVERWRITE TABLE %v SELECT * FROM %v WHERE " + predicate;
-		ArrayList<String> commandList = new ArrayList<String>();
-		commandList.add(query_template.replace("%v", viewName));
-		return commandList;
+		return BaseSemanticAnalyzer.unescapeIdentifier(tree.getChild(0).getText());
 	}
 
-	public ArrayList<String> execSelect(String viewName, String predicate)
+	/**
+	 * @return the text of the statement after a node, up to its end
+	 */
+	public String textAfter(ASTNode node, String scQuery)
 	{
-		viewName = viewName + "_clean";
-		String query_template = "SELECT * FROM %v ";
-		if (predicate.length() > 0)
-			query_template += " WHERE " + predicate;
-		ArrayList<String> commandList = new ArrayList<String>();
-		commandList.add(query_template.replace("%v", viewName));
-		return commandList;
-	}
-
-	public ArrayList<String> execCount(String viewName, String predicate)
-	{
-		viewName = viewName + "_clean";
-		String query_template = "SELECT COUNT(1) FROM %v ";
-		if (predicate.length() > 0)
-			query_template += " WHERE " + predicate;
-		ArrayList<String> commandList = new ArrayList<String>();
-		commandList.add(query_template.replace("%v", viewName));
-		return commandList;
+		return scQuery.substring(((CommonToken) node.getToken()).getStopIndex() + 1).trim();
 	}
 
-	public ArrayList<String> execRawSC(String queryText)
+	/**
+	 * The queries over the clean view are compiled by Hive itself, see
+	 * SampleCleanSemanticAnalyzer, under the sizes of this parser.
+	 */
+	public ArrayList<String> execCompiledQuery(String scQuery)
 	{
 		ArrayList<String> commandList = new ArrayList<String>();
-		SampleCleanAggQueryParse scParse = new SampleCleanAggQueryParse(queryText);
-		commandList.add(scQueryBuilder.rawSCQuery(scParse.getViewName(), scParse.getAggFunction(), scParse.getAttr(), scParse.getPredicate(), scParse.getGroupBy(), schemaManager.get(scParse.getViewName()),sampleSize, datasetSize));
+		commandList.add("SET " + HiveConf.ConfVars.SAMPLECLEAN_SAMPLE_SIZE.varname + "=" + sampleSize);
+		commandList.add("SET " + HiveConf.ConfVars.SAMPLECLEAN_DATASET_SIZE.varname + "=" + datasetSize);
+		commandList.add(scQuery);
 		return commandList;
 	}
 
-	public ArrayList<String> execNormalizedSC(String queryText)
+	public ArrayList<String> execRemove(String viewName, String predicate) throws HiveException
 	{
+		ArrayList<String> schemaList = getCleanSchema(viewName);
 		ArrayList<String> commandList = new ArrayList<String>();
-		SampleCleanAggQueryParse scParse = new SampleCleanAggQueryParse(queryText);
-		ArrayList<String> schemaList = new ArrayList<String>();
-
-		try{
-		HiveMetaStoreClient msc = new HiveMetaStoreClient(conf);
-		StorageDescriptor sd = msc.getTable(scParse.getViewName()+"_clean").getSd();
-		List<FieldSchema> fieldSchema = sd.getCols();
-		
-
-		for (FieldSchema field: fieldSchema)
-			schemaList.add(field.getName().toLowerCase());
-
-        //String tableColString = msc.getTable(viewName+"_clean").toString();
-
-		//commandList.add(textTransform.buildTextFormatQuery(viewName, schemaList,args));
-		}
-		catch(Exception metaException){}
-
-		commandList.add(scQueryBuilder.normalizedSCQuery(scParse.getViewName(), scParse.getAggFunction(), scParse.getAttr(), scParse.getPredicate(), scParse.getGroupBy(),schemaList, sampleSize, datasetSize));
+		commandList.add(scQueryBuilder.deleteWhere(viewName, schemaList, predicate, scQueryBuilder.nextVersion()));
 		return commandList;
 	}
 
@@ -214,97 +134,131 @@ public class SampleCleanSQLExtensionParser{
 	{
 		String baseTable = schemaAndBT.remove(schemaAndBT.size()-2);
 		double samplingProb = Double.parseDouble(schemaAndBT.remove(schemaAndBT.size()-1));
-		ArrayList<String> commandList = new ArrayList<String>();
-		schemaManager.put(viewName,schemaAndBT);
+		ArrayList<String> commandList = scQueryBuilder.bucketingSettings();
+		commandList.add(scQueryBuilder.createDirtyTable(viewName,schemaAndBT));
 		commandList.add(scQueryBuilder.createSample(viewName,baseTable,schemaAndBT,samplingProb));
-		commandList.add(scQueryBuilder.createEmptyCleanTable(viewName,baseTable,schemaAndBT));
-		commandList.add(scQueryBuilder.copyDirtyToClean(viewName));
+		commandList.add(scQueryBuilder.createDeltaTable(viewName,schemaAndBT));
+		commandList.add(scQueryBuilder.createDeltaLog(viewName,schemaAndBT));
+		commandList.add(scQueryBuilder.createCleanView(viewName,schemaAndBT));
 		return commandList;
 	}
 
-	public ArrayList<String> parseInitQuery(Scanner queryScannerRemainingTokens)
+	public ArrayList<String> parseInitQuery(ASTNode tree)
 	{
-		String schemaString = "";
-		while(queryScannerRemainingTokens.hasNext())
+		ArrayList<String> schema = new ArrayList<String>();
+		ASTNode columns = (ASTNode) tree.getChild(1);
+		for (int i = 0; i < columns.getChildCount(); i++)
+			schema.add(BaseSemanticAnalyzer.unescapeIdentifier(columns.getChild(i).getText()));
+
+		String baseTable = "";
+		ASTNode tableName = (ASTNode) tree.getChild(2);
+		for (int i = 0; i < tableName.getChildCount(); i++)
 		{
-			String nextToken = queryScannerRemainingTokens.next();
-
-			if(nextToken.equalsIgnoreCase("from"))
-				break;
-			else
-				schemaString += nextToken;
+			if (baseTable.length() > 0)
+				baseTable += ".";
+			baseTable += BaseSemanticAnalyzer.unescapeIdentifier(tableName.getChild(i).getText());
 		}
-			
-		ArrayList<String> schema = new ArrayList<String>(Arrays.asList(schemaString.replace(")","").replace("(","").split(",")));
-		schema.add(queryScannerRemainingTokens.next());
+		schema.add(baseTable);
 
 		//WITHSAMPLING
-		queryScannerRemainingTokens.next();
-
-		String samplingProb = queryScannerRemainingTokens.next();	
-		schema.add(samplingProb);
+		schema.add(tree.getChild(3).getText());
 
 		return schema;
 	}
 
 	public ArrayList<String> execResetQuery(String viewName)
 	{
-		ArrayList<String> commandList = new ArrayList<String>();
-		commandList.add(scQueryBuilder.copyDirtyToClean(viewName));
-		return commandList;
+		return scQueryBuilder.resetDeltas(viewName);
+	}
+
+	public ArrayList<String> execCompactQuery(String viewName) throws HiveException
+	{
+		return scQueryBuilder.compactDeltas(viewName, getCleanSchema(viewName));
 	}
 
-	public ArrayList<String> execOutlierQuery(String viewName, ArrayList<String> args)
+	public ArrayList<String> execOutlierQuery(String viewName, ArrayList<String> args) throws HiveException
 	{
 		String attr = args.get(0);
 		String method = args.get(1);
 		String alpha = args.get(2);
+		ArrayList<String> schemaList = getCleanSchema(viewName);
 		ArrayList<String> commandList = new ArrayList<String>();
-		commandList.addAll(outlierRemoval.buildOutlierRemovalQuery(viewName, method, attr, alpha));
+		commandList.addAll(outlierRemoval.buildOutlierRemovalQuery(viewName, schemaList, method, attr, alpha, scQueryBuilder.nextVersion()));
 		return commandList;
 	}
 
-	public ArrayList<String> parseOutlierQuery(Scanner queryScannerRemainingTokens)
+	/**
+	 * @return the arguments after the view name, identifiers unescaped and
+	 *         string literals quoted
+	 */
+	public ArrayList<String> parseArguments(ASTNode tree)
+	{
+		return parseArguments(tree, 1);
+	}
+
+	public ArrayList<String> parseArguments(ASTNode tree, int first)
 	{
 		ArrayList<String> argsList = new ArrayList<String>();
-		argsList.add(queryScannerRemainingTokens.next());
-		argsList.add(queryScannerRemainingTokens.next());
-		argsList.add(materializeScanner(queryScannerRemainingTokens));
+		for (int i = first; i < tree.getChildCount(); i++)
+			argsList.add(BaseSemanticAnalyzer.unescapeIdentifier(tree.getChild(i).getText()));
 		return argsList;
 	}
 
-	public ArrayList<String> execTextQuery(String viewName, ArrayList<String> args)
+	/**
+	 * @return the arguments of each format of the statement, in order, the
+	 *         name of the format unquoted when it is given as a string
+	 */
+	public ArrayList<ArrayList<String>> parseFormats(ASTNode tree)
+	{
+		ArrayList<ArrayList<String>> formats = new ArrayList<ArrayList<String>>();
+		for (int i = 1; i < tree.getChildCount(); i++)
+		{
+			ASTNode step = (ASTNode) tree.getChild(i);
+			ArrayList<String> format = parseArguments(step, 0);
+			if (step.getChild(1).getType() == HiveParser.StringLiteral)
+				format.set(1, BaseSemanticAnalyzer.unescapeSQLString(step.getChild(1).getText()));
+			formats.add(format);
+		}
+		return formats;
+	}
+
+	public ArrayList<String> execTextQuery(String viewName, ArrayList<ArrayList<String>> formats) throws HiveException
 	{
 		ArrayList<String> commandList = new ArrayList<String>();
+		ArrayList<String> schemaList = getCleanSchema(viewName);
+
+		commandList.add(textTransform.buildTextFormatQuery(viewName, schemaList, formats, scQueryBuilder.nextVersion()));
+		return commandList;
+	}
+
+	/**
+	 * Reads the columns of the clean table of a view from the metastore, so
+	 * that the schema survives the session that initialized the view.
+	 */
+	public ArrayList<String> getCleanSchema(String viewName) throws HiveException
+	{
+		ArrayList<String> schemaList = new ArrayList<String>();
 
+		HiveMetaStoreClient msc = null;
 		try{
-		HiveMetaStoreClient msc = new HiveMetaStoreClient(conf);
+		msc = new HiveMetaStoreClient(conf);
 		StorageDescriptor sd = msc.getTable(viewName+"_clean").getSd();
 		List<FieldSchema> fieldSchema = sd.getCols();
-		ArrayList<String> schemaList = new ArrayList<String>();
 
 		for (FieldSchema field: fieldSchema)
 			schemaList.add(field.getName());
-
-        //String tableColString = msc.getTable(viewName+"_clean").toString();
-
-		commandList.add(textTransform.buildTextFormatQuery(viewName, schemaList,args));
 		}
-		catch(Exception metaException){}
-
-		return commandList;
-	}
+		catch(Exception metaException)
+		{
+			LOG.error("Unable to read the schema of " + viewName + "_clean", metaException);
+			throw new HiveException("Unable to read the schema of " + viewName + "_clean", metaException);
+		}
+		finally
+		{
+			if (msc != null)
+				msc.close();
+		}
 
-	public ArrayList<String> parseTextQuery(Scanner queryScannerRemainingTokens)
-	{
-		ArrayList<String> argsList = new ArrayList<String>();
-		argsList.add(queryScannerRemainingTokens.next());
-		argsList.add(queryScannerRemainingTokens.next());
-		if (queryScannerRemainingTokens.hasNext())
-			{
-				argsList.add(queryScannerRemainingTokens.next());
-				argsList.add(materializeScanner(queryScannerRemainingTokens));
-			}
-		return argsList;
+		return schemaList;
 	}
 }
\ No newline at end of file
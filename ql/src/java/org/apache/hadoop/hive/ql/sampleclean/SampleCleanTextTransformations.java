@@ -1,57 +1,90 @@
 package org.apache.hadoop.hive.ql.sampleclean;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class SampleCleanTextTransformations {
 
-    private static final String BASE_QUERY = " SELECT %s from %v ";
-    private static final String UPDATE_QUERY = " INSERT OVERWRITE TABLE %v ";
- 
-    private static final String NUMBER_FORMAT = "regexp_extract(trim(lower(%a)),'[0-9]+',0) ";
-    private static final String TRIM_QUERY = " trim(%a) ";
-    private static final String REPLACE_QUERY = " regexp_replace(%a,%rarg1,%rarg2) ";
+    /**
+     * Updates the clean view by transformations of some of its attributes, all
+     * in one pass. Only the rows whose attributes change are written, as updates
+     * to the log of deltas of the view, one per hash.
+     */
+    public String updateQuery(String view, ArrayList<String> schemaList, Map<String,String> transforms, long version)
+    {
+        String select = "";
+        for (String attr: schemaList)
+        {
+            String transform = attr;
+            for (Map.Entry<String,String> t: transforms.entrySet())
+                if (t.getKey().equalsIgnoreCase(attr))
+                    transform = t.getValue() + " AS " + attr;
+            if (select.length() > 0)
+                select += ", ";
+            select += transform;
+        }
 
-    public String numberFormatQuery(String view, ArrayList<String> schemaList, String attribute)
+        String unchanged = "";
+        for (Map.Entry<String,String> t: transforms.entrySet())
+        {
+            if (unchanged.length() > 0)
+                unchanged += " AND ";
+            unchanged += t.getValue() + " <=> " + t.getKey();
+        }
+
+        String updates = "SELECT " + select + ", " + version + " AS version, 'U' AS op FROM " + view + "_clean WHERE NOT (" + unchanged + ")";
+        return "INSERT INTO TABLE " + view + "_log " + SampleCleanQueryBuilder.onePerHash(SampleCleanQueryBuilder.deltaColumns(schemaList), updates);
+    }
+
+    public String numberFormatQuery(String view, ArrayList<String> schemaList, String attribute, long version)
     {
-        String query = UPDATE_QUERY + " " + BASE_QUERY;
-        String schema = SampleCleanHiveTableOps.schemaToString(schemaList);
-        return query.replace("%s",schema).replace("%v",view+"_clean").replace(" "+attribute+" ",NUMBER_FORMAT).replace("%a",attribute);
+        return buildTextFormatQuery(view, schemaList, format(attribute, "number"), version);
     }
 
-    public String trimQuery(String view, ArrayList<String> schemaList, String attribute)
+    public String trimQuery(String view, ArrayList<String> schemaList, String attribute, long version)
     {
-    	String query = UPDATE_QUERY + " " + BASE_QUERY;
-    	String schema = SampleCleanHiveTableOps.schemaToString(schemaList);
-        return query.replace("%s",schema).replace("%v",view+"_clean").replace(" "+attribute+" ",TRIM_QUERY).replace("%a",attribute);
+        return buildTextFormatQuery(view, schemaList, format(attribute, "trim"), version);
     }
 
-    public String replaceQuery(String view, ArrayList<String> schemaList, String attribute, String in, String out)
+    public String replaceQuery(String view, ArrayList<String> schemaList, String attribute, String in, String out, long version)
     {
-    	String query = UPDATE_QUERY + " " + BASE_QUERY;
-    	String schema = SampleCleanHiveTableOps.schemaToString(schemaList);
-        String paramQuery = query.replace("%s",schema).replace("%v",view+"_clean").replace(" "+attribute+" ",REPLACE_QUERY).replace("%a",attribute);
-        return paramQuery.replace("%rarg1",in).replace("%rarg2",out);
+        return buildTextFormatQuery(view, schemaList, format(attribute, "replace", in, out), version);
     }
 
-    public String buildTextFormatQuery(String view, ArrayList<String> schemaList, ArrayList<String> args)
+    private ArrayList<ArrayList<String>> format(String... args)
     {
-        String attr = args.get(0);
-        String command = args.get(1);
-        if (command.equalsIgnoreCase("number"))
-        {
-            return numberFormatQuery(view, schemaList, attr);
-        }
-        else if (command.equalsIgnoreCase("trim"))
-        {
-            return trimQuery(view, schemaList, attr);
-        }
-        else if (command.equalsIgnoreCase("replace"))
+        ArrayList<String> format = new ArrayList<String>();
+        for (String arg: args)
+            format.add(arg);
+        ArrayList<ArrayList<String>> formats = new ArrayList<ArrayList<String>>();
+        formats.add(format);
+        return formats;
+    }
+
+    /**
+     * Builds the update of the clean view by a list of formats, each the
+     * attribute, the command and its arguments. The formats of an attribute
+     * are applied in order by one clean_format call, on the bytes of its value.
+     */
+    public String buildTextFormatQuery(String view, ArrayList<String> schemaList, ArrayList<ArrayList<String>> formats, long version)
+    {
+        Map<String,String> formatArgs = new LinkedHashMap<String,String>();
+        for (ArrayList<String> args: formats)
         {
-            return replaceQuery(view, schemaList, attr, args.get(2),args.get(3));
+            String attr = args.get(0).toLowerCase();
+            String formatArg = formatArgs.containsKey(attr) ? formatArgs.get(attr) : "";
+            formatArg += ", '" + args.get(1).toLowerCase() + "'";
+            for (int i = 2; i < args.size(); i++)
+                formatArg += ", " + args.get(i);
+            formatArgs.put(attr, formatArg);
         }
-        else
-            return "";
+
+        Map<String,String> transforms = new LinkedHashMap<String,String>();
+        for (Map.Entry<String,String> f: formatArgs.entrySet())
+            transforms.put(f.getKey(), "clean_format(" + f.getKey() + f.getValue() + ")");
+
+        return updateQuery(view, schemaList, transforms, version);
     }
 
 }
@@ -1,13 +1,14 @@
 package org.apache.hadoop.hive.ql.sampleclean;
 import java.util.ArrayList;
 
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
 public class SampleCleanUnitTest {
 
-	private static final String CREATE_SAMPLE = "CREATE TABLE tweets_sample_dirty AS SELECT v.* from tweets LATERAL VIEW clean_export(id, user, tweet) v AS hash, dup, id, user, tweet WITHSAMPLING 0.1";
-	private static final String CREATE_CLEAN = "CREATE TABLE tweets_sample_clean(hash string, dup int, id string, user string, tweet string) ROW FORMAT DELIMITED FIELDS TERMINATED BY ','";
-	private static final String COPY_DIRTY = "INSERT OVERWRITE TABLE tweets_sample_clean SELECT * FROM tweets_sample_dirty";
+	private static final String CREATE_SAMPLE = "INSERT OVERWRITE TABLE tweets_sample_dirty SELECT v.* from tweets LATERAL VIEW clean_export(id , user , tweet) v AS hash , dup , id , user , tweet  SAMPLEWITH 0.1";
+	private static final String CREATE_DELTA = "CREATE TABLE tweets_sample_delta(hash string , dup int , id string , user string , tweet string , version bigint , op string) CLUSTERED BY (hash) SORTED BY (hash) INTO 32 BUCKETS ROW FORMAT DELIMITED FIELDS TERMINATED BY '#'";
 
-	public static void main(String [] args)
+	public static void main(String [] args) throws HiveException
 	{
 		SampleCleanQueryBuilder sampleClean = new SampleCleanQueryBuilder();
 		SampleCleanOutlierRemoval outlierRemoval = new SampleCleanOutlierRemoval();
@@ -23,20 +24,20 @@ public class SampleCleanUnitTest {
 		System.out.println("Demo Table: tweets " + demoTable);
 
 		//create sample
+		System.out.println("HIVEQL: " + sampleClean.createDirtyTable("tweets_sample", demoTable));
 		System.out.println("HIVEQL: " + sampleClean.createSample("tweets_sample", "tweets", demoTable, 0.1));
 		System.out.println("Created Sample: " + CREATE_SAMPLE.equals(sampleClean.createSample("tweets_sample", "tweets", demoTable, 0.1)));
 		System.out.println("");
 
-		//create empty clean table
-		System.out.println("[3] Creating empty clean table");
-		System.out.println("HIVEQL: " + sampleClean.createEmptyCleanTable("tweets_sample", "tweets", demoTable));
-		System.out.println("Created Clean: " + CREATE_CLEAN.equals(sampleClean.createEmptyCleanTable("tweets_sample", "tweets", demoTable)));
+		//create empty delta table
+		System.out.println("[3] Creating empty delta table");
+		System.out.println("HIVEQL: " + sampleClean.createDeltaTable("tweets_sample", demoTable));
+		System.out.println("Created Delta: " + CREATE_DELTA.equals(sampleClean.createDeltaTable("tweets_sample", demoTable)));
 		System.out.println("");
 
 
-		System.out.println("[4] Initializing clean table with dirty data");
-		System.out.println("HIVEQL: " + sampleClean.copyDirtyToClean("tweets_sample"));
-		System.out.println("Initialized Clean Table: " + COPY_DIRTY.equals(sampleClean.copyDirtyToClean("tweets_sample")));
+		System.out.println("[4] Creating the clean view of the dirty data and the deltas");
+		System.out.println("HIVEQL: " + sampleClean.createCleanView("tweets_sample", demoTable));
 		System.out.println("");
 
 		System.out.println("[5] RawSC Count Tweets from user a");
@@ -49,11 +50,15 @@ public class SampleCleanUnitTest {
 		System.out.println("");
 
 		System.out.println("[7] Outlier removal on id");
-		System.out.println("HIVEQL: " + outlierRemoval.buildOutlierRemovalQuery("tweets_sample",outlierRemoval.NORM,"id","1.96"));
+		ArrayList<String> cleanTable = new ArrayList<String>();
+		cleanTable.add("hash");
+		cleanTable.add("dup");
+		cleanTable.addAll(demoTable);
+		System.out.println("HIVEQL: " + outlierRemoval.buildOutlierRemovalQuery("tweets_sample",cleanTable,outlierRemoval.NORM,"id","1.96",sampleClean.nextVersion()));
 		System.out.println("");
 
 		System.out.println("[8] Text Replacement");
-		System.out.println("HIVEQL: " + textTransformations.replaceQuery("tweets_sample",demoTable,"tweet","S","s"));
+		System.out.println("HIVEQL: " + textTransformations.replaceQuery("tweets_sample",demoTable,"tweet","'S'","'s'",sampleClean.nextVersion()));
 		System.out.println("");
 
 		SampleCleanSQLExtensionParser parser = new SampleCleanSQLExtensionParser(100,400);
@@ -63,6 +68,7 @@ public class SampleCleanUnitTest {
 
 		System.out.println("[9.2] Parser Tests");
 		System.out.println(parser.parse("SCRESET tweets_sample"));
+		System.out.println(parser.parse("SCCOMPACT tweets_sample"));
 		System.out.println("");
 
 		System.out.println("[9.3] Parser Tests");
@@ -73,15 +79,13 @@ public class SampleCleanUnitTest {
 		System.out.println(parser.parse("SCFORMAT tweets_sample id number"));
 		System.out.println(parser.parse("SCFORMAT tweets_sample user trim"));
 		System.out.println(parser.parse("SCFORMAT tweets_sample tweet replace \':)\' \':(\' "));
+		System.out.println(parser.parse("SCFORMAT tweets_sample user trim, tweet trim, tweet replace \':)\' \':(\', id number"));
 		System.out.println("");
 
 		System.out.println("[9.5] Parser Tests");
-		SampleCleanAggQueryParse scParse = new SampleCleanAggQueryParse("sum(id) from tweets_sample where user = 'tim' and id > 100 group by tweet");
-		System.out.println(scParse.getAttr());
-		System.out.println(scParse.getPredicate());
-		System.out.println(scParse.getAggFunction());
-		System.out.println(scParse.getViewName());
-
+		System.out.println(parser.parse("SCFILTER tweets_sample user = 'tim' and id > 100"));
+		System.out.println(parser.parse("SCSHOW tweets_sample"));
+		System.out.println("");
 
 		System.out.println("[9.6] Parser Tests");
 		System.out.println(parser.parse("SELECTRAWSC sum(id) from tweets_sample where user = 'tim' and id > 100 group by tweet"));
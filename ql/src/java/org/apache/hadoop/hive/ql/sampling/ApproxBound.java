@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+/**
+ * The bound a query puts on its answer: either a response time
+ * (<code>WITHIN n SECONDS</code>) or a relative error at a confidence level
+ * (<code>ERROR e AT CONFIDENCE c</code>).
+ */
+public class ApproxBound {
+
+  /**
+   * Kind of bound.
+   */
+  public static enum Kind {
+    TIME, ERROR
+  };
+
+  private final Kind kind;
+  private final double seconds;
+  private final double error;
+  private final double confidence;
+
+  private ApproxBound(Kind kind, double seconds, double error, double confidence) {
+    this.kind = kind;
+    this.seconds = seconds;
+    this.error = error;
+    this.confidence = confidence;
+  }
+
+  public static ApproxBound within(double seconds) {
+    if (!(seconds > 0)) {
+      throw new IllegalArgumentException("Time bound must be positive: " + seconds);
+    }
+    return new ApproxBound(Kind.TIME, seconds, 0, 0);
+  }
+
+  /**
+   * @param error
+   *          relative error, as a fraction (0.05) or a percentage (5)
+   * @param confidence
+   *          confidence level, as a fraction (0.95) or a percentage (95)
+   */
+  public static ApproxBound error(double error, double confidence) {
+    error = fraction(error);
+    confidence = fraction(confidence);
+    if (!(error > 0)) {
+      throw new IllegalArgumentException("Error bound must be positive: " + error);
+    }
+    if (!(confidence > 0 && confidence < 1)) {
+      throw new IllegalArgumentException("Confidence must be between 0 and 100%: "
+          + confidence);
+    }
+    return new ApproxBound(Kind.ERROR, 0, error, confidence);
+  }
+
+  private static double fraction(double value) {
+    return value >= 1 ? value / 100 : value;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public double getSeconds() {
+    return seconds;
+  }
+
+  public double getError() {
+    return error;
+  }
+
+  public double getConfidence() {
+    return confidence;
+  }
+
+  @Override
+  public String toString() {
+    if (kind == Kind.TIME) {
+      return "WITHIN " + seconds + " SECONDS";
+    }
+    return "ERROR " + (error * 100) + "% AT CONFIDENCE " + (confidence * 100) + "%";
+  }
+}
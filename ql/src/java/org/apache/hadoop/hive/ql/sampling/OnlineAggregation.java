@@ -0,0 +1,358 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxStatistics;
+import org.apache.hadoop.hive.ql.udf.approx.OnlineEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Online aggregation: running estimates of approximate aggregates while the
+ * job that computes them runs (quicksilver.online.enable).
+ *
+ * Every mapper of a map-side aggregation without GROUP BY keys periodically
+ * writes the moments of its {@link OnlineEvaluator} aggregates, with the
+ * number of rows it has read, to its own file in a directory of the job. While
+ * polling the job, the client merges the files into estimates over the rows
+ * read so far and prints them with their confidence intervals, which shrink
+ * as the job reads more rows; the query can be killed once they are tight
+ * enough. The rows read so far are a uniform subsample only if the input is in
+ * random order, as nested samples are (see {@link SampleBuilder#buildNested}).
+ */
+public final class OnlineAggregation {
+
+  static final Log LOG = LogFactory.getLog(OnlineAggregation.class.getName());
+
+  /** Directory of the published moments, set on the job by the driver. */
+  public static final String DIR = "quicksilver.online.dir";
+
+  private static final String INPUT_COUNTER_GROUP = "org.apache.hadoop.mapred.Task$Counter";
+  private static final String INPUT_COUNTER = "MAP_INPUT_RECORDS";
+
+  // Rows between two checks of the publishing interval
+  private static final int CHECK_ROWS = 1000;
+
+  private OnlineAggregation() {
+  }
+
+  /**
+   * Enables online aggregation for the job if the session asks for it.
+   */
+  public static void configure(JobConf job, Path dir) {
+    if (HiveConf.getBoolVar(job, HiveConf.ConfVars.QUICKSILVER_ONLINE_ENABLE)) {
+      job.set(DIR, dir.toString());
+    }
+  }
+
+  /**
+   * Running moments of one aggregate, either of a population total scaled up
+   * from the rows read or of a mean.
+   */
+  public static class Moments implements Writable {
+    private boolean mean;
+    private long count;
+    private double sum;
+    private double m2;
+    private long totalRows;
+    private double designEffect = 1.0;
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    /**
+     * @param mean
+     *          whether the aggregate estimates a mean rather than a total
+     * @param count
+     *          number of values aggregated
+     * @param sum
+     *          their sum
+     * @param m2
+     *          sum of their squared deviations from their mean
+     * @param totalRows
+     *          number of rows of the population, for totals
+     */
+    public void set(boolean mean, long count, double sum, double m2, long totalRows,
+        double designEffect, double confidence) {
+      this.mean = mean;
+      this.count = count;
+      this.sum = sum;
+      this.m2 = m2;
+      this.totalRows = totalRows;
+      this.designEffect = designEffect;
+      this.confidence = confidence;
+    }
+
+    /**
+     * Adds the moments of another part of the input.
+     */
+    public void merge(Moments other) {
+      if (other.count == 0) {
+        return;
+      }
+      if (count > 0) {
+        double delta = other.sum / other.count - sum / count;
+        m2 += other.m2 + delta * delta * count * other.count / (count + other.count);
+      } else {
+        m2 = other.m2;
+      }
+      // the design effects of the parts are weighted by their rows
+      designEffect = (designEffect * count + other.designEffect * other.count)
+          / (count + other.count);
+      mean = other.mean;
+      count += other.count;
+      sum += other.sum;
+      totalRows = Math.max(totalRows, other.totalRows);
+      confidence = other.confidence;
+    }
+
+    /**
+     * @param rowsRead
+     *          number of input rows read so far
+     * @return the running estimate, as an approximate aggregate result
+     */
+    public Object[] estimate(long rowsRead) {
+      Object[] result = ApproxStatistics.newResult();
+      if (mean) {
+        double stderr = count > 1
+            ? Math.sqrt(designEffect * m2 / (count - 1) / count) : Double.NaN;
+        return ApproxStatistics.setResult(result, count > 0 ? sum / count : Double.NaN,
+            stderr, confidence, count);
+      }
+      double estimate = rowsRead > 0 ? sum * totalRows / rowsRead : Double.NaN;
+      double stderr = Math.sqrt(designEffect)
+          * ApproxStatistics.totalStandardError(count, sum, m2, rowsRead, totalRows);
+      return ApproxStatistics.setResult(result, estimate, stderr, confidence, count);
+    }
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeBoolean(mean);
+      out.writeLong(count);
+      out.writeDouble(sum);
+      out.writeDouble(m2);
+      out.writeLong(totalRows);
+      out.writeDouble(designEffect);
+      out.writeDouble(confidence);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      mean = in.readBoolean();
+      count = in.readLong();
+      sum = in.readDouble();
+      m2 = in.readDouble();
+      totalRows = in.readLong();
+      designEffect = in.readDouble();
+      confidence = in.readDouble();
+    }
+  }
+
+  /**
+   * @return the publisher of the aggregates of a map-side aggregation, or
+   *         null if online aggregation is off or does not apply to it
+   */
+  public static Publisher newPublisher(Configuration hconf, List<AggregationDesc> aggs,
+      GenericUDAFEvaluator[] evaluators) {
+    String dir = hconf.get(DIR);
+    if (dir == null) {
+      return null;
+    }
+    List<Integer> positions = new ArrayList<Integer>();
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < evaluators.length; i++) {
+      if (evaluators[i] instanceof OnlineEvaluator) {
+        positions.add(i);
+        names.add(aggs.get(i).getExprString());
+      }
+    }
+    if (positions.isEmpty()) {
+      return null;
+    }
+    String taskId = Utilities.getTaskId(hconf).replaceAll("_\\d+$", "");
+    return new Publisher(hconf, new Path(dir), taskId, evaluators, positions, names,
+        HiveConf.getLongVar(hconf, HiveConf.ConfVars.QUICKSILVER_ONLINE_INTERVAL));
+  }
+
+  /**
+   * Publishes the moments of the aggregates of one mapper.
+   */
+  public static class Publisher {
+    private final Configuration conf;
+    private final Path dir;
+    private final String taskId;
+    private final GenericUDAFEvaluator[] evaluators;
+    private final List<Integer> positions;
+    private final List<String> names;
+    private final long interval;
+    private final Moments moments = new Moments();
+    private long rows;
+    private long next;
+    // Buffers of the last row processed
+    private AggregationBuffer[] lastAggs;
+
+    Publisher(Configuration conf, Path dir, String taskId, GenericUDAFEvaluator[] evaluators,
+        List<Integer> positions, List<String> names, long interval) {
+      this.conf = conf;
+      this.dir = dir;
+      this.taskId = taskId;
+      this.evaluators = evaluators;
+      this.positions = positions;
+      this.names = names;
+      this.interval = interval;
+      this.next = System.currentTimeMillis() + interval;
+    }
+
+    /**
+     * Publishes the aggregation buffers if the interval has elapsed since the
+     * last time.
+     */
+    public void rowProcessed(AggregationBuffer[] aggs, Reporter reporter) {
+      lastAggs = aggs;
+      if (++rows % CHECK_ROWS != 0 || aggs == null || reporter == null
+          || System.currentTimeMillis() < next) {
+        return;
+      }
+      publish(aggs, reporter);
+      next = System.currentTimeMillis() + interval;
+    }
+
+    /**
+     * Publishes the aggregation buffers a last time when the mapper is done,
+     * so that the rows read since the last publication, or by a mapper
+     * shorter than the interval, are counted.
+     */
+    public void close(Reporter reporter) {
+      if (lastAggs != null) {
+        publish(lastAggs, reporter);
+      }
+    }
+
+    private void publish(AggregationBuffer[] aggs, Reporter reporter) {
+      Counters.Counter input = reporter == null ? null
+          : reporter.getCounter(INPUT_COUNTER_GROUP, INPUT_COUNTER);
+      try {
+        publish(aggs, input == null ? rows : input.getValue());
+      } catch (IOException e) {
+        // Running estimates are best effort, the query goes on without them
+        LOG.warn("Could not publish online aggregates to " + dir, e);
+      }
+    }
+
+    private void publish(AggregationBuffer[] aggs, long rowsRead) throws IOException {
+      FileSystem fs = dir.getFileSystem(conf);
+      Path tmp = new Path(dir, "_tmp." + taskId);
+      Path dst = new Path(dir, taskId);
+      FSDataOutputStream out = fs.create(tmp, true);
+      try {
+        out.writeLong(rowsRead);
+        out.writeInt(positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+          int pos = positions.get(i);
+          ((OnlineEvaluator) evaluators[pos]).getMoments(aggs[pos], moments);
+          out.writeUTF(names.get(i));
+          moments.write(out);
+        }
+      } finally {
+        out.close();
+      }
+      fs.delete(dst, false);
+      fs.rename(tmp, dst);
+    }
+  }
+
+  /**
+   * Prints the running estimates published so far for the job, if any.
+   */
+  public static void report(JobConf job, LogHelper console) {
+    String dir = job.get(DIR);
+    if (dir == null) {
+      return;
+    }
+    List<String> names = new ArrayList<String>();
+    List<Moments> merged = new ArrayList<Moments>();
+    long rowsRead = 0;
+    try {
+      Path path = new Path(dir);
+      FileSystem fs = path.getFileSystem(job);
+      FileStatus[] files = fs.listStatus(path);
+      if (files == null) {
+        return;
+      }
+      for (FileStatus file : files) {
+        if (file.getPath().getName().startsWith("_")) {
+          continue;
+        }
+        FSDataInputStream in = fs.open(file.getPath());
+        try {
+          rowsRead += in.readLong();
+          int n = in.readInt();
+          for (int i = 0; i < n; i++) {
+            String name = in.readUTF();
+            Moments moments = new Moments();
+            moments.readFields(in);
+            if (i == merged.size()) {
+              names.add(name);
+              merged.add(moments);
+            } else {
+              merged.get(i).merge(moments);
+            }
+          }
+        } finally {
+          in.close();
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not read online aggregates from " + dir, e);
+      return;
+    }
+
+    for (int i = 0; i < merged.size(); i++) {
+      Moments moments = merged.get(i);
+      Object[] result = moments.estimate(rowsRead);
+      console.printInfo("Online estimate of " + names.get(i) + " after " + rowsRead
+          + " rows: " + result[0] + " [" + result[1] + ", " + result[2] + "] at "
+          + ApproxStatistics.formatConfidence(moments.getConfidence()));
+    }
+  }
+}
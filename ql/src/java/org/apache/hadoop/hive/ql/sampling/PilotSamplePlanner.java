@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.Driver;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.processors.CommandProcessorResponse;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxStatistics;
+
+/**
+ * Two stage planning of the sample size of a query with an ERROR bound
+ * (quicksilver.sample.pilot).
+ *
+ * The first stage runs the aggregates of the query, with its filter and
+ * groups, on the smallest uniform sample of the table. For each group and
+ * aggregate it gets the count, mean and variance of the values, the moments
+ * the approx_* aggregates keep in their partial aggregations. The relative
+ * variance of an estimate from n rows of a group is v / n, where v is cv^2
+ * for approx_avg, cv^2 + 1 for approx_sum, whose count of rows is estimated
+ * as well, and 1 for approx_count. The bound e at quantile t then needs
+ * n = (t / e)^2 * v rows of the group, less the finite population
+ * correction, and the sampling fraction needed is the largest over all
+ * groups and aggregates.
+ *
+ * The pilot runs as a task of its own before the query (see
+ * {@link org.apache.hadoop.hive.ql.exec.PilotSampleTask}), never while the
+ * query is compiled. The fraction is turned into the coefficient of variation
+ * that makes {@link SampleSelector} pick the samples at least that large, so
+ * the second stage is the usual selection. That value only holds for the
+ * aggregates and predicate of the query, so it is not kept in the catalog.
+ */
+public class PilotSamplePlanner {
+
+  static final Log LOG = LogFactory.getLog(PilotSamplePlanner.class.getName());
+
+  private final HiveConf conf;
+  private final Table table;
+  private final String alias;
+  private final List<String> functions = new ArrayList<String>();
+  private final List<String> arguments = new ArrayList<String>();
+  private final List<String> groupBy = new ArrayList<String>();
+  private String where;
+
+  /**
+   * @param alias
+   *          alias of the table in the expressions of the query
+   */
+  public PilotSamplePlanner(HiveConf conf, Table table, String alias) {
+    this.conf = conf;
+    this.table = table;
+    this.alias = alias;
+  }
+
+  /**
+   * Adds an approx_avg, approx_sum or approx_count aggregate of the query;
+   * other aggregates are ignored.
+   *
+   * @return whether the aggregate is planned for
+   */
+  public boolean addAggregate(String function, String argument) {
+    if (!isPlanned(function)) {
+      return false;
+    }
+    functions.add(function.toLowerCase());
+    arguments.add(argument);
+    return true;
+  }
+
+  /**
+   * @return whether the aggregate is planned for by a pilot query
+   */
+  public static boolean isPlanned(String function) {
+    function = function.toLowerCase();
+    return function.equals("approx_avg") || function.equals("approx_sum")
+        || function.equals("approx_count");
+  }
+
+  public void addGroupBy(String expr) {
+    groupBy.add(expr);
+  }
+
+  public void setWhere(String where) {
+    this.where = where;
+  }
+
+  /**
+   * @return the smallest up to date uniform sample of the table as a whole,
+   *         or null
+   */
+  public static SampleInfo getPilotSample(List<SampleInfo> samples) {
+    for (SampleInfo sample : samples) {
+      if (!sample.isStratified() && !sample.isStale() && sample.getRows() > 0
+          && sample.getFraction() > 0) {
+        return sample;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Runs the pilot query on the sample.
+   *
+   * @return the sampling fraction meeting the bound, at most 1, or 0 if the
+   *         pilot found no rows
+   */
+  public double getRequiredFraction(SampleInfo pilot, ApproxBound bound)
+      throws HiveException {
+    double fraction = 0;
+    for (String[] row : runPilot(pilot)) {
+      // group keys, then count, mean and variance of each aggregate
+      int first = groupBy.size();
+      for (int i = 0; i < functions.size(); i++) {
+        long count = parseLong(row[first + 3 * i]);
+        double mean = parseDouble(row[first + 3 * i + 1]);
+        double variance = parseDouble(row[first + 3 * i + 2]);
+        if (count <= 0) {
+          continue;
+        }
+        fraction = Math.max(fraction, getFraction(functions.get(i), count, mean, variance,
+            pilot.getFraction(), bound));
+      }
+    }
+    return Math.min(1, fraction);
+  }
+
+  /**
+   * @return the fraction of a group of the table, of which the pilot read
+   *         count rows, needed by the aggregate to meet the bound
+   */
+  static double getFraction(String function, long count, double mean, double variance,
+      double pilotFraction, ApproxBound bound) {
+    double v;
+    if (function.equals("approx_count")) {
+      v = 1;
+    } else {
+      if (mean == 0 || Double.isNaN(mean)) {
+        return 1;
+      }
+      double cv2 = (Double.isNaN(variance) ? 0 : variance) / (mean * mean);
+      v = function.equals("approx_sum") ? cv2 + 1 : cv2;
+    }
+    double groupRows = count / pilotFraction;
+    double t = ApproxStatistics.quantile(bound.getConfidence(), count);
+    double needed = t * t * v / (bound.getError() * bound.getError());
+    needed = needed / (1 + needed / groupRows);
+    return needed / groupRows;
+  }
+
+  /**
+   * @return the coefficient of variation that makes {@link SampleSelector}
+   *         estimate the bound as met by a sample of the fraction, or 0 if no
+   *         sample is large enough
+   */
+  public static double getEquivalentCv(double fraction, long sourceRows, ApproxBound bound) {
+    if (fraction >= 1 || sourceRows <= 0) {
+      return 0;
+    }
+    long rows = Math.max(1, (long) Math.ceil(fraction * sourceRows));
+    return bound.getError() * Math.sqrt(rows / (1 - fraction))
+        / ApproxStatistics.quantile(bound.getConfidence(), rows);
+  }
+
+  private List<String[]> runPilot(SampleInfo pilot) throws HiveException {
+    StringBuilder sb = new StringBuilder("SELECT ");
+    for (String expr : groupBy) {
+      sb.append(expr).append(", ");
+    }
+    for (int i = 0; i < arguments.size(); i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      String arg = arguments.get(i);
+      sb.append("count(").append(arg).append("), avg(").append(arg)
+          .append("), var_samp(").append(arg).append(")");
+    }
+    sb.append(" FROM ").append(table.getDbName()).append('.').append(pilot.getTableName())
+        .append(' ').append(alias);
+    if (where != null) {
+      sb.append(" WHERE ").append(where);
+    }
+    for (int i = 0; i < groupBy.size(); i++) {
+      sb.append(i == 0 ? " GROUP BY " : ", ").append(groupBy.get(i));
+    }
+    String query = sb.toString();
+    LOG.info("Running pilot query: " + query);
+
+    HiveConf queryConf = new HiveConf(conf, PilotSamplePlanner.class);
+    HiveConf.setBoolVar(queryConf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_PILOT, false);
+    HiveConf.setBoolVar(queryConf, HiveConf.ConfVars.QUICKSILVER_APPROX_REWRITE, false);
+    Driver driver = new Driver(queryConf);
+    List<String[]> rows = new ArrayList<String[]>();
+    try {
+      CommandProcessorResponse response = driver.run(query);
+      if (response.getResponseCode() != 0) {
+        throw new HiveException("Pilot query failed: " + response.getErrorMessage());
+      }
+      ArrayList<String> res = new ArrayList<String>();
+      while (driver.getResults(res)) {
+        for (String line : res) {
+          rows.add(line.split("\t", -1));
+        }
+        res.clear();
+      }
+    } catch (HiveException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new HiveException("Pilot query failed: " + query, e);
+    } finally {
+      driver.close();
+    }
+    return rows;
+  }
+
+  private static long parseLong(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static double parseDouble(String value) {
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      // NULL
+      return Double.NaN;
+    }
+  }
+}
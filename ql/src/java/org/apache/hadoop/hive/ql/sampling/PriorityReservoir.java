@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A reservoir that keeps the items with the smallest random priorities.
+ *
+ * Every item is tagged with an independent uniform priority. Keeping the
+ * items with the smallest priorities gives a uniform sample without
+ * replacement, and two reservoirs are merged by simply keeping the smallest
+ * priorities of their union. This is what allows partial reservoirs built by
+ * different mappers to be combined into one correct sample.
+ *
+ * The capacity is expressed as a total weight: with a weight of 1 per item
+ * the reservoir keeps exactly <code>capacity</code> items, with a weight equal
+ * to the item size in bytes it keeps the smallest-priority prefix that covers
+ * <code>capacity</code> bytes.
+ */
+public class PriorityReservoir<T> {
+
+  /**
+   * An item together with its priority and weight.
+   */
+  public static class Entry<T> {
+    private final double priority;
+    private final long weight;
+    private final T item;
+
+    public Entry(double priority, long weight, T item) {
+      this.priority = priority;
+      this.weight = weight;
+      this.item = item;
+    }
+
+    public double getPriority() {
+      return priority;
+    }
+
+    public long getWeight() {
+      return weight;
+    }
+
+    public T getItem() {
+      return item;
+    }
+  }
+
+  private static final Comparator<Entry<?>> ASCENDING = new Comparator<Entry<?>>() {
+    @Override
+    public int compare(Entry<?> a, Entry<?> b) {
+      return Double.compare(a.priority, b.priority);
+    }
+  };
+
+  private static final Comparator<Entry<?>> DESCENDING = Collections.reverseOrder(ASCENDING);
+
+  private final long capacity;
+  private final PriorityQueue<Entry<T>> heap;
+  private long totalWeight;
+
+  public PriorityReservoir(long capacity) {
+    this.capacity = capacity;
+    this.heap = new PriorityQueue<Entry<T>>(11, DESCENDING);
+    this.totalWeight = 0;
+  }
+
+  /**
+   * Whether an item with the given priority would be kept. Callers use this
+   * to avoid copying items that are going to be rejected anyway.
+   */
+  public boolean accepts(double priority) {
+    if (capacity <= 0) {
+      return false;
+    }
+    return totalWeight < capacity || priority < heap.peek().priority;
+  }
+
+  public void offer(double priority, long weight, T item) {
+    if (!accepts(priority)) {
+      return;
+    }
+    heap.add(new Entry<T>(priority, weight, item));
+    totalWeight += weight;
+
+    // Evict the largest priorities as long as the rest still covers the capacity
+    while (!heap.isEmpty() && totalWeight - heap.peek().weight >= capacity) {
+      totalWeight -= heap.poll().weight;
+    }
+  }
+
+  public void merge(PriorityReservoir<T> other) {
+    for (Entry<T> e : other.heap) {
+      offer(e.priority, e.weight, e.item);
+    }
+  }
+
+  public int size() {
+    return heap.size();
+  }
+
+  public long getTotalWeight() {
+    return totalWeight;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the retained entries in ascending priority order, i.e. in a
+   *         uniformly random order of the sampled items.
+   */
+  public List<Entry<T>> entries() {
+    List<Entry<T>> result = new ArrayList<Entry<T>>(heap);
+    Collections.sort(result, ASCENDING);
+    return result;
+  }
+
+  public void clear() {
+    heap.clear();
+    totalWeight = 0;
+  }
+}
@@ -0,0 +1,402 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.MultipleTextOutputFormat;
+
+/**
+ * Builds a uniform sample of a set of text files as a MapReduce job.
+ *
+ * In reservoir mode every mapper tags its rows with random priorities and
+ * keeps a {@link PriorityReservoir} of the rows with the smallest priorities
+ * whose sizes cover the requested sample size. The partial reservoirs are
+ * shuffled by priority into a single reducer, which keeps the global
+ * smallest-priority prefix. Since only the partial reservoirs are shuffled, the
+ * reducer sees at most (number of mappers * sample size) bytes.
+ *
+ * In bernoulli mode the job is map-only and every row is kept independently
+ * with the configured probability.
+ *
+ * In nested mode ({@link #buildNested}) a single reservoir job builds all
+ * sample levels at once: the merged rows are written in priority order, that
+ * is in random order, and split into one file per level, so that level k is
+ * the union of the files of levels 1 to k. Every prefix of the sample is then
+ * itself a uniform sample, and a query can read the first levels only (see
+ * {@link SampleLevelFilter}).
+ *
+ * Sample tables are built by CREATE TABLESAMPLE, see
+ * {@link org.apache.hadoop.hive.ql.exec.SampleBuildTask}.
+ */
+@SuppressWarnings("deprecation")
+public class SampleBuilder {
+
+  static final Log LOG = LogFactory.getLog(SampleBuilder.class.getName());
+
+  public static final String MODE_RESERVOIR = "reservoir";
+  public static final String MODE_BERNOULLI = "bernoulli";
+
+  // Job level settings, derived from the HiveConf variables by the builder
+  static final String CAPACITY = "quicksilver.sample.build.capacity";
+  static final String RATE = "quicksilver.sample.build.rate";
+  static final String LEVEL_SIZES = "quicksilver.sample.build.level.sizes";
+
+  /** Number of levels of a nested sample, one per configured sample size. */
+  public static final int NESTED_LEVELS = 5;
+
+  /** Counter group of the per level rows and bytes of a nested build. */
+  static final String LEVEL_COUNTERS = "QuickSilver Sample Levels";
+
+  /**
+   * Counters.
+   */
+  public static enum Counter {
+    INPUT_ROWS, SAMPLE_ROWS
+  }
+
+  /**
+   * @return the size in bytes configured for the given sample level.
+   */
+  public static long getSampleSize(Configuration conf, int samplingLevel) {
+    int sizeInMB;
+    switch (samplingLevel) {
+    case 1:
+      sizeInMB = HiveConf.getIntVar(conf, HiveConf.ConfVars.SAMPLE_SIZE_LEVEL_1);
+      break;
+    case 2:
+      sizeInMB = HiveConf.getIntVar(conf, HiveConf.ConfVars.SAMPLE_SIZE_LEVEL_2);
+      break;
+    case 3:
+      sizeInMB = HiveConf.getIntVar(conf, HiveConf.ConfVars.SAMPLE_SIZE_LEVEL_3);
+      break;
+    case 4:
+      sizeInMB = HiveConf.getIntVar(conf, HiveConf.ConfVars.SAMPLE_SIZE_LEVEL_4);
+      break;
+    case 5:
+      sizeInMB = HiveConf.getIntVar(conf, HiveConf.ConfVars.SAMPLE_SIZE_LEVEL_5);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown sample level " + samplingLevel);
+    }
+    return sizeInMB * 1024L * 1024L;
+  }
+
+  /**
+   * Submits the sample build job and waits for its completion.
+   *
+   * @param capacity
+   *          sample size in bytes, used in reservoir mode
+   * @param rate
+   *          row sampling probability, used in bernoulli mode
+   */
+  public RunningJob build(Path[] srcs, Path dst, Configuration conf, String mode,
+      long capacity, float rate) throws IOException {
+    JobConf job = new JobConf(conf, SampleBuilder.class);
+    job.setJobName("Build sample " + dst.getName());
+
+    FileInputFormat.setInputPaths(job, srcs);
+    job.setInputFormat(TextInputFormat.class);
+    FileOutputFormat.setOutputPath(job, dst);
+    job.setOutputFormat(TextOutputFormat.class);
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(Text.class);
+
+    if (MODE_BERNOULLI.equalsIgnoreCase(mode)) {
+      job.setFloat(RATE, rate);
+      job.setMapperClass(BernoulliMapper.class);
+      job.setNumReduceTasks(0);
+    } else if (MODE_RESERVOIR.equalsIgnoreCase(mode)) {
+      job.setLong(CAPACITY, capacity);
+      job.setMapperClass(ReservoirMapper.class);
+      job.setMapOutputKeyClass(DoubleWritable.class);
+      job.setMapOutputValueClass(Text.class);
+      job.setReducerClass(ReservoirMergeReducer.class);
+      job.setNumReduceTasks(1);
+    } else {
+      throw new IOException("Unknown sample build mode " + mode);
+    }
+
+    LOG.info("Building " + mode + " sample of " + srcs.length + " input path(s) into " + dst);
+    return JobClient.runJob(job);
+  }
+
+  /**
+   * Builds a nested sample whose levels have the configured sample sizes,
+   * as a single job, and waits for its completion.
+   *
+   * @see #getNestedSampleInfo
+   */
+  public RunningJob buildNested(Path[] srcs, Path dst, Configuration conf) throws IOException {
+    long[] sizes = new long[NESTED_LEVELS];
+    StringBuilder levelSizes = new StringBuilder();
+    for (int i = 0; i < NESTED_LEVELS; i++) {
+      sizes[i] = getSampleSize(conf, i + 1);
+      if (i > 0 && sizes[i] < sizes[i - 1]) {
+        throw new IOException("Sample size of level " + (i + 1) + " is smaller than level " + i);
+      }
+      levelSizes.append(i > 0 ? "," : "").append(sizes[i]);
+    }
+
+    JobConf job = new JobConf(conf, SampleBuilder.class);
+    job.setJobName("Build nested sample " + dst.getName());
+
+    FileInputFormat.setInputPaths(job, srcs);
+    job.setInputFormat(TextInputFormat.class);
+    FileOutputFormat.setOutputPath(job, dst);
+    job.setOutputFormat(LevelOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+
+    job.setLong(CAPACITY, sizes[NESTED_LEVELS - 1]);
+    job.set(LEVEL_SIZES, levelSizes.toString());
+    job.setMapperClass(ReservoirMapper.class);
+    job.setMapOutputKeyClass(DoubleWritable.class);
+    job.setMapOutputValueClass(Text.class);
+    job.setReducerClass(NestedMergeReducer.class);
+    job.setNumReduceTasks(1);
+
+    LOG.info("Building nested sample of " + srcs.length + " input path(s) into " + dst);
+    return JobClient.runJob(job);
+  }
+
+  /**
+   * @return the catalog record of a nested sample built by a finished
+   *         {@link #buildNested} job
+   */
+  public static SampleInfo getNestedSampleInfo(RunningJob rj, String tableName)
+      throws IOException {
+    Counters counters = rj.getCounters();
+    Counters.Group group = counters.getGroup(LEVEL_COUNTERS);
+    List<Long> levelRows = new ArrayList<Long>();
+    List<Long> levelBytes = new ArrayList<Long>();
+    long rows = 0;
+    long bytes = 0;
+    for (int level = 1; level <= NESTED_LEVELS; level++) {
+      rows += group.getCounter(SampleLevelFilter.getLevelFileName(level) + ".rows");
+      bytes += group.getCounter(SampleLevelFilter.getLevelFileName(level) + ".bytes");
+      levelRows.add(rows);
+      levelBytes.add(bytes);
+    }
+    SampleInfo info = new SampleInfo(tableName);
+    info.setSourceRows(counters.getCounter(Counter.INPUT_ROWS));
+    info.setLevels(levelRows, levelBytes);
+    return info;
+  }
+
+  /**
+   * @return the number of rows read and written by a finished build job,
+   *         as a two element array.
+   */
+  public static long[] getRowCounts(RunningJob rj) throws IOException {
+    Counters counters = rj.getCounters();
+    return new long[] {
+        counters.getCounter(Counter.INPUT_ROWS),
+        counters.getCounter(Counter.SAMPLE_ROWS)};
+  }
+
+  static Random newRandom(JobConf job) {
+    // Seeded per task so that re-running a build gives the same sample
+    long seed = HiveConf.getIntVar(job, HiveConf.ConfVars.HIVESAMPLERANDOMNUM);
+    return new Random(seed * 31 + job.getInt("mapred.task.partition", 0));
+  }
+
+  /**
+   * Keeps a per-split reservoir and emits it, keyed by priority, on close.
+   */
+  public static class ReservoirMapper extends MapReduceBase implements
+      Mapper<LongWritable, Text, DoubleWritable, Text> {
+
+    private PriorityReservoir<Text> reservoir;
+    private Random rnd;
+    private OutputCollector<DoubleWritable, Text> output;
+
+    @Override
+    public void configure(JobConf job) {
+      reservoir = new PriorityReservoir<Text>(job.getLong(CAPACITY, 0));
+      rnd = newRandom(job);
+    }
+
+    @Override
+    public void map(LongWritable key, Text value,
+        OutputCollector<DoubleWritable, Text> output, Reporter reporter) throws IOException {
+      this.output = output;
+      reporter.incrCounter(Counter.INPUT_ROWS, 1);
+
+      double priority = rnd.nextDouble();
+      if (reservoir.accepts(priority)) {
+        reservoir.offer(priority, value.getLength() + 1, new Text(value));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (output == null) {
+        // empty split
+        return;
+      }
+      DoubleWritable priority = new DoubleWritable();
+      for (PriorityReservoir.Entry<Text> e : reservoir.entries()) {
+        priority.set(e.getPriority());
+        output.collect(priority, e.getItem());
+      }
+    }
+  }
+
+  /**
+   * Merges the partial reservoirs: rows arrive sorted by priority, so the
+   * merged reservoir is the prefix that covers the sample size.
+   */
+  public static class ReservoirMergeReducer extends MapReduceBase implements
+      Reducer<DoubleWritable, Text, NullWritable, Text> {
+
+    private long capacity;
+    private long size;
+
+    @Override
+    public void configure(JobConf job) {
+      capacity = job.getLong(CAPACITY, 0);
+      size = 0;
+    }
+
+    @Override
+    public void reduce(DoubleWritable key, Iterator<Text> values,
+        OutputCollector<NullWritable, Text> output, Reporter reporter) throws IOException {
+      while (values.hasNext() && size < capacity) {
+        Text row = values.next();
+        output.collect(NullWritable.get(), row);
+        size += row.getLength() + 1;
+        reporter.incrCounter(Counter.SAMPLE_ROWS, 1);
+      }
+    }
+  }
+
+  /**
+   * Merges the partial reservoirs like {@link ReservoirMergeReducer}, and
+   * writes every row to the file of the first level whose size it fits in.
+   */
+  public static class NestedMergeReducer extends MapReduceBase implements
+      Reducer<DoubleWritable, Text, Text, Text> {
+
+    private long[] sizes;
+    private int level;
+    private long size;
+    private Text levelFile;
+
+    @Override
+    public void configure(JobConf job) {
+      String[] levelSizes = job.get(LEVEL_SIZES, "").split(",");
+      sizes = new long[levelSizes.length];
+      for (int i = 0; i < sizes.length; i++) {
+        sizes[i] = Long.parseLong(levelSizes[i]);
+      }
+      level = 0;
+      size = 0;
+      levelFile = new Text(SampleLevelFilter.getLevelFileName(1));
+    }
+
+    @Override
+    public void reduce(DoubleWritable key, Iterator<Text> values,
+        OutputCollector<Text, Text> output, Reporter reporter) throws IOException {
+      while (values.hasNext()) {
+        while (level < sizes.length && size >= sizes[level]) {
+          level++;
+          levelFile.set(SampleLevelFilter.getLevelFileName(level + 1));
+        }
+        if (level == sizes.length) {
+          return;
+        }
+        Text row = values.next();
+        output.collect(levelFile, row);
+        size += row.getLength() + 1;
+        reporter.incrCounter(Counter.SAMPLE_ROWS, 1);
+        reporter.incrCounter(LEVEL_COUNTERS, levelFile + ".rows", 1);
+        reporter.incrCounter(LEVEL_COUNTERS, levelFile + ".bytes", row.getLength() + 1);
+      }
+    }
+  }
+
+  /**
+   * Writes the rows of every level to the file named by their key.
+   */
+  public static class LevelOutputFormat extends MultipleTextOutputFormat<Text, Text> {
+
+    @Override
+    protected String generateFileNameForKeyValue(Text key, Text value, String name) {
+      return key.toString();
+    }
+
+    @Override
+    protected Text generateActualKey(Text key, Text value) {
+      return null;
+    }
+  }
+
+  /**
+   * Keeps every row independently with a fixed probability.
+   */
+  public static class BernoulliMapper extends MapReduceBase implements
+      Mapper<LongWritable, Text, NullWritable, Text> {
+
+    private float rate;
+    private Random rnd;
+
+    @Override
+    public void configure(JobConf job) {
+      rate = job.getFloat(RATE, 0);
+      rnd = newRandom(job);
+    }
+
+    @Override
+    public void map(LongWritable key, Text value,
+        OutputCollector<NullWritable, Text> output, Reporter reporter) throws IOException {
+      reporter.incrCounter(Counter.INPUT_ROWS, 1);
+      if (rnd.nextFloat() < rate) {
+        output.collect(NullWritable.get(), value);
+        reporter.incrCounter(Counter.SAMPLE_ROWS, 1);
+      }
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
+/**
+ * The catalog of the samples built for a table.
+ *
+ * Samples are recorded in the parameters of the base table, one parameter per
+ * sample, the same way table statistics are. The metastore persists them with
+ * the table, and fetching the table is the only call needed to list all its
+ * samples with their sizes, sampling fractions and strata. The sample tables
+ * themselves point back to their base table.
+ */
+public class SampleCatalog {
+
+  /**
+   * Prefix of the base table parameters describing its samples. The parameter
+   * name is the prefix followed by the sample table name.
+   */
+  public static final String SAMPLE_PREFIX = "quicksilver.samples.";
+
+  /**
+   * Parameter of a sample table naming its base table.
+   */
+  public static final String BASE_TABLE = "quicksilver.sample.of";
+
+  static final Comparator<SampleInfo> BY_SIZE = new Comparator<SampleInfo>() {
+    @Override
+    public int compare(SampleInfo a, SampleInfo b) {
+      return a.getRows() < b.getRows() ? -1 : (a.getRows() == b.getRows() ? 0 : 1);
+    }
+  };
+
+  /**
+   * @return the samples recorded in the given table parameters, smallest first
+   */
+  public static List<SampleInfo> getSamples(Map<String, String> params) {
+    List<SampleInfo> samples = new ArrayList<SampleInfo>();
+    if (params == null) {
+      return samples;
+    }
+    for (Map.Entry<String, String> e : params.entrySet()) {
+      if (e.getKey().startsWith(SAMPLE_PREFIX)) {
+        samples.add(SampleInfo.decode(e.getKey().substring(SAMPLE_PREFIX.length()),
+            e.getValue()));
+      }
+    }
+    Collections.sort(samples, BY_SIZE);
+    return samples;
+  }
+
+  public static void putSample(Map<String, String> params, SampleInfo info) {
+    params.put(SAMPLE_PREFIX + info.getTableName(), info.encode());
+  }
+
+  public static boolean removeSample(Map<String, String> params, String sampleTable) {
+    return params.remove(SAMPLE_PREFIX + sampleTable.toLowerCase()) != null;
+  }
+
+  /**
+   * @return the base table of a sample table, or null if it is not a sample
+   */
+  public static String getBaseTable(Map<String, String> params) {
+    return params == null ? null : params.get(BASE_TABLE);
+  }
+
+  private final IMetaStoreClient msc;
+
+  public SampleCatalog(HiveConf conf) throws HiveException {
+    try {
+      msc = new HiveMetaStoreClient(conf);
+    } catch (Exception e) {
+      throw new HiveException("Unable to connect to the metastore", e);
+    }
+  }
+
+  public SampleCatalog(IMetaStoreClient msc) {
+    this.msc = msc;
+  }
+
+  public List<SampleInfo> getSamples(String dbName, String tableName) throws HiveException {
+    try {
+      return getSamples(msc.getTable(dbName, tableName).getParameters());
+    } catch (Exception e) {
+      throw new HiveException("Unable to read the samples of " + tableName, e);
+    }
+  }
+
+  /**
+   * Records a sample of a base table, replacing any previous record of the
+   * same sample table.
+   */
+  public void registerSample(String dbName, String baseTable, SampleInfo info)
+      throws HiveException {
+    try {
+      Table base = msc.getTable(dbName, baseTable);
+      putSample(getParameters(base), info);
+      msc.alter_table(dbName, baseTable, base);
+
+      Table sample = msc.getTable(dbName, info.getTableName());
+      getParameters(sample).put(BASE_TABLE, baseTable.toLowerCase());
+      msc.alter_table(dbName, info.getTableName(), sample);
+    } catch (Exception e) {
+      throw new HiveException("Unable to register sample " + info.getTableName()
+          + " of " + baseTable, e);
+    }
+  }
+
+  /**
+   * Replaces the records of several samples of a base table at once.
+   */
+  public void updateSamples(String dbName, String baseTable, List<SampleInfo> infos)
+      throws HiveException {
+    try {
+      Table base = msc.getTable(dbName, baseTable);
+      Map<String, String> params = getParameters(base);
+      for (SampleInfo info : infos) {
+        putSample(params, info);
+      }
+      msc.alter_table(dbName, baseTable, base);
+    } catch (Exception e) {
+      throw new HiveException("Unable to update the samples of " + baseTable, e);
+    }
+  }
+
+  public void unregisterSample(String dbName, String baseTable, String sampleTable)
+      throws HiveException {
+    try {
+      Table base = msc.getTable(dbName, baseTable);
+      if (removeSample(getParameters(base), sampleTable)) {
+        msc.alter_table(dbName, baseTable, base);
+      }
+    } catch (Exception e) {
+      throw new HiveException("Unable to unregister sample " + sampleTable
+          + " of " + baseTable, e);
+    }
+  }
+
+  /**
+   * Removes all sample records of a base table. The sample tables that are
+   * left no longer name it as their base table.
+   */
+  public void clearSamples(String dbName, String baseTable) throws HiveException {
+    try {
+      Table base = msc.getTable(dbName, baseTable);
+      Iterator<String> keys = getParameters(base).keySet().iterator();
+      List<String> sampleTables = new ArrayList<String>();
+      while (keys.hasNext()) {
+        String key = keys.next();
+        if (key.startsWith(SAMPLE_PREFIX)) {
+          sampleTables.add(key.substring(SAMPLE_PREFIX.length()));
+          keys.remove();
+        }
+      }
+      if (sampleTables.isEmpty()) {
+        return;
+      }
+      msc.alter_table(dbName, baseTable, base);
+      for (String sampleTable : sampleTables) {
+        if (!msc.tableExists(dbName, sampleTable)) {
+          continue;
+        }
+        Table sample = msc.getTable(dbName, sampleTable);
+        if (baseTable.equalsIgnoreCase(getParameters(sample).get(BASE_TABLE))) {
+          getParameters(sample).remove(BASE_TABLE);
+          msc.alter_table(dbName, sampleTable, sample);
+        }
+      }
+    } catch (Exception e) {
+      throw new HiveException("Unable to clear the samples of " + baseTable, e);
+    }
+  }
+
+  /**
+   * Forgets a table about to be dropped: a sample is removed from the catalog
+   * of its base table, and the samples of a base table are cleared, so that
+   * no query is planned on a table that no longer exists.
+   *
+   * @param params
+   *          the parameters of the table
+   */
+  public void dropTable(String dbName, String tableName, Map<String, String> params)
+      throws HiveException {
+    String baseTable = getBaseTable(params);
+    boolean sampleOfTable;
+    try {
+      sampleOfTable = baseTable != null && msc.tableExists(dbName, baseTable);
+    } catch (Exception e) {
+      throw new HiveException("Unable to find the base table of " + tableName, e);
+    }
+    if (sampleOfTable) {
+      unregisterSample(dbName, baseTable, tableName);
+    }
+    if (!getSamples(params).isEmpty()) {
+      clearSamples(dbName, tableName);
+    }
+  }
+
+  public void close() {
+    msc.close();
+  }
+
+  private static Map<String, String> getParameters(Table table) {
+    if (table.getParameters() == null) {
+      table.setParameters(new HashMap<String, String>());
+    }
+    return table.getParameters();
+  }
+}
@@ -0,0 +1,351 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metadata of one sample of a base table, as recorded in the
+ * {@link SampleCatalog}.
+ *
+ * A nested sample holds several levels in one table, level k being a prefix
+ * of level k+1 (see {@link SampleBuilder#buildNested}). Its record lists the
+ * cumulative rows and bytes of each level, and {@link #getNestedLevels()}
+ * describes each prefix as a sample of its own, whose level is the number of
+ * levels to read.
+ */
+public class SampleInfo {
+
+  private static final String LEVEL = "level";
+  private static final String ROWS = "rows";
+  private static final String SOURCE_ROWS = "sourceRows";
+  private static final String BYTES = "bytes";
+  private static final String STRATA = "strata";
+  private static final String SCAN_RATE = "scanRate";
+  private static final String CV = "cv";
+  private static final String LEVEL_ROWS = "levelRows";
+  private static final String LEVEL_BYTES = "levelBytes";
+  private static final String STALE = "stale";
+
+  private final String tableName;
+  private int level;
+  private long rows;
+  private long sourceRows;
+  private long bytes;
+  private List<String> strata = new ArrayList<String>();
+  private long scanRate;
+  private double cv;
+  private List<Long> levelRows = new ArrayList<Long>();
+  private List<Long> levelBytes = new ArrayList<Long>();
+  private boolean stale;
+
+  public SampleInfo(String tableName) {
+    this.tableName = tableName.toLowerCase();
+  }
+
+  public SampleInfo(String tableName, int level, long rows, long sourceRows, long bytes) {
+    this(tableName);
+    this.level = level;
+    this.rows = rows;
+    this.sourceRows = sourceRows;
+    this.bytes = bytes;
+  }
+
+  /**
+   * @return the name of the table holding the sample
+   */
+  public String getTableName() {
+    return tableName;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  /**
+   * @return the number of rows in the sample
+   */
+  public long getRows() {
+    return rows;
+  }
+
+  public void setRows(long rows) {
+    this.rows = rows;
+  }
+
+  /**
+   * @return the number of rows of the base table the sample was drawn from
+   */
+  public long getSourceRows() {
+    return sourceRows;
+  }
+
+  public void setSourceRows(long sourceRows) {
+    this.sourceRows = sourceRows;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public void setBytes(long bytes) {
+    this.bytes = bytes;
+  }
+
+  /**
+   * @return the sampling fraction, or 0 if the source size is unknown
+   */
+  public double getFraction() {
+    return sourceRows > 0 ? ((double) rows) / sourceRows : 0;
+  }
+
+  /**
+   * @return the stratification columns, empty for a uniform sample
+   */
+  public List<String> getStrata() {
+    return strata;
+  }
+
+  public void setStrata(List<String> strata) {
+    this.strata = new ArrayList<String>(strata);
+  }
+
+  public boolean isStratified() {
+    return !strata.isEmpty();
+  }
+
+  /**
+   * @return the measured scan rate of the sample in bytes per second, or 0 if
+   *         it was never measured
+   */
+  public long getScanRate() {
+    return scanRate;
+  }
+
+  public void setScanRate(long scanRate) {
+    this.scanRate = scanRate;
+  }
+
+  /**
+   * @return the coefficient of variation (stddev / mean) of the measure
+   *         estimated on a pilot query, or 0 if unknown
+   */
+  public double getCv() {
+    return cv;
+  }
+
+  public void setCv(double cv) {
+    this.cv = cv;
+  }
+
+  /**
+   * @return whether rows were added to or replaced in the base table without
+   *         updating the sample, which must then be rebuilt before it is used
+   *         again
+   */
+  public boolean isStale() {
+    return stale;
+  }
+
+  public void setStale(boolean stale) {
+    this.stale = stale;
+  }
+
+  /**
+   * @return whether the sample holds several nested levels
+   */
+  public boolean isNested() {
+    return !levelRows.isEmpty();
+  }
+
+  /**
+   * @return the cumulative number of rows of each level of a nested sample,
+   *         empty for a single level sample
+   */
+  public List<Long> getLevelRows() {
+    return levelRows;
+  }
+
+  /**
+   * @return the cumulative size of each level of a nested sample
+   */
+  public List<Long> getLevelBytes() {
+    return levelBytes;
+  }
+
+  /**
+   * Sets the cumulative rows and bytes of the levels of a nested sample; the
+   * sample as a whole is its last level.
+   */
+  public void setLevels(List<Long> levelRows, List<Long> levelBytes) {
+    if (levelRows.size() != levelBytes.size()) {
+      throw new IllegalArgumentException("Levels have " + levelRows.size() + " row counts and "
+          + levelBytes.size() + " sizes");
+    }
+    this.levelRows = new ArrayList<Long>(levelRows);
+    this.levelBytes = new ArrayList<Long>(levelBytes);
+    if (!levelRows.isEmpty()) {
+      level = levelRows.size();
+      rows = levelRows.get(level - 1);
+      bytes = levelBytes.get(level - 1);
+    }
+  }
+
+  /**
+   * @return each level of a nested sample as a sample reading the levels up to
+   *         its own, smallest first, or this sample if it is not nested
+   */
+  public List<SampleInfo> getNestedLevels() {
+    List<SampleInfo> levels = new ArrayList<SampleInfo>();
+    if (!isNested()) {
+      levels.add(this);
+      return levels;
+    }
+    for (int i = 0; i < levelRows.size(); i++) {
+      SampleInfo prefix = decode(tableName, encode());
+      prefix.level = i + 1;
+      prefix.rows = levelRows.get(i);
+      prefix.bytes = levelBytes.get(i);
+      levels.add(prefix);
+    }
+    return levels;
+  }
+
+  /**
+   * @return whether only the first levels of the nested sample are read
+   */
+  public boolean isPrefix() {
+    return isNested() && level < levelRows.size();
+  }
+
+  /**
+   * Encodes the sample as a table parameter value, e.g.
+   * "level=1;rows=1000;sourceRows=100000;bytes=2097152;strata=a,b".
+   */
+  public String encode() {
+    Map<String, String> fields = toFields();
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> e : fields.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(';');
+      }
+      sb.append(e.getKey()).append('=').append(e.getValue());
+    }
+    return sb.toString();
+  }
+
+  private Map<String, String> toFields() {
+    Map<String, String> fields = new LinkedHashMap<String, String>();
+    fields.put(LEVEL, Integer.toString(level));
+    fields.put(ROWS, Long.toString(rows));
+    fields.put(SOURCE_ROWS, Long.toString(sourceRows));
+    fields.put(BYTES, Long.toString(bytes));
+    StringBuilder cols = new StringBuilder();
+    for (String col : strata) {
+      if (cols.length() > 0) {
+        cols.append(',');
+      }
+      cols.append(col);
+    }
+    fields.put(STRATA, cols.toString());
+    fields.put(SCAN_RATE, Long.toString(scanRate));
+    fields.put(CV, Double.toString(cv));
+    if (isNested()) {
+      fields.put(LEVEL_ROWS, join(levelRows));
+      fields.put(LEVEL_BYTES, join(levelBytes));
+    }
+    if (stale) {
+      fields.put(STALE, Boolean.toString(stale));
+    }
+    return fields;
+  }
+
+  private static String join(List<Long> values) {
+    StringBuilder sb = new StringBuilder();
+    for (Long value : values) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(value);
+    }
+    return sb.toString();
+  }
+
+  private static List<Long> split(String value) {
+    List<Long> values = new ArrayList<Long>();
+    if (value.length() > 0) {
+      for (String v : value.split(",")) {
+        values.add(Long.valueOf(v.trim()));
+      }
+    }
+    return values;
+  }
+
+  public static SampleInfo decode(String tableName, String value) {
+    SampleInfo info = new SampleInfo(tableName);
+    for (String field : value.split(";")) {
+      int eq = field.indexOf('=');
+      if (eq < 0) {
+        continue;
+      }
+      info.setField(field.substring(0, eq).trim(), field.substring(eq + 1).trim());
+    }
+    return info;
+  }
+
+  private void setField(String key, String value) {
+    if (key.equals(LEVEL)) {
+      level = Integer.parseInt(value);
+    } else if (key.equals(ROWS)) {
+      rows = Long.parseLong(value);
+    } else if (key.equals(SOURCE_ROWS)) {
+      sourceRows = Long.parseLong(value);
+    } else if (key.equals(BYTES)) {
+      bytes = Long.parseLong(value);
+    } else if (key.equals(STRATA)) {
+      strata = new ArrayList<String>();
+      if (value.length() > 0) {
+        strata.addAll(Arrays.asList(value.split(",")));
+      }
+    } else if (key.equals(SCAN_RATE)) {
+      scanRate = Long.parseLong(value);
+    } else if (key.equals(CV)) {
+      cv = Double.parseDouble(value);
+    } else if (key.equals(LEVEL_ROWS)) {
+      levelRows = split(value);
+    } else if (key.equals(LEVEL_BYTES)) {
+      levelBytes = split(value);
+    } else if (key.equals(STALE)) {
+      stale = Boolean.parseBoolean(value);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return tableName + "(" + encode() + ")";
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * Input path filter reading the first levels of nested samples (see
+ * {@link SampleBuilder#buildNested}).
+ *
+ * The number of levels is set per sample directory in the job, as
+ * <code>dir=levels</code> entries. In those directories only the files of
+ * levels 1 to levels are read, which hold the nested sample of that level;
+ * all other files and directories are read as usual.
+ *
+ * The levels of a query are fixed when it is compiled, by
+ * {@link SampleSelector} from the estimated error of each level or by the
+ * pilot query of {@link PilotSamplePlanner}. A running query does not go on
+ * into the next level when its intervals turn out wider than its bound: that
+ * would take resubmitting the job on the files of the next level and merging
+ * its aggregations with those of the levels already read, and the plan keeps
+ * no such state between jobs. Such a query has to be run again at a larger
+ * level, which reads levels 1 to k again. Nesting saves the storage and the
+ * build jobs of separate samples, not the scan of the smaller levels.
+ */
+@SuppressWarnings("deprecation")
+public class SampleLevelFilter implements PathFilter, Configurable {
+
+  static final Log LOG = LogFactory.getLog(SampleLevelFilter.class.getName());
+
+  public static final String LEVELS = "quicksilver.sample.levels";
+
+  private static final Pattern LEVEL_FILE = Pattern.compile("level-(\\d+)");
+
+  private Configuration conf;
+  private final Map<String, Integer> levels = new HashMap<String, Integer>();
+
+  /**
+   * @return the name of the file holding the rows of the given level
+   */
+  public static String getLevelFileName(int level) {
+    return String.format("level-%05d", level);
+  }
+
+  /**
+   * Reads only the levels recorded in the plan of the sample directories of
+   * the job, if any.
+   */
+  public static void configure(JobConf job, MapredWork work) {
+    Map<String, Integer> levels = work.getNameToSampleLevel();
+    if (levels == null || levels.isEmpty()) {
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, ArrayList<String>> e : work.getPathToAliases().entrySet()) {
+      int last = 0;
+      for (String alias : e.getValue()) {
+        Integer level = levels.get(alias);
+        if (level == null) {
+          // Another alias reads the whole directory
+          last = 0;
+          break;
+        }
+        last = Math.max(last, level.intValue());
+      }
+      if (last > 0) {
+        addLevels(sb, e.getKey(), last);
+      }
+    }
+    if (sb.length() > 0) {
+      job.set(LEVELS, sb.toString());
+      FileInputFormat.setInputPathFilter(job, SampleLevelFilter.class);
+      LOG.info("Reading sample levels " + sb);
+    }
+  }
+
+  /**
+   * Appends the number of levels to read from a sample directory.
+   */
+  public static void addLevels(StringBuilder sb, String dir, int last) {
+    if (sb.length() > 0) {
+      sb.append(';');
+    }
+    sb.append(new Path(dir).toUri().getPath()).append('=').append(last);
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    levels.clear();
+    String value = conf.get(LEVELS, "");
+    for (String entry : value.split(";")) {
+      // directories may contain '=', as in partition names
+      int eq = entry.lastIndexOf('=');
+      if (eq < 0) {
+        continue;
+      }
+      levels.put(entry.substring(0, eq), Integer.valueOf(entry.substring(eq + 1)));
+    }
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public boolean accept(Path path) {
+    Matcher m = LEVEL_FILE.matcher(path.getName());
+    if (!m.matches() || path.getParent() == null) {
+      return true;
+    }
+    Integer last = levels.get(path.getParent().toUri().getPath());
+    if (last == null) {
+      return true;
+    }
+    return Integer.parseInt(m.group(1)) <= last.intValue();
+  }
+}
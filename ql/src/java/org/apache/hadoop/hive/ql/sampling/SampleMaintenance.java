@@ -0,0 +1,678 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.MultipleInputs;
+
+/**
+ * Keeps the samples of a table up to date when rows are appended to it
+ * (quicksilver.sample.maintain), reading only the new rows and the samples.
+ *
+ * A uniform sample of n out of N rows is updated with d new rows into a
+ * uniform sample of n out of N + d rows: the number k of new rows it should
+ * hold is drawn from the hypergeometric distribution of n draws among N + d
+ * rows of which d are new, and the sample keeps k random new rows and n - k
+ * random old ones. A stratified sample is updated the same way in every
+ * stratum, with n = min(K, N + d), so strata below the cap are topped up and
+ * the appended stratum sizes are rewritten.
+ *
+ * The samples are updated by {@link #prepare} before the new rows are moved
+ * into the table, since only then are they alone in a directory, and
+ * installed by {@link #commit} once the move succeeded. A sample that cannot
+ * be updated is marked stale instead, and is no longer selected until it is
+ * rebuilt: overwrites, nested samples, whose levels would lose their random
+ * order, and samples whose update fails. The load itself never fails because
+ * of its samples.
+ */
+@SuppressWarnings("deprecation")
+public class SampleMaintenance {
+
+  static final Log LOG = LogFactory.getLog(SampleMaintenance.class.getName());
+
+  // Job level settings
+  static final String SAMPLE_ROWS = "quicksilver.sample.maintain.sample.rows";
+  static final String SOURCE_ROWS = "quicksilver.sample.maintain.source.rows";
+
+  private final HiveConf conf;
+  private final Table table;
+  private final List<SampleInfo> updated = new ArrayList<SampleInfo>();
+  private final List<Path> outputs = new ArrayList<Path>();
+  private final List<SampleInfo> staleSamples = new ArrayList<SampleInfo>();
+
+  private SampleMaintenance(HiveConf conf, Table table) {
+    this.conf = conf;
+    this.table = table;
+  }
+
+  /**
+   * @return whether the samples of the table are maintained on loads, that is
+   *         whether quicksilver.sample.maintain is set and the table has
+   *         samples that are up to date
+   */
+  public static boolean isEnabled(HiveConf conf, Table table) {
+    if (!HiveConf.getBoolVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_MAINTAIN)) {
+      return false;
+    }
+    for (SampleInfo info : SampleCatalog.getSamples(table.getParameters())) {
+      if (!info.isStale()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Builds the updated samples of a table receiving new rows.
+   *
+   * @param deltas
+   *          directories holding only the new rows
+   * @param replace
+   *          whether the new rows replace existing ones
+   * @param tmpDir
+   *          scratch directory for the updated samples
+   * @return the updated and stale samples to record after the load
+   */
+  public static SampleMaintenance prepare(HiveConf conf, Hive db, Table table, List<Path> deltas,
+      boolean replace, Path tmpDir) {
+    if (replace) {
+      return stale(conf, table, "rows are replaced");
+    }
+    if (!TextInputFormat.class.equals(table.getInputFormatClass())) {
+      return stale(conf, table, "samples can only be maintained for text tables");
+    }
+
+    SampleMaintenance maintenance = new SampleMaintenance(conf, table);
+    for (SampleInfo info : SampleCatalog.getSamples(table.getParameters())) {
+      if (info.isStale()) {
+        continue;
+      }
+      if (info.isNested()) {
+        maintenance.markStale(info, "nested samples are not maintained");
+        continue;
+      }
+      Path output = new Path(tmpDir, info.getTableName());
+      try {
+        Table sample = db.getTable(table.getDbName(), info.getTableName());
+        RunningJob rj = info.isStratified()
+            ? maintenance.updateStratified(info, sample.getPath(), deltas, output)
+            : maintenance.updateUniform(info, sample.getPath(), deltas, output);
+        long[] counts = SampleBuilder.getRowCounts(rj);
+        info.setSourceRows(info.getSourceRows() + counts[0]);
+        info.setRows(counts[1]);
+        info.setBytes(getSize(output.getFileSystem(conf), output));
+        maintenance.updated.add(info);
+        maintenance.outputs.add(output);
+      } catch (Exception e) {
+        LOG.warn("Unable to update sample " + info.getTableName(), e);
+        maintenance.markStale(info, "its update failed");
+      }
+    }
+    return maintenance;
+  }
+
+  /**
+   * @return the maintenance of a table whose samples are all made stale by
+   *         the load
+   */
+  public static SampleMaintenance stale(HiveConf conf, Table table, String reason) {
+    SampleMaintenance maintenance = new SampleMaintenance(conf, table);
+    for (SampleInfo info : SampleCatalog.getSamples(table.getParameters())) {
+      if (!info.isStale()) {
+        maintenance.markStale(info, reason);
+      }
+    }
+    return maintenance;
+  }
+
+  private void markStale(SampleInfo info, String reason) {
+    LOG.warn("Sample " + info.getTableName() + " of " + table.getTableName()
+        + " must be rebuilt, " + reason);
+    info.setStale(true);
+    staleSamples.add(info);
+  }
+
+  /**
+   * Swaps the directories of the samples for their updated versions, and
+   * records the new sizes of the samples and the stale ones.
+   */
+  public void commit() throws HiveException {
+    Hive db = Hive.get(conf);
+    List<SampleInfo> infos = new ArrayList<SampleInfo>();
+    for (int i = 0; i < updated.size(); i++) {
+      SampleInfo info = updated.get(i);
+      try {
+        Path dir = db.getTable(table.getDbName(), info.getTableName()).getPath();
+        install(dir.getFileSystem(conf), outputs.get(i), dir);
+        infos.add(info);
+      } catch (Exception e) {
+        LOG.warn("Unable to install sample " + info.getTableName(), e);
+        markStale(info, "its update could not be installed");
+      }
+    }
+    infos.addAll(staleSamples);
+    if (infos.isEmpty()) {
+      return;
+    }
+
+    SampleCatalog catalog = new SampleCatalog(conf);
+    try {
+      catalog.updateSamples(table.getDbName(), table.getTableName(), infos);
+    } finally {
+      catalog.close();
+    }
+    for (SampleInfo info : infos) {
+      LOG.info((info.isStale() ? "Stale sample " : "Updated sample ") + info);
+    }
+  }
+
+  /**
+   * Replaces a sample directory by the staged one, which holds the data files
+   * only. The current directory is moved aside first and restored if the
+   * staged one cannot take its place, so the sample is never left half
+   * written.
+   */
+  static void install(FileSystem fs, Path staged, Path dir) throws IOException {
+    FileStatus[] status = fs.listStatus(staged);
+    if (status != null) {
+      for (FileStatus file : status) {
+        String name = file.getPath().getName();
+        if (name.startsWith("_") || name.startsWith(".")) {
+          fs.delete(file.getPath(), true);
+        }
+      }
+    }
+    Path old = new Path(staged.getParent(), staged.getName() + ".old");
+    fs.delete(old, true);
+    if (fs.exists(dir) && !fs.rename(dir, old)) {
+      throw new IOException("Unable to move " + dir + " to " + old);
+    }
+    if (!fs.rename(staged, dir)) {
+      if (fs.exists(old) && !fs.rename(old, dir)) {
+        LOG.error("Unable to restore " + dir + " from " + old);
+      }
+      throw new IOException("Unable to move " + staged + " to " + dir);
+    }
+    fs.delete(old, true);
+  }
+
+  private RunningJob updateUniform(SampleInfo info, Path sampleDir, List<Path> deltas,
+      Path output) throws IOException {
+    JobConf job = newJob("Update sample " + info.getTableName(), output);
+    job.setLong(SAMPLE_ROWS, info.getRows());
+    job.setLong(SOURCE_ROWS, info.getSourceRows());
+
+    MultipleInputs.addInputPath(job, sampleDir, TextInputFormat.class, UniformSampleMapper.class);
+    for (Path delta : deltas) {
+      MultipleInputs.addInputPath(job, delta, TextInputFormat.class, UniformDeltaMapper.class);
+    }
+    job.setMapOutputKeyClass(DoubleWritable.class);
+    job.setMapOutputValueClass(UpdateRecord.class);
+    job.setReducerClass(UniformUpdateReducer.class);
+    job.setNumReduceTasks(1);
+    return JobClient.runJob(job);
+  }
+
+  private RunningJob updateStratified(SampleInfo info, Path sampleDir, List<Path> deltas,
+      Path output) throws IOException {
+    JobConf job = newJob("Update stratified sample " + info.getTableName(), output);
+
+    List<FieldSchema> cols = table.getCols();
+    StringBuilder positions = new StringBuilder();
+    for (String column : info.getStrata()) {
+      int pos = -1;
+      for (int i = 0; i < cols.size(); i++) {
+        if (cols.get(i).getName().equalsIgnoreCase(column)) {
+          pos = i;
+        }
+      }
+      if (pos < 0) {
+        throw new IOException("Unknown stratification column " + column);
+      }
+      positions.append(positions.length() > 0 ? "," : "").append(pos);
+    }
+    String delimiter = table.getSerdeParam(Constants.FIELD_DELIM);
+    job.set(StratifiedSampleBuilder.COLUMNS, positions.toString());
+    job.set(StratifiedSampleBuilder.DELIMITER, delimiter == null
+        ? StratifiedSampleBuilder.DEFAULT_DELIMITER : delimiter);
+
+    MultipleInputs.addInputPath(job, sampleDir, TextInputFormat.class,
+        StratumSampleMapper.class);
+    for (Path delta : deltas) {
+      MultipleInputs.addInputPath(job, delta, TextInputFormat.class, StratumDeltaMapper.class);
+    }
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(UpdateRecord.class);
+    job.setReducerClass(StratumUpdateReducer.class);
+    return JobClient.runJob(job);
+  }
+
+  private JobConf newJob(String name, Path output) {
+    JobConf job = new JobConf(conf, SampleMaintenance.class);
+    job.setJobName(name);
+    FileOutputFormat.setOutputPath(job, output);
+    job.setOutputFormat(TextOutputFormat.class);
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(Text.class);
+    LOG.info(name + " of " + table.getTableName());
+    return job;
+  }
+
+  private static List<FileStatus> listFiles(FileSystem fs, Path dir) throws IOException {
+    List<FileStatus> files = new ArrayList<FileStatus>();
+    FileStatus[] status = fs.listStatus(dir);
+    if (status != null) {
+      for (FileStatus file : status) {
+        String name = file.getPath().getName();
+        if (!name.startsWith("_") && !name.startsWith(".")) {
+          files.add(file);
+        }
+      }
+    }
+    return files;
+  }
+
+  private static long getSize(FileSystem fs, Path dir) throws IOException {
+    long size = 0;
+    for (FileStatus file : listFiles(fs, dir)) {
+      size += file.getLen();
+    }
+    return size;
+  }
+
+  /**
+   * Draws the number of new rows among n rows drawn without replacement from
+   * oldRows + newRows rows.
+   */
+  static long drawNewRows(Random rnd, long n, long oldRows, long newRows) {
+    long k = 0;
+    for (long i = 0; i < n && newRows > 0; i++) {
+      if (rnd.nextDouble() * (oldRows + newRows) < newRows) {
+        newRows--;
+        k++;
+      } else {
+        oldRows--;
+      }
+    }
+    return k;
+  }
+
+  /**
+   * A new row count, a new row or a row of the current sample.
+   */
+  public static class UpdateRecord implements Writable {
+    static final byte COUNT = 0;
+    static final byte NEW_ROW = 1;
+    static final byte SAMPLE_ROW = 2;
+
+    private byte kind;
+    private double priority;
+    private long rows;
+    private final Text row = new Text();
+
+    public void set(byte kind, double priority, long rows, Text row) {
+      this.kind = kind;
+      this.priority = priority;
+      this.rows = rows;
+      this.row.set(row);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeByte(kind);
+      out.writeDouble(priority);
+      out.writeLong(rows);
+      row.write(out);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      kind = in.readByte();
+      priority = in.readDouble();
+      rows = in.readLong();
+      row.readFields(in);
+    }
+  }
+
+  private static final Text NO_ROW = new Text();
+
+  // Sorts before all priorities, so that the reducer sees the counts first
+  private static final DoubleWritable COUNT_KEY = new DoubleWritable(-1);
+
+  /**
+   * Emits the rows of the current sample with random priorities.
+   */
+  public static class UniformSampleMapper extends MapReduceBase implements
+      Mapper<LongWritable, Text, DoubleWritable, UpdateRecord> {
+
+    private Random rnd;
+    private final DoubleWritable priority = new DoubleWritable();
+    private final UpdateRecord record = new UpdateRecord();
+
+    @Override
+    public void configure(JobConf job) {
+      rnd = SampleBuilder.newRandom(job);
+    }
+
+    @Override
+    public void map(LongWritable key, Text value,
+        OutputCollector<DoubleWritable, UpdateRecord> output, Reporter reporter)
+        throws IOException {
+      priority.set(rnd.nextDouble());
+      record.set(UpdateRecord.SAMPLE_ROW, priority.get(), 0, value);
+      output.collect(priority, record);
+    }
+  }
+
+  /**
+   * Counts the new rows and keeps the n with the smallest random priorities,
+   * since the updated sample takes at most n of them.
+   */
+  public static class UniformDeltaMapper extends MapReduceBase implements
+      Mapper<LongWritable, Text, DoubleWritable, UpdateRecord> {
+
+    private PriorityReservoir<Text> reservoir;
+    private Random rnd;
+    private long rows;
+    private OutputCollector<DoubleWritable, UpdateRecord> output;
+
+    @Override
+    public void configure(JobConf job) {
+      reservoir = new PriorityReservoir<Text>(job.getLong(SAMPLE_ROWS, 0));
+      rnd = SampleBuilder.newRandom(job);
+    }
+
+    @Override
+    public void map(LongWritable key, Text value,
+        OutputCollector<DoubleWritable, UpdateRecord> output, Reporter reporter)
+        throws IOException {
+      this.output = output;
+      reporter.incrCounter(SampleBuilder.Counter.INPUT_ROWS, 1);
+      rows++;
+      double priority = rnd.nextDouble();
+      if (reservoir.accepts(priority)) {
+        reservoir.offer(priority, 1, new Text(value));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (output == null) {
+        return;
+      }
+      UpdateRecord record = new UpdateRecord();
+      record.set(UpdateRecord.COUNT, 0, rows, NO_ROW);
+      output.collect(COUNT_KEY, record);
+      DoubleWritable priority = new DoubleWritable();
+      for (PriorityReservoir.Entry<Text> e : reservoir.entries()) {
+        priority.set(e.getPriority());
+        record.set(UpdateRecord.NEW_ROW, e.getPriority(), 0, e.getItem());
+        output.collect(priority, record);
+      }
+    }
+  }
+
+  /**
+   * Keeps the k new rows and n - k sample rows with the smallest priorities,
+   * once the counts have given the number of new rows.
+   */
+  public static class UniformUpdateReducer extends MapReduceBase implements
+      Reducer<DoubleWritable, UpdateRecord, NullWritable, Text> {
+
+    private long sampleRows;
+    private long sourceRows;
+    private long newRows;
+    private Random rnd;
+    private long keepNew = -1;
+    private long keepSample;
+
+    @Override
+    public void configure(JobConf job) {
+      sampleRows = job.getLong(SAMPLE_ROWS, 0);
+      sourceRows = job.getLong(SOURCE_ROWS, 0);
+      rnd = SampleBuilder.newRandom(job);
+    }
+
+    @Override
+    public void reduce(DoubleWritable key, Iterator<UpdateRecord> values,
+        OutputCollector<NullWritable, Text> output, Reporter reporter) throws IOException {
+      while (values.hasNext()) {
+        UpdateRecord record = values.next();
+        if (record.kind == UpdateRecord.COUNT) {
+          newRows += record.rows;
+          continue;
+        }
+        if (keepNew < 0) {
+          keepNew = drawNewRows(rnd, sampleRows, sourceRows, newRows);
+          keepSample = sampleRows - keepNew;
+        }
+        if (record.kind == UpdateRecord.NEW_ROW ? keepNew-- > 0 : keepSample-- > 0) {
+          output.collect(NullWritable.get(), record.row);
+          reporter.incrCounter(SampleBuilder.Counter.SAMPLE_ROWS, 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Emits the rows of the current stratified sample by stratum, without their
+   * stratum size columns, and with the size of their stratum.
+   */
+  public static class StratumSampleMapper extends MapReduceBase implements
+      Mapper<LongWritable, Text, Text, UpdateRecord> {
+
+    private int[] columns;
+    private byte delimiter;
+    private final Text key = new Text();
+    private final Text row = new Text();
+    private final UpdateRecord record = new UpdateRecord();
+
+    @Override
+    public void configure(JobConf job) {
+      columns = StratifiedSampleBuilder.getColumns(job);
+      delimiter = (byte) job.get(StratifiedSampleBuilder.DELIMITER,
+          StratifiedSampleBuilder.DEFAULT_DELIMITER).charAt(0);
+    }
+
+    @Override
+    public void map(LongWritable offset, Text value,
+        OutputCollector<Text, UpdateRecord> output, Reporter reporter) throws IOException {
+      String line = value.toString();
+      String sep = String.valueOf((char) delimiter);
+      int last = line.lastIndexOf(sep);
+      int previous = last < 0 ? -1 : line.lastIndexOf(sep, last - 1);
+      if (previous < 0) {
+        throw new IOException("Row of a stratified sample without stratum sizes: " + line);
+      }
+      row.set(line.substring(0, previous));
+      key.set(StratifiedSampleBuilder.stratumKey(row, columns, delimiter));
+      record.set(UpdateRecord.SAMPLE_ROW, 0,
+          Long.parseLong(line.substring(previous + 1, last)), row);
+      output.collect(key, record);
+    }
+  }
+
+  /**
+   * Counts the new rows of every stratum and keeps the K with the smallest
+   * priorities, like {@link StratifiedSampleBuilder.StratumMapper}.
+   */
+  public static class StratumDeltaMapper extends MapReduceBase implements
+      Mapper<LongWritable, Text, Text, UpdateRecord> {
+
+    private int[] columns;
+    private byte delimiter;
+    private int cap;
+    private Random rnd;
+    private final Map<String, PriorityReservoir<Text>> reservoirs =
+        new HashMap<String, PriorityReservoir<Text>>();
+    private final Map<String, Long> counts = new HashMap<String, Long>();
+    private OutputCollector<Text, UpdateRecord> output;
+
+    @Override
+    public void configure(JobConf job) {
+      columns = StratifiedSampleBuilder.getColumns(job);
+      delimiter = (byte) job.get(StratifiedSampleBuilder.DELIMITER,
+          StratifiedSampleBuilder.DEFAULT_DELIMITER).charAt(0);
+      cap = HiveConf.getIntVar(job, HiveConf.ConfVars.QUICKSILVER_SAMPLE_STRATUM_CAP);
+      rnd = SampleBuilder.newRandom(job);
+    }
+
+    @Override
+    public void map(LongWritable key, Text value,
+        OutputCollector<Text, UpdateRecord> output, Reporter reporter) throws IOException {
+      this.output = output;
+      reporter.incrCounter(SampleBuilder.Counter.INPUT_ROWS, 1);
+
+      String k = StratifiedSampleBuilder.stratumKey(value, columns, delimiter);
+      PriorityReservoir<Text> reservoir = reservoirs.get(k);
+      if (reservoir == null) {
+        reservoir = new PriorityReservoir<Text>(cap);
+        reservoirs.put(k, reservoir);
+        counts.put(k, 0L);
+      }
+      counts.put(k, counts.get(k) + 1);
+
+      double priority = rnd.nextDouble();
+      if (reservoir.accepts(priority)) {
+        reservoir.offer(priority, 1, new Text(value));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (output == null) {
+        return;
+      }
+      Text key = new Text();
+      UpdateRecord record = new UpdateRecord();
+      for (Map.Entry<String, PriorityReservoir<Text>> e : reservoirs.entrySet()) {
+        key.set(e.getKey());
+        record.set(UpdateRecord.COUNT, 0, counts.get(e.getKey()), NO_ROW);
+        output.collect(key, record);
+        for (PriorityReservoir.Entry<Text> sampled : e.getValue().entries()) {
+          record.set(UpdateRecord.NEW_ROW, sampled.getPriority(), 0, sampled.getItem());
+          output.collect(key, record);
+        }
+      }
+      reservoirs.clear();
+      counts.clear();
+    }
+  }
+
+  /**
+   * Updates the sample of every stratum and appends the new stratum sizes to
+   * its rows.
+   */
+  public static class StratumUpdateReducer extends MapReduceBase implements
+      Reducer<Text, UpdateRecord, NullWritable, Text> {
+
+    private int cap;
+    private String delimiter;
+    private Random rnd;
+    private final Text out = new Text();
+
+    @Override
+    public void configure(JobConf job) {
+      cap = HiveConf.getIntVar(job, HiveConf.ConfVars.QUICKSILVER_SAMPLE_STRATUM_CAP);
+      delimiter = job.get(StratifiedSampleBuilder.DELIMITER,
+          StratifiedSampleBuilder.DEFAULT_DELIMITER);
+      rnd = SampleBuilder.newRandom(job);
+    }
+
+    @Override
+    public void reduce(Text key, Iterator<UpdateRecord> values,
+        OutputCollector<NullWritable, Text> output, Reporter reporter) throws IOException {
+      long oldRows = 0;
+      long newRows = 0;
+      List<Text> sampleRows = new ArrayList<Text>();
+      PriorityReservoir<Text> reservoir = new PriorityReservoir<Text>(cap);
+
+      while (values.hasNext()) {
+        UpdateRecord record = values.next();
+        if (record.kind == UpdateRecord.COUNT) {
+          newRows += record.rows;
+        } else if (record.kind == UpdateRecord.SAMPLE_ROW) {
+          oldRows = Math.max(oldRows, record.rows);
+          sampleRows.add(new Text(record.row));
+        } else if (reservoir.accepts(record.priority)) {
+          reservoir.offer(record.priority, 1, new Text(record.row));
+        }
+      }
+
+      long rows = Math.min(cap, oldRows + newRows);
+      long keepNew = drawNewRows(rnd, rows, oldRows, newRows);
+      List<Text> kept = new ArrayList<Text>();
+      for (PriorityReservoir.Entry<Text> e : reservoir.entries()) {
+        if (kept.size() == keepNew) {
+          break;
+        }
+        kept.add(e.getItem());
+      }
+      Collections.shuffle(sampleRows, rnd);
+      kept.addAll(sampleRows.subList(0, (int) Math.min(sampleRows.size(), rows - keepNew)));
+
+      ByteBuffer suffix = Text.encode(delimiter + (oldRows + newRows) + delimiter
+          + kept.size());
+      for (Text row : kept) {
+        out.set(row);
+        out.append(suffix.array(), 0, suffix.limit());
+        output.collect(NullWritable.get(), out);
+        reporter.incrCounter(SampleBuilder.Counter.SAMPLE_ROWS, 1);
+      }
+    }
+  }
+}
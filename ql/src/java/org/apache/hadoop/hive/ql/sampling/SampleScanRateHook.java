@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.ExecDriver;
+import org.apache.hadoop.hive.ql.exec.Task;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.hooks.ExecuteWithHookContext;
+import org.apache.hadoop.hive.ql.hooks.HookContext;
+import org.apache.hadoop.hive.ql.hooks.ReadEntity;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+
+/**
+ * Post execution hook measuring the scan rate of samples, for
+ * {@link SampleSelector}. Enable it with
+ * <code>hive.exec.post.hooks=org.apache.hadoop.hive.ql.sampling.SampleScanRateHook</code>.
+ *
+ * When a query read exactly one sample table, the size of the sample read
+ * over the elapsed time of the query is recorded in the catalog as the scan
+ * rate of that sample, averaged with the previous measurement. Of a nested
+ * sample only the levels its jobs read count.
+ */
+public class SampleScanRateHook implements ExecuteWithHookContext {
+
+  static final Log LOG = LogFactory.getLog(SampleScanRateHook.class.getName());
+
+  @Override
+  public void run(HookContext hookContext) throws Exception {
+    if (hookContext.getHookType() != HookContext.HookType.POST_EXEC_HOOK) {
+      return;
+    }
+    Long start = hookContext.getQueryPlan().getQueryStartTime();
+    if (start == null) {
+      return;
+    }
+    double seconds = (System.currentTimeMillis() - start.longValue()) / 1000.0;
+
+    Table sample = null;
+    for (ReadEntity input : hookContext.getInputs()) {
+      if (input.getType() != ReadEntity.Type.TABLE) {
+        continue;
+      }
+      if (SampleCatalog.getBaseTable(input.getTable().getParameters()) != null) {
+        if (sample != null) {
+          // The time is shared between several samples
+          return;
+        }
+        sample = input.getTable();
+      }
+    }
+    if (sample == null || seconds <= 0) {
+      return;
+    }
+
+    int levels = getScannedLevels(hookContext.getQueryPlan().getRootTasks(), sample);
+    String base = SampleCatalog.getBaseTable(sample.getParameters());
+    SampleCatalog catalog = new SampleCatalog(hookContext.getConf());
+    try {
+      List<SampleInfo> updated = new ArrayList<SampleInfo>();
+      for (SampleInfo info : catalog.getSamples(sample.getDbName(), base)) {
+        if (info.getTableName().equals(sample.getTableName().toLowerCase())) {
+          long rate = (long) (getScannedBytes(info, levels) / seconds);
+          if (info.getScanRate() > 0) {
+            rate = (rate + info.getScanRate()) / 2;
+          }
+          info.setScanRate(rate);
+          updated.add(info);
+        }
+      }
+      if (!updated.isEmpty()) {
+        catalog.updateSamples(sample.getDbName(), base, updated);
+        LOG.info("Recorded scan rate of " + updated.get(0));
+      }
+    } finally {
+      catalog.close();
+    }
+  }
+
+  /**
+   * @return the number of levels of a sample read by the jobs of a query, or 0
+   *         if any of them reads the whole sample
+   */
+  static int getScannedLevels(List<Task<? extends Serializable>> rootTasks, Table sample) {
+    String dir = sample.getPath().toUri().getPath();
+    int levels = 0;
+    for (ExecDriver task : Utilities.getMRTasks(rootTasks)) {
+      MapredWork work = task.getWork();
+      for (Map.Entry<String, ArrayList<String>> e : work.getPathToAliases().entrySet()) {
+        if (!new Path(e.getKey()).toUri().getPath().equals(dir)) {
+          continue;
+        }
+        for (String alias : e.getValue()) {
+          Integer level = work.getNameToSampleLevel() == null ? null
+              : work.getNameToSampleLevel().get(alias);
+          if (level == null) {
+            return 0;
+          }
+          levels = Math.max(levels, level.intValue());
+        }
+      }
+    }
+    return levels;
+  }
+
+  /**
+   * @return the size of the first levels of a nested sample, or of the whole
+   *         sample when all of it is read
+   */
+  static long getScannedBytes(SampleInfo info, int levels) {
+    if (!info.isNested() || levels <= 0 || levels >= info.getLevelBytes().size()) {
+      return info.getBytes();
+    }
+    return info.getLevelBytes().get(levels - 1);
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxStatistics;
+
+/**
+ * Picks the sample of a table that answers a query within its
+ * {@link ApproxBound}.
+ *
+ * For a time bound, the largest sample whose estimated scan time fits in the
+ * budget is picked, since it gives the most accurate answer the budget allows;
+ * if none fits, the smallest sample is used. For an error bound, the smallest
+ * sample whose estimated error meets the bound is picked; if none does, the
+ * base table is scanned, which answers exactly.
+ *
+ * The scan time of a sample is its size over its measured scan rate (see
+ * {@link SampleScanRateHook}). The error is the confidence interval half width
+ * of a mean over a uniform sample, relative to the mean:
+ * t * cv / sqrt(n) * sqrt(1 - n/N), where t is the quantile of the interval
+ * (see {@link ApproxStatistics#quantile}) and cv is the coefficient of variation
+ * measured on a pilot query. Samples without measurements use the configured
+ * defaults. Only uniform samples are candidates, since a stratified sample
+ * must be reweighted per stratum by the query itself, and stale samples are
+ * skipped.
+ *
+ * Every level of a nested sample is a candidate of its own, so that a query
+ * reads only the levels its bound needs. The choice is final: a query whose
+ * intervals come out wider than its bound is not escalated to the next level
+ * (see {@link SampleLevelFilter}).
+ */
+public class SampleSelector {
+
+  static final Log LOG = LogFactory.getLog(SampleSelector.class.getName());
+
+  private final long defaultScanRate;
+  private final double defaultCv;
+
+  public SampleSelector(Configuration conf) {
+    this(HiveConf.getLongVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_SCAN_RATE),
+        HiveConf.getFloatVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_PILOT_CV));
+  }
+
+  public SampleSelector(long defaultScanRate, double defaultCv) {
+    this.defaultScanRate = defaultScanRate;
+    this.defaultCv = defaultCv;
+  }
+
+  /**
+   * @param samples
+   *          the samples of the table, smallest first
+   * @return the sample to scan, or null to scan the base table
+   */
+  public SampleInfo select(List<SampleInfo> samples, ApproxBound bound) {
+    SampleInfo chosen = null;
+    SampleInfo smallest = null;
+
+    for (SampleInfo sample : getCandidates(samples)) {
+      if (smallest == null) {
+        smallest = sample;
+      }
+      if (bound.getKind() == ApproxBound.Kind.TIME) {
+        if (estimateSeconds(sample) <= bound.getSeconds()) {
+          chosen = sample;
+        }
+      } else if (estimateError(sample, bound.getConfidence()) <= bound.getError()) {
+        chosen = sample;
+        break;
+      }
+    }
+
+    if (chosen == null && bound.getKind() == ApproxBound.Kind.TIME) {
+      chosen = smallest;
+    }
+    LOG.info("Selected " + (chosen == null ? "base table" : chosen.toString()) + " for "
+        + bound);
+    return chosen;
+  }
+
+  /**
+   * @return the uniform samples and levels of nested samples that are up to
+   *         date, smallest first
+   */
+  private static List<SampleInfo> getCandidates(List<SampleInfo> samples) {
+    List<SampleInfo> candidates = new ArrayList<SampleInfo>();
+    for (SampleInfo sample : samples) {
+      if (!sample.isStratified() && !sample.isStale()) {
+        candidates.addAll(sample.getNestedLevels());
+      }
+    }
+    Collections.sort(candidates, SampleCatalog.BY_SIZE);
+    return candidates;
+  }
+
+  /**
+   * @return the estimated time to scan the sample, in seconds
+   */
+  public double estimateSeconds(SampleInfo sample) {
+    long rate = sample.getScanRate() > 0 ? sample.getScanRate() : defaultScanRate;
+    return ((double) sample.getBytes()) / rate;
+  }
+
+  /**
+   * @return the estimated relative error of a mean over the sample
+   */
+  public double estimateError(SampleInfo sample, double confidence) {
+    if (sample.getRows() <= 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double cv = sample.getCv() > 0 ? sample.getCv() : defaultCv;
+    double fpc = 1 - Math.min(1, sample.getFraction());
+    return ApproxStatistics.quantile(confidence, sample.getRows()) * cv
+        * Math.sqrt(fpc / sample.getRows());
+  }
+}
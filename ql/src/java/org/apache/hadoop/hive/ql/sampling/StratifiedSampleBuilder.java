@@ -0,0 +1,360 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+
+/**
+ * Builds a stratified sample of a set of delimited text files as a MapReduce
+ * job.
+ *
+ * Rows are grouped into strata by the values of a query column set (QCS), and
+ * at most K rows are kept per stratum, so rare groups are kept entirely while
+ * frequent groups are sampled down to K rows. Every sampled row is written
+ * with two extra trailing columns: the number of rows of its stratum in the
+ * input (stratum_rows) and the number of rows kept for the stratum
+ * (stratum_sample_rows). These are exactly the totalRows and sampleRows
+ * arguments of approx_sum and approx_count, so a query grouped by the QCS
+ * columns is reweighted per stratum with
+ * <code>approx_sum(x, stratum_sample_rows, stratum_rows)</code>.
+ *
+ * Mappers keep a {@link PriorityReservoir} of K rows and a row count per
+ * stratum, and the reducers merge them per stratum. Mapper memory therefore
+ * grows with the number of strata times K, not with the input size.
+ */
+@SuppressWarnings("deprecation")
+public class StratifiedSampleBuilder {
+
+  static final Log LOG = LogFactory.getLog(StratifiedSampleBuilder.class.getName());
+
+  static final String COLUMNS = "quicksilver.sample.stratum.columns";
+  static final String DELIMITER = "quicksilver.sample.stratum.delimiter";
+
+  /** Column of a stratified sample holding the number of rows of the stratum. */
+  public static final String STRATUM_ROWS = "stratum_rows";
+
+  /** Column of a stratified sample holding the number of rows kept for the stratum. */
+  public static final String STRATUM_SAMPLE_ROWS = "stratum_sample_rows";
+
+  /** Hive's default field delimiter. */
+  public static final String DEFAULT_DELIMITER = "\u0001";
+
+  /**
+   * Build a sample keeping at most <code>cap</code> rows per stratum.
+   *
+   * @param qcsColumns
+   *          zero based positions of the stratification columns
+   * @param delimiter
+   *          single character field delimiter of the input rows
+   */
+  public RunningJob build(Path[] srcs, Path dst, Configuration conf, int[] qcsColumns,
+      String delimiter, int cap) throws IOException {
+    if (qcsColumns.length == 0) {
+      throw new IOException("Stratified sample needs at least one column");
+    }
+    if (delimiter.length() != 1) {
+      throw new IOException("Field delimiter must be a single character: " + delimiter);
+    }
+
+    JobConf job = new JobConf(conf, StratifiedSampleBuilder.class);
+    job.setJobName("Build stratified sample " + dst.getName());
+
+    StringBuilder cols = new StringBuilder();
+    for (int i = 0; i < qcsColumns.length; i++) {
+      if (i > 0) {
+        cols.append(',');
+      }
+      cols.append(qcsColumns[i]);
+    }
+    job.set(COLUMNS, cols.toString());
+    job.set(DELIMITER, delimiter);
+    HiveConf.setIntVar(job, HiveConf.ConfVars.QUICKSILVER_SAMPLE_STRATUM_CAP, cap);
+
+    FileInputFormat.setInputPaths(job, srcs);
+    job.setInputFormat(TextInputFormat.class);
+    FileOutputFormat.setOutputPath(job, dst);
+    job.setOutputFormat(TextOutputFormat.class);
+
+    job.setMapperClass(StratumMapper.class);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(StratumRecord.class);
+    job.setReducerClass(StratumReducer.class);
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(Text.class);
+
+    LOG.info("Building stratified sample on columns " + cols + " with cap " + cap
+        + " into " + dst);
+    return JobClient.runJob(job);
+  }
+
+  public RunningJob build(Path[] srcs, Path dst, Configuration conf, int[] qcsColumns)
+      throws IOException {
+    return build(srcs, dst, conf, qcsColumns, DEFAULT_DELIMITER,
+        HiveConf.getIntVar(conf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_STRATUM_CAP));
+  }
+
+  static int[] getColumns(JobConf job) {
+    String[] cols = job.get(COLUMNS).split(",");
+    int[] result = new int[cols.length];
+    for (int i = 0; i < cols.length; i++) {
+      result[i] = Integer.parseInt(cols[i].trim());
+    }
+    return result;
+  }
+
+  /**
+   * Extracts the stratum key of a row: the QCS fields joined by the delimiter.
+   * Missing trailing fields are treated as empty.
+   */
+  static String stratumKey(Text row, int[] columns, byte delimiter) {
+    byte[] bytes = row.getBytes();
+    int length = row.getLength();
+    StringBuilder key = new StringBuilder();
+
+    for (int c = 0; c < columns.length; c++) {
+      int field = 0;
+      int start = 0;
+      while (field < columns[c] && start <= length) {
+        int next = indexOf(bytes, start, length, delimiter);
+        start = (next < 0) ? length + 1 : next + 1;
+        field++;
+      }
+      if (c > 0) {
+        key.append((char) delimiter);
+      }
+      if (start <= length) {
+        int end = indexOf(bytes, start, length, delimiter);
+        if (end < 0) {
+          end = length;
+        }
+        key.append(Text.decode(bytes, start, end - start));
+      }
+    }
+    return key.toString();
+  }
+
+  private static int indexOf(byte[] bytes, int start, int length, byte b) {
+    for (int i = start; i < length; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * A sampled row with its priority, or the row count of a stratum in one
+   * split (in which case the row is empty).
+   */
+  public static class StratumRecord implements Writable {
+    private static final byte[] NO_ROW = new byte[0];
+
+    private double priority;
+    private long rows;
+    private final Text row = new Text();
+
+    public StratumRecord() {
+    }
+
+    public void setCount(long rows) {
+      this.priority = 0;
+      this.rows = rows;
+      this.row.set(NO_ROW, 0, 0);
+    }
+
+    public void setRow(double priority, Text row) {
+      this.priority = priority;
+      this.rows = 0;
+      this.row.set(row);
+    }
+
+    public boolean isCount() {
+      return rows > 0;
+    }
+
+    public double getPriority() {
+      return priority;
+    }
+
+    public long getRows() {
+      return rows;
+    }
+
+    public Text getRow() {
+      return row;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeDouble(priority);
+      out.writeLong(rows);
+      row.write(out);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      priority = in.readDouble();
+      rows = in.readLong();
+      row.readFields(in);
+    }
+  }
+
+  private static class Stratum {
+    long rows;
+    final PriorityReservoir<Text> reservoir;
+
+    Stratum(int cap) {
+      reservoir = new PriorityReservoir<Text>(cap);
+    }
+  }
+
+  /**
+   * Keeps a reservoir of K rows and a row count per stratum of the split.
+   */
+  public static class StratumMapper extends MapReduceBase implements
+      Mapper<LongWritable, Text, Text, StratumRecord> {
+
+    private int[] columns;
+    private byte delimiter;
+    private int cap;
+    private Random rnd;
+    private final Map<String, Stratum> strata = new HashMap<String, Stratum>();
+    private OutputCollector<Text, StratumRecord> output;
+
+    @Override
+    public void configure(JobConf job) {
+      columns = getColumns(job);
+      delimiter = (byte) job.get(DELIMITER, DEFAULT_DELIMITER).charAt(0);
+      cap = HiveConf.getIntVar(job, HiveConf.ConfVars.QUICKSILVER_SAMPLE_STRATUM_CAP);
+      rnd = SampleBuilder.newRandom(job);
+    }
+
+    @Override
+    public void map(LongWritable key, Text value,
+        OutputCollector<Text, StratumRecord> output, Reporter reporter) throws IOException {
+      this.output = output;
+      reporter.incrCounter(SampleBuilder.Counter.INPUT_ROWS, 1);
+
+      String k = stratumKey(value, columns, delimiter);
+      Stratum stratum = strata.get(k);
+      if (stratum == null) {
+        stratum = new Stratum(cap);
+        strata.put(k, stratum);
+      }
+      stratum.rows++;
+
+      double priority = rnd.nextDouble();
+      if (stratum.reservoir.accepts(priority)) {
+        stratum.reservoir.offer(priority, 1, new Text(value));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (output == null) {
+        return;
+      }
+      Text key = new Text();
+      StratumRecord record = new StratumRecord();
+      for (Map.Entry<String, Stratum> e : strata.entrySet()) {
+        key.set(e.getKey());
+        record.setCount(e.getValue().rows);
+        output.collect(key, record);
+        for (PriorityReservoir.Entry<Text> sampled : e.getValue().reservoir.entries()) {
+          record.setRow(sampled.getPriority(), sampled.getItem());
+          output.collect(key, record);
+        }
+      }
+      strata.clear();
+    }
+  }
+
+  /**
+   * Merges the per-split reservoirs of a stratum and appends the stratum size
+   * and sample size to every kept row.
+   */
+  public static class StratumReducer extends MapReduceBase implements
+      Reducer<Text, StratumRecord, NullWritable, Text> {
+
+    private int cap;
+    private String delimiter;
+    private final Text out = new Text();
+
+    @Override
+    public void configure(JobConf job) {
+      cap = HiveConf.getIntVar(job, HiveConf.ConfVars.QUICKSILVER_SAMPLE_STRATUM_CAP);
+      delimiter = job.get(DELIMITER, DEFAULT_DELIMITER);
+    }
+
+    @Override
+    public void reduce(Text key, Iterator<StratumRecord> values,
+        OutputCollector<NullWritable, Text> output, Reporter reporter) throws IOException {
+      long stratumRows = 0;
+      PriorityReservoir<Text> reservoir = new PriorityReservoir<Text>(cap);
+
+      while (values.hasNext()) {
+        StratumRecord record = values.next();
+        if (record.isCount()) {
+          stratumRows += record.getRows();
+        } else if (reservoir.accepts(record.getPriority())) {
+          reservoir.offer(record.getPriority(), 1, new Text(record.getRow()));
+        }
+      }
+
+      List<PriorityReservoir.Entry<Text>> sampled = reservoir.entries();
+      ByteBuffer suffix = Text.encode(delimiter + stratumRows + delimiter + sampled.size());
+      for (PriorityReservoir.Entry<Text> e : sampled) {
+        out.set(e.getItem());
+        out.append(suffix.array(), 0, suffix.limit());
+        output.collect(NullWritable.get(), out);
+        reporter.incrCounter(SampleBuilder.Counter.SAMPLE_ROWS, 1);
+      }
+    }
+  }
+}
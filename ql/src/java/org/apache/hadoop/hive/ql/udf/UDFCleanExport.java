@@ -24,7 +24,10 @@ import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.Murmur3;
 import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.ByteStream;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
@@ -36,14 +39,19 @@ import org.apache.hadoop.hive.ql.exec.TaskExecutionException;
 import java.util.Formatter;
 import java.util.Locale;
 import java.util.ArrayList;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.math.BigInteger;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.File;
 
 /**
+ * Emits each row with its hash and a dup count of 1, which SampleClean keys
+ * the dirty and clean samples on.
+ *
+ * The hash is the 128 bit Murmur3 hash of the fields serialized in the
+ * LazyBinary format, each after a null flag, so that it depends on the
+ * values and types of the fields and not on how they print. It is emitted as
+ * 32 lowercase hex digits. The buffers and the forwarded row are reused.
+ *
  * @see org.apache.hadoop.hive.ql.udf.generic.GenericUDF
  */
 @Description(name = "clean_export",
@@ -56,6 +64,14 @@ public class UDFCleanExport extends GenericUDTF {
   private FileWriter writer = null;
   private  ArrayList<String> fieldNames;
 
+  private static final byte[] HEX = "0123456789abcdef".getBytes();
+  private final ByteStream.Output fieldBytes = new ByteStream.Output();
+  private final long[] hash = new long[2];
+  private final byte[] hex = new byte[32];
+  private final Text hashText = new Text();
+  private final Text dupText = new Text("1");
+  private Object[] forwardObj;
+
   @Override
   public StructObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
     if (arguments.length < 1) {
@@ -77,6 +93,8 @@ public class UDFCleanExport extends GenericUDTF {
       }
 
       partitionId = Math.random();
+      argumentOIs = arguments;
+      forwardObj = new Object[arguments.length + 2];
 
     return ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames,
             fieldOIs);
@@ -86,31 +104,31 @@ public class UDFCleanExport extends GenericUDTF {
     public void close() throws HiveException {
     }
 
-    public String getEncodedSha1Sum( String key ) {
-        try {
-            MessageDigest md = MessageDigest.getInstance( "SHA1" );
-            md.update( key.getBytes() );
-            return new BigInteger( 1, md.digest() ).toString(16);
-        }
-        catch (NoSuchAlgorithmException e) {
-            return "";
-        }
-    }
-
   @Override
   public void process(Object[] arguments) throws HiveException {
-    ArrayList argumentList = new ArrayList();
-
-    argumentList.add(new Text("1"));
-
+    fieldBytes.reset();
     for (int i = 0; i < arguments.length; i++) {
-      argumentList.add(arguments[i]);
+      if (arguments[i] == null) {
+        fieldBytes.write(0);
+      } else {
+        fieldBytes.write(1);
+        LazyBinarySerDe.serialize(fieldBytes, arguments[i], argumentOIs[i], false, true);
+      }
+    }
+    Murmur3.hash128(fieldBytes.getData(), 0, fieldBytes.getCount(), 0, hash);
+    for (int i = 0; i < 16; i++) {
+      int b = (int) (hash[i >> 3] >>> (56 - 8 * (i & 7))) & 0xff;
+      hex[2 * i] = HEX[b >>> 4];
+      hex[2 * i + 1] = HEX[b & 0xf];
     }
+    hashText.set(hex);
 
-      argumentList.add(0,new Text(getEncodedSha1Sum(argumentList.toString())));
+    forwardObj[0] = hashText;
+    forwardObj[1] = dupText;
+    System.arraycopy(arguments, 0, forwardObj, 2, arguments.length);
 
     recordPrimaryKey++; //increment the record key
-    forward(argumentList.toArray());
+    forward(forwardObj);
   }
 
   @Override
@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Applies an ordered list of SampleClean formats to a string in one pass:
+ * trim strips the spaces around it, number keeps its first run of digits
+ * and replace replaces every occurrence of a string by another.
+ *
+ * The formats work on the UTF-8 bytes of the string, which are never decoded:
+ * spaces and digits are single bytes that no multibyte character contains,
+ * and a replaced string matches whole characters only. Each format writes
+ * into one of two buffers, reading from the other, and the result is a
+ * reused Text.
+ */
+@Description(name = "clean_format",
+    value = "_FUNC_(str, format, ...) - applies the formats to str in order",
+    extended = "The formats are 'trim', 'number' and 'replace' followed by the string"
+    + " to replace and its replacement.\n"
+    + "Example:\n"
+    + "  > SELECT _FUNC_(' a1b ', 'trim', 'replace', 'a', 'A') FROM src LIMIT 1;\n"
+    + "  'A1b'")
+public class UDFCleanFormat extends GenericUDF {
+
+  private static final int TRIM = 0;
+  private static final int NUMBER = 1;
+  private static final int REPLACE = 2;
+
+  private StringObjectInspector inputOI;
+  private int[] formats;
+  private byte[][] targets;
+  private byte[][] replacements;
+
+  private byte[][] buffers = new byte[][] {new byte[64], new byte[64]};
+  private final Text result = new Text();
+
+  @Override
+  public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+    if (arguments.length < 2) {
+      throw new UDFArgumentLengthException(
+          "The function CLEAN_FORMAT(str, format, ...) needs at least one format.");
+    }
+    if (arguments[0].getCategory() != ObjectInspector.Category.PRIMITIVE
+        || ((PrimitiveObjectInspector) arguments[0]).getPrimitiveCategory()
+        != PrimitiveCategory.STRING) {
+      throw new UDFArgumentTypeException(0,
+          "The first argument of CLEAN_FORMAT must be a string but "
+          + arguments[0].getTypeName() + " was given.");
+    }
+    inputOI = (StringObjectInspector) arguments[0];
+
+    ArrayList<Integer> formatList = new ArrayList<Integer>();
+    ArrayList<byte[]> targetList = new ArrayList<byte[]>();
+    ArrayList<byte[]> replacementList = new ArrayList<byte[]>();
+    for (int i = 1; i < arguments.length; i++) {
+      String format = new String(getConstantBytes(arguments, i)).toLowerCase();
+      if (format.equals("trim")) {
+        formatList.add(TRIM);
+        targetList.add(null);
+        replacementList.add(null);
+      } else if (format.equals("number")) {
+        formatList.add(NUMBER);
+        targetList.add(null);
+        replacementList.add(null);
+      } else if (format.equals("replace")) {
+        if (i + 2 >= arguments.length) {
+          throw new UDFArgumentLengthException(
+              "The format replace of CLEAN_FORMAT takes the string to replace and its"
+              + " replacement.");
+        }
+        formatList.add(REPLACE);
+        targetList.add(getConstantBytes(arguments, ++i));
+        replacementList.add(getConstantBytes(arguments, ++i));
+      } else {
+        throw new UDFArgumentException("Unknown format of CLEAN_FORMAT: " + format);
+      }
+    }
+
+    formats = new int[formatList.size()];
+    for (int i = 0; i < formats.length; i++) {
+      formats[i] = formatList.get(i);
+    }
+    targets = targetList.toArray(new byte[0][]);
+    replacements = replacementList.toArray(new byte[0][]);
+    return PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+  }
+
+  private static byte[] getConstantBytes(ObjectInspector[] arguments, int i)
+      throws UDFArgumentException {
+    if (!ObjectInspectorUtils.isConstantObjectInspector(arguments[i])) {
+      throw new UDFArgumentTypeException(i,
+          "The formats of CLEAN_FORMAT must be constant strings but "
+          + arguments[i].getTypeName() + " was given.");
+    }
+    Object value = ((ConstantObjectInspector) arguments[i]).getWritableConstantValue();
+    if (!(value instanceof Text)) {
+      throw new UDFArgumentTypeException(i,
+          "The formats of CLEAN_FORMAT must be constant strings but "
+          + arguments[i].getTypeName() + " was given.");
+    }
+    Text text = (Text) value;
+    return Arrays.copyOf(text.getBytes(), text.getLength());
+  }
+
+  @Override
+  public Object evaluate(DeferredObject[] arguments) throws HiveException {
+    Object input = arguments[0].get();
+    if (input == null) {
+      return null;
+    }
+    Text text = inputOI.getPrimitiveWritableObject(input);
+
+    // the bytes of the string are [start, end) of data
+    byte[] data = text.getBytes();
+    int start = 0;
+    int end = text.getLength();
+    int next = 0;
+    for (int f = 0; f < formats.length; f++) {
+      switch (formats[f]) {
+      case TRIM:
+        while (start < end && data[start] == ' ') {
+          start++;
+        }
+        while (end > start && data[end - 1] == ' ') {
+          end--;
+        }
+        break;
+      case NUMBER:
+        while (start < end && !isDigit(data[start])) {
+          start++;
+        }
+        int digits = start;
+        while (digits < end && isDigit(data[digits])) {
+          digits++;
+        }
+        end = digits;
+        break;
+      case REPLACE:
+        byte[] target = targets[f];
+        byte[] replacement = replacements[f];
+        if (target.length == 0 || indexOf(data, start, end, target) < 0) {
+          break;
+        }
+        // at most one replacement per byte of the target
+        int capacity = (end - start) / target.length * replacement.length + (end - start);
+        if (buffers[next].length < capacity) {
+          buffers[next] = new byte[capacity];
+        }
+        byte[] out = buffers[next];
+        int length = 0;
+        int from = start;
+        for (int at = indexOf(data, from, end, target); at >= 0;
+            at = indexOf(data, from, end, target)) {
+          System.arraycopy(data, from, out, length, at - from);
+          length += at - from;
+          System.arraycopy(replacement, 0, out, length, replacement.length);
+          length += replacement.length;
+          from = at + target.length;
+        }
+        System.arraycopy(data, from, out, length, end - from);
+        length += end - from;
+        data = out;
+        start = 0;
+        end = length;
+        next = 1 - next;
+        break;
+      default:
+        break;
+      }
+    }
+    result.set(data, start, end - start);
+    return result;
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private static int indexOf(byte[] data, int start, int end, byte[] target) {
+    for (int i = start; i <= end - target.length; i++) {
+      int j = 0;
+      while (j < target.length && data[i + j] == target[j]) {
+        j++;
+      }
+      if (j == target.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String getDisplayString(String[] children) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("clean_format(");
+    for (int i = 0; i < children.length; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(children[i]);
+    }
+    sb.append(")");
+    return sb.toString();
+  }
+}
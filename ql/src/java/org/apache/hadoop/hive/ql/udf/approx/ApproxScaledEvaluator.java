@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Scales the result of a total, such as sum or count, over a uniform sample
+ * up to the table it was drawn from, by the ratio of the rows of the table
+ * to the rows of the sample. The partial aggregations and the type of the
+ * result are those of the wrapped aggregate, so the rest of the plan is
+ * unchanged; the estimate is the one of the approx_* counterpart of the
+ * aggregate (see {@link org.apache.hadoop.hive.ql.optimizer.ApproxRewriter}).
+ */
+public class ApproxScaledEvaluator extends GenericUDAFEvaluator {
+
+  private GenericUDAFEvaluator evaluator;
+  private double scale = 1.0;
+
+  // For FINAL and COMPLETE
+  private PrimitiveObjectInspector resultOI;
+  private LongWritable longResult;
+  private DoubleWritable doubleResult;
+
+  public GenericUDAFEvaluator getEvaluator() {
+    return evaluator;
+  }
+
+  public void setEvaluator(GenericUDAFEvaluator evaluator) {
+    this.evaluator = evaluator;
+  }
+
+  /**
+   * @return the rows of the table over the rows of the sample
+   */
+  public double getScale() {
+    return scale;
+  }
+
+  public void setScale(double scale) {
+    this.scale = scale;
+  }
+
+  @Override
+  public void configure(Configuration conf) {
+    evaluator.configure(conf);
+  }
+
+  @Override
+  public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+    super.init(m, parameters);
+    ObjectInspector outputOI = evaluator.init(m, parameters);
+
+    if (mode == Mode.FINAL || mode == Mode.COMPLETE) {
+      resultOI = (PrimitiveObjectInspector) outputOI;
+      switch (resultOI.getPrimitiveCategory()) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        longResult = new LongWritable();
+        return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+      default:
+        doubleResult = new DoubleWritable();
+        return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+      }
+    }
+    return outputOI;
+  }
+
+  @Override
+  public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+    return evaluator.getNewAggregationBuffer();
+  }
+
+  @Override
+  public void reset(AggregationBuffer agg) throws HiveException {
+    evaluator.reset(agg);
+  }
+
+  @Override
+  public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+    evaluator.iterate(agg, parameters);
+  }
+
+  @Override
+  public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+    return evaluator.terminatePartial(agg);
+  }
+
+  @Override
+  public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+    evaluator.merge(agg, partial);
+  }
+
+  @Override
+  public Object terminate(AggregationBuffer agg) throws HiveException {
+    Object value = evaluator.terminate(agg);
+    if (value == null) {
+      return null;
+    }
+    if (longResult != null) {
+      longResult.set(Math.round(PrimitiveObjectInspectorUtils.getLong(value, resultOI)
+          * scale));
+      return longResult;
+    }
+    doubleResult.set(PrimitiveObjectInspectorUtils.getDouble(value, resultOI) * scale);
+    return doubleResult;
+  }
+}
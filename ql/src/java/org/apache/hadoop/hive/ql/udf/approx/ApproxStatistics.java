@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+/**
+ * Helpers shared by the approximate aggregates.
+ *
+ * The aggregates return a struct of doubles
+ * &lt;estimate, lower, upper, stderr, confidence&gt;, where lower and upper
+ * bound the confidence interval of the estimate at the given confidence level.
+ * The interval is estimate +/- t * stderr, where t is the quantile of the
+ * Student t distribution with one less degree of freedom than the sampled rows
+ * aggregated in the group, so that groups with few sampled rows get wider
+ * intervals however large the sample; it tends to the normal quantile as the
+ * group grows.
+ *
+ * Settings are read from the session when the query is compiled and kept in
+ * the evaluators as bean properties, so that they are serialized with the
+ * plan.
+ */
+public final class ApproxStatistics {
+
+  static final Log LOG = LogFactory.getLog(ApproxStatistics.class.getName());
+
+  public static final String ESTIMATE = "estimate";
+  public static final String LOWER = "lower";
+  public static final String UPPER = "upper";
+  public static final String STDERR = "stderr";
+  public static final String CONFIDENCE = "confidence";
+
+  private static final String[] RESULT_FIELDS = {ESTIMATE, LOWER, UPPER, STDERR, CONFIDENCE};
+
+  /** Confidence level of the intervals when none is set. */
+  public static final double DEFAULT_CONFIDENCE = 0.99;
+
+  private ApproxStatistics() {
+  }
+
+  /**
+   * @return the confidence level of the intervals of the session
+   *         (quicksilver.approx.confidence), as a fraction
+   */
+  public static double getConfidence() {
+    SessionState ss = SessionState.get();
+    if (ss == null) {
+      return DEFAULT_CONFIDENCE;
+    }
+    return toConfidence(HiveConf.getFloatVar(ss.getConf(),
+        HiveConf.ConfVars.QUICKSILVER_APPROX_CONFIDENCE));
+  }
+
+  /**
+   * @return the number of replicates of bootstrap_&lt;udaf&gt;
+   *         (quicksilver.bootstrap.replicates)
+   */
+  public static int getBootstrapReplicates() {
+    SessionState ss = SessionState.get();
+    int replicates = ss == null
+        ? HiveConf.ConfVars.QUICKSILVER_BOOTSTRAP_REPLICATES.defaultIntVal
+        : HiveConf.getIntVar(ss.getConf(), HiveConf.ConfVars.QUICKSILVER_BOOTSTRAP_REPLICATES);
+    return Math.max(2, replicates);
+  }
+
+  /**
+   * @param level
+   *          confidence level, as a fraction (0.95) or a percentage (95)
+   * @return the level as a fraction, or DEFAULT_CONFIDENCE if it is not
+   *         between 0 and 100%
+   */
+  public static double toConfidence(double level) {
+    double confidence = level >= 1 ? level / 100 : level;
+    if (!(confidence > 0 && confidence < 1)) {
+      LOG.warn("Invalid confidence level " + level + ", using " + DEFAULT_CONFIDENCE);
+      return DEFAULT_CONFIDENCE;
+    }
+    return confidence;
+  }
+
+  /**
+   * @return the confidence level as a percentage, for display
+   */
+  public static String formatConfidence(double confidence) {
+    double percent = Math.round(confidence * 10000) / 100.0;
+    return (percent == Math.rint(percent) ? String.valueOf((long) percent)
+        : String.valueOf(percent)) + "%";
+  }
+
+  /**
+   * @return the object inspector of the result of an approximate aggregate
+   */
+  public static StructObjectInspector getResultObjectInspector() {
+    ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
+    for (int i = 0; i < RESULT_FIELDS.length; i++) {
+      foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+    }
+    return ObjectInspectorFactory.getStandardStructObjectInspector(
+        new ArrayList<String>(Arrays.asList(RESULT_FIELDS)), foi);
+  }
+
+  /**
+   * @return a result to be filled by {@link #setResult}, to be reused across
+   *         groups
+   */
+  public static Object[] newResult() {
+    Object[] result = new Object[RESULT_FIELDS.length];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = new DoubleWritable(0);
+    }
+    return result;
+  }
+
+  /**
+   * Fills the result with the interval at the confidence level of an estimate
+   * from rows sampled rows of the group.
+   *
+   * @return result
+   */
+  public static Object[] setResult(Object[] result, double estimate, double stderr,
+      double confidence, long rows) {
+    double halfWidth = quantile(confidence, rows) * stderr;
+    return setResult(result, estimate, estimate - halfWidth, estimate + halfWidth, stderr,
+        confidence);
+  }
+
+  /**
+   * Fills the result with the given interval.
+   *
+   * @return result
+   */
+  public static Object[] setResult(Object[] result, double estimate, double lower,
+      double upper, double stderr, double confidence) {
+    ((DoubleWritable) result[0]).set(estimate);
+    ((DoubleWritable) result[1]).set(lower);
+    ((DoubleWritable) result[2]).set(upper);
+    ((DoubleWritable) result[3]).set(stderr);
+    ((DoubleWritable) result[4]).set(confidence);
+    return result;
+  }
+
+  /**
+   * Standard error of the estimate N/n * sum(y) of a population total from a
+   * uniform sample of n out of N rows, where y is the aggregated value on the
+   * count rows of the sample that reach the aggregate and 0 on the others.
+   *
+   * @param count
+   *          number of sampled rows reaching the aggregate
+   * @param sum
+   *          sum of their values
+   * @param m2
+   *          sum of their squared deviations from their mean
+   * @param sampleRows
+   *          n
+   * @param totalRows
+   *          N
+   * @return the standard error, 0 if the whole population was read, or NaN if
+   *         the sample is too small to estimate it
+   */
+  public static double totalStandardError(long count, double sum, double m2,
+      long sampleRows, long totalRows) {
+    if (sampleRows >= totalRows) {
+      return 0;
+    }
+    if (sampleRows < 2) {
+      return Double.NaN;
+    }
+    double n = sampleRows;
+    double squares = m2 + (count > 0 ? sum * sum / count : 0);
+    double variance = Math.max(0, (squares - sum * sum / n) / (n - 1));
+    return totalRows * Math.sqrt((1 - n / totalRows) * variance / n);
+  }
+
+  /**
+   * @return the multiple of the standard error giving a two sided interval at
+   *         the confidence level for an estimate from rows sampled rows
+   */
+  public static double quantile(double confidence, long rows) {
+    double p = 1 - (1 - confidence) / 2;
+    if (rows < 2) {
+      return normalQuantile(p);
+    }
+    return tQuantile(p, rows - 1);
+  }
+
+  /**
+   * Inverse of the distribution function of Student's t with df degrees of
+   * freedom. Exact for 1 and 2 degrees of freedom, otherwise the Cornish-Fisher
+   * expansion in 1/df (Abramowitz and Stegun 26.7.5), whose relative error is
+   * below 1% from 3 degrees of freedom up to 99.5%.
+   */
+  public static double tQuantile(double p, long df) {
+    if (p <= 0) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    if (p >= 1) {
+      return Double.POSITIVE_INFINITY;
+    }
+    if (df == 1) {
+      return Math.tan(Math.PI * (p - 0.5));
+    }
+    if (df == 2) {
+      return (2 * p - 1) / Math.sqrt(2 * p * (1 - p));
+    }
+
+    double z = normalQuantile(p);
+    double z2 = z * z;
+    double g1 = (z2 + 1) * z / 4;
+    double g2 = ((5 * z2 + 16) * z2 + 3) * z / 96;
+    double g3 = (((3 * z2 + 19) * z2 + 17) * z2 - 15) * z / 384;
+    double g4 = ((((79 * z2 + 776) * z2 + 1482) * z2 - 1920) * z2 - 945) * z / 92160;
+    double v = df;
+    return z + (g1 + (g2 + (g3 + g4 / v) / v) / v) / v;
+  }
+
+  /**
+   * Inverse of the standard normal distribution function, with the rational
+   * approximation of P. J. Acklam (relative error below 1.2e-9).
+   */
+  public static double normalQuantile(double p) {
+    if (p <= 0) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    if (p >= 1) {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    double q;
+    double r;
+    if (p < P_LOW) {
+      q = Math.sqrt(-2 * Math.log(p));
+      return (((((C[0] * q + C[1]) * q + C[2]) * q + C[3]) * q + C[4]) * q + C[5])
+          / ((((D[0] * q + D[1]) * q + D[2]) * q + D[3]) * q + 1);
+    }
+    if (p > 1 - P_LOW) {
+      q = Math.sqrt(-2 * Math.log(1 - p));
+      return -(((((C[0] * q + C[1]) * q + C[2]) * q + C[3]) * q + C[4]) * q + C[5])
+          / ((((D[0] * q + D[1]) * q + D[2]) * q + D[3]) * q + 1);
+    }
+    q = p - 0.5;
+    r = q * q;
+    return (((((A[0] * r + A[1]) * r + A[2]) * r + A[3]) * r + A[4]) * r + A[5]) * q
+        / (((((B[0] * r + B[1]) * r + B[2]) * r + B[3]) * r + B[4]) * r + 1);
+  }
+
+  private static final double P_LOW = 0.02425;
+  private static final double[] A = {
+      -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+      1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+  private static final double[] B = {
+      -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+      6.680131188771972e+01, -1.328068155288572e+01};
+  private static final double[] C = {
+      -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+      -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+  private static final double[] D = {
+      7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+      3.754408661907416e+00};
+}
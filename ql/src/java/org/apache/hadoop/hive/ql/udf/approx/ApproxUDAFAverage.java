@@ -25,6 +25,7 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.sampling.OnlineAggregation;
 import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
@@ -40,14 +41,14 @@ import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectIn
 import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.StringUtils;
 
 /**
  * GenericUDAFAverage.
  *
  */
-@Description(name = "approx_avg", value = "_FUNC_(x) - Returns the approximate mean of a set of numbers with error bars")
+@Description(name = "approx_avg", value = "_FUNC_(x) - Returns the approximate mean of a set of numbers, "
+    + "as a struct<estimate, lower, upper, stderr, confidence>")
 public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
 
   static final Log LOG = LogFactory.getLog(ApproxUDAFAverage.class.getName());
@@ -72,7 +73,9 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
     case LONG:
     case FLOAT:
     case DOUBLE:
-      return new ApproxUDAFAverageEvaluator();
+      ApproxUDAFAverageEvaluator evaluator = new ApproxUDAFAverageEvaluator();
+      evaluator.setConfidence(ApproxStatistics.getConfidence());
+      return evaluator;
     case STRING:
     case DATE:
     case TIMESTAMP:
@@ -88,7 +91,8 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
    * ApproxUDAFAverageEvaluator.
    *
    */
-  public static class ApproxUDAFAverageEvaluator extends GenericUDAFEvaluator {
+  public static class ApproxUDAFAverageEvaluator extends GenericUDAFEvaluator
+      implements OnlineEvaluator, RowGroupEvaluator {
 
     // For PARTIAL1 and COMPLETE
     private PrimitiveObjectInspector inputOI;
@@ -98,16 +102,43 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
     private StructField countField;
     private StructField sumField;
     private StructField varianceField;
+    private StructField groupSquaresField;
+    private StructField groupProductsField;
+    private StructField groupSizeSquaresField;
     private LongObjectInspector countFieldOI;
     private DoubleObjectInspector sumFieldOI;
     private DoubleObjectInspector varianceFieldOI;
+    private DoubleObjectInspector groupSquaresFieldOI;
+    private DoubleObjectInspector groupProductsFieldOI;
+    private DoubleObjectInspector groupSizeSquaresFieldOI;
 
     // For PARTIAL1 and PARTIAL2
     private Object[] partialResult;
 
     // For FINAL and COMPLETE
-    // ArrayList<DoubleWritable> result;
-    Text result;
+    private Object[] result;
+
+    // Whether the input is sampled by whole RCFile row groups
+    private boolean rowGroupSampled;
+
+    public boolean isRowGroupSampled() {
+      return rowGroupSampled;
+    }
+
+    public void setRowGroupSampled(boolean rowGroupSampled) {
+      this.rowGroupSampled = rowGroupSampled;
+    }
+
+    // Confidence level of the intervals
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
 
     @Override
     public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
@@ -129,6 +160,15 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
         sumFieldOI = (DoubleObjectInspector) sumField.getFieldObjectInspector();
         varianceFieldOI = (DoubleObjectInspector) varianceField
             .getFieldObjectInspector();
+        groupSquaresField = soi.getStructFieldRef("groupSquares");
+        groupProductsField = soi.getStructFieldRef("groupProducts");
+        groupSizeSquaresField = soi.getStructFieldRef("groupSizeSquares");
+        groupSquaresFieldOI = (DoubleObjectInspector) groupSquaresField
+            .getFieldObjectInspector();
+        groupProductsFieldOI = (DoubleObjectInspector) groupProductsField
+            .getFieldObjectInspector();
+        groupSizeSquaresFieldOI = (DoubleObjectInspector) groupSizeSquaresField
+            .getFieldObjectInspector();
       }
 
       // init output
@@ -141,23 +181,32 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
         foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
         foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
         foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
 
         ArrayList<String> fname = new ArrayList<String>();
         fname.add("count");
         fname.add("sum");
         fname.add("variance");
+        fname.add("groupSquares");
+        fname.add("groupProducts");
+        fname.add("groupSizeSquares");
 
-        partialResult = new Object[3];
+        partialResult = new Object[6];
         partialResult[0] = new LongWritable(0);
         partialResult[1] = new DoubleWritable(0);
         partialResult[2] = new DoubleWritable(0);
+        partialResult[3] = new DoubleWritable(0);
+        partialResult[4] = new DoubleWritable(0);
+        partialResult[5] = new DoubleWritable(0);
 
         return ObjectInspectorFactory.getStandardStructObjectInspector(fname,
             foi);
 
       } else {
-        result = new Text();
-        return PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+        result = ApproxStatistics.newResult();
+        return ApproxStatistics.getResultObjectInspector();
       }
     }
 
@@ -165,6 +214,8 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
       long count; // number of elements
       double sum; // sum of elements
       double variance; // sum[x-avg^2] (this is actually n times the variance)
+      // totals of the row groups read, if rowGroupSampled
+      RowGroupMoments groups = new RowGroupMoments();
     };
 
     @Override
@@ -180,6 +231,7 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
       myagg.count = 0;
       myagg.sum = 0;
       myagg.variance = 0;
+      myagg.groups.reset();
     }
 
     private boolean warned = false;
@@ -199,6 +251,9 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
             double t = myagg.count * v - myagg.sum;
             myagg.variance += (t * t) / ((double) myagg.count * (myagg.count - 1));
           }
+          if (rowGroupSampled) {
+            myagg.groups.add(v);
+          }
         } catch (NumberFormatException e) {
           if (!warned) {
             warned = true;
@@ -217,6 +272,10 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
       ((LongWritable) partialResult[0]).set(myagg.count);
       ((DoubleWritable) partialResult[1]).set(myagg.sum);
       ((DoubleWritable) partialResult[2]).set(myagg.variance);
+      myagg.groups.flush();
+      ((DoubleWritable) partialResult[3]).set(myagg.groups.getSquares());
+      ((DoubleWritable) partialResult[4]).set(myagg.groups.getProducts());
+      ((DoubleWritable) partialResult[5]).set(myagg.groups.getSizeSquares());
       return partialResult;
     }
 
@@ -231,6 +290,10 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
 
         long n = myagg.count;
         long m = countFieldOI.get(partialCount);
+        myagg.groups.merge(
+            groupSquaresFieldOI.get(soi.getStructFieldData(partial, groupSquaresField)),
+            groupProductsFieldOI.get(soi.getStructFieldData(partial, groupProductsField)),
+            groupSizeSquaresFieldOI.get(soi.getStructFieldData(partial, groupSizeSquaresField)));
 
         if (n == 0) {
           // Just copy the information since there is nothing so far
@@ -254,6 +317,23 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
       }
     }
 
+    @Override
+    public void getMoments(AggregationBuffer agg, OnlineAggregation.Moments moments) {
+      StdAgg myagg = (StdAgg) agg;
+      moments.set(true, myagg.count, myagg.sum, myagg.variance, 0, getDesignEffect(myagg),
+          confidence);
+    }
+
+    /**
+     * @return the variance inflation of the mean due to sampling row groups
+     */
+    private double getDesignEffect(StdAgg myagg) {
+      if (myagg.count == 0) {
+        return 1.0;
+      }
+      return myagg.groups.getMeanDesignEffect(myagg.sum / myagg.count, myagg.variance);
+    }
+
     @Override
     public Object terminate(AggregationBuffer agg) throws HiveException {
       StdAgg myagg = (StdAgg) agg;
@@ -263,15 +343,12 @@ public class ApproxUDAFAverage extends AbstractGenericUDAFResolver {
         // might want to sanitize output to DoubleWritables
       } else {
         // NOTE: myagg.variance = sum[x-avg^2] (this is actually n times the variance)
-
-        StringBuilder sb = new StringBuilder();
-        sb.append(myagg.sum / myagg.count);
-        sb.append(" +/- ");
-        sb.append((2.575 * Math.sqrt(myagg.variance / (myagg.count * myagg.count))));
-        sb.append(" (99% Confidence) ");
-
-        result.set(sb.toString());
-        return result;
+        double variance = getDesignEffect(myagg) * myagg.variance;
+        double stderr = myagg.count > 1
+            ? Math.sqrt(variance / (myagg.count - 1) / myagg.count)
+            : Double.NaN;
+        return ApproxStatistics.setResult(result, myagg.sum / myagg.count, stderr,
+            confidence, myagg.count);
 
       }
     }
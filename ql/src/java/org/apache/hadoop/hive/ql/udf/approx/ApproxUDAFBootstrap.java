@@ -0,0 +1,392 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFParameterInfo;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFResolver2;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * Poisson bootstrap of an arbitrary aggregate, in a single pass over the
+ * sample. <code>bootstrap_max(x)</code>, <code>bootstrap_percentile(x, 0.9)</code>
+ * and so on wrap the aggregate of the same name without the prefix (see
+ * {@link org.apache.hadoop.hive.ql.exec.FunctionRegistry#getFunctionInfo}).
+ *
+ * Besides the aggregate itself, the evaluator keeps B replicate aggregation
+ * buffers of the wrapped aggregate. Each row is added to each replicate a
+ * Poisson(1) distributed number of times, which approximates resampling the
+ * rows with replacement without knowing their number in advance. The
+ * replicates are partial aggregations like any other, so they are merged
+ * across map and reduce side aggregation.
+ *
+ * The result is the struct of {@link ApproxStatistics}: the estimate is the
+ * aggregate over the sample, the interval bounds are the empirical quantiles
+ * of the replicates at the confidence level and the standard error is their
+ * standard deviation. The wrapped aggregate must return a number.
+ */
+public class ApproxUDAFBootstrap implements GenericUDAFResolver2 {
+
+  private final GenericUDAFResolver resolver;
+
+  public ApproxUDAFBootstrap(GenericUDAFResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters)
+      throws SemanticException {
+    return newEvaluator(resolver.getEvaluator(parameters),
+        resolver.getEvaluator(parameters));
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public GenericUDAFEvaluator getEvaluator(GenericUDAFParameterInfo paramInfo)
+      throws SemanticException {
+    if (resolver instanceof GenericUDAFResolver2) {
+      GenericUDAFResolver2 resolver2 = (GenericUDAFResolver2) resolver;
+      return newEvaluator(resolver2.getEvaluator(paramInfo),
+          resolver2.getEvaluator(paramInfo));
+    }
+    return getEvaluator(paramInfo.getParameters());
+  }
+
+  private GenericUDAFEvaluator newEvaluator(GenericUDAFEvaluator evaluator,
+      GenericUDAFEvaluator replicateEvaluator) {
+    if (evaluator == null || replicateEvaluator == null) {
+      return null;
+    }
+    ApproxUDAFBootstrapEvaluator bootstrap = new ApproxUDAFBootstrapEvaluator();
+    bootstrap.setEvaluator(evaluator);
+    bootstrap.setReplicateEvaluator(replicateEvaluator);
+    bootstrap.setReplicates(ApproxStatistics.getBootstrapReplicates());
+    bootstrap.setConfidence(ApproxStatistics.getConfidence());
+    return bootstrap;
+  }
+
+  /**
+   * ApproxUDAFBootstrapEvaluator.
+   *
+   * The wrapped aggregate is evaluated by two evaluators, one for the
+   * estimate and one for the replicates, since each is initialized with the
+   * object inspector of its own partial aggregations.
+   */
+  public static class ApproxUDAFBootstrapEvaluator extends GenericUDAFEvaluator
+      implements ApproxEvaluator {
+
+    // Poisson(1) distribution function
+    private static final double[] POISSON_CDF = new double[16];
+    static {
+      double p = Math.exp(-1);
+      double cdf = 0;
+      for (int k = 0; k < POISSON_CDF.length; k++) {
+        cdf += p;
+        POISSON_CDF[k] = cdf;
+        p /= k + 1;
+      }
+    }
+
+    private GenericUDAFEvaluator evaluator;
+    private GenericUDAFEvaluator replicateEvaluator;
+    private int replicates = 100;
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    // For PARTIAL1 and COMPLETE, seeded by configure()
+    private long seed;
+    private Random random;
+
+    // For PARTIAL2 and FINAL
+    private StructObjectInspector soi;
+    private StructField estimateField;
+    private StructField replicatesField;
+    private ListObjectInspector replicatesOI;
+
+    // For PARTIAL1 and PARTIAL2
+    private ObjectInspector replicatePartialOI;
+    private Object[] partialResult;
+
+    // For FINAL and COMPLETE
+    private PrimitiveObjectInspector estimateOutputOI;
+    private PrimitiveObjectInspector replicateOutputOI;
+    private Object[] result;
+
+    public GenericUDAFEvaluator getEvaluator() {
+      return evaluator;
+    }
+
+    public void setEvaluator(GenericUDAFEvaluator evaluator) {
+      this.evaluator = evaluator;
+    }
+
+    public GenericUDAFEvaluator getReplicateEvaluator() {
+      return replicateEvaluator;
+    }
+
+    public void setReplicateEvaluator(GenericUDAFEvaluator replicateEvaluator) {
+      this.replicateEvaluator = replicateEvaluator;
+    }
+
+    public int getReplicates() {
+      return replicates;
+    }
+
+    public void setReplicates(int replicates) {
+      this.replicates = replicates;
+    }
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
+
+    /**
+     * Seeds the resampling weights per task, so that re-running a query gives
+     * the same intervals while the tasks draw different weights.
+     */
+    @Override
+    public void configure(Configuration conf) {
+      seed = HiveConf.getIntVar(conf, HiveConf.ConfVars.HIVESAMPLERANDOMNUM) * 31L
+          + conf.getInt("mapred.task.partition", 0);
+      evaluator.configure(conf);
+      replicateEvaluator.configure(conf);
+    }
+
+    @Override
+    public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+      super.init(m, parameters);
+
+      // init input
+      ObjectInspector estimateOI;
+      ObjectInspector replicateOI;
+      if (mode == Mode.PARTIAL1 || mode == Mode.COMPLETE) {
+        random = new Random(seed);
+        estimateOI = evaluator.init(mode, parameters);
+        replicateOI = replicateEvaluator.init(mode, parameters);
+      } else {
+        soi = (StructObjectInspector) parameters[0];
+        estimateField = soi.getStructFieldRef("estimate");
+        replicatesField = soi.getStructFieldRef("replicates");
+        replicatesOI = (ListObjectInspector) replicatesField.getFieldObjectInspector();
+        estimateOI = evaluator.init(mode,
+            new ObjectInspector[] {estimateField.getFieldObjectInspector()});
+        replicateOI = replicateEvaluator.init(mode,
+            new ObjectInspector[] {replicatesOI.getListElementObjectInspector()});
+      }
+
+      // init output
+      if (mode == Mode.PARTIAL1 || mode == Mode.PARTIAL2) {
+        // The output of a partial aggregation is a struct containing the
+        // partial aggregation of the estimate and the list of those of the
+        // replicates, copied since evaluators reuse their partial results.
+        replicatePartialOI = replicateOI;
+
+        ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
+        foi.add(estimateOI);
+        foi.add(ObjectInspectorFactory.getStandardListObjectInspector(
+            ObjectInspectorUtils.getStandardObjectInspector(replicateOI)));
+
+        ArrayList<String> fname = new ArrayList<String>();
+        fname.add("estimate");
+        fname.add("replicates");
+
+        partialResult = new Object[2];
+        partialResult[1] = new ArrayList<Object>(replicates);
+
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+      } else {
+        if (!isNumeric(estimateOI) || !isNumeric(replicateOI)) {
+          throw new UDFArgumentTypeException(0,
+              "Only aggregates returning a number can be bootstrapped but "
+                  + estimateOI.getTypeName() + " is returned.");
+        }
+        estimateOutputOI = (PrimitiveObjectInspector) estimateOI;
+        replicateOutputOI = (PrimitiveObjectInspector) replicateOI;
+        result = ApproxStatistics.newResult();
+        return ApproxStatistics.getResultObjectInspector();
+      }
+    }
+
+    private static boolean isNumeric(ObjectInspector oi) {
+      if (oi.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        return false;
+      }
+      switch (((PrimitiveObjectInspector) oi).getPrimitiveCategory()) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      default:
+        return false;
+      }
+    }
+
+    static class BootstrapAgg implements AggregationBuffer {
+      AggregationBuffer estimate;
+      AggregationBuffer[] replicates;
+    };
+
+    @Override
+    public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+      BootstrapAgg buffer = new BootstrapAgg();
+      buffer.estimate = evaluator.getNewAggregationBuffer();
+      buffer.replicates = new AggregationBuffer[replicates];
+      for (int i = 0; i < replicates; i++) {
+        buffer.replicates[i] = replicateEvaluator.getNewAggregationBuffer();
+      }
+      return buffer;
+    }
+
+    @Override
+    public void reset(AggregationBuffer agg) throws HiveException {
+      BootstrapAgg myagg = (BootstrapAgg) agg;
+      evaluator.reset(myagg.estimate);
+      for (AggregationBuffer replicate : myagg.replicates) {
+        replicateEvaluator.reset(replicate);
+      }
+    }
+
+    @Override
+    public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+      BootstrapAgg myagg = (BootstrapAgg) agg;
+      evaluator.iterate(myagg.estimate, parameters);
+      for (AggregationBuffer replicate : myagg.replicates) {
+        for (int weight = nextWeight(); weight > 0; weight--) {
+          replicateEvaluator.iterate(replicate, parameters);
+        }
+      }
+    }
+
+    /**
+     * @return a Poisson(1) distributed weight
+     */
+    private int nextWeight() {
+      double u = random.nextDouble();
+      int k = 0;
+      while (k < POISSON_CDF.length - 1 && u > POISSON_CDF[k]) {
+        k++;
+      }
+      return k;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+      BootstrapAgg myagg = (BootstrapAgg) agg;
+      partialResult[0] = evaluator.terminatePartial(myagg.estimate);
+      ArrayList<Object> replicatePartials = (ArrayList<Object>) partialResult[1];
+      replicatePartials.clear();
+      for (AggregationBuffer replicate : myagg.replicates) {
+        replicatePartials.add(ObjectInspectorUtils.copyToStandardObject(
+            replicateEvaluator.terminatePartial(replicate), replicatePartialOI));
+      }
+      return partialResult;
+    }
+
+    @Override
+    public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+      if (partial == null) {
+        return;
+      }
+      BootstrapAgg myagg = (BootstrapAgg) agg;
+      evaluator.merge(myagg.estimate, soi.getStructFieldData(partial, estimateField));
+
+      Object replicatePartials = soi.getStructFieldData(partial, replicatesField);
+      int n = Math.min(replicatesOI.getListLength(replicatePartials), myagg.replicates.length);
+      for (int i = 0; i < n; i++) {
+        replicateEvaluator.merge(myagg.replicates[i],
+            replicatesOI.getListElement(replicatePartials, i));
+      }
+    }
+
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
+      BootstrapAgg myagg = (BootstrapAgg) agg;
+      Object value = evaluator.terminate(myagg.estimate);
+      if (value == null) {
+        return null;
+      }
+      double estimate = PrimitiveObjectInspectorUtils.getDouble(value, estimateOutputOI);
+
+      double[] values = new double[myagg.replicates.length];
+      int n = 0;
+      double sum = 0;
+      for (AggregationBuffer replicate : myagg.replicates) {
+        Object v = replicateEvaluator.terminate(replicate);
+        if (v != null) {
+          values[n] = PrimitiveObjectInspectorUtils.getDouble(v, replicateOutputOI);
+          sum += values[n];
+          n++;
+        }
+      }
+      if (n < 2) {
+        return ApproxStatistics.setResult(result, estimate, Double.NaN, Double.NaN,
+            Double.NaN, confidence);
+      }
+
+      double mean = sum / n;
+      double variance = 0;
+      for (int i = 0; i < n; i++) {
+        variance += (values[i] - mean) * (values[i] - mean);
+      }
+      Arrays.sort(values, 0, n);
+      double alpha = (1 - confidence) / 2;
+      return ApproxStatistics.setResult(result, estimate, quantile(values, n, alpha),
+          quantile(values, n, 1 - alpha), Math.sqrt(variance / (n - 1)), confidence);
+    }
+
+    /**
+     * @return the q quantile of the n first sorted values, interpolated
+     *         linearly
+     */
+    private static double quantile(double[] values, int n, double q) {
+      double position = q * (n - 1);
+      int index = (int) Math.floor(position);
+      if (index >= n - 1) {
+        return values[n - 1];
+      }
+      double fraction = position - index;
+      return values[index] + fraction * (values[index + 1] - values[index]);
+    }
+  }
+}
@@ -24,22 +24,24 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.sampling.OnlineAggregation;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFCount;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFCount.GenericUDAFCountEvaluator;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFParameterInfo;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFResolver2;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 
 /**
  * This class implements the Approximate COUNT aggregation function as in SQL.
@@ -76,8 +78,10 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
 
     assert !paramInfo.isDistinct() : "DISTINCT not supported with APPROX COUNT";
 
-    return new ApproxUDAFCountEvaluator().setCountAllColumns(
+    ApproxUDAFCountEvaluator evaluator = new ApproxUDAFCountEvaluator().setCountAllColumns(
         paramInfo.isAllColumns());
+    evaluator.setConfidence(ApproxStatistics.getConfidence());
+    return evaluator;
 
   }
 
@@ -85,7 +89,8 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
    * ApproxUDAFCountEvaluator.
    *
    */
-  public static class ApproxUDAFCountEvaluator extends GenericUDAFEvaluator {
+  public static class ApproxUDAFCountEvaluator extends GenericUDAFEvaluator
+      implements OnlineEvaluator, RowGroupEvaluator {
     private boolean countAllColumns = false;
 
     private PrimitiveObjectInspector totalRowsOI;
@@ -99,15 +104,21 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
     private StructField countField;
     private StructField totalRowsField;
     private StructField sampleRowsField;
+    private StructField groupSquaresField;
+    private StructField groupProductsField;
+    private StructField groupSizeSquaresField;
     private LongObjectInspector countFieldOI;
     private LongObjectInspector totalRowsFieldOI;
     private LongObjectInspector sampleRowsFieldOI;
+    private DoubleObjectInspector groupSquaresFieldOI;
+    private DoubleObjectInspector groupProductsFieldOI;
+    private DoubleObjectInspector groupSizeSquaresFieldOI;
 
     // For PARTIAL1 and PARTIAL2
     private Object[] partialResult;
 
     // For FINAL and COMPLETE
-    Text result;
+    private Object[] result;
 
     @Override
     public ObjectInspector init(Mode m, ObjectInspector[] parameters)
@@ -140,6 +151,15 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
             .getFieldObjectInspector();
         sampleRowsFieldOI = (LongObjectInspector) sampleRowsField
             .getFieldObjectInspector();
+        groupSquaresField = soi.getStructFieldRef("groupSquares");
+        groupProductsField = soi.getStructFieldRef("groupProducts");
+        groupSizeSquaresField = soi.getStructFieldRef("groupSizeSquares");
+        groupSquaresFieldOI = (DoubleObjectInspector) groupSquaresField
+            .getFieldObjectInspector();
+        groupProductsFieldOI = (DoubleObjectInspector) groupProductsField
+            .getFieldObjectInspector();
+        groupSizeSquaresFieldOI = (DoubleObjectInspector) groupSizeSquaresField
+            .getFieldObjectInspector();
       }
 
       // init output
@@ -150,27 +170,58 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
         foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
         foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
         foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
 
         ArrayList<String> fname = new ArrayList<String>();
         fname.add("count");
         fname.add("totalRows");
         fname.add("sampleRows");
+        fname.add("groupSquares");
+        fname.add("groupProducts");
+        fname.add("groupSizeSquares");
 
-        partialResult = new Object[3];
+        partialResult = new Object[6];
         partialResult[0] = new LongWritable(0);
         partialResult[1] = new LongWritable(0);
         partialResult[2] = new LongWritable(0);
+        partialResult[3] = new DoubleWritable(0);
+        partialResult[4] = new DoubleWritable(0);
+        partialResult[5] = new DoubleWritable(0);
 
         return ObjectInspectorFactory.getStandardStructObjectInspector(fname,
             foi);
 
       } else {
-        result = new Text();
-        return PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+        result = ApproxStatistics.newResult();
+        return ApproxStatistics.getResultObjectInspector();
       }
 
     }
 
+    // Whether the input is sampled by whole RCFile row groups
+    private boolean rowGroupSampled;
+
+    public boolean isRowGroupSampled() {
+      return rowGroupSampled;
+    }
+
+    public void setRowGroupSampled(boolean rowGroupSampled) {
+      this.rowGroupSampled = rowGroupSampled;
+    }
+
+    // Confidence level of the intervals
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
+
     private ApproxUDAFCountEvaluator setCountAllColumns(boolean countAllCols) {
       countAllColumns = countAllCols;
       return this;
@@ -181,6 +232,8 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
       long value;
       long totalRows;
       long sampleRows;
+      // totals of the row groups read, if rowGroupSampled
+      RowGroupMoments groups = new RowGroupMoments();
     }
 
     @Override
@@ -195,6 +248,7 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
       ((CountAgg) agg).value = 0;
       ((CountAgg) agg).totalRows = 0;
       ((CountAgg) agg).sampleRows = 0;
+      ((CountAgg) agg).groups.reset();
     }
 
     @Override
@@ -222,6 +276,9 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
       if (countAllColumns) {
         // assert parameters.length == 0;
         ((CountAgg) agg).value++;
+        if (rowGroupSampled) {
+          ((CountAgg) agg).groups.add(1);
+        }
 
       } else {
         assert parameters.length > 0;
@@ -234,6 +291,9 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
         }
         if (countThisRow) {
           ((CountAgg) agg).value++;
+          if (rowGroupSampled) {
+            ((CountAgg) agg).groups.add(1);
+          }
         }
       }
 
@@ -252,39 +312,35 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
         long q = totalRowsFieldOI.get(partialTotalRows);
         long r = sampleRowsFieldOI.get(partialSampleRows);
 
-        LOG.info("Merge Value: " + p);
-        LOG.info("Merge Total Rows: " + q);
-        LOG.info("Merge Sampling Rows: " + r);
-
         ((CountAgg) agg).value += p;
         ((CountAgg) agg).totalRows = q;
         ((CountAgg) agg).sampleRows = r;
+        ((CountAgg) agg).groups.merge(
+            groupSquaresFieldOI.get(soi.getStructFieldData(partial, groupSquaresField)),
+            groupProductsFieldOI.get(soi.getStructFieldData(partial, groupProductsField)),
+            groupSizeSquaresFieldOI.get(soi.getStructFieldData(partial, groupSizeSquaresField)));
 
       }
     }
 
     @Override
-    public Object terminate(AggregationBuffer agg) throws HiveException {
-
+    public void getMoments(AggregationBuffer agg, OnlineAggregation.Moments moments) {
       CountAgg myagg = (CountAgg) agg;
+      moments.set(false, myagg.value, myagg.value, 0, myagg.totalRows,
+          myagg.groups.getTotalDesignEffect(myagg.value), confidence);
+    }
 
-      long approx_count = (long) ((double) (myagg.value * myagg.totalRows) / myagg.sampleRows);
-      double probability = ((double) myagg.value) / ((double) myagg.sampleRows);
-
-      LOG.info("Value: " + myagg.value);
-      LOG.info("TotalRows: " + myagg.totalRows);
-      LOG.info("Probability: " + probability);
-      LOG.info("Sampling Ratio: " + (((double) myagg.sampleRows) / myagg.totalRows));
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
 
-      StringBuilder sb = new StringBuilder();
-      sb.append(approx_count);
-      sb.append(" +/- ");
-      sb.append(Math.ceil(2.575 * (((double) myagg.totalRows) / myagg.sampleRows)
-          * Math.sqrt(myagg.value * (1 - probability))));
-      sb.append(" (99% Confidence) ");
+      CountAgg myagg = (CountAgg) agg;
 
-      result.set(sb.toString());
-      return result;
+      double approxCount = ((double) myagg.value * myagg.totalRows) / myagg.sampleRows;
+      double stderr = Math.sqrt(myagg.groups.getTotalDesignEffect(myagg.value))
+          * ApproxStatistics.totalStandardError(myagg.value, myagg.value, 0,
+              myagg.sampleRows, myagg.totalRows);
+      return ApproxStatistics.setResult(result, approxCount, stderr,
+          confidence, myagg.value);
 
     }
 
@@ -295,6 +351,10 @@ public class ApproxUDAFCount implements GenericUDAFResolver2 {
       ((LongWritable) partialResult[0]).set(myagg.value);
       ((LongWritable) partialResult[1]).set(myagg.totalRows);
       ((LongWritable) partialResult[2]).set(myagg.sampleRows);
+      myagg.groups.flush();
+      ((DoubleWritable) partialResult[3]).set(myagg.groups.getSquares());
+      ((DoubleWritable) partialResult[4]).set(myagg.groups.getProducts());
+      ((DoubleWritable) partialResult[5]).set(myagg.groups.getSizeSquares());
       return partialResult;
 
     }
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFParameterInfo;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * Approximate number of distinct values, from a {@link HyperLogLog} sketch
+ * of their Murmur3 hashes (see {@link ValueHasher}).
+ *
+ * Unlike count(DISTINCT x), it keeps a sketch of 2^p bytes per group rather
+ * than every distinct value, and aggregates on the map side like any other
+ * aggregate. The partial aggregations are the serialized sketches. The result
+ * is the struct of {@link ApproxStatistics}, with the relative standard error
+ * 1.04 / sqrt(2^p) of the sketch. It counts the distinct values of the rows
+ * read; over a sample it does not estimate those of the whole table.
+ */
+@Description(name = "approx_count_distinct",
+    value = "_FUNC_(x[, p]) - Returns the approximate number of distinct values of x, "
+        + "as a struct<estimate, lower, upper, stderr, confidence>",
+    extended = "The optional constant p, between 4 and 16 (default 12), sets the precision "
+        + "of the HyperLogLog sketch: it takes 2^p bytes per group and has a relative "
+        + "standard error of 1.04 / sqrt(2^p).")
+public class ApproxUDAFCountDistinct extends AbstractGenericUDAFResolver {
+
+  @Override
+  public GenericUDAFEvaluator getEvaluator(GenericUDAFParameterInfo info)
+      throws SemanticException {
+    ObjectInspector[] parameters = info.getParameterObjectInspectors();
+    if (parameters.length != 1 && parameters.length != 2) {
+      throw new UDFArgumentTypeException(parameters.length - 1,
+          "Please specify one or two arguments.");
+    }
+    if (parameters[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      throw new UDFArgumentTypeException(0,
+          "Only primitive type arguments are accepted but "
+              + parameters[0].getTypeName() + " is passed.");
+    }
+
+    ApproxUDAFCountDistinctEvaluator evaluator = new ApproxUDAFCountDistinctEvaluator();
+    if (parameters.length == 2) {
+      if (!ObjectInspectorUtils.isConstantObjectInspector(parameters[1])
+          || parameters[1].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        throw new UDFArgumentTypeException(1,
+            "The second argument must be a constant integer, but "
+                + parameters[1].getTypeName() + " was passed instead.");
+      }
+      int precision = PrimitiveObjectInspectorUtils.getInt(
+          ((ConstantObjectInspector) parameters[1]).getWritableConstantValue(),
+          (PrimitiveObjectInspector) parameters[1]);
+      if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+        throw new UDFArgumentTypeException(1, "The precision must be between "
+            + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION + ", but "
+            + precision + " was passed instead.");
+      }
+      evaluator.setPrecision(precision);
+    }
+    evaluator.setConfidence(ApproxStatistics.getConfidence());
+    return evaluator;
+  }
+
+  /**
+   * ApproxUDAFCountDistinctEvaluator.
+   *
+   */
+  public static class ApproxUDAFCountDistinctEvaluator extends GenericUDAFEvaluator
+      implements ApproxEvaluator {
+
+    private int precision = HyperLogLog.DEFAULT_PRECISION;
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    // For PARTIAL1 and COMPLETE
+    private ValueHasher hasher;
+
+    // For PARTIAL2 and FINAL
+    private BinaryObjectInspector partialOI;
+
+    // For PARTIAL1 and PARTIAL2
+    private BytesWritable partialResult;
+
+    // For FINAL and COMPLETE
+    private Object[] result;
+
+    public int getPrecision() {
+      return precision;
+    }
+
+    public void setPrecision(int precision) {
+      this.precision = precision;
+    }
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
+
+    @Override
+    public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+      super.init(m, parameters);
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.COMPLETE) {
+        hasher = new ValueHasher((PrimitiveObjectInspector) parameters[0]);
+      } else {
+        partialOI = (BinaryObjectInspector) parameters[0];
+      }
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.PARTIAL2) {
+        partialResult = new BytesWritable();
+        return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+      } else {
+        result = ApproxStatistics.newResult();
+        return ApproxStatistics.getResultObjectInspector();
+      }
+    }
+
+    /** class for storing the sketch. */
+    static class CountDistinctAgg implements AggregationBuffer {
+      HyperLogLog sketch;
+    }
+
+    @Override
+    public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+      CountDistinctAgg agg = new CountDistinctAgg();
+      reset(agg);
+      return agg;
+    }
+
+    @Override
+    public void reset(AggregationBuffer agg) throws HiveException {
+      CountDistinctAgg myagg = (CountDistinctAgg) agg;
+      if (myagg.sketch == null) {
+        myagg.sketch = new HyperLogLog(precision);
+      } else {
+        myagg.sketch.clear();
+      }
+    }
+
+    @Override
+    public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+      Object p = parameters[0];
+      if (p != null) {
+        ((CountDistinctAgg) agg).sketch.add(hasher.hash(p));
+      }
+    }
+
+    @Override
+    public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+      HyperLogLog sketch = ((CountDistinctAgg) agg).sketch;
+      int size = sketch.getSerializedSize();
+      partialResult.setSize(size);
+      sketch.serialize(partialResult.getBytes());
+      return partialResult;
+    }
+
+    @Override
+    public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+      if (partial == null) {
+        return;
+      }
+      BytesWritable bytes = partialOI.getPrimitiveWritableObject(partial);
+      try {
+        ((CountDistinctAgg) agg).sketch.merge(bytes.getBytes(), 0, bytes.getLength());
+      } catch (IllegalArgumentException e) {
+        throw new HiveException(e);
+      }
+    }
+
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
+      HyperLogLog sketch = ((CountDistinctAgg) agg).sketch;
+      double estimate = sketch.estimate();
+      double stderr = estimate * sketch.getRelativeError();
+      double halfWidth = ApproxStatistics.normalQuantile((1 + confidence) / 2) * stderr;
+      return ApproxStatistics.setResult(result, estimate, Math.max(0, estimate - halfWidth),
+          estimate + halfWidth, stderr, confidence);
+    }
+  }
+}
@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFParameterInfo;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Estimate of the number of distinct values of a whole table from a uniform
+ * sample of it.
+ *
+ * Scaling up the distinct values of the sample is badly biased, since the
+ * frequent values are all in the sample and the rare ones mostly are not.
+ * Both estimators here rely on the frequency profile of the sample instead:
+ * f_j, the number of values seen exactly j times. The evaluator keeps the
+ * count of each value hash (see {@link ValueHasher}), which merges by adding
+ * counts; the partial aggregations are those counts in binary form.
+ *
+ * An aggregation keeps at most {@link #MAX_VALUES} hashes. Past that it only
+ * keeps the values whose hash ends with level zero bits, raising the level
+ * until the hashes fit, and scales d, f1 and f2 up by 2^level. Every value is
+ * kept or dropped with all its rows, in every partial aggregation alike, so
+ * the kept values are a uniform sample of the distinct values of the sample
+ * and their frequency profile is that of the whole sample.
+ *
+ * With d values in a sample of n out of N rows:
+ * <ul>
+ * <li>gee (Charikar et al., 2000), the default: sqrt(N/n) f1 + (d - f1). Its
+ * ratio error is at most sqrt(N/n) on any data; the bounds of the result are
+ * d and (N/n) f1 + (d - f1), between which the number of distinct values
+ * lies unless values of the table are missed by more than their share, and
+ * its standard error is NaN.</li>
+ * <li>chao (Chao, 1984): d + f1^2 / (2 f2), with the log-normal interval of
+ * Chao (1987) at the session confidence.</li>
+ * </ul>
+ */
+@Description(name = "approx_ndv",
+    value = "_FUNC_(x, sampleRows, totalRows[, 'gee'|'chao']) - Estimates the number of "
+        + "distinct values of x in the whole table from a uniform sample, "
+        + "as a struct<estimate, lower, upper, stderr, confidence>")
+public class ApproxUDAFNdv extends AbstractGenericUDAFResolver {
+
+  public static final String GEE = "gee";
+  public static final String CHAO = "chao";
+
+  /**
+   * The number of value hashes an aggregation keeps before it samples values.
+   */
+  public static final int MAX_VALUES = 1 << 16;
+
+  @Override
+  public GenericUDAFEvaluator getEvaluator(GenericUDAFParameterInfo info)
+      throws SemanticException {
+    ObjectInspector[] parameters = info.getParameterObjectInspectors();
+    if (parameters.length != 3 && parameters.length != 4) {
+      throw new UDFArgumentTypeException(parameters.length - 1,
+          "Please specify three or four arguments.");
+    }
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        throw new UDFArgumentTypeException(i,
+            "Only primitive type arguments are accepted but "
+                + parameters[i].getTypeName() + " is passed.");
+      }
+    }
+
+    ApproxUDAFNdvEvaluator evaluator = new ApproxUDAFNdvEvaluator();
+    if (parameters.length == 4) {
+      String estimator = ObjectInspectorUtils.isConstantObjectInspector(parameters[3])
+          ? PrimitiveObjectInspectorUtils.getString(
+              ((ConstantObjectInspector) parameters[3]).getWritableConstantValue(),
+              (PrimitiveObjectInspector) parameters[3])
+          : null;
+      if (estimator == null
+          || !(estimator.equalsIgnoreCase(GEE) || estimator.equalsIgnoreCase(CHAO))) {
+        throw new UDFArgumentTypeException(3,
+            "The fourth argument must be the constant 'gee' or 'chao'.");
+      }
+      evaluator.setEstimator(estimator.toLowerCase());
+    }
+    evaluator.setConfidence(ApproxStatistics.getConfidence());
+    return evaluator;
+  }
+
+  /**
+   * @return the gee estimate, lower and upper bounds from the number of
+   *         distinct values, of those seen once, and the scale N/n
+   */
+  static double[] gee(long distinct, long f1, double scale) {
+    double others = distinct - f1;
+    return new double[] {Math.sqrt(scale) * f1 + others, distinct, scale * f1 + others};
+  }
+
+  /**
+   * @return the chao estimate, its lower and upper bounds and its standard
+   *         error from the number of distinct values, of those seen once and
+   *         of those seen twice
+   */
+  static double[] chao(long distinct, long f1, long f2, double confidence) {
+    double estimate;
+    double variance;
+    if (f2 > 0) {
+      double r = ((double) f1) / f2;
+      estimate = distinct + f1 * r / 2;
+      variance = f2 * (r * r / 2 + r * r * r + r * r * r * r / 4);
+    } else {
+      // bias corrected form without doubletons
+      estimate = distinct + f1 * (f1 - 1) / 2.0;
+      variance = f1 * (f1 - 1) / 2.0 + f1 * (2.0 * f1 - 1) * (2.0 * f1 - 1) / 4
+          - Math.pow(f1, 4) / (4 * estimate);
+    }
+    variance = Math.max(0, variance);
+    double unseen = estimate - distinct;
+    if (unseen <= 0) {
+      return new double[] {estimate, distinct, distinct, Math.sqrt(variance)};
+    }
+    double c = Math.exp(ApproxStatistics.normalQuantile((1 + confidence) / 2)
+        * Math.sqrt(Math.log(1 + variance / (unseen * unseen))));
+    return new double[] {estimate, distinct + unseen / c, distinct + unseen * c,
+        Math.sqrt(variance)};
+  }
+
+  /**
+   * ApproxUDAFNdvEvaluator.
+   *
+   */
+  public static class ApproxUDAFNdvEvaluator extends GenericUDAFEvaluator
+      implements ApproxEvaluator {
+
+    private String estimator = GEE;
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    // For PARTIAL1 and COMPLETE
+    private ValueHasher hasher;
+    private PrimitiveObjectInspector sampleRowsOI;
+    private PrimitiveObjectInspector totalRowsOI;
+
+    // For PARTIAL2 and FINAL
+    private BinaryObjectInspector partialOI;
+    private final DataInputBuffer in = new DataInputBuffer();
+
+    // For PARTIAL1 and PARTIAL2
+    private BytesWritable partialResult;
+    private final DataOutputBuffer out = new DataOutputBuffer();
+
+    // For FINAL and COMPLETE
+    private Object[] result;
+
+    public String getEstimator() {
+      return estimator;
+    }
+
+    public void setEstimator(String estimator) {
+      this.estimator = estimator;
+    }
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
+
+    @Override
+    public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+      super.init(m, parameters);
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.COMPLETE) {
+        hasher = new ValueHasher((PrimitiveObjectInspector) parameters[0]);
+        sampleRowsOI = (PrimitiveObjectInspector) parameters[1];
+        totalRowsOI = (PrimitiveObjectInspector) parameters[2];
+      } else {
+        partialOI = (BinaryObjectInspector) parameters[0];
+      }
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.PARTIAL2) {
+        partialResult = new BytesWritable();
+        return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+      } else {
+        result = ApproxStatistics.newResult();
+        return ApproxStatistics.getResultObjectInspector();
+      }
+    }
+
+    /** class for storing the count of each value hash. */
+    static class NdvAgg implements AggregationBuffer {
+      Map<Long, Long> counts = new HashMap<Long, Long>();
+      long sampleRows;
+      long totalRows;
+      // values are kept if the low level bits of their hash are zero
+      int level;
+
+      boolean keeps(long hash) {
+        return (hash & ((1L << level) - 1)) == 0;
+      }
+
+      void add(long hash, long count) {
+        if (!keeps(hash)) {
+          return;
+        }
+        Long previous = counts.get(hash);
+        counts.put(hash, previous == null ? count : previous + count);
+        if (counts.size() > MAX_VALUES) {
+          raiseLevel(level + 1);
+        }
+      }
+
+      /**
+       * Drops the values whose hash does not end with the given number of
+       * zero bits, until at most {@link #MAX_VALUES} are left.
+       */
+      void raiseLevel(int newLevel) {
+        level = Math.max(level, newLevel);
+        while (true) {
+          Iterator<Long> it = counts.keySet().iterator();
+          while (it.hasNext()) {
+            if (!keeps(it.next())) {
+              it.remove();
+            }
+          }
+          if (counts.size() <= MAX_VALUES || level >= Long.SIZE - 1) {
+            return;
+          }
+          level++;
+        }
+      }
+    }
+
+    @Override
+    public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+      return new NdvAgg();
+    }
+
+    @Override
+    public void reset(AggregationBuffer agg) throws HiveException {
+      NdvAgg myagg = (NdvAgg) agg;
+      myagg.counts.clear();
+      myagg.sampleRows = 0;
+      myagg.totalRows = 0;
+      myagg.level = 0;
+    }
+
+    @Override
+    public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+      NdvAgg myagg = (NdvAgg) agg;
+      // NULL row counts leave the scale unknown, as in a partial without rows
+      if (parameters[1] != null && parameters[2] != null) {
+        myagg.sampleRows = PrimitiveObjectInspectorUtils.getLong(parameters[1], sampleRowsOI);
+        myagg.totalRows = PrimitiveObjectInspectorUtils.getLong(parameters[2], totalRowsOI);
+      }
+      if (parameters[0] != null) {
+        myagg.add(hasher.hash(parameters[0]), 1);
+      }
+    }
+
+    @Override
+    public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+      NdvAgg myagg = (NdvAgg) agg;
+      try {
+        out.reset();
+        WritableUtils.writeVLong(out, myagg.sampleRows);
+        WritableUtils.writeVLong(out, myagg.totalRows);
+        WritableUtils.writeVInt(out, myagg.level);
+        WritableUtils.writeVInt(out, myagg.counts.size());
+        for (Map.Entry<Long, Long> e : myagg.counts.entrySet()) {
+          out.writeLong(e.getKey());
+          WritableUtils.writeVLong(out, e.getValue());
+        }
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+      partialResult.set(out.getData(), 0, out.getLength());
+      return partialResult;
+    }
+
+    @Override
+    public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+      if (partial == null) {
+        return;
+      }
+      NdvAgg myagg = (NdvAgg) agg;
+      BytesWritable bytes = partialOI.getPrimitiveWritableObject(partial);
+      try {
+        in.reset(bytes.getBytes(), bytes.getLength());
+        long sampleRows = WritableUtils.readVLong(in);
+        long totalRows = WritableUtils.readVLong(in);
+        if (sampleRows > 0) {
+          myagg.sampleRows = sampleRows;
+          myagg.totalRows = totalRows;
+        }
+        myagg.raiseLevel(WritableUtils.readVInt(in));
+        int size = WritableUtils.readVInt(in);
+        for (int i = 0; i < size; i++) {
+          long hash = in.readLong();
+          myagg.add(hash, WritableUtils.readVLong(in));
+        }
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+    }
+
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
+      NdvAgg myagg = (NdvAgg) agg;
+      long f1 = 0;
+      long f2 = 0;
+      for (Long count : myagg.counts.values()) {
+        if (count == 1) {
+          f1++;
+        } else if (count == 2) {
+          f2++;
+        }
+      }
+      long distinct = myagg.counts.size();
+      // scale the profile of the values kept up to all values of the sample
+      long kept = 1L << myagg.level;
+      distinct *= kept;
+      f1 *= kept;
+      f2 *= kept;
+      double scale = myagg.sampleRows > 0 && myagg.totalRows > myagg.sampleRows
+          ? ((double) myagg.totalRows) / myagg.sampleRows : 1;
+
+      double[] e;
+      double stderr;
+      double level;
+      if (estimator.equals(CHAO)) {
+        e = chao(distinct, f1, f2, confidence);
+        stderr = e[3];
+        level = confidence;
+      } else {
+        e = gee(distinct, f1, scale);
+        stderr = Double.NaN;
+        level = Double.NaN;
+      }
+      // never more distinct values than rows
+      double max = myagg.totalRows > 0 ? myagg.totalRows : Double.POSITIVE_INFINITY;
+      return ApproxStatistics.setResult(result, Math.min(e[0], max), Math.min(e[1], max),
+          Math.min(e[2], max), stderr, level);
+    }
+  }
+}
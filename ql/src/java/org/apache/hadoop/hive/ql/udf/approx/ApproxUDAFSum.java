@@ -25,6 +25,7 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.sampling.OnlineAggregation;
 import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
@@ -41,14 +42,14 @@ import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.io.BooleanWritable;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.StringUtils;
 
 /**
  * GenericUDAFSum.
  *
  */
-@Description(name = "approx_sum", value = "_FUNC_(x) - Returns the approximate sum of a set of numbers with error bars")
+@Description(name = "approx_sum", value = "_FUNC_(x) - Returns the approximate sum of a set of numbers, "
+    + "as a struct<estimate, lower, upper, stderr, confidence>")
 public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
 
   static final Log LOG = LogFactory.getLog(ApproxUDAFSum.class.getName());
@@ -73,10 +74,14 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
     case INT:
     case LONG:
 
-      return new ApproxUDAFSumLong();
+      ApproxUDAFSumLong longEvaluator = new ApproxUDAFSumLong();
+      longEvaluator.setConfidence(ApproxStatistics.getConfidence());
+      return longEvaluator;
     case FLOAT:
     case DOUBLE:
-      return new ApproxUDAFSumDouble();
+      ApproxUDAFSumDouble doubleEvaluator = new ApproxUDAFSumDouble();
+      doubleEvaluator.setConfidence(ApproxStatistics.getConfidence());
+      return doubleEvaluator;
     case DATE:
     case TIMESTAMP:
     case STRING:
@@ -92,7 +97,8 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
    * ApproxUDAFSumDouble.
    *
    */
-  public static class ApproxUDAFSumDouble extends GenericUDAFEvaluator {
+  public static class ApproxUDAFSumDouble extends GenericUDAFEvaluator
+      implements OnlineEvaluator, RowGroupEvaluator {
     // private PrimitiveObjectInspector inputOI;
     // private DoubleWritable result;
 
@@ -108,17 +114,45 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
     private StructField varianceField;
     private StructField totalRowsField;
     private StructField sampleRowsField;
+    private StructField groupSquaresField;
+    private StructField groupProductsField;
+    private StructField groupSizeSquaresField;
     private LongObjectInspector countFieldOI;
     private DoubleObjectInspector sumFieldOI;
     private DoubleObjectInspector varianceFieldOI;
     private LongObjectInspector totalRowsFieldOI;
     private LongObjectInspector sampleRowsFieldOI;
+    private DoubleObjectInspector groupSquaresFieldOI;
+    private DoubleObjectInspector groupProductsFieldOI;
+    private DoubleObjectInspector groupSizeSquaresFieldOI;
 
     // For PARTIAL1 and PARTIAL2
     private Object[] partialResult;
 
     // For FINAL and COMPLETE
-    Text result;
+    private Object[] result;
+
+    // Whether the input is sampled by whole RCFile row groups
+    private boolean rowGroupSampled;
+
+    public boolean isRowGroupSampled() {
+      return rowGroupSampled;
+    }
+
+    public void setRowGroupSampled(boolean rowGroupSampled) {
+      this.rowGroupSampled = rowGroupSampled;
+    }
+
+    // Confidence level of the intervals
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
 
     @Override
     public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
@@ -155,6 +189,15 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
             .getFieldObjectInspector();
         sampleRowsFieldOI = (LongObjectInspector) sampleRowsField
             .getFieldObjectInspector();
+        groupSquaresField = soi.getStructFieldRef("groupSquares");
+        groupProductsField = soi.getStructFieldRef("groupProducts");
+        groupSizeSquaresField = soi.getStructFieldRef("groupSizeSquares");
+        groupSquaresFieldOI = (DoubleObjectInspector) groupSquaresField
+            .getFieldObjectInspector();
+        groupProductsFieldOI = (DoubleObjectInspector) groupProductsField
+            .getFieldObjectInspector();
+        groupSizeSquaresFieldOI = (DoubleObjectInspector) groupSizeSquaresField
+            .getFieldObjectInspector();
       }
 
       // init output
@@ -170,6 +213,9 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
         foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
         foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
         foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
 
         ArrayList<String> fname = new ArrayList<String>();
         fname.add("empty");
@@ -178,21 +224,27 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
         fname.add("variance");
         fname.add("totalRows");
         fname.add("sampleRows");
+        fname.add("groupSquares");
+        fname.add("groupProducts");
+        fname.add("groupSizeSquares");
 
-        partialResult = new Object[6];
+        partialResult = new Object[9];
         partialResult[0] = new BooleanWritable();
         partialResult[1] = new LongWritable(0);
         partialResult[2] = new DoubleWritable(0);
         partialResult[3] = new DoubleWritable(0);
         partialResult[4] = new LongWritable(0);
         partialResult[5] = new LongWritable(0);
+        partialResult[6] = new DoubleWritable(0);
+        partialResult[7] = new DoubleWritable(0);
+        partialResult[8] = new DoubleWritable(0);
 
         return ObjectInspectorFactory.getStandardStructObjectInspector(fname,
             foi);
 
       } else {
-        result = new Text();
-        return PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+        result = ApproxStatistics.newResult();
+        return ApproxStatistics.getResultObjectInspector();
       }
 
     }
@@ -205,6 +257,8 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
       double variance; // sum[x-avg^2] (this is actually n times the variance)
       long totalRows;
       long sampleRows;
+      // totals of the row groups read, if rowGroupSampled
+      RowGroupMoments groups = new RowGroupMoments();
     }
 
     @Override
@@ -223,6 +277,7 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
       myagg.variance = 0;
       myagg.totalRows = 0;
       myagg.sampleRows = 0;
+      myagg.groups.reset();
     }
 
     boolean warned = false;
@@ -249,6 +304,9 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
             double t = myagg.count * v - myagg.sum;
             myagg.variance += (t * t) / ((double) myagg.count * (myagg.count - 1));
           }
+          if (rowGroupSampled) {
+            myagg.groups.add(v);
+          }
         } catch (NumberFormatException e) {
           if (!warned) {
             warned = true;
@@ -272,6 +330,10 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
       ((DoubleWritable) partialResult[3]).set(myagg.variance);
       ((LongWritable) partialResult[4]).set(myagg.totalRows);
       ((LongWritable) partialResult[5]).set(myagg.sampleRows);
+      myagg.groups.flush();
+      ((DoubleWritable) partialResult[6]).set(myagg.groups.getSquares());
+      ((DoubleWritable) partialResult[7]).set(myagg.groups.getProducts());
+      ((DoubleWritable) partialResult[8]).set(myagg.groups.getSizeSquares());
       return partialResult;
     }
 
@@ -296,6 +358,10 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
         long r = sampleRowsFieldOI.get(partialSampleRows);
         myagg.totalRows = q;
         myagg.sampleRows = r;
+        myagg.groups.merge(
+            groupSquaresFieldOI.get(soi.getStructFieldData(partial, groupSquaresField)),
+            groupProductsFieldOI.get(soi.getStructFieldData(partial, groupProductsField)),
+            groupSizeSquaresFieldOI.get(soi.getStructFieldData(partial, groupSizeSquaresField)));
 
 
         if (n == 0) {
@@ -322,6 +388,24 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
       }
     }
 
+    @Override
+    public void getMoments(AggregationBuffer agg, OnlineAggregation.Moments moments) {
+      SumDoubleAgg myagg = (SumDoubleAgg) agg;
+      moments.set(false, myagg.count, myagg.sum, myagg.variance, myagg.totalRows,
+          getDesignEffect(myagg), confidence);
+    }
+
+    /**
+     * @return the variance inflation of the sum due to sampling row groups
+     */
+    private double getDesignEffect(SumDoubleAgg myagg) {
+      if (myagg.count == 0) {
+        return 1.0;
+      }
+      return myagg.groups.getTotalDesignEffect(
+          myagg.variance + (double) myagg.sum * myagg.sum / myagg.count);
+    }
+
     @Override
     public Object terminate(AggregationBuffer agg) throws HiveException {
       SumDoubleAgg myagg = (SumDoubleAgg) agg;
@@ -329,35 +413,21 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
         return null;
       }
 
-      double approx_sum = ((double) myagg.sum * myagg.totalRows) / myagg.sampleRows;
-      double probability = ((double) myagg.count) / ((double) myagg.totalRows);
-      double mean = myagg.sum / myagg.count;
-
-      LOG.info("Sum: " + approx_sum);
-      LOG.info("TotalRows: " + myagg.totalRows);
-      LOG.info("Probability: " + probability);
-      LOG.info("Sampling Ratio: " + ((double) myagg.sampleRows) / myagg.totalRows);
-
-      StringBuilder sb = new StringBuilder();
-      sb.append(approx_sum);
-      sb.append(" +/- ");
-      sb.append(Math.ceil((2.575 * (1.0 * myagg.totalRows / myagg.sampleRows) * Math
-          .sqrt(probability
-              * ((myagg.variance) + ((1 - probability) * myagg.totalRows * mean * mean))))));
-      sb.append(" (99% Confidence) ");
-
-      result.set(sb.toString());
-      return result;
+      double approxSum = ((double) myagg.sum * myagg.totalRows) / myagg.sampleRows;
+      double stderr = Math.sqrt(getDesignEffect(myagg)) * ApproxStatistics.totalStandardError(
+          myagg.count, myagg.sum, myagg.variance, myagg.sampleRows, myagg.totalRows);
+      return ApproxStatistics.setResult(result, approxSum, stderr,
+          confidence, myagg.count);
 
     }
-
   }
 
   /**
    * GenericUDAFSumLong.
    *
    */
-  public static class ApproxUDAFSumLong extends GenericUDAFEvaluator {
+  public static class ApproxUDAFSumLong extends GenericUDAFEvaluator
+      implements OnlineEvaluator, RowGroupEvaluator {
     // private PrimitiveObjectInspector inputOI;
     // private LongWritable result;
 
@@ -373,17 +443,45 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
     private StructField varianceField;
     private StructField totalRowsField;
     private StructField sampleRowsField;
+    private StructField groupSquaresField;
+    private StructField groupProductsField;
+    private StructField groupSizeSquaresField;
     private LongObjectInspector countFieldOI;
     private LongObjectInspector sumFieldOI;
     private DoubleObjectInspector varianceFieldOI;
     private LongObjectInspector totalRowsFieldOI;
     private LongObjectInspector sampleRowsFieldOI;
+    private DoubleObjectInspector groupSquaresFieldOI;
+    private DoubleObjectInspector groupProductsFieldOI;
+    private DoubleObjectInspector groupSizeSquaresFieldOI;
 
     // For PARTIAL1 and PARTIAL2
     private Object[] partialResult;
 
     // For FINAL and COMPLETE
-    Text result;
+    private Object[] result;
+
+    // Whether the input is sampled by whole RCFile row groups
+    private boolean rowGroupSampled;
+
+    public boolean isRowGroupSampled() {
+      return rowGroupSampled;
+    }
+
+    public void setRowGroupSampled(boolean rowGroupSampled) {
+      this.rowGroupSampled = rowGroupSampled;
+    }
+
+    // Confidence level of the intervals
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
 
 
     @Override
@@ -417,6 +515,15 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
             .getFieldObjectInspector();
         sampleRowsFieldOI = (LongObjectInspector) sampleRowsField
             .getFieldObjectInspector();
+        groupSquaresField = soi.getStructFieldRef("groupSquares");
+        groupProductsField = soi.getStructFieldRef("groupProducts");
+        groupSizeSquaresField = soi.getStructFieldRef("groupSizeSquares");
+        groupSquaresFieldOI = (DoubleObjectInspector) groupSquaresField
+            .getFieldObjectInspector();
+        groupProductsFieldOI = (DoubleObjectInspector) groupProductsField
+            .getFieldObjectInspector();
+        groupSizeSquaresFieldOI = (DoubleObjectInspector) groupSizeSquaresField
+            .getFieldObjectInspector();
       }
 
       // init output
@@ -432,6 +539,9 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
         foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
         foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
         foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
 
         ArrayList<String> fname = new ArrayList<String>();
         fname.add("empty");
@@ -440,21 +550,27 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
         fname.add("variance");
         fname.add("totalRows");
         fname.add("sampleRows");
+        fname.add("groupSquares");
+        fname.add("groupProducts");
+        fname.add("groupSizeSquares");
 
-        partialResult = new Object[6];
+        partialResult = new Object[9];
         partialResult[0] = new BooleanWritable();
         partialResult[1] = new LongWritable(0);
         partialResult[2] = new LongWritable(0);
         partialResult[3] = new DoubleWritable(0);
         partialResult[4] = new LongWritable(0);
         partialResult[5] = new LongWritable(0);
+        partialResult[6] = new DoubleWritable(0);
+        partialResult[7] = new DoubleWritable(0);
+        partialResult[8] = new DoubleWritable(0);
 
         return ObjectInspectorFactory.getStandardStructObjectInspector(fname,
             foi);
 
       } else {
-        result = new Text();
-        return PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+        result = ApproxStatistics.newResult();
+        return ApproxStatistics.getResultObjectInspector();
       }
 
     }
@@ -467,6 +583,8 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
       double variance; // sum[x-avg^2] (this is actually n times the variance)
       long totalRows;
       long sampleRows;
+      // totals of the row groups read, if rowGroupSampled
+      RowGroupMoments groups = new RowGroupMoments();
     }
 
     @Override
@@ -485,6 +603,7 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
       myagg.variance = 0;
       myagg.totalRows = 0;
       myagg.sampleRows = 0;
+      myagg.groups.reset();
     }
 
     private boolean warned = false;
@@ -512,6 +631,9 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
             double t = myagg.count * v - myagg.sum;
             myagg.variance += (t * t) / ((double) myagg.count * (myagg.count - 1));
           }
+          if (rowGroupSampled) {
+            myagg.groups.add(v);
+          }
         } catch (NumberFormatException e) {
           if (!warned) {
             warned = true;
@@ -532,6 +654,10 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
       ((DoubleWritable) partialResult[3]).set(myagg.variance);
       ((LongWritable) partialResult[4]).set(myagg.totalRows);
       ((LongWritable) partialResult[5]).set(myagg.sampleRows);
+      myagg.groups.flush();
+      ((DoubleWritable) partialResult[6]).set(myagg.groups.getSquares());
+      ((DoubleWritable) partialResult[7]).set(myagg.groups.getProducts());
+      ((DoubleWritable) partialResult[8]).set(myagg.groups.getSizeSquares());
 
       return partialResult;
 
@@ -557,6 +683,10 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
 
         myagg.totalRows = q;
         myagg.sampleRows = r;
+        myagg.groups.merge(
+            groupSquaresFieldOI.get(soi.getStructFieldData(partial, groupSquaresField)),
+            groupProductsFieldOI.get(soi.getStructFieldData(partial, groupProductsField)),
+            groupSizeSquaresFieldOI.get(soi.getStructFieldData(partial, groupSizeSquaresField)));
 
         if (n == 0) {
           // Just copy the information since there is nothing so far
@@ -581,6 +711,24 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
       }
     }
 
+    @Override
+    public void getMoments(AggregationBuffer agg, OnlineAggregation.Moments moments) {
+      SumLongAgg myagg = (SumLongAgg) agg;
+      moments.set(false, myagg.count, myagg.sum, myagg.variance, myagg.totalRows,
+          getDesignEffect(myagg), confidence);
+    }
+
+    /**
+     * @return the variance inflation of the sum due to sampling row groups
+     */
+    private double getDesignEffect(SumLongAgg myagg) {
+      if (myagg.count == 0) {
+        return 1.0;
+      }
+      return myagg.groups.getTotalDesignEffect(
+          myagg.variance + (double) myagg.sum * myagg.sum / myagg.count);
+    }
+
     @Override
     public Object terminate(AggregationBuffer agg) throws HiveException {
 
@@ -590,25 +738,11 @@ public class ApproxUDAFSum extends AbstractGenericUDAFResolver {
         return null;
       }
 
-      double approx_sum = ((double) myagg.sum * myagg.totalRows) / myagg.sampleRows;
-      double probability = ((double) myagg.count) / ((double) myagg.sampleRows);
-      double mean = ((double) myagg.sum) / myagg.count;
-
-      LOG.info("Sum: " + approx_sum);
-      LOG.info("TotalRows: " + myagg.totalRows);
-      LOG.info("Probability: " + probability);
-      LOG.info("Sampling Ratio: " + ((double) myagg.sampleRows) / myagg.totalRows);
-
-      StringBuilder sb = new StringBuilder();
-      sb.append(approx_sum);
-      sb.append(" +/- ");
-      sb.append(Math.ceil((2.575 * (1.0 * myagg.totalRows / myagg.sampleRows) * Math
-          .sqrt(probability
-              * ((myagg.variance) + ((1 - probability) * myagg.totalRows * mean * mean))))));
-      sb.append(" (99% Confidence) ");
-
-      result.set(sb.toString());
-      return result;
+      double approxSum = ((double) myagg.sum * myagg.totalRows) / myagg.sampleRows;
+      double stderr = Math.sqrt(getDesignEffect(myagg)) * ApproxStatistics.totalStandardError(
+          myagg.count, myagg.sum, myagg.variance, myagg.sampleRows, myagg.totalRows);
+      return ApproxStatistics.setResult(result, approxSum, stderr,
+          confidence, myagg.count);
 
     }
 
@@ -0,0 +1,342 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFParameterInfo;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Approximate k most frequent values, from a {@link SpaceSaving} summary of
+ * COUNTERS_PER_K * k counters per group.
+ *
+ * Unlike GROUP BY x ORDER BY count(1) DESC LIMIT k, it does not shuffle every
+ * distinct value: the summaries are built on the map side and merged in one
+ * reducer per group. The partial aggregations are the counters of the
+ * summaries. Each value of the result comes with the bounds of its frequency
+ * guaranteed by the summary, and the count within them; over n rows they are
+ * at most n / (COUNTERS_PER_K * k) apart.
+ *
+ * Given the sample and total number of rows, the frequencies are estimated
+ * for the whole table by scaling them and their bounds by the sampling rate.
+ * The bounds then only account for the summary: the sampling error of a
+ * frequency f is that of approx_count, whose relative error shrinks as f
+ * grows, so it matters little for the heavy hitters.
+ */
+@Description(name = "approx_topk",
+    value = "_FUNC_(x, k[, sampleRows, totalRows]) - Returns the approximate k most frequent "
+        + "values of x, as an array<struct<item, count, lower, upper>> by decreasing count",
+    extended = "The constant k sets the number of values returned. Their counts are scaled by "
+        + "totalRows / sampleRows when those are given.")
+public class ApproxUDAFTopK extends AbstractGenericUDAFResolver {
+
+  /**
+   * The number of counters kept per value returned.
+   */
+  public static final int COUNTERS_PER_K = 10;
+
+  @Override
+  public GenericUDAFEvaluator getEvaluator(GenericUDAFParameterInfo info)
+      throws SemanticException {
+    ObjectInspector[] parameters = info.getParameterObjectInspectors();
+    if (parameters.length != 2 && parameters.length != 4) {
+      throw new UDFArgumentTypeException(parameters.length - 1,
+          "Please specify two or four arguments.");
+    }
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        throw new UDFArgumentTypeException(i,
+            "Only primitive type arguments are accepted but "
+                + parameters[i].getTypeName() + " is passed.");
+      }
+    }
+    if (!ObjectInspectorUtils.isConstantObjectInspector(parameters[1])) {
+      throw new UDFArgumentTypeException(1,
+          "The second argument must be a constant integer, but "
+              + parameters[1].getTypeName() + " was passed instead.");
+    }
+    int k = PrimitiveObjectInspectorUtils.getInt(
+        ((ConstantObjectInspector) parameters[1]).getWritableConstantValue(),
+        (PrimitiveObjectInspector) parameters[1]);
+    if (k <= 0) {
+      throw new UDFArgumentTypeException(1,
+          "The number of values must be positive, but " + k + " was passed instead.");
+    }
+
+    ApproxUDAFTopKEvaluator evaluator = new ApproxUDAFTopKEvaluator();
+    evaluator.setK(k);
+    return evaluator;
+  }
+
+  /**
+   * ApproxUDAFTopKEvaluator.
+   *
+   */
+  public static class ApproxUDAFTopKEvaluator extends GenericUDAFEvaluator {
+
+    private int k;
+
+    // For PARTIAL1 and COMPLETE
+    private PrimitiveObjectInspector inputOI;
+    private PrimitiveObjectInspector sampleRowsOI;
+    private PrimitiveObjectInspector totalRowsOI;
+
+    // For PARTIAL2 and FINAL
+    private StructObjectInspector soi;
+    private StructField sampleRowsField;
+    private StructField totalRowsField;
+    private StructField minField;
+    private StructField itemsField;
+    private StructField countsField;
+    private StructField errorsField;
+    private LongObjectInspector sampleRowsFieldOI;
+    private LongObjectInspector totalRowsFieldOI;
+    private LongObjectInspector minFieldOI;
+    private ListObjectInspector itemsFieldOI;
+    private ListObjectInspector countsFieldOI;
+    private ListObjectInspector errorsFieldOI;
+    private final List<Object> mergeItems = new ArrayList<Object>();
+    private final List<Long> mergeCounts = new ArrayList<Long>();
+    private final List<Long> mergeErrors = new ArrayList<Long>();
+
+    // For PARTIAL1 and PARTIAL2
+    private Object[] partialResult;
+
+    public int getK() {
+      return k;
+    }
+
+    public void setK(int k) {
+      this.k = k;
+    }
+
+    @Override
+    public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+      super.init(m, parameters);
+
+      // the values are kept as writables, which is what the partial
+      // aggregations and the result carry
+      ObjectInspector itemOI;
+      if (mode == Mode.PARTIAL1 || mode == Mode.COMPLETE) {
+        inputOI = (PrimitiveObjectInspector) parameters[0];
+        if (parameters.length == 4) {
+          sampleRowsOI = (PrimitiveObjectInspector) parameters[2];
+          totalRowsOI = (PrimitiveObjectInspector) parameters[3];
+        }
+        itemOI = ObjectInspectorUtils.getStandardObjectInspector(inputOI,
+            ObjectInspectorCopyOption.WRITABLE);
+      } else {
+        soi = (StructObjectInspector) parameters[0];
+        sampleRowsField = soi.getStructFieldRef("sampleRows");
+        totalRowsField = soi.getStructFieldRef("totalRows");
+        minField = soi.getStructFieldRef("min");
+        itemsField = soi.getStructFieldRef("items");
+        countsField = soi.getStructFieldRef("counts");
+        errorsField = soi.getStructFieldRef("errors");
+        sampleRowsFieldOI = (LongObjectInspector) sampleRowsField.getFieldObjectInspector();
+        totalRowsFieldOI = (LongObjectInspector) totalRowsField.getFieldObjectInspector();
+        minFieldOI = (LongObjectInspector) minField.getFieldObjectInspector();
+        itemsFieldOI = (ListObjectInspector) itemsField.getFieldObjectInspector();
+        countsFieldOI = (ListObjectInspector) countsField.getFieldObjectInspector();
+        errorsFieldOI = (ListObjectInspector) errorsField.getFieldObjectInspector();
+        itemOI = ObjectInspectorUtils.getStandardObjectInspector(
+            itemsFieldOI.getListElementObjectInspector(), ObjectInspectorCopyOption.WRITABLE);
+      }
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.PARTIAL2) {
+        ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
+        foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(ObjectInspectorFactory.getStandardListObjectInspector(itemOI));
+        foi.add(ObjectInspectorFactory.getStandardListObjectInspector(
+            PrimitiveObjectInspectorFactory.writableLongObjectInspector));
+        foi.add(ObjectInspectorFactory.getStandardListObjectInspector(
+            PrimitiveObjectInspectorFactory.writableLongObjectInspector));
+        ArrayList<String> fname = new ArrayList<String>();
+        fname.add("sampleRows");
+        fname.add("totalRows");
+        fname.add("min");
+        fname.add("items");
+        fname.add("counts");
+        fname.add("errors");
+        partialResult = new Object[6];
+        partialResult[0] = new LongWritable(0);
+        partialResult[1] = new LongWritable(0);
+        partialResult[2] = new LongWritable(0);
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+      } else {
+        ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
+        foi.add(itemOI);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        ArrayList<String> fname = new ArrayList<String>();
+        fname.add("item");
+        fname.add("count");
+        fname.add("lower");
+        fname.add("upper");
+        return ObjectInspectorFactory.getStandardListObjectInspector(
+            ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi));
+      }
+    }
+
+    /** class for storing the summary. */
+    static class TopKAgg implements AggregationBuffer {
+      SpaceSaving summary;
+      long sampleRows;
+      long totalRows;
+    }
+
+    @Override
+    public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+      TopKAgg agg = new TopKAgg();
+      reset(agg);
+      return agg;
+    }
+
+    @Override
+    public void reset(AggregationBuffer agg) throws HiveException {
+      TopKAgg myagg = (TopKAgg) agg;
+      if (myagg.summary == null) {
+        myagg.summary = new SpaceSaving(COUNTERS_PER_K * k);
+      } else {
+        myagg.summary.clear();
+      }
+      myagg.sampleRows = 0;
+      myagg.totalRows = 0;
+    }
+
+    @Override
+    public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+      TopKAgg myagg = (TopKAgg) agg;
+      if (sampleRowsOI != null) {
+        myagg.sampleRows = PrimitiveObjectInspectorUtils.getLong(parameters[2], sampleRowsOI);
+        myagg.totalRows = PrimitiveObjectInspectorUtils.getLong(parameters[3], totalRowsOI);
+      }
+      Object p = parameters[0];
+      if (p == null) {
+        return;
+      }
+      // look the value up as is, and copy it only when it takes a counter
+      if (!myagg.summary.increment(inputOI.getPrimitiveWritableObject(p), 1)) {
+        myagg.summary.add(ObjectInspectorUtils.copyToStandardObject(p, inputOI,
+            ObjectInspectorCopyOption.WRITABLE), 1, 0);
+      }
+    }
+
+    @Override
+    public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+      TopKAgg myagg = (TopKAgg) agg;
+      SpaceSaving summary = myagg.summary;
+      ArrayList<Object> items = new ArrayList<Object>(summary.size());
+      ArrayList<LongWritable> counts = new ArrayList<LongWritable>(summary.size());
+      ArrayList<LongWritable> errors = new ArrayList<LongWritable>(summary.size());
+      for (int i = 0; i < summary.size(); i++) {
+        items.add(summary.getItem(i));
+        counts.add(new LongWritable(summary.getCount(i)));
+        errors.add(new LongWritable(summary.getError(i)));
+      }
+      ((LongWritable) partialResult[0]).set(myagg.sampleRows);
+      ((LongWritable) partialResult[1]).set(myagg.totalRows);
+      ((LongWritable) partialResult[2]).set(summary.getMinCount());
+      partialResult[3] = items;
+      partialResult[4] = counts;
+      partialResult[5] = errors;
+      return partialResult;
+    }
+
+    @Override
+    public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+      if (partial == null) {
+        return;
+      }
+      TopKAgg myagg = (TopKAgg) agg;
+      long sampleRows = sampleRowsFieldOI.get(soi.getStructFieldData(partial, sampleRowsField));
+      if (sampleRows > 0) {
+        myagg.sampleRows = sampleRows;
+        myagg.totalRows = totalRowsFieldOI.get(soi.getStructFieldData(partial, totalRowsField));
+      }
+      long min = minFieldOI.get(soi.getStructFieldData(partial, minField));
+      Object items = soi.getStructFieldData(partial, itemsField);
+      Object counts = soi.getStructFieldData(partial, countsField);
+      Object errors = soi.getStructFieldData(partial, errorsField);
+      ObjectInspector itemOI = itemsFieldOI.getListElementObjectInspector();
+      LongObjectInspector countOI =
+          (LongObjectInspector) countsFieldOI.getListElementObjectInspector();
+      LongObjectInspector errorOI =
+          (LongObjectInspector) errorsFieldOI.getListElementObjectInspector();
+
+      mergeItems.clear();
+      mergeCounts.clear();
+      mergeErrors.clear();
+      int size = itemsFieldOI.getListLength(items);
+      for (int i = 0; i < size; i++) {
+        mergeItems.add(ObjectInspectorUtils.copyToStandardObject(
+            itemsFieldOI.getListElement(items, i), itemOI, ObjectInspectorCopyOption.WRITABLE));
+        mergeCounts.add(countOI.get(countsFieldOI.getListElement(counts, i)));
+        mergeErrors.add(errorOI.get(errorsFieldOI.getListElement(errors, i)));
+      }
+      myagg.summary.merge(mergeItems, mergeCounts, mergeErrors, min);
+    }
+
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
+      TopKAgg myagg = (TopKAgg) agg;
+      SpaceSaving summary = myagg.summary;
+      double scale = myagg.sampleRows > 0 && myagg.totalRows > myagg.sampleRows
+          ? ((double) myagg.totalRows) / myagg.sampleRows : 1;
+
+      Integer[] top = summary.getTop();
+      ArrayList<Object[]> result = new ArrayList<Object[]>(Math.min(k, top.length));
+      for (int i = 0; i < top.length && i < k; i++) {
+        int pos = top[i];
+        long count = summary.getCount(pos);
+        Object[] row = new Object[4];
+        row[0] = summary.getItem(pos);
+        row[1] = new DoubleWritable(count * scale);
+        row[2] = new DoubleWritable((count - summary.getError(pos)) * scale);
+        row[3] = new DoubleWritable(count * scale);
+        result.add(row);
+      }
+      return result;
+    }
+  }
+}
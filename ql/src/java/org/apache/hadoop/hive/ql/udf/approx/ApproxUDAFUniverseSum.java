@@ -0,0 +1,327 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.ArrayList;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Approximate sum over a universe sample,
+ * <code>TABLESAMPLE(UNIVERSE m OUT OF M ON key)</code>, which keeps the rows
+ * whose key hashes to one of the first m of M buckets.
+ *
+ * Since whole keys are kept or dropped, rows are not sampled independently
+ * and the variance of approx_sum does not apply; in exchange every table
+ * sampled on the join key keeps the same keys, so joins of samples are
+ * samples of the join. The estimate is M/m times the sampled sum. Its
+ * variance is estimated from the m buckets, which are independent random
+ * groups of keys: each bucket total times M estimates the sum, and the
+ * estimate is their mean, with m - 1 degrees of freedom. The key arguments
+ * must be the sampling expressions, with the same types, so that rows hash to
+ * the same buckets; rows of other buckets are ignored. m and M must be those of
+ * the clause, which the query compiler passes on to the evaluator.
+ */
+@Description(name = "approx_universe_sum",
+    value = "_FUNC_(x, m, M, key, ...) - Returns the approximate sum of a set of numbers "
+    + "over the universe sample TABLESAMPLE(UNIVERSE m OUT OF M ON key, ...), "
+    + "as a struct<estimate, lower, upper, stderr, confidence>")
+public class ApproxUDAFUniverseSum extends AbstractGenericUDAFResolver {
+
+  @Override
+  public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+    if (parameters.length < 4) {
+      throw new UDFArgumentTypeException(parameters.length - 1,
+          "At least four arguments are expected.");
+    }
+    for (int i = 0; i < 3; i++) {
+      if (parameters[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        throw new UDFArgumentTypeException(i, "Only primitive type arguments are accepted but "
+            + parameters[i].getTypeName() + " is passed.");
+      }
+      switch (((PrimitiveTypeInfo) parameters[i]).getPrimitiveCategory()) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        break;
+      case FLOAT:
+      case DOUBLE:
+        if (i == 0) {
+          break;
+        }
+        // fall through
+      default:
+        throw new UDFArgumentTypeException(i, (i == 0 ? "Only numeric" : "Only integer")
+            + " type arguments are accepted but " + parameters[i].getTypeName()
+            + " is passed.");
+      }
+    }
+
+    ApproxUDAFUniverseSumEvaluator evaluator = new ApproxUDAFUniverseSumEvaluator();
+    evaluator.setConfidence(ApproxStatistics.getConfidence());
+    return evaluator;
+  }
+
+  /**
+   * ApproxUDAFUniverseSumEvaluator.
+   *
+   * The partial result is a struct of m, M and the totals of the m buckets.
+   */
+  public static class ApproxUDAFUniverseSumEvaluator extends GenericUDAFEvaluator
+      implements ApproxEvaluator {
+
+    // For PARTIAL1 and COMPLETE
+    private ObjectInspector[] inputOIs;
+
+    // For PARTIAL2 and FINAL
+    private StructObjectInspector soi;
+    private StructField universeField;
+    private StructField bucketsField;
+    private StructField totalsField;
+    private LongObjectInspector universeFieldOI;
+    private LongObjectInspector bucketsFieldOI;
+    private ListObjectInspector totalsFieldOI;
+    private DoubleObjectInspector totalOI;
+
+    // For PARTIAL1 and PARTIAL2
+    private Object[] partialResult;
+
+    // For FINAL and COMPLETE
+    private Object[] result;
+
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
+
+    // m and M of the universe sample aggregated, 0 if unknown
+    private int sampleUniverse;
+    private int sampleBuckets;
+
+    public int getSampleUniverse() {
+      return sampleUniverse;
+    }
+
+    public void setSampleUniverse(int sampleUniverse) {
+      this.sampleUniverse = sampleUniverse;
+    }
+
+    public int getSampleBuckets() {
+      return sampleBuckets;
+    }
+
+    public void setSampleBuckets(int sampleBuckets) {
+      this.sampleBuckets = sampleBuckets;
+    }
+
+    @Override
+    public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+      super.init(m, parameters);
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.COMPLETE) {
+        inputOIs = parameters;
+      } else {
+        soi = (StructObjectInspector) parameters[0];
+        universeField = soi.getStructFieldRef("universe");
+        bucketsField = soi.getStructFieldRef("buckets");
+        totalsField = soi.getStructFieldRef("totals");
+        universeFieldOI = (LongObjectInspector) universeField.getFieldObjectInspector();
+        bucketsFieldOI = (LongObjectInspector) bucketsField.getFieldObjectInspector();
+        totalsFieldOI = (ListObjectInspector) totalsField.getFieldObjectInspector();
+        totalOI = (DoubleObjectInspector) totalsFieldOI.getListElementObjectInspector();
+      }
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.PARTIAL2) {
+        ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
+        foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(ObjectInspectorFactory.getStandardListObjectInspector(
+            PrimitiveObjectInspectorFactory.writableDoubleObjectInspector));
+        ArrayList<String> fname = new ArrayList<String>();
+        fname.add("universe");
+        fname.add("buckets");
+        fname.add("totals");
+        partialResult = new Object[3];
+        partialResult[0] = new LongWritable(0);
+        partialResult[1] = new LongWritable(0);
+        partialResult[2] = new ArrayList<DoubleWritable>();
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+      } else {
+        result = ApproxStatistics.newResult();
+        return ApproxStatistics.getResultObjectInspector();
+      }
+    }
+
+    /** class for storing the bucket totals. */
+    static class UniverseAgg implements AggregationBuffer {
+      int buckets;
+      double[] totals;
+    }
+
+    @Override
+    public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+      UniverseAgg buffer = new UniverseAgg();
+      reset(buffer);
+      return buffer;
+    }
+
+    @Override
+    public void reset(AggregationBuffer agg) throws HiveException {
+      UniverseAgg myagg = (UniverseAgg) agg;
+      myagg.buckets = 0;
+      myagg.totals = null;
+    }
+
+    private void setUniverse(UniverseAgg myagg, long universe, long buckets)
+        throws HiveException {
+      if (myagg.totals == null) {
+        if (universe < 1 || universe > buckets || buckets > Integer.MAX_VALUE) {
+          throw new HiveException("Invalid universe " + universe + " out of " + buckets);
+        }
+        if (sampleBuckets > 0 && (universe != sampleUniverse || buckets != sampleBuckets)) {
+          throw new HiveException("approx_universe_sum of " + universe + " out of " + buckets
+              + " buckets over TABLESAMPLE(UNIVERSE " + sampleUniverse + " OUT OF "
+              + sampleBuckets + ")");
+        }
+        myagg.buckets = (int) buckets;
+        myagg.totals = new double[(int) universe];
+      } else if (myagg.totals.length != universe || myagg.buckets != buckets) {
+        throw new HiveException("The universe of approx_universe_sum must be constant");
+      }
+    }
+
+    @Override
+    public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+      Object value = parameters[0];
+      if (value == null || parameters[1] == null || parameters[2] == null) {
+        return;
+      }
+      UniverseAgg myagg = (UniverseAgg) agg;
+      setUniverse(myagg,
+          PrimitiveObjectInspectorUtils.getLong(parameters[1],
+              (PrimitiveObjectInspector) inputOIs[1]),
+          PrimitiveObjectInspectorUtils.getLong(parameters[2],
+              (PrimitiveObjectInspector) inputOIs[2]));
+
+      // Same bucket as GenericUDFHash in the TABLESAMPLE predicate
+      int hash = 0;
+      for (int i = 3; i < parameters.length; i++) {
+        hash = hash * 31 + ObjectInspectorUtils.hashCode(parameters[i], inputOIs[i]);
+      }
+      int bucket = (hash & Integer.MAX_VALUE) % myagg.buckets;
+      if (bucket < myagg.totals.length) {
+        myagg.totals[bucket] += PrimitiveObjectInspectorUtils.getDouble(value,
+            (PrimitiveObjectInspector) inputOIs[0]);
+      }
+    }
+
+    @Override
+    public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+      UniverseAgg myagg = (UniverseAgg) agg;
+      @SuppressWarnings("unchecked")
+      ArrayList<DoubleWritable> totals = (ArrayList<DoubleWritable>) partialResult[2];
+      totals.clear();
+      if (myagg.totals == null) {
+        ((LongWritable) partialResult[0]).set(0);
+        ((LongWritable) partialResult[1]).set(0);
+        return partialResult;
+      }
+      ((LongWritable) partialResult[0]).set(myagg.totals.length);
+      ((LongWritable) partialResult[1]).set(myagg.buckets);
+      for (double total : myagg.totals) {
+        totals.add(new DoubleWritable(total));
+      }
+      return partialResult;
+    }
+
+    @Override
+    public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+      if (partial == null) {
+        return;
+      }
+      long universe = universeFieldOI.get(soi.getStructFieldData(partial, universeField));
+      if (universe == 0) {
+        return;
+      }
+      UniverseAgg myagg = (UniverseAgg) agg;
+      setUniverse(myagg, universe,
+          bucketsFieldOI.get(soi.getStructFieldData(partial, bucketsField)));
+      Object totals = soi.getStructFieldData(partial, totalsField);
+      for (int i = 0; i < myagg.totals.length; i++) {
+        myagg.totals[i] += totalOI.get(totalsFieldOI.getListElement(totals, i));
+      }
+    }
+
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
+      UniverseAgg myagg = (UniverseAgg) agg;
+      if (myagg.totals == null) {
+        return null;
+      }
+      int m = myagg.totals.length;
+      double sum = 0;
+      for (double total : myagg.totals) {
+        sum += total;
+      }
+      double estimate = sum * myagg.buckets / m;
+
+      // Each bucket total times M is an estimate of the sum
+      double stderr;
+      if (m == myagg.buckets) {
+        stderr = 0;
+      } else if (m < 2) {
+        stderr = Double.NaN;
+      } else {
+        double squares = 0;
+        for (double total : myagg.totals) {
+          double deviation = total * myagg.buckets - estimate;
+          squares += deviation * deviation;
+        }
+        stderr = Math.sqrt((1 - ((double) m) / myagg.buckets) * squares / (m - 1) / m);
+      }
+      return ApproxStatistics.setResult(result, estimate, stderr, confidence, m);
+    }
+  }
+}
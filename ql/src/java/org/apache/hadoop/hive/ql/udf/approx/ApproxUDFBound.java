@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+
+/**
+ * Base of the accessors of a field of the result of an approximate aggregate
+ * (see {@link ApproxStatistics}).
+ */
+public abstract class ApproxUDFBound extends GenericUDF {
+
+  private StructObjectInspector soi;
+  private StructField field;
+  private final DoubleWritable result = new DoubleWritable();
+
+  /**
+   * @return the name of the function
+   */
+  protected abstract String getFuncName();
+
+  /**
+   * @return the name of the field returned
+   */
+  protected abstract String getFieldName();
+
+  @Override
+  public ObjectInspector initialize(ObjectInspector[] arguments)
+      throws UDFArgumentException {
+    if (arguments.length != 1) {
+      throw new UDFArgumentLengthException(getFuncName().toUpperCase()
+          + "() expects one argument.");
+    }
+    if (arguments[0].getCategory() != Category.STRUCT) {
+      throw new UDFArgumentTypeException(0, "Argument to "
+          + getFuncName().toUpperCase() + "() should be the result of an "
+          + "approximate aggregate but " + arguments[0].getTypeName() + " is passed.");
+    }
+    soi = (StructObjectInspector) arguments[0];
+    try {
+      field = soi.getStructFieldRef(getFieldName());
+    } catch (RuntimeException e) {
+      field = null;
+    }
+    if (field == null
+        || field.getFieldObjectInspector().getCategory() != Category.PRIMITIVE) {
+      throw new UDFArgumentTypeException(0, "Argument to "
+          + getFuncName().toUpperCase() + "() should have a numeric field "
+          + getFieldName() + " but " + arguments[0].getTypeName() + " is passed.");
+    }
+    return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+  }
+
+  @Override
+  public Object evaluate(DeferredObject[] arguments) throws HiveException {
+    Object struct = arguments[0].get();
+    if (struct == null) {
+      return null;
+    }
+    Object value = soi.getStructFieldData(struct, field);
+    if (value == null) {
+      return null;
+    }
+    result.set(PrimitiveObjectInspectorUtils.getDouble(value,
+        (PrimitiveObjectInspector) field.getFieldObjectInspector()));
+    return result;
+  }
+
+  @Override
+  public String getDisplayString(String[] children) {
+    assert (children.length == 1);
+    return getFuncName() + "(" + children[0] + ")";
+  }
+}
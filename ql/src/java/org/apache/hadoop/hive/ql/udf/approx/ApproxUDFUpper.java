@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * ApproxUDFUpper.
+ *
+ */
+@Description(name = "ci_upper",
+    value = "_FUNC_(x) - Returns the upper bound of the confidence interval of an "
+        + "approximate aggregate",
+    extended = "Example:\n"
+        + "  > SELECT _FUNC_(approx_sum(x, sampleRows, totalRows)) FROM src_sample;")
+public class ApproxUDFUpper extends ApproxUDFBound {
+
+  @Override
+  protected String getFuncName() {
+    return "ci_upper";
+  }
+
+  @Override
+  protected String getFieldName() {
+    return ApproxStatistics.UPPER;
+  }
+}
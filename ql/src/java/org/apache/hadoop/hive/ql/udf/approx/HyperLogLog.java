@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch of the number of distinct 64 bit hashes added to it
+ * (Flajolet et al., 2007).
+ *
+ * The first p bits of a hash pick one of m = 2^p registers, which keeps the
+ * largest position of the first 1 bit in the remaining bits. The estimate is
+ * the normalized harmonic mean of 2^register, with linear counting of the
+ * empty registers for small cardinalities. Its relative standard error is
+ * 1.04 / sqrt(m). Sketches of the same precision merge by taking the largest
+ * value of each register, and serialize as one byte of precision followed by
+ * one byte per register.
+ */
+public class HyperLogLog {
+
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 16;
+  public static final int DEFAULT_PRECISION = 12;
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION
+          + " and " + MAX_PRECISION + ": " + precision);
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  public void clear() {
+    Arrays.fill(registers, (byte) 0);
+  }
+
+  /**
+   * Adds a uniformly distributed 64 bit hash.
+   */
+  public void add(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    // the sentinel bit bounds the rank when the remaining bits are all 0
+    long w = (hash << precision) | (1L << (precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+  }
+
+  /**
+   * Adds the hashes of another sketch of the same precision.
+   */
+  public void merge(HyperLogLog other) {
+    checkPrecision(other.precision);
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+  }
+
+  /**
+   * Adds the hashes of a serialized sketch of the same precision.
+   */
+  public void merge(byte[] bytes, int offset, int length) {
+    checkPrecision(bytes[offset]);
+    if (length != registers.length + 1) {
+      throw new IllegalArgumentException("Sketch of " + (length - 1) + " registers, expected "
+          + registers.length);
+    }
+    for (int i = 0; i < registers.length; i++) {
+      byte value = bytes[offset + 1 + i];
+      if (value > registers[i]) {
+        registers[i] = value;
+      }
+    }
+  }
+
+  private void checkPrecision(int other) {
+    if (other != precision) {
+      throw new IllegalArgumentException("Cannot merge sketches of precision " + precision
+          + " and " + other);
+    }
+  }
+
+  /**
+   * @return the number of bytes of the serialized sketch
+   */
+  public int getSerializedSize() {
+    return registers.length + 1;
+  }
+
+  /**
+   * Serializes the sketch into bytes, which must hold
+   * {@link #getSerializedSize()} bytes.
+   */
+  public void serialize(byte[] bytes) {
+    bytes[0] = (byte) precision;
+    System.arraycopy(registers, 0, bytes, 1, registers.length);
+  }
+
+  /**
+   * @return the estimated number of distinct hashes added
+   */
+  public double estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double estimate = alpha(m) * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return estimate;
+  }
+
+  /**
+   * @return the relative standard error of the estimate
+   */
+  public double getRelativeError() {
+    return 1.04 / Math.sqrt(registers.length);
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+    case 16:
+      return 0.673;
+    case 32:
+      return 0.697;
+    case 64:
+      return 0.709;
+    default:
+      return 0.7213 / (1 + 1.079 / m);
+    }
+  }
+}
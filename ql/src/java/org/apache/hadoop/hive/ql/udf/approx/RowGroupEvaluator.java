@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.udf.approx;
+
+/**
+ * An approximate aggregate that widens its intervals by the design effect of
+ * its input when SAMPLEWITH keeps whole RCFile row groups rather than rows
+ * (see {@link RowGroupMoments}).
+ */
+public interface RowGroupEvaluator extends ApproxEvaluator {
+
+  /**
+   * @return whether the rows aggregated are sampled by row groups
+   */
+  boolean isRowGroupSampled();
+
+  void setRowGroupSampled(boolean rowGroupSampled);
+}
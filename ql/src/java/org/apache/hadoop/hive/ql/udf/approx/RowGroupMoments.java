@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import org.apache.hadoop.hive.ql.io.IOContext;
+
+/**
+ * Moments of the totals of the row groups that the values of an aggregate
+ * were read from, to estimate the design effect of a sample of whole RCFile
+ * row groups (see {@link org.apache.hadoop.hive.ql.io.RCFileRecordReader}).
+ *
+ * Each row group is kept with the sampling rate f. The variance of the
+ * estimate sum(t_i) / f of a total is then estimated by
+ * (1 - f) / f^2 * sum(t_i^2), where t_i is the total of the values of row
+ * group i, against (1 - f) / f^2 * sum(y_j^2) had the rows been kept one by
+ * one. The ratio of the two is the design effect: 1 when the rows of a row
+ * group are unrelated, up to the number of rows of a row group when they are
+ * all alike. A mean is linearized with the values y_j - mean, whose row group
+ * totals are t_i - mean * n_i.
+ *
+ * Rows are assigned to row groups with the {@link IOContext} of the map task,
+ * so only map-side aggregations gather moments; without them the design
+ * effect is 1.
+ */
+public class RowGroupMoments {
+
+  // Row group of the last value added
+  private String inputFile;
+  private long blockStart;
+  private long rows;
+  private double total;
+
+  // Over the row groups done: sum(t_i^2), sum(t_i * n_i) and sum(n_i^2)
+  private double squares;
+  private double products;
+  private double sizeSquares;
+
+  public void reset() {
+    inputFile = null;
+    blockStart = 0;
+    rows = 0;
+    total = 0;
+    squares = 0;
+    products = 0;
+    sizeSquares = 0;
+  }
+
+  /**
+   * Adds a value read by the map task from the current row group.
+   */
+  public void add(double value) {
+    IOContext context = IOContext.get();
+    String file = context.getInputFile();
+    if (file == null) {
+      return;
+    }
+    long block = context.getCurrentBlockStart();
+    if (rows > 0 && (block != blockStart || !file.equals(inputFile))) {
+      flush();
+    }
+    inputFile = file;
+    blockStart = block;
+    rows++;
+    total += value;
+  }
+
+  /**
+   * Ends the current row group, before the moments are read with the getters.
+   */
+  public void flush() {
+    if (rows == 0) {
+      return;
+    }
+    squares += total * total;
+    products += total * rows;
+    sizeSquares += (double) rows * rows;
+    rows = 0;
+    total = 0;
+  }
+
+  /**
+   * Adds the moments of the row groups of a partial aggregation.
+   */
+  public void merge(double otherSquares, double otherProducts, double otherSizeSquares) {
+    squares += otherSquares;
+    products += otherProducts;
+    sizeSquares += otherSizeSquares;
+  }
+
+  public double getSquares() {
+    return squares;
+  }
+
+  public double getProducts() {
+    return products;
+  }
+
+  public double getSizeSquares() {
+    return sizeSquares;
+  }
+
+  /**
+   * @param valueSquares
+   *          sum(y_j^2) over the values added
+   * @return the design effect of the estimate of a total, never below 1,
+   *         counting the current row group
+   */
+  public double getTotalDesignEffect(double valueSquares) {
+    if (sizeSquares + rows == 0 || !(valueSquares > 0)) {
+      return 1.0;
+    }
+    return Math.max(1.0, (squares + total * total) / valueSquares);
+  }
+
+  /**
+   * @param mean
+   *          mean of the values added
+   * @param m2
+   *          sum of their squared deviations from the mean
+   * @return the design effect of the estimate of the mean, never below 1,
+   *         counting the current row group
+   */
+  public double getMeanDesignEffect(double mean, double m2) {
+    if (sizeSquares + rows == 0 || !(m2 > 0)) {
+      return 1.0;
+    }
+    double residual = total - mean * rows;
+    double linearized = squares - 2 * mean * products + mean * mean * sizeSquares
+        + residual * residual;
+    return Math.max(1.0, linearized / m2);
+  }
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the most frequent items of a stream (Metwally et
+ * al., 2005), in a fixed number of counters.
+ *
+ * An item without a counter takes over the counter of the least counted
+ * item when all counters are taken, inheriting its count as its error. The
+ * count c and error e of an item then bound its true frequency f:
+ * c - e &lt;= f &lt;= c, and e is at most n / m for n items over m counters,
+ * so every item more frequent than n / m has a counter. The counters are a
+ * min-heap on their counts, indexed by item.
+ *
+ * Two summaries merge as in Agarwal et al. (2012): an item missing from a
+ * full summary may have been counted up to its smallest count, which is
+ * added to both its count and its error; the m largest counters are kept.
+ */
+public class SpaceSaving {
+
+  private final int capacity;
+  private final Object[] items;
+  private final long[] counts;
+  private final long[] errors;
+  private final Map<Object, Integer> index;
+  private int size;
+
+  public SpaceSaving(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.items = new Object[capacity];
+    this.counts = new long[capacity];
+    this.errors = new long[capacity];
+    this.index = new HashMap<Object, Integer>(capacity * 2);
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    Arrays.fill(items, null);
+    index.clear();
+    size = 0;
+  }
+
+  /**
+   * @return whether the item has a counter; otherwise add it with
+   *         {@link #add(Object, long, long)}, so that only new items are copied
+   */
+  public boolean increment(Object item, long count) {
+    Integer pos = index.get(item);
+    if (pos == null) {
+      return false;
+    }
+    counts[pos] += count;
+    siftDown(pos);
+    return true;
+  }
+
+  /**
+   * Adds an item without a counter, with the given count and error.
+   */
+  public void add(Object item, long count, long error) {
+    if (size < capacity) {
+      set(size, item, count, error);
+      siftUp(size++);
+      return;
+    }
+    // the least counted item gives its counter away
+    index.remove(items[0]);
+    long min = counts[0];
+    set(0, item, min + count, min + error);
+    siftDown(0);
+  }
+
+  /**
+   * @return the smallest count, up to which an item without a counter may
+   *         have been counted, or 0 if some counters are free
+   */
+  public long getMinCount() {
+    return size < capacity ? 0 : counts[0];
+  }
+
+  /**
+   * Adds the counters of another summary, whose items are listed with their
+   * counts and errors and whose smallest count is given.
+   */
+  public void merge(List<Object> otherItems, List<Long> otherCounts, List<Long> otherErrors,
+      long otherMin) {
+    long min = getMinCount();
+    Map<Object, long[]> merged = new HashMap<Object, long[]>(
+        (size + otherItems.size()) * 2);
+    for (int i = 0; i < size; i++) {
+      merged.put(items[i], new long[] {counts[i] + otherMin, errors[i] + otherMin});
+    }
+    for (int i = 0; i < otherItems.size(); i++) {
+      long[] counter = merged.get(otherItems.get(i));
+      if (counter == null) {
+        merged.put(otherItems.get(i), new long[] {otherCounts.get(i) + min,
+            otherErrors.get(i) + min});
+      } else {
+        // the item was counted by both summaries, not missed by the other one
+        counter[0] += otherCounts.get(i) - otherMin;
+        counter[1] += otherErrors.get(i) - otherMin;
+      }
+    }
+
+    List<Map.Entry<Object, long[]>> entries =
+        new ArrayList<Map.Entry<Object, long[]>>(merged.entrySet());
+    Collections.sort(entries, BY_COUNT);
+    clear();
+    for (int i = 0; i < entries.size() && i < capacity; i++) {
+      Map.Entry<Object, long[]> e = entries.get(i);
+      add(e.getKey(), e.getValue()[0], e.getValue()[1]);
+    }
+  }
+
+  private static final Comparator<Map.Entry<Object, long[]>> BY_COUNT =
+      new Comparator<Map.Entry<Object, long[]>>() {
+    @Override
+    public int compare(Map.Entry<Object, long[]> a, Map.Entry<Object, long[]> b) {
+      long ca = a.getValue()[0];
+      long cb = b.getValue()[0];
+      return ca > cb ? -1 : (ca < cb ? 1 : 0);
+    }
+  };
+
+  /**
+   * @return the positions of the counters, most counted first
+   */
+  public Integer[] getTop() {
+    Integer[] top = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      top[i] = i;
+    }
+    Arrays.sort(top, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        long ca = counts[a];
+        long cb = counts[b];
+        return ca > cb ? -1 : (ca < cb ? 1 : 0);
+      }
+    });
+    return top;
+  }
+
+  public Object getItem(int pos) {
+    return items[pos];
+  }
+
+  public long getCount(int pos) {
+    return counts[pos];
+  }
+
+  public long getError(int pos) {
+    return errors[pos];
+  }
+
+  private void set(int pos, Object item, long count, long error) {
+    items[pos] = item;
+    counts[pos] = count;
+    errors[pos] = error;
+    index.put(item, pos);
+  }
+
+  private void swap(int i, int j) {
+    Object item = items[i];
+    long count = counts[i];
+    long error = errors[i];
+    set(i, items[j], counts[j], errors[j]);
+    set(j, item, count, error);
+  }
+
+  private void siftUp(int pos) {
+    while (pos > 0) {
+      int parent = (pos - 1) / 2;
+      if (counts[parent] <= counts[pos]) {
+        break;
+      }
+      swap(pos, parent);
+      pos = parent;
+    }
+  }
+
+  private void siftDown(int pos) {
+    while (true) {
+      int least = pos;
+      int left = 2 * pos + 1;
+      int right = left + 1;
+      if (left < size && counts[left] < counts[least]) {
+        least = left;
+      }
+      if (right < size && counts[right] < counts[least]) {
+        least = right;
+      }
+      if (least == pos) {
+        break;
+      }
+      swap(pos, least);
+      pos = least;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.Murmur3;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * 64 bit Murmur3 hashes of primitive values, for the distinct value
+ * estimators. Equal integers hash alike whatever their type.
+ */
+class ValueHasher {
+
+  private final PrimitiveObjectInspector inputOI;
+  private final long[] hash = new long[2];
+
+  ValueHasher(PrimitiveObjectInspector inputOI) {
+    this.inputOI = inputOI;
+  }
+
+  long hash(Object p) throws HiveException {
+    switch (inputOI.getPrimitiveCategory()) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return Murmur3.fmix(PrimitiveObjectInspectorUtils.getLong(p, inputOI));
+    case FLOAT:
+    case DOUBLE:
+      return Murmur3.fmix(Double.doubleToLongBits(
+          PrimitiveObjectInspectorUtils.getDouble(p, inputOI)));
+    case STRING:
+      Text text = ((StringObjectInspector) inputOI).getPrimitiveWritableObject(p);
+      Murmur3.hash128(text.getBytes(), 0, text.getLength(), 0, hash);
+      return hash[0];
+    case BINARY:
+      BytesWritable bytes = ((BinaryObjectInspector) inputOI).getPrimitiveWritableObject(p);
+      Murmur3.hash128(bytes.getBytes(), 0, bytes.getLength(), 0, hash);
+      return hash[0];
+    default:
+      try {
+        byte[] b = PrimitiveObjectInspectorUtils.getString(p, inputOI).getBytes("UTF-8");
+        Murmur3.hash128(b, 0, b.length, 0, hash);
+        return hash[0];
+      } catch (UnsupportedEncodingException e) {
+        throw new HiveException(e);
+      }
+    }
+  }
+}
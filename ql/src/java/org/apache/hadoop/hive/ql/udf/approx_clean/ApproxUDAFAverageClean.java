@@ -25,6 +25,8 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxEvaluator;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxStatistics;
 import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
@@ -73,7 +75,9 @@ public class ApproxUDAFAverageClean extends AbstractGenericUDAFResolver {
     case FLOAT:
     case DOUBLE:
     case STRING:
-      return new ApproxUDAFAverageCleanEvaluator();
+      ApproxUDAFAverageCleanEvaluator evaluator = new ApproxUDAFAverageCleanEvaluator();
+      evaluator.setConfidence(ApproxStatistics.getConfidence());
+      return evaluator;
     case DATE:
     case TIMESTAMP:
     case BOOLEAN:
@@ -88,7 +92,8 @@ public class ApproxUDAFAverageClean extends AbstractGenericUDAFResolver {
    * ApproxUDAFAverageCleanEvaluator.
    *
    */
-  public static class ApproxUDAFAverageCleanEvaluator extends GenericUDAFEvaluator {
+  public static class ApproxUDAFAverageCleanEvaluator extends GenericUDAFEvaluator
+      implements ApproxEvaluator {
 
     // For PARTIAL1 and COMPLETE
     private PrimitiveObjectInspector inputOI;
@@ -110,6 +115,17 @@ public class ApproxUDAFAverageClean extends AbstractGenericUDAFResolver {
     // ArrayList<DoubleWritable> result;
     Text result;
 
+    // Confidence level of the intervals
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
+
     @Override
     public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
       assert (parameters.length == 2);
@@ -271,8 +287,9 @@ public class ApproxUDAFAverageClean extends AbstractGenericUDAFResolver {
         StringBuilder sb = new StringBuilder();
         sb.append(myagg.sum / myagg.count);
         sb.append(" +/- ");
-        sb.append((1.96 * Math.sqrt(myagg.variance / (myagg.count * myagg.count))));
-        sb.append(" (95% Confidence Clean) ");
+        sb.append((ApproxStatistics.quantile(confidence, myagg.count)
+            * Math.sqrt(myagg.variance / (myagg.count * myagg.count))));
+        sb.append(" (" + ApproxStatistics.formatConfidence(confidence) + " Confidence Clean) ");
 
         result.set(sb.toString());
         return result;
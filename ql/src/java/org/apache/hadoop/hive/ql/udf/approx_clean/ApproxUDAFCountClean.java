@@ -24,6 +24,8 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxEvaluator;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxStatistics;
 import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
@@ -72,11 +74,15 @@ public class ApproxUDAFCountClean extends AbstractGenericUDAFResolver {
             case INT:
             case LONG:
 
-                return new ApproxUDAFCountCleanLong();
+                ApproxUDAFCountCleanLong longEvaluator = new ApproxUDAFCountCleanLong();
+                longEvaluator.setConfidence(ApproxStatistics.getConfidence());
+                return longEvaluator;
             case FLOAT:
             case STRING:
             case DOUBLE:
-                return new ApproxUDAFCountCleanDouble();
+                ApproxUDAFCountCleanDouble doubleEvaluator = new ApproxUDAFCountCleanDouble();
+                doubleEvaluator.setConfidence(ApproxStatistics.getConfidence());
+                return doubleEvaluator;
             case DATE:
             case TIMESTAMP:
             case BOOLEAN:
@@ -91,7 +97,8 @@ public class ApproxUDAFCountClean extends AbstractGenericUDAFResolver {
      * ApproxUDAFCountCleanDouble.
      *
      */
-    public static class ApproxUDAFCountCleanDouble extends GenericUDAFEvaluator {
+    public static class ApproxUDAFCountCleanDouble extends GenericUDAFEvaluator
+        implements ApproxEvaluator {
         // private PrimitiveObjectInspector inputOI;
         // private DoubleWritable result;
 
@@ -120,6 +127,17 @@ public class ApproxUDAFCountClean extends AbstractGenericUDAFResolver {
         // For FINAL and COMPLETE
         Text result;
 
+        // Confidence level of the intervals
+        private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public void setConfidence(double confidence) {
+            this.confidence = confidence;
+        }
+
         @Override
         public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
             assert (parameters.length == 4);
@@ -344,9 +362,10 @@ public class ApproxUDAFCountClean extends AbstractGenericUDAFResolver {
             StringBuilder sb = new StringBuilder();
             sb.append(approx_sum);
             sb.append(" +/- ");
-            sb.append(Math.ceil((1.96 * (1.0 * myagg.totalRows / Math.sqrt(myagg.sampleRows))) * Math
+            double quantile = ApproxStatistics.quantile(confidence, myagg.count);
+            sb.append(Math.ceil((quantile * (1.0 * myagg.totalRows / Math.sqrt(myagg.sampleRows))) * Math
             .sqrt(probability * ((myagg.variance) + ((1 - probability) * mean * mean)))));
-            sb.append(" (95% Confidence Clean) ");
+            sb.append(" (" + ApproxStatistics.formatConfidence(confidence) + " Confidence Clean) ");
 
             result.set(sb.toString());
             return result;
@@ -359,7 +378,8 @@ public class ApproxUDAFCountClean extends AbstractGenericUDAFResolver {
      * GenericUDAFSumLong.
      *
      */
-    public static class ApproxUDAFCountCleanLong extends GenericUDAFEvaluator {
+    public static class ApproxUDAFCountCleanLong extends GenericUDAFEvaluator
+        implements ApproxEvaluator {
         // private PrimitiveObjectInspector inputOI;
         // private LongWritable result;
 
@@ -388,6 +408,17 @@ public class ApproxUDAFCountClean extends AbstractGenericUDAFResolver {
         // For FINAL and COMPLETE
         Text result;
 
+        // Confidence level of the intervals
+        private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public void setConfidence(double confidence) {
+            this.confidence = confidence;
+        }
+
 
         @Override
         public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
@@ -608,9 +639,10 @@ public class ApproxUDAFCountClean extends AbstractGenericUDAFResolver {
             StringBuilder sb = new StringBuilder();
             sb.append(approx_sum);
             sb.append(" +/- ");
-            sb.append(Math.ceil((1.96 * (1.0 * myagg.totalRows / Math.sqrt(myagg.sampleRows))) * Math
+            double quantile = ApproxStatistics.quantile(confidence, myagg.count);
+            sb.append(Math.ceil((quantile * (1.0 * myagg.totalRows / Math.sqrt(myagg.sampleRows))) * Math
             .sqrt(probability * ((myagg.variance) + ((1 - probability) * mean * mean)))));
-            sb.append(" (95% Confidence Clean) ");
+            sb.append(" (" + ApproxStatistics.formatConfidence(confidence) + " Confidence Clean) ");
 
             result.set(sb.toString());
             return result;
@@ -0,0 +1,331 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.udf.approx_clean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFParameterInfo;
+import org.apache.hadoop.hive.ql.udf.generic.NumericHistogram;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StandardListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Bounds of the inliers of an attribute for SampleClean outlier removal, in
+ * one aggregation over the clean table.
+ *
+ * For 'parametric', the values x with |x - mean| / std &lt;= alpha. The count,
+ * mean and sum of squared deviations merge exactly.
+ *
+ * For 'nonparametric', the values x with |x - median| &lt;= alpha * MAD, the
+ * median absolute deviation from the median. Both come from one streaming
+ * histogram of the values (see {@link NumericHistogram}), which merges across
+ * partial aggregations: the MAD is the t at which the fraction of values
+ * within [median - t, median + t] reaches 1/2.
+ *
+ * The result is a struct&lt;lower, upper&gt;, so that the filter pass is a plain
+ * range predicate.
+ */
+@Description(name = "outlier_bounds_clean",
+    value = "_FUNC_(x, 'parametric'|'nonparametric', alpha) - Returns the bounds of the inliers "
+        + "of x, as a struct<lower, upper>")
+public class ApproxUDAFOutlierBoundsClean extends AbstractGenericUDAFResolver {
+
+  public static final String MAD = "nonparametric";
+  public static final String NORM = "parametric";
+
+  /**
+   * The number of histogram bins of the nonparametric bounds.
+   */
+  public static final int NUM_BINS = 1000;
+
+  @Override
+  public GenericUDAFEvaluator getEvaluator(GenericUDAFParameterInfo info)
+      throws SemanticException {
+    ObjectInspector[] parameters = info.getParameterObjectInspectors();
+    if (parameters.length != 3) {
+      throw new UDFArgumentTypeException(parameters.length - 1,
+          "Please specify exactly three arguments.");
+    }
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        throw new UDFArgumentTypeException(i,
+            "Only primitive type arguments are accepted but "
+                + parameters[i].getTypeName() + " is passed.");
+      }
+    }
+    String method = ObjectInspectorUtils.isConstantObjectInspector(parameters[1])
+        ? PrimitiveObjectInspectorUtils.getString(
+            ((ConstantObjectInspector) parameters[1]).getWritableConstantValue(),
+            (PrimitiveObjectInspector) parameters[1])
+        : null;
+    if (method == null || !(method.equalsIgnoreCase(MAD) || method.equalsIgnoreCase(NORM))) {
+      throw new UDFArgumentTypeException(1,
+          "The second argument must be the constant 'parametric' or 'nonparametric'.");
+    }
+    if (!ObjectInspectorUtils.isConstantObjectInspector(parameters[2])) {
+      throw new UDFArgumentTypeException(2,
+          "The third argument must be a constant, but "
+              + parameters[2].getTypeName() + " was passed instead.");
+    }
+
+    ApproxUDAFOutlierBoundsCleanEvaluator evaluator = new ApproxUDAFOutlierBoundsCleanEvaluator();
+    evaluator.setMethod(method.toLowerCase());
+    evaluator.setAlpha(PrimitiveObjectInspectorUtils.getDouble(
+        ((ConstantObjectInspector) parameters[2]).getWritableConstantValue(),
+        (PrimitiveObjectInspector) parameters[2]));
+    return evaluator;
+  }
+
+  /**
+   * @return the median absolute deviation from the median of the values of a
+   *         histogram
+   */
+  static double mad(NumericHistogram histogram, double median) {
+    double lo = 0;
+    double hi = Math.max(median - histogram.quantile(0), histogram.quantile(1) - median);
+    for (int i = 0; i < 64 && lo < hi; i++) {
+      double t = (lo + hi) / 2;
+      if (histogram.cdf(median + t) - histogram.cdf(median - t) >= 0.5) {
+        hi = t;
+      } else {
+        lo = t;
+      }
+    }
+    return hi;
+  }
+
+  /**
+   * ApproxUDAFOutlierBoundsCleanEvaluator.
+   *
+   */
+  public static class ApproxUDAFOutlierBoundsCleanEvaluator extends GenericUDAFEvaluator {
+
+    private String method = MAD;
+    private double alpha;
+
+    // For PARTIAL1 and COMPLETE
+    private PrimitiveObjectInspector inputOI;
+
+    // For PARTIAL2 and FINAL
+    private StructObjectInspector soi;
+    private StructField countField;
+    private StructField meanField;
+    private StructField m2Field;
+    private StructField histogramField;
+    private LongObjectInspector countFieldOI;
+    private DoubleObjectInspector meanFieldOI;
+    private DoubleObjectInspector m2FieldOI;
+    private StandardListObjectInspector histogramFieldOI;
+
+    // For PARTIAL1 and PARTIAL2
+    private Object[] partialResult;
+
+    // For FINAL and COMPLETE
+    private Object[] result;
+
+    public String getMethod() {
+      return method;
+    }
+
+    public void setMethod(String method) {
+      this.method = method;
+    }
+
+    public double getAlpha() {
+      return alpha;
+    }
+
+    public void setAlpha(double alpha) {
+      this.alpha = alpha;
+    }
+
+    @Override
+    public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+      super.init(m, parameters);
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.COMPLETE) {
+        inputOI = (PrimitiveObjectInspector) parameters[0];
+      } else {
+        soi = (StructObjectInspector) parameters[0];
+        countField = soi.getStructFieldRef("count");
+        meanField = soi.getStructFieldRef("mean");
+        m2Field = soi.getStructFieldRef("m2");
+        histogramField = soi.getStructFieldRef("histogram");
+        countFieldOI = (LongObjectInspector) countField.getFieldObjectInspector();
+        meanFieldOI = (DoubleObjectInspector) meanField.getFieldObjectInspector();
+        m2FieldOI = (DoubleObjectInspector) m2Field.getFieldObjectInspector();
+        histogramFieldOI = (StandardListObjectInspector) histogramField.getFieldObjectInspector();
+      }
+
+      if (mode == Mode.PARTIAL1 || mode == Mode.PARTIAL2) {
+        ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
+        foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(ObjectInspectorFactory.getStandardListObjectInspector(
+            PrimitiveObjectInspectorFactory.writableDoubleObjectInspector));
+        ArrayList<String> fname = new ArrayList<String>();
+        fname.add("count");
+        fname.add("mean");
+        fname.add("m2");
+        fname.add("histogram");
+        partialResult = new Object[4];
+        partialResult[0] = new LongWritable(0);
+        partialResult[1] = new DoubleWritable(0);
+        partialResult[2] = new DoubleWritable(0);
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+      } else {
+        ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+        ArrayList<String> fname = new ArrayList<String>();
+        fname.add("lower");
+        fname.add("upper");
+        result = new Object[2];
+        result[0] = new DoubleWritable(0);
+        result[1] = new DoubleWritable(0);
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+      }
+    }
+
+    /** class for storing the moments and the histogram. */
+    static class OutlierAgg implements AggregationBuffer {
+      long count;
+      double mean;
+      double m2; // sum of squared deviations from the mean
+      NumericHistogram histogram;
+    }
+
+    @Override
+    public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+      OutlierAgg agg = new OutlierAgg();
+      agg.histogram = new NumericHistogram();
+      reset(agg);
+      return agg;
+    }
+
+    @Override
+    public void reset(AggregationBuffer agg) throws HiveException {
+      OutlierAgg myagg = (OutlierAgg) agg;
+      myagg.count = 0;
+      myagg.mean = 0;
+      myagg.m2 = 0;
+      myagg.histogram.reset();
+      if (method.equals(MAD)) {
+        myagg.histogram.allocate(NUM_BINS);
+      }
+    }
+
+    @Override
+    public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+      Object p = parameters[0];
+      if (p == null) {
+        return;
+      }
+      double v;
+      try {
+        v = PrimitiveObjectInspectorUtils.getDouble(p, inputOI);
+      } catch (NumberFormatException e) {
+        // not a number, so neither an inlier nor an outlier
+        return;
+      }
+      OutlierAgg myagg = (OutlierAgg) agg;
+      myagg.count++;
+      double delta = v - myagg.mean;
+      myagg.mean += delta / myagg.count;
+      myagg.m2 += delta * (v - myagg.mean);
+      if (method.equals(MAD)) {
+        myagg.histogram.add(v);
+      }
+    }
+
+    @Override
+    public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+      OutlierAgg myagg = (OutlierAgg) agg;
+      ((LongWritable) partialResult[0]).set(myagg.count);
+      ((DoubleWritable) partialResult[1]).set(myagg.mean);
+      ((DoubleWritable) partialResult[2]).set(myagg.m2);
+      partialResult[3] = myagg.histogram.serialize();
+      return partialResult;
+    }
+
+    @Override
+    public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+      if (partial == null) {
+        return;
+      }
+      OutlierAgg myagg = (OutlierAgg) agg;
+      long m = countFieldOI.get(soi.getStructFieldData(partial, countField));
+      if (m == 0) {
+        return;
+      }
+      double mean = meanFieldOI.get(soi.getStructFieldData(partial, meanField));
+      double m2 = m2FieldOI.get(soi.getStructFieldData(partial, m2Field));
+      long n = myagg.count;
+      double delta = mean - myagg.mean;
+      myagg.count += m;
+      myagg.mean += delta * m / myagg.count;
+      myagg.m2 += m2 + delta * delta * n * m / myagg.count;
+
+      if (method.equals(MAD)) {
+        List<DoubleWritable> histogram = (List<DoubleWritable>) histogramFieldOI.getList(
+            soi.getStructFieldData(partial, histogramField));
+        myagg.histogram.merge(histogram);
+      }
+    }
+
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
+      OutlierAgg myagg = (OutlierAgg) agg;
+      if (myagg.count == 0) {
+        return null;
+      }
+      double center;
+      double width;
+      if (method.equals(MAD)) {
+        center = myagg.histogram.quantile(0.5);
+        width = alpha * mad(myagg.histogram, center);
+      } else {
+        center = myagg.mean;
+        width = alpha * Math.sqrt(myagg.m2 / myagg.count);
+      }
+      ((DoubleWritable) result[0]).set(center - width);
+      ((DoubleWritable) result[1]).set(center + width);
+      return result;
+    }
+  }
+}
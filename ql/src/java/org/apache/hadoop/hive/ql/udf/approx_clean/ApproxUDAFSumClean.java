@@ -25,6 +25,8 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxEvaluator;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxStatistics;
 import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
@@ -73,11 +75,15 @@ public class ApproxUDAFSumClean extends AbstractGenericUDAFResolver {
     case INT:
     case LONG:
 
-      return new ApproxUDAFSumCleanLong();
+      ApproxUDAFSumCleanLong longEvaluator = new ApproxUDAFSumCleanLong();
+      longEvaluator.setConfidence(ApproxStatistics.getConfidence());
+      return longEvaluator;
     case FLOAT:
     case STRING:
     case DOUBLE:
-      return new ApproxUDAFSumCleanDouble();
+      ApproxUDAFSumCleanDouble doubleEvaluator = new ApproxUDAFSumCleanDouble();
+      doubleEvaluator.setConfidence(ApproxStatistics.getConfidence());
+      return doubleEvaluator;
     case DATE:
     case TIMESTAMP:
     case BOOLEAN:
@@ -92,7 +98,8 @@ public class ApproxUDAFSumClean extends AbstractGenericUDAFResolver {
    * ApproxUDAFSumCleanDouble.
    *
    */
-  public static class ApproxUDAFSumCleanDouble extends GenericUDAFEvaluator {
+  public static class ApproxUDAFSumCleanDouble extends GenericUDAFEvaluator
+      implements ApproxEvaluator {
     // private PrimitiveObjectInspector inputOI;
     // private DoubleWritable result;
 
@@ -121,6 +128,17 @@ public class ApproxUDAFSumClean extends AbstractGenericUDAFResolver {
     // For FINAL and COMPLETE
     Text result;
 
+    // Confidence level of the intervals
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
+
     @Override
     public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
       assert (parameters.length == 4);
@@ -344,10 +362,11 @@ public class ApproxUDAFSumClean extends AbstractGenericUDAFResolver {
       StringBuilder sb = new StringBuilder();
       sb.append(approx_sum);
       sb.append(" +/- ");
-      sb.append(Math.ceil((1.96 * (1.0 * myagg.totalRows / Math.sqrt(myagg.sampleRows)) * Math
+      double quantile = ApproxStatistics.quantile(confidence, myagg.count);
+      sb.append(Math.ceil((quantile * (1.0 * myagg.totalRows / Math.sqrt(myagg.sampleRows)) * Math
           .sqrt(probability
               * ((myagg.variance) + ((1 - probability) * mean * mean))))));
-      sb.append(" (95% Confidence Clean) ");
+      sb.append(" (" + ApproxStatistics.formatConfidence(confidence) + " Confidence Clean) ");
 
       result.set(sb.toString());
       return result;
@@ -360,7 +379,8 @@ public class ApproxUDAFSumClean extends AbstractGenericUDAFResolver {
    * GenericUDAFSumLong.
    *
    */
-  public static class ApproxUDAFSumCleanLong extends GenericUDAFEvaluator {
+  public static class ApproxUDAFSumCleanLong extends GenericUDAFEvaluator
+      implements ApproxEvaluator {
     // private PrimitiveObjectInspector inputOI;
     // private LongWritable result;
 
@@ -389,6 +409,17 @@ public class ApproxUDAFSumClean extends AbstractGenericUDAFResolver {
     // For FINAL and COMPLETE
     Text result;
 
+    // Confidence level of the intervals
+    private double confidence = ApproxStatistics.DEFAULT_CONFIDENCE;
+
+    public double getConfidence() {
+      return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+      this.confidence = confidence;
+    }
+
 
     @Override
     public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
@@ -609,10 +640,11 @@ public class ApproxUDAFSumClean extends AbstractGenericUDAFResolver {
       StringBuilder sb = new StringBuilder();
       sb.append(approx_sum);
       sb.append(" +/- ");
-      sb.append(Math.ceil((1.96 * (1.0 * myagg.totalRows / Math.sqrt(myagg.sampleRows)) * Math
+      double quantile = ApproxStatistics.quantile(confidence, myagg.count);
+      sb.append(Math.ceil((quantile * (1.0 * myagg.totalRows / Math.sqrt(myagg.sampleRows)) * Math
           .sqrt(probability
               * ((myagg.variance) + ((1 - probability) * mean * mean))))));
-      sb.append(" (95% Confidence Clean) ");
+      sb.append(" (" + ApproxStatistics.formatConfidence(confidence) + " Confidence Clean) ");
 
       result.set(sb.toString());
       return result;
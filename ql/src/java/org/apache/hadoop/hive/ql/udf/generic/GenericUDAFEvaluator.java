@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hive.ql.udf.generic;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.UDFType;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
@@ -72,6 +73,16 @@ public abstract class GenericUDAFEvaluator {
   public GenericUDAFEvaluator() {
   }
 
+  /**
+   * Additionally setup GenericUDAFEvaluator with the configuration of the task
+   * running it, before init(). It is not called at compile time.
+   *
+   * @param conf
+   *          The configuration of the task.
+   */
+  public void configure(Configuration conf) {
+  }
+
   /**
    * Initialize the evaluator.
    *
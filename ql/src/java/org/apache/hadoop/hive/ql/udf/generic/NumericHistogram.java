@@ -287,6 +287,36 @@ public class NumericHistogram {
     return -1; // for Xlint, code will never reach here
   }
 
+  /**
+   * Gets the approximate fraction of the data at or below a value from the current
+   * histogram, interpolating between bins as quantile() does, of which it is the inverse.
+   *
+   * @param v The value.
+   * @return The fraction, in [0,1].
+   */
+  public double cdf(double v) {
+    assert(bins != null && nusedbins > 0 && nbins > 0);
+    double sum = 0, csum = 0;
+    int b;
+    for(b = 0; b < nusedbins; b++)  {
+      sum += bins[b].y;
+    }
+    if(v < bins[0].x) {
+      return 0;
+    }
+    for(b = 0; b < nusedbins; b++) {
+      if(bins[b].x >= v) {
+        if(bins[b].x == v) {
+          return (csum + bins[b].y) / sum;
+        }
+        double r = csum + bins[b].y * (v - bins[b-1].x) / (bins[b].x - bins[b-1].x);
+        return r / sum;
+      }
+      csum += bins[b].y;
+    }
+    return 1;
+  }
+
   /**
    * In preparation for a Hive merge() call, serializes the current histogram object into an
    * ArrayList of DoubleWritable objects. This list is deserialized and merged by the
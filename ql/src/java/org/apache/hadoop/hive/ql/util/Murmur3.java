@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.util;
+
+/**
+ * MurmurHash3, x64 128 bit variant, by Austin Appleby (public domain).
+ *
+ * A fast non-cryptographic hash of byte ranges, computed without allocating.
+ */
+public final class Murmur3 {
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private Murmur3() {
+  }
+
+  /**
+   * Hashes length bytes of data from offset into out[0] and out[1].
+   */
+  public static void hash128(byte[] data, int offset, int length, int seed, long[] out) {
+    long h1 = seed & 0x00000000FFFFFFFFL;
+    long h2 = h1;
+    int blocks = length >> 4;
+
+    for (int i = 0; i < blocks; i++) {
+      int pos = offset + (i << 4);
+      long k1 = getLong(data, pos);
+      long k2 = getLong(data, pos + 8);
+
+      k1 *= C1;
+      k1 = Long.rotateLeft(k1, 31);
+      k1 *= C2;
+      h1 ^= k1;
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      k2 *= C2;
+      k2 = Long.rotateLeft(k2, 33);
+      k2 *= C1;
+      h2 ^= k2;
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    int tail = offset + (blocks << 4);
+    long k1 = 0;
+    long k2 = 0;
+    switch (length & 15) {
+    case 15:
+      k2 ^= ((long) data[tail + 14] & 0xff) << 48;
+    case 14:
+      k2 ^= ((long) data[tail + 13] & 0xff) << 40;
+    case 13:
+      k2 ^= ((long) data[tail + 12] & 0xff) << 32;
+    case 12:
+      k2 ^= ((long) data[tail + 11] & 0xff) << 24;
+    case 11:
+      k2 ^= ((long) data[tail + 10] & 0xff) << 16;
+    case 10:
+      k2 ^= ((long) data[tail + 9] & 0xff) << 8;
+    case 9:
+      k2 ^= (long) data[tail + 8] & 0xff;
+      k2 *= C2;
+      k2 = Long.rotateLeft(k2, 33);
+      k2 *= C1;
+      h2 ^= k2;
+    case 8:
+      k1 ^= ((long) data[tail + 7] & 0xff) << 56;
+    case 7:
+      k1 ^= ((long) data[tail + 6] & 0xff) << 48;
+    case 6:
+      k1 ^= ((long) data[tail + 5] & 0xff) << 40;
+    case 5:
+      k1 ^= ((long) data[tail + 4] & 0xff) << 32;
+    case 4:
+      k1 ^= ((long) data[tail + 3] & 0xff) << 24;
+    case 3:
+      k1 ^= ((long) data[tail + 2] & 0xff) << 16;
+    case 2:
+      k1 ^= ((long) data[tail + 1] & 0xff) << 8;
+    case 1:
+      k1 ^= (long) data[tail] & 0xff;
+      k1 *= C1;
+      k1 = Long.rotateLeft(k1, 31);
+      k1 *= C2;
+      h1 ^= k1;
+    default:
+      break;
+    }
+
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix(h1);
+    h2 = fmix(h2);
+    h1 += h2;
+    h2 += h1;
+    out[0] = h1;
+    out[1] = h2;
+  }
+
+  /**
+   * @return the finalization mix of MurmurHash3, a good 64 bit hash of a long
+   */
+  public static long fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  // little endian, as the reference implementation on x64
+  private static long getLong(byte[] data, int pos) {
+    return ((long) data[pos] & 0xff)
+        | (((long) data[pos + 1] & 0xff) << 8)
+        | (((long) data[pos + 2] & 0xff) << 16)
+        | (((long) data[pos + 3] & 0xff) << 24)
+        | (((long) data[pos + 4] & 0xff) << 32)
+        | (((long) data[pos + 5] & 0xff) << 40)
+        | (((long) data[pos + 6] & 0xff) << 48)
+        | (((long) data[pos + 7] & 0xff) << 56);
+  }
+}
@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.estimation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.RCFile;
+import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
+import org.apache.hadoop.hive.serde2.columnar.BytesRefWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+
+/**
+ * JUnit test for BlinkDBStream, on synthetic text, SequenceFile and RCFile
+ * files of a known row count.
+ */
+public class TestBlinkDBStream extends TestCase {
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path testDir;
+
+  @Override
+  protected void setUp() throws IOException {
+    conf = new Configuration();
+    fs = FileSystem.getLocal(conf);
+    testDir = new Path(System.getProperty("test.data.dir", System.getProperty(
+        "user.dir", new File(".").getAbsolutePath()))
+        + "/TestBlinkDBStream");
+    fs.delete(testDir, true);
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    fs.delete(testDir, true);
+  }
+
+  /**
+   * Writes rows of 10 to 100 bytes, the last one with or without a line
+   * terminator.
+   */
+  private Path writeRows(String name, int rows, boolean trailingNewline) throws IOException {
+    Random rnd = new Random(rows);
+    Path path = new Path(testDir, name);
+    FSDataOutputStream out = fs.create(path);
+    try {
+      for (int i = 0; i < rows; i++) {
+        String row = row(rnd, i);
+        if (i < rows - 1 || trailingNewline) {
+          row += '\n';
+        }
+        out.write(row.getBytes("UTF-8"));
+      }
+    } finally {
+      out.close();
+    }
+    return path;
+  }
+
+  public void testSmallFileIsCountedExactly() throws IOException {
+    BlinkDBStream stream = new BlinkDBStream(4, 4096, new Random(1));
+
+    RowEstimate estimate = stream.estimateRows(fs, writeRows("small", 200, true), conf);
+    assertTrue(estimate.isExact());
+    assertEquals(200, estimate.getEstimate());
+
+    estimate = stream.estimateRows(fs, writeRows("unterminated", 200, false), conf);
+    assertTrue(estimate.isExact());
+    assertEquals(200, estimate.getEstimate());
+  }
+
+  public void testEmptyFile() throws IOException {
+    BlinkDBStream stream = new BlinkDBStream(4, 4096, new Random(1));
+    Path path = new Path(testDir, "empty");
+    fs.create(path).close();
+
+    RowEstimate estimate = stream.estimateRows(fs, path, conf);
+    assertTrue(estimate.isExact());
+    assertEquals(0, estimate.getEstimate());
+  }
+
+  private static String row(Random rnd, int i) {
+    StringBuilder row = new StringBuilder();
+    row.append(i).append('\001');
+    int len = 10 + rnd.nextInt(90);
+    while (row.length() < len) {
+      row.append((char) ('a' + rnd.nextInt(26)));
+    }
+    return row.toString();
+  }
+
+  private Path writeSequenceFile(String name, int rows, CompressionType compression)
+      throws IOException {
+    Random rnd = new Random(rows);
+    Path path = new Path(testDir, name);
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, path, Text.class,
+        Text.class, compression, new DefaultCodec());
+    try {
+      for (int i = 0; i < rows; i++) {
+        writer.append(new Text(Integer.toString(i)), new Text(row(rnd, i)));
+      }
+    } finally {
+      writer.close();
+    }
+    return path;
+  }
+
+  private Path writeRCFile(String name, int rows) throws IOException {
+    Random rnd = new Random(rows);
+    Path path = new Path(testDir, name);
+    RCFile.Writer writer = new RCFile.Writer(fs, conf, path);
+    try {
+      for (int i = 0; i < rows; i++) {
+        BytesRefArrayWritable cols = new BytesRefArrayWritable(2);
+        cols.set(0, new BytesRefWritable(Integer.toString(i).getBytes("UTF-8")));
+        cols.set(1, new BytesRefWritable(row(rnd, i).getBytes("UTF-8")));
+        writer.append(cols);
+      }
+    } finally {
+      writer.close();
+    }
+    return path;
+  }
+
+  /**
+   * Checks that the estimates of a few seeds are close to the row count and
+   * that their intervals hold it.
+   */
+  private void assertEstimates(Path path, int rows) throws IOException {
+    long fileSize = fs.getFileStatus(path).getLen();
+    for (long seed = 0; seed < 5; seed++) {
+      BlinkDBStream stream = new BlinkDBStream(16, 4096, new Random(seed));
+      assertTrue(16L * 4096 < fileSize);
+
+      RowEstimate estimate = stream.estimateRows(fs, path, conf);
+      assertFalse(estimate.isExact());
+      assertTrue(estimate.toString(), estimate.getLower() <= rows);
+      assertTrue(estimate.toString(), estimate.getUpper() >= rows);
+      assertTrue(estimate.toString(), Math.abs(estimate.getEstimate() - rows) < rows / 10);
+    }
+  }
+
+  public void testLargeFileEstimate() throws IOException {
+    assertEstimates(writeRows("large", 50000, true), 50000);
+  }
+
+  public void testSequenceFileEstimate() throws IOException {
+    assertEstimates(writeSequenceFile("records.seq", 50000, CompressionType.NONE), 50000);
+  }
+
+  public void testBlockCompressedSequenceFileEstimate() throws IOException {
+    // small compressed blocks, so that every probe reads several of them
+    conf.setInt("io.seqfile.compress.blocksize", 2048);
+    assertEstimates(writeSequenceFile("blocks.seq", 50000, CompressionType.BLOCK), 50000);
+  }
+
+  public void testRCFileEstimate() throws IOException {
+    conf.setInt(RCFile.COLUMN_NUMBER_CONF_STR, 2);
+    conf.setInt(RCFile.RECORD_INTERVAL_CONF_STR, 50);
+    assertEstimates(writeRCFile("rows.rc", 50000), 50000);
+  }
+
+  public void testDirectoryEstimate() throws IOException {
+    writeRows("part-0", 200, true);
+    writeRows("part-1", 300, false);
+    writeRows("_SUCCESS", 10, true);
+
+    BlinkDBStream stream = new BlinkDBStream(4, 8192, new Random(1));
+    RowEstimate estimate = stream.estimateDirectoryRows(fs, testDir, conf);
+    assertTrue(estimate.isExact());
+    assertEquals(500, estimate.getEstimate());
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+
+/**
+ * JUnit test for the skip sampling of SamplingOperator.
+ */
+public class TestSamplingOperator extends TestCase {
+
+  /**
+   * @return the fraction of rows kept out of the given number of rows
+   */
+  private static double keptFraction(long seed, double probability, long rows) {
+    Random rnd = new Random(seed);
+    double logQ = Math.log(1 - probability);
+    long kept = 0;
+    long row = SamplingOperator.drawSkip(rnd, probability, logQ);
+    while (row < rows) {
+      kept++;
+      row += 1 + SamplingOperator.drawSkip(rnd, probability, logQ);
+    }
+    return ((double) kept) / rows;
+  }
+
+  public void testSkipRate() {
+    for (double p : new double[] {0.5, 0.1, 0.01}) {
+      double kept = keptFraction(1, p, 1000000);
+      // within 5 standard deviations of the binomial proportion
+      assertEquals(p, kept, 5 * Math.sqrt(p * (1 - p) / 1000000));
+    }
+  }
+
+  public void testSkipBounds() {
+    Random rnd = new Random(1);
+    assertEquals(0, SamplingOperator.drawSkip(rnd, 1.0, Math.log(0)));
+    assertEquals(Long.MAX_VALUE, SamplingOperator.drawSkip(rnd, 0.0, Math.log(1)));
+  }
+
+  public void testSkipsAreReproducible() {
+    Random a = new Random(7);
+    Random b = new Random(7);
+    double logQ = Math.log(1 - 0.05);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(SamplingOperator.drawSkip(a, 0.05, logQ),
+          SamplingOperator.drawSkip(b, 0.05, logQ));
+    }
+  }
+
+  public void testSeed() {
+    Configuration conf = new Configuration();
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVESAMPLERANDOMNUM, 42);
+    conf.setInt("mapred.task.partition", 3);
+    assertEquals(SamplingOperator.getSeed(conf, "a"), SamplingOperator.getSeed(conf, "a"));
+    // two samples in one task are seeded apart
+    assertFalse(SamplingOperator.getSeed(conf, "subq1:a")
+        == SamplingOperator.getSeed(conf, "subq2:a"));
+
+    Configuration other = new Configuration(conf);
+    other.setInt("mapred.task.partition", 4);
+    assertFalse(SamplingOperator.getSeed(conf, "a") == SamplingOperator.getSeed(other, "a"));
+  }
+}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Random;
@@ -56,6 +57,7 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.FileSplit;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
@@ -630,4 +632,109 @@ public class TestRCFile extends TestCase {
     testRCFileHeader(expected, conf);
   }
 
+  private static final int ROW_GROUP_ROWS = 100;
+
+  /**
+   * Writes rows whose first column is their row number, in row groups of
+   * ROW_GROUP_ROWS rows.
+   */
+  private Path writeRowGroups(String name, int rowGroups, CompressionCodec codec)
+      throws IOException {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/" + name, "test_rcfile");
+    fs.delete(testFile, true);
+    Configuration cloneConf = new Configuration(conf);
+    RCFileOutputFormat.setColumnNumber(cloneConf, 2);
+    cloneConf.setInt(RCFile.RECORD_INTERVAL_CONF_STR, ROW_GROUP_ROWS);
+
+    RCFile.Writer writer = new RCFile.Writer(fs, cloneConf, testFile, null, codec);
+    BytesRefArrayWritable bytes = new BytesRefArrayWritable(2);
+    byte[] padding = "hive and hadoop".getBytes("UTF-8");
+    for (int i = 0; i < rowGroups * ROW_GROUP_ROWS; i++) {
+      byte[] row = String.valueOf(i).getBytes("UTF-8");
+      bytes.set(0, new BytesRefWritable(row, 0, row.length));
+      bytes.set(1, new BytesRefWritable(padding, 0, padding.length));
+      writer.append(bytes);
+    }
+    writer.close();
+    return testFile;
+  }
+
+  private static int getRowNumber(BytesRefArrayWritable row) throws IOException {
+    BytesRefWritable column = row.get(0);
+    return Integer.parseInt(new String(column.getData(), column.getStart(),
+        column.getLength(), "UTF-8"));
+  }
+
+  public void testSkipRowGroup() throws IOException {
+    CompressionCodec[] codecs = {null, new DefaultCodec()};
+    for (CompressionCodec codec : codecs) {
+      Path testFile = writeRowGroups("testskiprowgroup", 10, codec);
+      RCFile.Reader reader = new RCFile.Reader(fs, testFile, conf);
+      LongWritable rowID = new LongWritable();
+      BytesRefArrayWritable cols = new BytesRefArrayWritable();
+
+      // Row groups 0, 3, 6 and 9 are read, the first row of 1, 4 and 7 is
+      // read before they are skipped, and 2, 5 and 8 are skipped unread
+      int fetched = 0;
+      while (reader.next(rowID)) {
+        int rowGroup = (int) (rowID.get() / ROW_GROUP_ROWS);
+        if (rowGroup % 3 == 2) {
+          assertEquals(rowGroup * ROW_GROUP_ROWS, rowID.get());
+          reader.skipRowGroup();
+          assertFalse(reader.hasRecordsInBuffer());
+          continue;
+        }
+        reader.getCurrentRow(cols);
+        assertEquals(rowID.get(), getRowNumber(cols));
+        fetched++;
+        if (rowGroup % 3 == 1) {
+          reader.skipRowGroup();
+        }
+      }
+      reader.close();
+      assertEquals(4 * ROW_GROUP_ROWS + 3, fetched);
+    }
+  }
+
+  private List<Integer> readSampled(Path testFile, float rate) throws IOException {
+    JobConf jobConf = new JobConf(conf);
+    HiveConf.setFloatVar(jobConf, HiveConf.ConfVars.QUICKSILVER_SAMPLE_INPUT_RATE, rate);
+    FileSplit split = new FileSplit(testFile, 0,
+        fs.getFileStatus(testFile).getLen(), (String[]) null);
+    RCFileRecordReader<LongWritable, BytesRefArrayWritable> rr =
+        new RCFileRecordReader<LongWritable, BytesRefArrayWritable>(jobConf, split);
+    LongWritable key = rr.createKey();
+    BytesRefArrayWritable value = rr.createValue();
+    List<Integer> rows = new ArrayList<Integer>();
+    while (rr.next(key, value)) {
+      rows.add(getRowNumber(value));
+    }
+    rr.close();
+    return rows;
+  }
+
+  public void testRecordReaderSkipsRowGroups() throws IOException {
+    int rowGroups = 100;
+    Path testFile = writeRowGroups("testsamplerowgroups", rowGroups, new DefaultCodec());
+
+    assertEquals(rowGroups * ROW_GROUP_ROWS, readSampled(testFile, 1.0f).size());
+
+    List<Integer> rows = readSampled(testFile, 0.3f);
+    int[] perRowGroup = new int[rowGroups];
+    for (int row : rows) {
+      perRowGroup[row / ROW_GROUP_ROWS]++;
+    }
+    int kept = 0;
+    for (int count : perRowGroup) {
+      // Row groups are kept or skipped whole
+      assertTrue(count == 0 || count == ROW_GROUP_ROWS);
+      kept += count == 0 ? 0 : 1;
+    }
+    // 30 row groups expected, with a standard deviation of 4.6
+    assertTrue("kept " + kept, kept >= 7 && kept <= 53);
+
+    // The same row groups are read again by a rerun
+    assertEquals(rows, readSampled(testFile, 0.3f));
+  }
 }
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.Driver;
+import org.apache.hadoop.hive.ql.exec.GroupByOperator;
+import org.apache.hadoop.hive.ql.exec.MapRedTask;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.Task;
+import org.apache.hadoop.hive.ql.hooks.ReadEntity;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.sampling.SampleCatalog;
+import org.apache.hadoop.hive.ql.sampling.SampleInfo;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxScaledEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * JUnit test for ApproxRewriter.
+ */
+public class TestApproxRewriter extends TestCase {
+
+  private static final String TABLE = "approx_rw";
+  private static final String SAMPLE = "approx_rw_s1";
+
+  private HiveConf conf;
+  private Driver driver;
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HiveConf(TestApproxRewriter.class);
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVE_SUPPORT_CONCURRENCY, false);
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVEMAPSIDEAGGREGATE, true);
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.QUICKSILVER_APPROX_REWRITE, true);
+    SessionState.start(conf);
+    driver = new Driver(conf);
+    for (String table : new String[] {TABLE, SAMPLE, "approx_rw_other"}) {
+      run("DROP TABLE IF EXISTS " + table);
+      run("CREATE TABLE " + table + " (key STRING, value BIGINT)");
+    }
+
+    // 10000 of 1000000 rows: within an error of 0.05 at the default cv
+    setSample(new SampleInfo(SAMPLE, 0, 10000, 1000000, 100000));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (String table : new String[] {TABLE, SAMPLE, "approx_rw_other"}) {
+      run("DROP TABLE IF EXISTS " + table);
+    }
+  }
+
+  private void run(String command) {
+    assertEquals(command, 0, driver.run(command).getResponseCode());
+  }
+
+  private void setSample(SampleInfo sample) throws Exception {
+    Hive db = Hive.get(conf);
+    Table tab = db.getTable(TABLE);
+    SampleCatalog.removeSample(tab.getParameters(), SAMPLE);
+    SampleCatalog.putSample(tab.getParameters(), sample);
+    db.alterTable(TABLE, tab);
+  }
+
+  /**
+   * @return the group by operators of the plan of the query, map side first
+   */
+  private List<GroupByOperator> compile(String query) {
+    assertEquals(query, 0, driver.compile(query));
+    List<GroupByOperator> gbys = new ArrayList<GroupByOperator>();
+    for (Task<? extends Serializable> task : driver.getPlan().getRootTasks()) {
+      if (!(task instanceof MapRedTask)) {
+        continue;
+      }
+      MapredWork work = ((MapRedTask) task).getWork();
+      for (Operator<? extends Serializable> op : work.getAliasToWork().values()) {
+        addGroupBys(op, gbys);
+      }
+      if (work.getReducer() != null) {
+        addGroupBys(work.getReducer(), gbys);
+      }
+    }
+    return gbys;
+  }
+
+  private static void addGroupBys(Operator<? extends Serializable> op,
+      List<GroupByOperator> gbys) {
+    if (op instanceof GroupByOperator) {
+      gbys.add((GroupByOperator) op);
+    }
+    if (op.getChildOperators() != null) {
+      for (Operator<? extends Serializable> child : op.getChildOperators()) {
+        addGroupBys(child, gbys);
+      }
+    }
+  }
+
+  private boolean readsSample() {
+    for (ReadEntity input : driver.getPlan().getInputs()) {
+      if (input.getTable() != null && input.getTable().getTableName().equals(SAMPLE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int countScaled(List<GroupByOperator> gbys) {
+    int scaled = 0;
+    for (GroupByOperator gby : gbys) {
+      for (AggregationDesc agg : gby.getConf().getAggregators()) {
+        if (agg.getGenericUDAFEvaluator() instanceof ApproxScaledEvaluator) {
+          scaled++;
+        }
+      }
+    }
+    return scaled;
+  }
+
+  /**
+   * Sums and counts are wrapped in the map side and the reduce side stages of
+   * the aggregation, averages are not.
+   */
+  public void testRewrite() throws Exception {
+    List<GroupByOperator> gbys = compile(
+        "SELECT key, sum(value), count(1), avg(value) FROM " + TABLE + " GROUP BY key");
+    assertTrue(readsSample());
+    assertEquals(2, gbys.size());
+    for (GroupByOperator gby : gbys) {
+      List<AggregationDesc> aggs = gby.getConf().getAggregators();
+      assertEquals(3, aggs.size());
+      for (int i = 0; i < 2; i++) {
+        ApproxScaledEvaluator scaled = (ApproxScaledEvaluator) aggs.get(i)
+            .getGenericUDAFEvaluator();
+        assertEquals(100.0, scaled.getScale(), 1e-9);
+      }
+      assertFalse(aggs.get(2).getGenericUDAFEvaluator() instanceof ApproxScaledEvaluator);
+    }
+    assertEquals(Mode.PARTIAL1, gbys.get(0).getConf().getAggregators().get(0).getMode());
+    assertEquals(Mode.FINAL, gbys.get(1).getConf().getAggregators().get(0).getMode());
+  }
+
+  /**
+   * The partial sums of the map side are not scaled, the final sum is scaled
+   * once.
+   */
+  public void testScaledOnce() throws Exception {
+    List<GroupByOperator> gbys = compile("SELECT sum(value) FROM " + TABLE);
+    assertEquals(2, gbys.size());
+    AggregationDesc mapAgg = gbys.get(0).getConf().getAggregators().get(0);
+    AggregationDesc reduceAgg = gbys.get(1).getConf().getAggregators().get(0);
+
+    GenericUDAFEvaluator map = mapAgg.getGenericUDAFEvaluator();
+    ObjectInspector partialOI = map.init(mapAgg.getMode(), new ObjectInspector[] {
+        PrimitiveObjectInspectorFactory.writableLongObjectInspector});
+    AggregationBuffer mapBuffer = map.getNewAggregationBuffer();
+    for (int i = 1; i <= 10; i++) {
+      map.iterate(mapBuffer, new Object[] {new LongWritable(i)});
+    }
+    Object partial = map.terminatePartial(mapBuffer);
+    assertEquals(55, ((LongWritable) partial).get());
+
+    GenericUDAFEvaluator reduce = reduceAgg.getGenericUDAFEvaluator();
+    reduce.init(reduceAgg.getMode(), new ObjectInspector[] {partialOI});
+    AggregationBuffer reduceBuffer = reduce.getNewAggregationBuffer();
+    reduce.merge(reduceBuffer, partial);
+    assertEquals(5500, ((LongWritable) reduce.terminate(reduceBuffer)).get());
+  }
+
+  public void testLeftAloneWithJoin() {
+    assertEquals(0, countScaled(compile("SELECT sum(a.value) FROM " + TABLE
+        + " a JOIN approx_rw_other b ON a.key = b.key")));
+    assertFalse(readsSample());
+  }
+
+  public void testLeftAloneWithDistinct() {
+    assertEquals(0, countScaled(compile("SELECT count(DISTINCT key) FROM " + TABLE)));
+    assertFalse(readsSample());
+    assertEquals(0, countScaled(compile(
+        "SELECT sum(value), count(DISTINCT key) FROM " + TABLE)));
+    assertFalse(readsSample());
+  }
+
+  public void testLeftAloneWithStratifiedSample() throws Exception {
+    SampleInfo stratified = new SampleInfo(SAMPLE, 0, 10000, 1000000, 100000);
+    stratified.setStrata(Arrays.asList("key"));
+    setSample(stratified);
+    assertEquals(0, countScaled(compile("SELECT sum(value) FROM " + TABLE)));
+    assertFalse(readsSample());
+  }
+
+  public void testLeftAloneWithStaleSample() throws Exception {
+    SampleInfo stale = new SampleInfo(SAMPLE, 0, 10000, 1000000, 100000);
+    stale.setStale(true);
+    setSample(stale);
+    assertEquals(0, countScaled(compile("SELECT sum(value) FROM " + TABLE)));
+    assertFalse(readsSample());
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test for the parsing of the WITHIN and ERROR bounds of queries and of
+ * universe samples, whose words are not reserved.
+ */
+public class TestApproxBoundParse extends TestCase {
+
+  private String parse(String command) throws ParseException {
+    return new ParseDriver().parse(command).toStringTree();
+  }
+
+  public void testTimeBound() throws ParseException {
+    assertTrue(parse("SELECT sum(x) FROM t WITHIN 2 SECONDS")
+        .contains("(TOK_APPROX_TIME 2)"));
+    assertTrue(parse("select sum(x) from t within 2 seconds limit 10")
+        .contains("(TOK_APPROX_TIME 2) (TOK_LIMIT 10)"));
+  }
+
+  public void testErrorBound() throws ParseException {
+    assertTrue(parse("SELECT avg(x) FROM t ERROR 0.05")
+        .contains("(TOK_APPROX_ERROR 0.05)"));
+    assertTrue(parse("SELECT avg(x) FROM t ERROR 0.05 AT CONFIDENCE 0.99")
+        .contains("(TOK_APPROX_ERROR 0.05 0.99)"));
+  }
+
+  public void testBoundWordsAsIdentifiers() throws ParseException {
+    String tree = parse("SELECT within, seconds, error, at, confidence FROM error");
+    assertTrue(tree.contains("(TOK_TABNAME error)"));
+    assertTrue(tree.contains("(TOK_TABLE_OR_COL within)"));
+    assertTrue(tree.contains("(TOK_TABLE_OR_COL confidence)"));
+
+    tree = parse("SELECT sum(error) FROM t at WITHIN 2 SECONDS");
+    assertTrue(tree.contains("(TOK_TABREF (TOK_TABNAME t) at)"));
+    assertTrue(tree.contains("(TOK_APPROX_TIME 2)"));
+
+    tree = parse("CREATE TABLE error (at INT, confidence DOUBLE)");
+    assertTrue(tree.contains("(TOK_TABCOL at TOK_INT)"));
+  }
+
+  public void testUniverseSample() throws ParseException {
+    String tree = parse("SELECT count(1) FROM t TABLESAMPLE(UNIVERSE 1 OUT OF 10 ON id) s");
+    assertTrue(tree.contains("(TOK_TABLEUNIVERSESAMPLE 1 10 (TOK_TABLE_OR_COL id))"));
+
+    tree = parse("SELECT universe FROM universe");
+    assertTrue(tree.contains("(TOK_TABNAME universe)"));
+    assertTrue(tree.contains("(TOK_TABLE_OR_COL universe)"));
+  }
+}
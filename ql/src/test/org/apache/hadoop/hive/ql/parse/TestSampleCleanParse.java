@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test for the parsing of the SampleClean formats, whose names may be
+ * keywords or strings.
+ */
+public class TestSampleCleanParse extends TestCase {
+
+  private String parse(String command) throws ParseException {
+    return new ParseDriver().parse(command).toStringTree();
+  }
+
+  public void testFormatNames() throws ParseException {
+    String tree = parse("SCFORMAT v name trim, price number");
+    assertTrue(tree.contains("(TOK_SCFORMAT v (TOK_SCFORMAT_STEP name trim)"
+        + " (TOK_SCFORMAT_STEP price number))"));
+
+    tree = parse("SCFORMAT v name replace 'a' 'b'");
+    assertTrue(tree.contains("(TOK_SCFORMAT_STEP name replace 'a' 'b')"));
+
+    tree = parse("SCFORMAT v name 'replace' 'a' 'b', city 'trim'");
+    assertTrue(tree.contains("(TOK_SCFORMAT_STEP name 'replace' 'a' 'b')"));
+    assertTrue(tree.contains("(TOK_SCFORMAT_STEP city 'trim')"));
+  }
+}
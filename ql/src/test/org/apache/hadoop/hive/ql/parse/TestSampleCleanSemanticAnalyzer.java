@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.Driver;
+import org.apache.hadoop.hive.ql.exec.ExecDriver;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.SMBMapJoinOperator;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.io.BucketizedHiveInputFormat;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.sampleclean.SampleCleanQueryBuilder;
+import org.apache.hadoop.hive.ql.session.SessionState;
+
+/**
+ * JUnit test for SampleCleanSemanticAnalyzer.
+ */
+public class TestSampleCleanSemanticAnalyzer extends TestCase {
+
+  private static final String VIEW = "sc_analyzer";
+
+  private HiveConf conf;
+  private Driver driver;
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HiveConf(TestSampleCleanSemanticAnalyzer.class);
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVE_SUPPORT_CONCURRENCY, false);
+    SessionState.start(conf);
+    driver = new Driver(conf);
+    dropTables();
+
+    SampleCleanQueryBuilder builder = new SampleCleanQueryBuilder();
+    ArrayList<String> schema = new ArrayList<String>(Arrays.asList("id", "price"));
+    run(builder.createDirtyTable(VIEW, schema));
+    run(builder.createDeltaTable(VIEW, schema));
+    run(builder.createDeltaLog(VIEW, schema));
+    run(builder.createCleanView(VIEW, schema));
+
+    // the bucket map join maps the bucket files of the tables onto each other
+    Hive db = Hive.get(conf);
+    for (String table : new String[] {VIEW + "_dirty", VIEW + "_delta"}) {
+      Path location = new Path(db.getTable(table).getDataLocation().toString());
+      FileSystem fs = location.getFileSystem(conf);
+      for (int i = 0; i < SampleCleanQueryBuilder.DEFAULT_BUCKETS; i++) {
+        fs.create(new Path(location, String.format("%06d_0", i))).close();
+      }
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    dropTables();
+  }
+
+  private void dropTables() {
+    run("DROP VIEW IF EXISTS " + VIEW + "_clean");
+    for (String table : new String[] {VIEW + "_dirty", VIEW + "_delta", VIEW + "_log"}) {
+      run("DROP TABLE IF EXISTS " + table);
+    }
+  }
+
+  private void run(String command) {
+    assertEquals(command, 0, driver.run(command).getResponseCode());
+  }
+
+  private static boolean hasSortMergeJoin(Operator<? extends Serializable> op) {
+    if (op instanceof SMBMapJoinOperator) {
+      return true;
+    }
+    if (op.getChildOperators() != null) {
+      for (Operator<? extends Serializable> child : op.getChildOperators()) {
+        if (hasSortMergeJoin(child)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The dirty sample and the deltas are joined as a sort-merge bucket map
+   * join, read bucket by bucket, without changing the settings of the
+   * session.
+   */
+  public void testSortMergeJoin() throws Exception {
+    String query = "SELECTNSC avg(price) FROM " + VIEW + " WHERE id > 10";
+    assertEquals(query, 0, driver.compile(query));
+    int joins = 0;
+    for (ExecDriver task : Utilities.getMRTasks(driver.getPlan().getRootTasks())) {
+      MapredWork work = task.getWork();
+      for (Operator<? extends Serializable> op : work.getAliasToWork().values()) {
+        if (hasSortMergeJoin(op)) {
+          assertEquals(BucketizedHiveInputFormat.class.getName(), work.getInputformat());
+          joins++;
+        }
+      }
+    }
+    assertEquals(1, joins);
+    assertFalse(conf.getBoolVar(HiveConf.ConfVars.HIVEOPTBUCKETMAPJOIN));
+    assertFalse(conf.getBoolVar(HiveConf.ConfVars.HIVEOPTSORTMERGEBUCKETMAPJOIN));
+  }
+
+  private void compileAll(String... queries) {
+    for (String query : queries) {
+      assertEquals(query, 0, driver.compile(query));
+      assertEquals(query, 4, driver.getSchema().getFieldSchemasSize());
+    }
+  }
+
+  /**
+   * Statements of the same template are each filled in with their own
+   * predicate, whether the template is kept or not.
+   */
+  public void testTemplates() throws Exception {
+    String[] queries = new String[] {
+        "SCSHOW " + VIEW + " WHERE id > 1", "SCSHOW " + VIEW + " WHERE price < 2",
+        "SCSHOW " + VIEW};
+    compileAll(queries);
+    compileAll(queries);
+    assertTrue(driver.compile("SCSHOW " + VIEW + " WHERE nosuch > 1") != 0);
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.SAMPLECLEAN_TEMPLATE_CACHE_SIZE, 0);
+    compileAll(queries);
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluatorFactory;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFUniverseSum.ApproxUDAFUniverseSumEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+
+/**
+ * JUnit test for the predicate of TABLESAMPLE(UNIVERSE m OUT OF M ON key)
+ * and approx_universe_sum over it.
+ */
+public class TestUniverseSample extends TestCase {
+
+  private static final int ROWS = 10000;
+
+  private final ObjectInspector rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+      Arrays.asList("key", "value"), Arrays.asList((ObjectInspector)
+          PrimitiveObjectInspectorFactory.writableIntObjectInspector,
+          PrimitiveObjectInspectorFactory.writableDoubleObjectInspector));
+
+  private static List<Object> row(int key) {
+    return Arrays.asList((Object) new IntWritable(key), new DoubleWritable(key % 7));
+  }
+
+  /**
+   * @return the rows kept by TABLESAMPLE(UNIVERSE num OUT OF den ON key)
+   */
+  private List<List<Object>> sample(int num, int den) throws Exception {
+    TableSample ts = new TableSample(num, den);
+    ts.setUniverse(true);
+    ArrayList<ExprNodeDesc> args = new ArrayList<ExprNodeDesc>();
+    args.add(new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "key", "t", false));
+    ExprNodeEvaluator predicate = ExprNodeEvaluatorFactory.get(
+        SemanticAnalyzer.genSamplePredicate(ts, args));
+    BooleanObjectInspector resultOI = (BooleanObjectInspector) predicate.initialize(rowOI);
+
+    List<List<Object>> kept = new ArrayList<List<Object>>();
+    for (int key = 0; key < ROWS; key++) {
+      List<Object> row = row(key);
+      if (resultOI.get(predicate.evaluate(row))) {
+        kept.add(row);
+      }
+    }
+    return kept;
+  }
+
+  private static ApproxUDAFUniverseSumEvaluator newEvaluator() throws HiveException {
+    ApproxUDAFUniverseSumEvaluator evaluator = new ApproxUDAFUniverseSumEvaluator();
+    evaluator.init(Mode.COMPLETE, new ObjectInspector[] {
+        PrimitiveObjectInspectorFactory.writableDoubleObjectInspector,
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector,
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector,
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector});
+    return evaluator;
+  }
+
+  private static double sum(ApproxUDAFUniverseSumEvaluator evaluator, int num, int den,
+      List<List<Object>> rows) throws HiveException {
+    AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+    for (List<Object> row : rows) {
+      evaluator.iterate(agg, new Object[] {
+          row.get(1), new IntWritable(num), new IntWritable(den), row.get(0)});
+    }
+    Object[] result = (Object[]) evaluator.terminate(agg);
+    return ((DoubleWritable) result[0]).get();
+  }
+
+  /**
+   * The predicate keeps the first num of den buckets, nested as num grows.
+   */
+  public void testPredicate() throws Exception {
+    List<List<Object>> one = sample(1, 10);
+    List<List<Object>> three = sample(3, 10);
+    assertEquals(ROWS / 10, one.size(), ROWS / 50);
+    assertEquals(3 * ROWS / 10, three.size(), 3 * ROWS / 50);
+    assertTrue(three.containsAll(one));
+    assertEquals(ROWS, sample(10, 10).size());
+  }
+
+  /**
+   * approx_universe_sum hashes rows to the buckets of the predicate, so that
+   * it ignores the rows the predicate drops and scales the others by M/m.
+   */
+  public void testUniverseSum() throws Exception {
+    List<List<Object>> all = new ArrayList<List<Object>>();
+    for (int key = 0; key < ROWS; key++) {
+      all.add(row(key));
+    }
+    List<List<Object>> kept = sample(3, 10);
+    double keptSum = 0;
+    for (List<Object> row : kept) {
+      keptSum += ((DoubleWritable) row.get(1)).get();
+    }
+
+    ApproxUDAFUniverseSumEvaluator evaluator = newEvaluator();
+    assertEquals(keptSum * 10 / 3, sum(evaluator, 3, 10, kept), 1e-6);
+    assertEquals(keptSum * 10 / 3, sum(evaluator, 3, 10, all), 1e-6);
+  }
+
+  /**
+   * The evaluator checks its universe against that of the clause, set by the
+   * query compiler.
+   */
+  public void testUniverseOfClause() throws Exception {
+    List<List<Object>> kept = sample(3, 10);
+    ApproxUDAFUniverseSumEvaluator evaluator = newEvaluator();
+    evaluator.setSampleUniverse(3);
+    evaluator.setSampleBuckets(10);
+    sum(evaluator, 3, 10, kept);
+    try {
+      sum(evaluator, 1, 10, kept);
+      fail("approx_universe_sum of 1 out of 10 over UNIVERSE 3 OUT OF 10");
+    } catch (HiveException e) {
+      // expected
+    }
+  }
+}
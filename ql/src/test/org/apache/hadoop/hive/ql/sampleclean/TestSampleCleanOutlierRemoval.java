@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampleclean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
+/**
+ * JUnit test for SampleCleanOutlierRemoval.
+ */
+public class TestSampleCleanOutlierRemoval extends TestCase {
+
+  private final ArrayList<String> schema = new ArrayList<String>(
+      Arrays.asList("hash", "dup", "id", "price"));
+
+  public void testBoundsMethods() throws HiveException {
+    SampleCleanOutlierRemoval removal = new SampleCleanOutlierRemoval();
+    for (String method : new String[] {"parametric", "NonParametric"}) {
+      List<String> commands = removal.buildOutlierRemovalQuery("v", schema, method, "price",
+          " 3 ", 7);
+      assertEquals(1, commands.size());
+      String command = commands.get(0);
+      assertTrue(command, command.startsWith("INSERT INTO TABLE v_log "));
+      assertTrue(command, command.contains(
+          "outlier_bounds_clean(price, '" + method.toLowerCase() + "', 3) AS b FROM v_clean"));
+      assertTrue(command, command.contains("7 AS version, 'D' AS op"));
+    }
+  }
+
+  public void testProximity() throws HiveException {
+    List<String> commands = new SampleCleanOutlierRemoval().buildOutlierRemovalQuery("v",
+        schema, "proximity", "price", "2", 7);
+    assertEquals(1, commands.size());
+    assertTrue(commands.get(0), commands.get(0).contains("WHERE s.z > 2"));
+  }
+
+  public void testUnknownMethod() {
+    try {
+      new SampleCleanOutlierRemoval().buildOutlierRemovalQuery("v", schema, "zscore", "price",
+          "3", 7);
+      fail("zscore is not an outlier removal method");
+    } catch (HiveException e) {
+      assertTrue(e.getMessage().contains("zscore"));
+    }
+  }
+}
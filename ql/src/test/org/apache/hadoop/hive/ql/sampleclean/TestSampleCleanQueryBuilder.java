@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampleclean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test for SampleCleanQueryBuilder.
+ */
+public class TestSampleCleanQueryBuilder extends TestCase {
+
+  private final ArrayList<String> schema = new ArrayList<String>(
+      Arrays.asList("id", "price"));
+
+  private final ArrayList<String> cleanSchema = new ArrayList<String>(
+      Arrays.asList("hash", "dup", "id", "price"));
+
+  public void testLatestPerHash() {
+    String latest = SampleCleanQueryBuilder.latestPerHash(cleanSchema, "SELECT * FROM v_log");
+    assertEquals("SELECT t.hash AS hash, t.latest.dup AS dup, t.latest.id AS id,"
+        + " t.latest.price AS price, t.latest.version AS version, t.latest.op AS op"
+        + " FROM (SELECT q.hash AS hash, MAX(named_struct('version', q.version,"
+        + " 'dup', q.dup, 'id', q.id, 'price', q.price, 'op', q.op)) AS latest"
+        + " FROM (SELECT * FROM v_log) q GROUP BY q.hash) t", latest);
+  }
+
+  public void testCleanViewReadsDeltasAndLog() {
+    String view = new SampleCleanQueryBuilder().createCleanView("v", schema);
+    assertTrue(view, view.contains("v_clean"));
+    assertTrue(view, view.contains("FROM v_dirty d LEFT OUTER JOIN (SELECT t.hash AS hash"));
+    assertTrue(view, view.contains(
+        "FROM (SELECT * FROM v_delta UNION ALL SELECT * FROM v_log) q GROUP BY q.hash) t)"
+        + " l ON (d.hash = l.hash) WHERE l.hash IS NULL OR l.op = 'U'"));
+    assertTrue(view, view.contains("IF(l.hash IS NULL, d.price, l.price) AS price"));
+  }
+
+  public void testDeleteAppendsToLog() {
+    String delete = new SampleCleanQueryBuilder().deleteWhere("v", cleanSchema, "price > 10", 7);
+    assertTrue(delete, delete.contains("INTO TABLE v_log"));
+    assertFalse(delete, delete.contains("v_delta"));
+    assertTrue(delete, delete.contains("7 AS version, 'D' AS op FROM v_clean WHERE price > 10"));
+    assertTrue(delete, delete.endsWith("GROUP BY q.hash"));
+  }
+
+  public void testCompactFoldsLog() {
+    List<String> commands = new SampleCleanQueryBuilder().compactDeltas("v", cleanSchema);
+    String overwrite = commands.get(commands.size() - 2);
+    assertTrue(overwrite, overwrite.contains("OVERWRITE TABLE v_delta"));
+    assertTrue(overwrite,
+        overwrite.contains("SELECT * FROM v_delta UNION ALL SELECT * FROM v_log"));
+    String truncate = commands.get(commands.size() - 1);
+    assertTrue(truncate, truncate.contains("v_log"));
+    assertTrue(truncate, truncate.endsWith("WHERE FALSE"));
+  }
+
+  public void testNormalizedJoinsDeltasThenLog() {
+    String query = new SampleCleanQueryBuilder().normalizedSCQuery("v", "avg", "price", "",
+        "", cleanSchema, 100, 1000);
+    assertTrue(query, query.contains("SELECT /*+ MAPJOIN(l) */ d.price AS dirty_value"));
+    assertTrue(query, query.contains(
+        "FROM v_dirty d LEFT OUTER JOIN v_delta l ON (d.hash = l.hash)) j"));
+    assertTrue(query, query.contains(
+        "FROM (SELECT * FROM v_log) q GROUP BY q.hash) t) g ON (j.hash = g.hash)"));
+    assertFalse(query, query.contains("UNION ALL"));
+    assertTrue(query, query.contains("IF(g.hash IS NOT NULL AND (j.version IS NULL"
+        + " OR g.version > j.version), g.price, j.price) AS price"));
+    assertTrue(query, query.contains("WHERE COALESCE(IF(g.hash IS NOT NULL AND"
+        + " (j.version IS NULL OR g.version > j.version), g.op, j.op), 'U') = 'U') c"));
+  }
+}
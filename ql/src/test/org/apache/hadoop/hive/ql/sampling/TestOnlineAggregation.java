@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxStatistics;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFAverage.ApproxUDAFAverageEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+/**
+ * JUnit test for OnlineAggregation.
+ */
+public class TestOnlineAggregation extends TestCase {
+
+  private static final double CONFIDENCE = 0.95;
+
+  /**
+   * @return the moments of values from..to-1
+   */
+  private static OnlineAggregation.Moments moments(boolean mean, double[] values, int from,
+      int to, long totalRows, double designEffect) {
+    double sum = 0;
+    for (int i = from; i < to; i++) {
+      sum += values[i];
+    }
+    double m2 = 0;
+    for (int i = from; i < to; i++) {
+      double deviation = values[i] - sum / (to - from);
+      m2 += deviation * deviation;
+    }
+    OnlineAggregation.Moments moments = new OnlineAggregation.Moments();
+    moments.set(mean, to - from, sum, m2, totalRows, designEffect, CONFIDENCE);
+    return moments;
+  }
+
+  private static double get(Object[] result, int field) {
+    return ((DoubleWritable) result[field]).get();
+  }
+
+  private static double[] values(int n) {
+    Random rnd = new Random(17);
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = 100 + 20 * rnd.nextGaussian();
+    }
+    return values;
+  }
+
+  private static void assertResultEquals(Object[] expected, Object[] actual) {
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(get(expected, i), get(actual, i), 1e-6 * Math.abs(get(expected, i)));
+    }
+  }
+
+  /**
+   * The moments of parts of the input merge into those of the whole input,
+   * whatever the parts.
+   */
+  public void testMergeMean() {
+    double[] values = values(1000);
+    OnlineAggregation.Moments whole = moments(true, values, 0, 1000, 0, 1);
+
+    OnlineAggregation.Moments merged = new OnlineAggregation.Moments();
+    merged.merge(moments(true, values, 0, 0, 0, 1));
+    merged.merge(moments(true, values, 0, 10, 0, 1));
+    merged.merge(moments(true, values, 10, 700, 0, 1));
+    merged.merge(moments(true, values, 700, 1000, 0, 1));
+    assertResultEquals(whole.estimate(1000), merged.estimate(1000));
+
+    Object[] result = merged.estimate(1000);
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    assertEquals(sum / 1000, get(result, 0), 1e-9);
+    double stderr = get(result, 3);
+    assertEquals(20 / Math.sqrt(1000), stderr, 0.1 * 20 / Math.sqrt(1000));
+    assertEquals(ApproxStatistics.quantile(CONFIDENCE, 1000) * stderr,
+        get(result, 2) - get(result, 0), 1e-9);
+  }
+
+  /**
+   * A total is scaled from the rows read by the mappers to the rows of the
+   * table.
+   */
+  public void testMergeTotal() {
+    double[] values = values(300);
+    OnlineAggregation.Moments merged = new OnlineAggregation.Moments();
+    merged.merge(moments(false, values, 0, 100, 100000, 1));
+    merged.merge(moments(false, values, 100, 300, 100000, 1));
+
+    // 300 of the 1000 rows read reach the aggregate
+    Object[] result = merged.estimate(1000);
+    OnlineAggregation.Moments whole = moments(false, values, 0, 300, 100000, 1);
+    assertResultEquals(whole.estimate(1000), result);
+
+    double sum = 0;
+    double squares = 0;
+    for (double value : values) {
+      sum += value;
+      squares += value * value;
+    }
+    assertEquals(sum * 100000 / 1000, get(result, 0), 1e-6);
+    double m2 = squares - sum * sum / 300;
+    assertEquals(ApproxStatistics.totalStandardError(300, sum, m2, 1000, 100000),
+        get(result, 3), 1e-6);
+  }
+
+  public void testMergeDesignEffect() {
+    double[] values = values(400);
+    OnlineAggregation.Moments merged = new OnlineAggregation.Moments();
+    merged.merge(moments(true, values, 0, 100, 0, 1));
+    merged.merge(moments(true, values, 100, 400, 0, 5));
+
+    // the design effects are weighted by rows: (100 * 1 + 300 * 5) / 400
+    OnlineAggregation.Moments whole = moments(true, values, 0, 400, 0, 1);
+    assertEquals(Math.sqrt(4) * get(whole.estimate(400), 3), get(merged.estimate(400), 3),
+        1e-9);
+  }
+
+  public void testWritable() throws Exception {
+    OnlineAggregation.Moments moments = moments(false, values(50), 0, 50, 1000, 2);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    moments.write(new DataOutputStream(bytes));
+
+    OnlineAggregation.Moments read = new OnlineAggregation.Moments();
+    read.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertResultEquals(moments.estimate(100), read.estimate(100));
+    assertEquals(CONFIDENCE, read.getConfidence(), 0);
+  }
+
+  /**
+   * A mapper publishes its aggregates when it closes, even when it read fewer
+   * rows than a check of the interval.
+   */
+  public void testPublishOnClose() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path dir = new Path(System.getProperty("test.data.dir", ".") + "/online");
+    fs.delete(dir, true);
+
+    ApproxUDAFAverageEvaluator evaluator = new ApproxUDAFAverageEvaluator();
+    evaluator.init(Mode.PARTIAL1, new ObjectInspector[] {
+        PrimitiveObjectInspectorFactory.writableDoubleObjectInspector});
+    AggregationBuffer[] aggs = {evaluator.getNewAggregationBuffer()};
+    OnlineAggregation.Publisher publisher = new OnlineAggregation.Publisher(conf, dir,
+        "task_0", new GenericUDAFEvaluator[] {evaluator}, Arrays.asList(0),
+        Arrays.asList("approx_avg(x)"), 0);
+    for (int i = 1; i <= 10; i++) {
+      evaluator.iterate(aggs[0], new Object[] {new DoubleWritable(i)});
+      publisher.rowProcessed(aggs, null);
+    }
+    assertFalse(fs.exists(new Path(dir, "task_0")));
+
+    publisher.close(null);
+    FSDataInputStream in = fs.open(new Path(dir, "task_0"));
+    try {
+      assertEquals(10, in.readLong());
+      assertEquals(1, in.readInt());
+      assertEquals("approx_avg(x)", in.readUTF());
+      OnlineAggregation.Moments moments = new OnlineAggregation.Moments();
+      moments.readFields(in);
+      assertEquals(5.5, get(moments.estimate(10), 0), 1e-9);
+    } finally {
+      in.close();
+    }
+    fs.delete(dir, true);
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test for PriorityReservoir.
+ */
+public class TestPriorityReservoir extends TestCase {
+
+  private static List<Double> priorities(PriorityReservoir<Integer> reservoir) {
+    List<Double> result = new ArrayList<Double>();
+    for (PriorityReservoir.Entry<Integer> e : reservoir.entries()) {
+      result.add(e.getPriority());
+    }
+    return result;
+  }
+
+  public void testKeepsSmallestPriorities() {
+    Random rnd = new Random(42);
+    PriorityReservoir<Integer> reservoir = new PriorityReservoir<Integer>(10);
+    List<Double> all = new ArrayList<Double>();
+    for (int i = 0; i < 1000; i++) {
+      double priority = rnd.nextDouble();
+      all.add(priority);
+      reservoir.offer(priority, 1, i);
+    }
+    Collections.sort(all);
+
+    assertEquals(10, reservoir.size());
+    assertEquals(10, reservoir.getTotalWeight());
+    assertEquals(all.subList(0, 10), priorities(reservoir));
+  }
+
+  public void testWeightedCapacity() {
+    PriorityReservoir<Integer> reservoir = new PriorityReservoir<Integer>(100);
+    // weights 30, 30, 30, 30, ... in decreasing priority order
+    for (int i = 10; i > 0; i--) {
+      reservoir.offer(i / 10.0, 30, i);
+    }
+    // the smallest prefix that covers 100 is 4 items of 30
+    assertEquals(4, reservoir.size());
+    assertEquals(120, reservoir.getTotalWeight());
+    assertEquals(0.4, reservoir.entries().get(3).getPriority(), 0.0);
+
+    // one large item with a small priority covers the capacity alone
+    reservoir.offer(0.05, 150, 0);
+    assertEquals(1, reservoir.size());
+    assertEquals(150, reservoir.getTotalWeight());
+    assertFalse(reservoir.accepts(0.06));
+    assertTrue(reservoir.accepts(0.01));
+  }
+
+  public void testMergeEqualsSingleReservoir() {
+    Random rnd = new Random(7);
+    PriorityReservoir<Integer> single = new PriorityReservoir<Integer>(500);
+    PriorityReservoir<Integer> left = new PriorityReservoir<Integer>(500);
+    PriorityReservoir<Integer> right = new PriorityReservoir<Integer>(500);
+    for (int i = 0; i < 2000; i++) {
+      double priority = rnd.nextDouble();
+      long weight = 1 + rnd.nextInt(20);
+      single.offer(priority, weight, i);
+      (i % 3 == 0 ? left : right).offer(priority, weight, i);
+    }
+    left.merge(right);
+
+    assertEquals(priorities(single), priorities(left));
+    assertEquals(single.getTotalWeight(), left.getTotalWeight());
+    assertTrue(left.getTotalWeight() >= 500);
+  }
+
+  public void testEmptyCapacity() {
+    PriorityReservoir<Integer> reservoir = new PriorityReservoir<Integer>(0);
+    assertFalse(reservoir.accepts(0.0));
+    reservoir.offer(0.0, 1, 1);
+    assertEquals(0, reservoir.size());
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+/**
+ * JUnit test for SampleCatalog, on a metastore kept in memory.
+ */
+public class TestSampleCatalog extends TestCase {
+
+  private final Map<String, Table> tables = new HashMap<String, Table>();
+  private SampleCatalog catalog;
+
+  /**
+   * Implements the table calls of the metastore client the catalog makes.
+   */
+  private class MemoryMetaStore implements InvocationHandler {
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (name.equals("getTable")) {
+        Table table = tables.get(args[args.length - 1]);
+        if (table == null) {
+          throw new NoSuchObjectException(args[args.length - 1] + " not found");
+        }
+        return table.deepCopy();
+      } else if (name.equals("tableExists")) {
+        return tables.containsKey(args[args.length - 1]);
+      } else if (name.equals("alter_table")) {
+        tables.put((String) args[1], ((Table) args[2]).deepCopy());
+        return null;
+      } else if (name.equals("close")) {
+        return null;
+      }
+      throw new UnsupportedOperationException(name);
+    }
+  }
+
+  @Override
+  protected void setUp() {
+    catalog = new SampleCatalog((IMetaStoreClient) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {IMetaStoreClient.class},
+        new MemoryMetaStore()));
+    addTable("sales");
+    addTable("sales_s1");
+    addTable("sales_s2");
+  }
+
+  private void addTable(String name) {
+    Table table = new Table();
+    table.setDbName("default");
+    table.setTableName(name);
+    table.setParameters(new HashMap<String, String>());
+    tables.put(name, table);
+  }
+
+  private Map<String, String> params(String name) {
+    return tables.get(name).getParameters();
+  }
+
+  private void registerSamples() throws Exception {
+    catalog.registerSample("default", "sales", new SampleInfo("sales_s1", 0, 10, 1000, 100));
+    catalog.registerSample("default", "sales", new SampleInfo("sales_s2", 0, 100, 1000, 1000));
+  }
+
+  public void testRegisterSample() throws Exception {
+    registerSamples();
+    assertEquals(2, catalog.getSamples("default", "sales").size());
+    assertEquals("sales_s1", catalog.getSamples("default", "sales").get(0).getTableName());
+    assertEquals("sales", SampleCatalog.getBaseTable(params("sales_s1")));
+  }
+
+  public void testDropSample() throws Exception {
+    registerSamples();
+    catalog.dropTable("default", "sales_s1", params("sales_s1"));
+    tables.remove("sales_s1");
+
+    assertEquals(1, catalog.getSamples("default", "sales").size());
+    assertEquals("sales_s2", catalog.getSamples("default", "sales").get(0).getTableName());
+  }
+
+  public void testDropBaseTable() throws Exception {
+    registerSamples();
+    catalog.dropTable("default", "sales", params("sales"));
+    assertTrue(catalog.getSamples("default", "sales").isEmpty());
+    assertNull(SampleCatalog.getBaseTable(params("sales_s1")));
+    assertNull(SampleCatalog.getBaseTable(params("sales_s2")));
+    tables.remove("sales");
+
+    // dropping a sample of a table dropped before is left alone
+    catalog.dropTable("default", "sales_s1", params("sales_s1"));
+  }
+
+  public void testDropSampleOfDroppedTable() throws Exception {
+    registerSamples();
+    tables.remove("sales");
+    catalog.dropTable("default", "sales_s2", params("sales_s2"));
+    assertFalse(tables.containsKey("sales"));
+  }
+}
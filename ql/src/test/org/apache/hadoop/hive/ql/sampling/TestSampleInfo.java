@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test for SampleInfo.
+ */
+public class TestSampleInfo extends TestCase {
+
+  public void testEncodeDecode() {
+    SampleInfo info = new SampleInfo("Sales_Sample", 0, 1000, 100000, 2097152);
+    info.setStrata(Arrays.asList("region", "year"));
+    info.setScanRate(5000000);
+    info.setCv(0.25);
+
+    String encoded = info.encode();
+    assertEquals("level=0;rows=1000;sourceRows=100000;bytes=2097152;strata=region,year;"
+        + "scanRate=5000000;cv=0.25", encoded);
+
+    SampleInfo decoded = SampleInfo.decode("sales_sample", encoded);
+    assertEquals("sales_sample", decoded.getTableName());
+    assertEquals(0, decoded.getLevel());
+    assertEquals(1000, decoded.getRows());
+    assertEquals(100000, decoded.getSourceRows());
+    assertEquals(2097152, decoded.getBytes());
+    assertEquals(Arrays.asList("region", "year"), decoded.getStrata());
+    assertTrue(decoded.isStratified());
+    assertEquals(5000000, decoded.getScanRate());
+    assertEquals(0.25, decoded.getCv(), 0.0);
+    assertFalse(decoded.isNested());
+    assertEquals(0.01, decoded.getFraction(), 1e-12);
+    assertEquals(encoded, decoded.encode());
+  }
+
+  public void testDecodeIgnoresUnknownFields() {
+    SampleInfo info = SampleInfo.decode("s", "rows=10; unknown=1;;bytes = 20");
+    assertEquals(10, info.getRows());
+    assertEquals(20, info.getBytes());
+    assertEquals(0, info.getSourceRows());
+    assertEquals(0.0, info.getFraction(), 0.0);
+    assertFalse(info.isStratified());
+  }
+
+  public void testStale() {
+    SampleInfo info = new SampleInfo("s", 0, 10, 100, 1000);
+    assertFalse(info.isStale());
+    assertFalse(info.encode().contains("stale"));
+
+    info.setStale(true);
+    SampleInfo decoded = SampleInfo.decode("s", info.encode());
+    assertTrue(decoded.isStale());
+    assertEquals(10, decoded.getRows());
+  }
+
+  public void testNestedLevels() {
+    SampleInfo info = new SampleInfo("s");
+    info.setSourceRows(1000);
+    info.setLevels(Arrays.asList(10L, 30L, 70L), Arrays.asList(100L, 300L, 700L));
+    assertTrue(info.isNested());
+    assertEquals(3, info.getLevel());
+    assertEquals(70, info.getRows());
+    assertEquals(700, info.getBytes());
+    assertFalse(info.isPrefix());
+
+    List<SampleInfo> levels = info.getNestedLevels();
+    assertEquals(3, levels.size());
+    for (int i = 0; i < levels.size(); i++) {
+      SampleInfo level = levels.get(i);
+      assertEquals(i + 1, level.getLevel());
+      assertEquals(info.getLevelRows().get(i).longValue(), level.getRows());
+      assertEquals(info.getLevelBytes().get(i).longValue(), level.getBytes());
+      assertEquals(1000, level.getSourceRows());
+      assertEquals(i < 2, level.isPrefix());
+    }
+
+    SampleInfo prefix = SampleInfo.decode("s", levels.get(0).encode());
+    assertEquals(1, prefix.getLevel());
+    assertEquals(10, prefix.getRows());
+    assertEquals(Arrays.asList(10L, 30L, 70L), prefix.getLevelRows());
+    assertTrue(prefix.isPrefix());
+  }
+
+  public void testSingleLevel() {
+    SampleInfo info = new SampleInfo("s", 0, 10, 100, 1000);
+    List<SampleInfo> levels = info.getNestedLevels();
+    assertEquals(1, levels.size());
+    assertSame(info, levels.get(0));
+    assertFalse(info.isPrefix());
+  }
+
+  public void testMismatchedLevels() {
+    SampleInfo info = new SampleInfo("s");
+    try {
+      info.setLevels(Arrays.asList(10L, 30L), Arrays.asList(100L));
+      fail("Levels with more row counts than sizes were accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * JUnit test for SampleLevelFilter.
+ */
+public class TestSampleLevelFilter extends TestCase {
+
+  private SampleLevelFilter newFilter(String levels) {
+    Configuration conf = new Configuration();
+    conf.set(SampleLevelFilter.LEVELS, levels);
+    SampleLevelFilter filter = new SampleLevelFilter();
+    filter.setConf(conf);
+    return filter;
+  }
+
+  private static Path levelFile(String dir, int level) {
+    return new Path(dir, SampleLevelFilter.getLevelFileName(level));
+  }
+
+  public void testLevelFileName() {
+    assertEquals("level-00001", SampleLevelFilter.getLevelFileName(1));
+    assertEquals("level-00012", SampleLevelFilter.getLevelFileName(12));
+  }
+
+  public void testAddLevels() {
+    StringBuilder sb = new StringBuilder();
+    SampleLevelFilter.addLevels(sb, "hdfs://nn:8020/warehouse/s", 2);
+    SampleLevelFilter.addLevels(sb, "/warehouse/p/ds=2012-01-01", 1);
+    assertEquals("/warehouse/s=2;/warehouse/p/ds=2012-01-01=1", sb.toString());
+  }
+
+  public void testAcceptsFirstLevels() {
+    SampleLevelFilter filter = newFilter("/warehouse/s=2;/warehouse/p/ds=2012-01-01=1");
+
+    assertTrue(filter.accept(levelFile("hdfs://nn:8020/warehouse/s", 1)));
+    assertTrue(filter.accept(levelFile("hdfs://nn:8020/warehouse/s", 2)));
+    assertFalse(filter.accept(levelFile("hdfs://nn:8020/warehouse/s", 3)));
+    assertFalse(filter.accept(levelFile("/warehouse/s", 5)));
+
+    assertTrue(filter.accept(levelFile("/warehouse/p/ds=2012-01-01", 1)));
+    assertFalse(filter.accept(levelFile("/warehouse/p/ds=2012-01-01", 2)));
+  }
+
+  public void testAcceptsOtherPaths() {
+    SampleLevelFilter filter = newFilter("/warehouse/s=1");
+
+    // other files and directories of the sample, and other directories
+    assertTrue(filter.accept(new Path("/warehouse/s/000000_0")));
+    assertTrue(filter.accept(new Path("/warehouse/s")));
+    assertTrue(filter.accept(levelFile("/warehouse/t", 5)));
+
+    // nothing is filtered without levels
+    filter = newFilter("");
+    assertTrue(filter.accept(levelFile("/warehouse/s", 5)));
+  }
+}
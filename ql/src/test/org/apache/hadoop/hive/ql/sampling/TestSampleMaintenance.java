@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * JUnit test for SampleMaintenance.
+ */
+@SuppressWarnings("deprecation")
+public class TestSampleMaintenance extends TestCase {
+
+  /**
+   * Collects the rows written by a reducer.
+   */
+  private static class RowCollector implements OutputCollector<NullWritable, Text> {
+    private final List<String> rows = new ArrayList<String>();
+
+    @Override
+    public void collect(NullWritable key, Text value) {
+      rows.add(value.toString());
+    }
+  }
+
+  private static SampleMaintenance.UpdateRecord record(byte kind, double priority, long rows,
+      String row) {
+    SampleMaintenance.UpdateRecord record = new SampleMaintenance.UpdateRecord();
+    record.set(kind, priority, rows, new Text(row));
+    return record;
+  }
+
+  public void testDrawNewRowsBounds() {
+    Random rnd = new Random(1);
+    // every row is drawn
+    assertEquals(20, SampleMaintenance.drawNewRows(rnd, 100, 80, 20));
+    // no new rows, or no old ones
+    assertEquals(0, SampleMaintenance.drawNewRows(rnd, 10, 100, 0));
+    assertEquals(10, SampleMaintenance.drawNewRows(rnd, 10, 0, 100));
+    assertEquals(0, SampleMaintenance.drawNewRows(rnd, 0, 100, 100));
+  }
+
+  public void testDrawNewRowsMean() {
+    // hypergeometric mean n * d / (N + d) = 100 * 100 / 1000
+    Random rnd = new Random(2);
+    long total = 0;
+    int draws = 2000;
+    for (int i = 0; i < draws; i++) {
+      long k = SampleMaintenance.drawNewRows(rnd, 100, 900, 100);
+      assertTrue(k >= 0 && k <= 100);
+      total += k;
+    }
+    assertEquals(10.0, ((double) total) / draws, 0.5);
+  }
+
+  private List<String> reduceUniform(long sampleRows, long sourceRows, long newRows)
+      throws IOException {
+    JobConf job = new JobConf();
+    job.setLong(SampleMaintenance.SAMPLE_ROWS, sampleRows);
+    job.setLong(SampleMaintenance.SOURCE_ROWS, sourceRows);
+    SampleMaintenance.UniformUpdateReducer reducer = new SampleMaintenance.UniformUpdateReducer();
+    reducer.configure(job);
+    RowCollector output = new RowCollector();
+
+    List<SampleMaintenance.UpdateRecord> counts = new ArrayList<SampleMaintenance.UpdateRecord>();
+    counts.add(record(SampleMaintenance.UpdateRecord.COUNT, 0, newRows, ""));
+    reducer.reduce(new DoubleWritable(-1), counts.iterator(), output, Reporter.NULL);
+
+    // the smallest priorities of the new rows and the sample rows, interleaved
+    for (int i = 0; i < sampleRows; i++) {
+      List<SampleMaintenance.UpdateRecord> values =
+          new ArrayList<SampleMaintenance.UpdateRecord>();
+      if (i < newRows) {
+        values.add(record(SampleMaintenance.UpdateRecord.NEW_ROW, i, 0, "new" + i));
+      }
+      values.add(record(SampleMaintenance.UpdateRecord.SAMPLE_ROW, i, 0, "old" + i));
+      reducer.reduce(new DoubleWritable(i), values.iterator(), output, Reporter.NULL);
+    }
+    return output.rows;
+  }
+
+  private static int countPrefix(List<String> rows, String prefix) {
+    int count = 0;
+    for (String row : rows) {
+      if (row.startsWith(prefix)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public void testUniformUpdateReducer() throws IOException {
+    List<String> rows = reduceUniform(50, 1000, 1000);
+    assertEquals(50, rows.size());
+    // about half of the rows are new
+    int newRows = countPrefix(rows, "new");
+    assertTrue("new rows " + newRows, newRows > 10 && newRows < 40);
+    // the rows with the smallest priorities are kept
+    assertTrue(rows.contains("new0"));
+    assertTrue(rows.contains("old0"));
+  }
+
+  public void testUniformUpdateReducerWithoutNewRows() throws IOException {
+    List<String> rows = reduceUniform(20, 1000, 0);
+    assertEquals(20, rows.size());
+    assertEquals(0, countPrefix(rows, "new"));
+  }
+
+  private List<String> reduceStratum(int cap, long oldRows, int sampleRows, long newRows,
+      int sampledNewRows) throws IOException {
+    JobConf job = new JobConf();
+    job.setInt(HiveConf.ConfVars.QUICKSILVER_SAMPLE_STRATUM_CAP.varname, cap);
+    SampleMaintenance.StratumUpdateReducer reducer = new SampleMaintenance.StratumUpdateReducer();
+    reducer.configure(job);
+    RowCollector output = new RowCollector();
+
+    List<SampleMaintenance.UpdateRecord> values = new ArrayList<SampleMaintenance.UpdateRecord>();
+    for (int i = 0; i < sampleRows; i++) {
+      values.add(record(SampleMaintenance.UpdateRecord.SAMPLE_ROW, 0, oldRows, "old" + i));
+    }
+    values.add(record(SampleMaintenance.UpdateRecord.COUNT, 0, newRows, ""));
+    for (int i = 0; i < sampledNewRows; i++) {
+      values.add(record(SampleMaintenance.UpdateRecord.NEW_ROW, i / 10.0, 0, "new" + i));
+    }
+    reducer.reduce(new Text("a"), values.iterator(), output, Reporter.NULL);
+    Collections.sort(output.rows);
+    return output.rows;
+  }
+
+  public void testStratumUpdateReducerTopsUpSmallStrata() throws IOException {
+    // 1 old row and 2 new ones fit in a cap of 3
+    List<String> rows = reduceStratum(3, 1, 1, 2, 2);
+    assertEquals(3, rows.size());
+    assertEquals("new0\u00013\u00013", rows.get(0));
+    assertEquals("new1\u00013\u00013", rows.get(1));
+    assertEquals("old0\u00013\u00013", rows.get(2));
+  }
+
+  public void testStratumUpdateReducerKeepsCap() throws IOException {
+    List<String> rows = reduceStratum(3, 5, 3, 2, 2);
+    assertEquals(3, rows.size());
+    for (String row : rows) {
+      assertTrue(row, row.endsWith("\u00017\u00013"));
+    }
+  }
+
+  public void testInstallSwapsDirectory() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new JobConf());
+    Path testDir = new Path(System.getProperty("test.data.dir", System.getProperty(
+        "user.dir", new File(".").getAbsolutePath())) + "/TestSampleMaintenance");
+    fs.delete(testDir, true);
+    try {
+      Path dir = new Path(testDir, "sample");
+      Path staged = new Path(new Path(testDir, "tmp"), "sample");
+      fs.create(new Path(dir, "000000_0")).close();
+      fs.create(new Path(staged, "part-00000")).close();
+      fs.create(new Path(staged, "_SUCCESS")).close();
+
+      SampleMaintenance.install(fs, staged, dir);
+
+      FileStatus[] files = fs.listStatus(dir);
+      assertEquals(1, files.length);
+      assertEquals("part-00000", files[0].getPath().getName());
+      assertFalse(fs.exists(staged));
+      assertFalse(fs.exists(new Path(staged.getParent(), "sample.old")));
+    } finally {
+      fs.delete(testDir, true);
+    }
+  }
+}
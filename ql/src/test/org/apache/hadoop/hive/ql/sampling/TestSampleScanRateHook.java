@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.sampling;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test for SampleScanRateHook.
+ */
+public class TestSampleScanRateHook extends TestCase {
+
+  public void testScannedBytes() {
+    SampleInfo info = new SampleInfo("s");
+    info.setLevels(Arrays.asList(10L, 30L, 70L), Arrays.asList(100L, 300L, 700L));
+    assertEquals(100, SampleScanRateHook.getScannedBytes(info, 1));
+    assertEquals(300, SampleScanRateHook.getScannedBytes(info, 2));
+    // the whole sample
+    assertEquals(700, SampleScanRateHook.getScannedBytes(info, 3));
+    assertEquals(700, SampleScanRateHook.getScannedBytes(info, 0));
+
+    SampleInfo single = new SampleInfo("t", 0, 10, 1000, 500);
+    assertEquals(500, SampleScanRateHook.getScannedBytes(single, 1));
+  }
+}
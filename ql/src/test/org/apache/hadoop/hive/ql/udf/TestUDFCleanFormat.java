@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.Text;
+
+/**
+ * JUnit test for UDFCleanFormat.
+ */
+public class TestUDFCleanFormat extends TestCase {
+
+  private static String format(String input, String... formats) throws Exception {
+    ObjectInspector[] arguments = new ObjectInspector[formats.length + 1];
+    arguments[0] = PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+    for (int i = 0; i < formats.length; i++) {
+      arguments[i + 1] = PrimitiveObjectInspectorFactory
+          .getPrimitiveWritableConstantObjectInspector(PrimitiveCategory.STRING,
+          new Text(formats[i]));
+    }
+    UDFCleanFormat udf = new UDFCleanFormat();
+    udf.initialize(arguments);
+    Object result = udf.evaluate(new DeferredObject[] {
+        new DeferredJavaObject(input == null ? null : new Text(input))});
+    return result == null ? null : result.toString();
+  }
+
+  public void testFormats() throws Exception {
+    assertEquals("a b", format("  a b ", "trim"));
+    assertEquals("", format("   ", "trim"));
+    assertEquals("42", format("no. 42, 7", "number"));
+    assertEquals("", format("none", "number"));
+    assertEquals("x:(y:(", format("x:)y:)", "replace", ":)", ":("));
+    assertEquals("aaaa", format("aa", "replace", "a", "aa"));
+    assertNull(format(null, "trim"));
+  }
+
+  public void testOrder() throws Exception {
+    assertEquals("112", format(" a12 ", "replace", "a", "1", "trim", "number"));
+    assertEquals("7", format("x7 ", "trim", "replace", "x", " ", "replace", " ", "", "number"));
+    assertEquals("b", format(" a ", "replace", " ", "", "replace", "a", "b"));
+  }
+
+  public void testMultibyte() throws Exception {
+    assertEquals("café été", format(" cafe été ", "trim", "replace",
+        "e ", "é "));
+    assertEquals("é12", format("éé12", "replace", "éé", "é"));
+  }
+
+  public void testUnknownFormat() throws Exception {
+    try {
+      format("a", "upper");
+      fail();
+    } catch (UDFArgumentException e) {
+      // expected
+    }
+  }
+}
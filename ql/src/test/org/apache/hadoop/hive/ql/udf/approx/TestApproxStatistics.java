@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+/**
+ * JUnit test for ApproxStatistics.
+ */
+public class TestApproxStatistics extends TestCase {
+
+  public void testNormalQuantile() {
+    assertEquals(1.959964, ApproxStatistics.normalQuantile(0.975), 1e-6);
+    assertEquals(2.575829, ApproxStatistics.normalQuantile(0.995), 1e-6);
+    assertEquals(-2.575829, ApproxStatistics.normalQuantile(0.005), 1e-6);
+    assertEquals(0.0, ApproxStatistics.normalQuantile(0.5), 1e-9);
+  }
+
+  /**
+   * Compare with the tables of Student's t distribution.
+   */
+  public void testTQuantile() {
+    assertEquals(12.706, ApproxStatistics.tQuantile(0.975, 1), 1e-3);
+    assertEquals(4.303, ApproxStatistics.tQuantile(0.975, 2), 1e-3);
+    assertEquals(3.182, ApproxStatistics.tQuantile(0.975, 3), 0.01);
+    assertEquals(2.228, ApproxStatistics.tQuantile(0.975, 10), 1e-3);
+    assertEquals(2.042, ApproxStatistics.tQuantile(0.975, 30), 1e-3);
+    assertEquals(4.032, ApproxStatistics.tQuantile(0.995, 5), 0.01);
+    assertEquals(2.750, ApproxStatistics.tQuantile(0.995, 30), 1e-3);
+  }
+
+  public void testQuantile() {
+    // few rows get the t quantile, many rows the normal one
+    assertEquals(2.228, ApproxStatistics.quantile(0.95, 11), 1e-3);
+    assertEquals(1.960, ApproxStatistics.quantile(0.95, 1000000), 1e-3);
+    assertEquals(2.576, ApproxStatistics.quantile(0.99, 1000000), 1e-3);
+    assertTrue(ApproxStatistics.quantile(0.95, 5) > ApproxStatistics.quantile(0.95, 50));
+  }
+
+  public void testToConfidence() {
+    assertEquals(0.95, ApproxStatistics.toConfidence(0.95), 1e-9);
+    assertEquals(0.95, ApproxStatistics.toConfidence(95), 1e-9);
+    assertEquals(ApproxStatistics.DEFAULT_CONFIDENCE, ApproxStatistics.toConfidence(0), 1e-9);
+    assertEquals(ApproxStatistics.DEFAULT_CONFIDENCE, ApproxStatistics.toConfidence(100), 1e-9);
+    assertEquals("95%", ApproxStatistics.formatConfidence(0.95));
+    assertEquals("99.5%", ApproxStatistics.formatConfidence(0.995));
+  }
+
+  public void testTotalStandardError() {
+    // 30 of 100 sampled rows out of 1000: N * sqrt((1 - n/N) * p(1-p) / (n-1))
+    double expected = 1000 * Math.sqrt(0.9 * 0.3 * 0.7 / 99);
+    assertEquals(expected, ApproxStatistics.totalStandardError(30, 30, 0, 100, 1000), 1e-9);
+    // the whole table was read
+    assertEquals(0.0, ApproxStatistics.totalStandardError(30, 30, 0, 1000, 1000), 0);
+    assertTrue(Double.isNaN(ApproxStatistics.totalStandardError(1, 5, 0, 1, 1000)));
+  }
+
+  public void testResult() {
+    StructObjectInspector soi = ApproxStatistics.getResultObjectInspector();
+    assertEquals(Category.STRUCT, soi.getCategory());
+    assertEquals("struct<estimate:double,lower:double,upper:double,stderr:double,"
+        + "confidence:double>", soi.getTypeName());
+    List<? extends StructField> fields = soi.getAllStructFieldRefs();
+    assertEquals(5, fields.size());
+    for (StructField field : fields) {
+      assertEquals(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector,
+          field.getFieldObjectInspector());
+    }
+
+    // 11 rows: the interval is +/- t(0.975, 10) * stderr
+    Object[] result = ApproxStatistics.setResult(ApproxStatistics.newResult(), 100, 2, 0.95, 11);
+    assertEquals(100.0, get(soi, result, ApproxStatistics.ESTIMATE), 0);
+    assertEquals(100 - 2 * 2.228, get(soi, result, ApproxStatistics.LOWER), 1e-3);
+    assertEquals(100 + 2 * 2.228, get(soi, result, ApproxStatistics.UPPER), 1e-3);
+    assertEquals(2.0, get(soi, result, ApproxStatistics.STDERR), 0);
+    assertEquals(0.95, get(soi, result, ApproxStatistics.CONFIDENCE), 0);
+  }
+
+  private static double get(StructObjectInspector soi, Object result, String field) {
+    return ((DoubleWritable) soi.getStructFieldData(result, soi.getStructFieldRef(field))).get();
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+
+/**
+ * JUnit test for ApproxUDAFBootstrap, as bootstrap_sum(x) over rows of 1,
+ * whose replicates are sums of Poisson(1) weights: of mean and variance the
+ * number of rows.
+ */
+public class TestApproxUDAFBootstrap extends TestCase {
+
+  private static final int ROWS = 1000;
+  private static final int REPLICATES = 400;
+
+  private static final ObjectInspector[] INPUT = {
+      PrimitiveObjectInspectorFactory.writableDoubleObjectInspector};
+
+  private static ApproxUDAFBootstrap.ApproxUDAFBootstrapEvaluator newEvaluator(
+      int taskPartition) throws Exception {
+    ApproxUDAFBootstrap.ApproxUDAFBootstrapEvaluator evaluator =
+        (ApproxUDAFBootstrap.ApproxUDAFBootstrapEvaluator) new ApproxUDAFBootstrap(
+            new GenericUDAFSum()).getEvaluator(new TypeInfo[] {TypeInfoFactory.doubleTypeInfo});
+    evaluator.setReplicates(REPLICATES);
+    evaluator.setConfidence(0.95);
+
+    Configuration conf = new Configuration();
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVESAMPLERANDOMNUM, 7);
+    conf.setInt("mapred.task.partition", taskPartition);
+    evaluator.configure(conf);
+    return evaluator;
+  }
+
+  private static void iterate(GenericUDAFEvaluator evaluator, AggregationBuffer agg, int rows)
+      throws HiveException {
+    for (int i = 0; i < rows; i++) {
+      evaluator.iterate(agg, new Object[] {new DoubleWritable(1)});
+    }
+  }
+
+  /**
+   * @return the partial aggregation of rows rows by a map task
+   */
+  private static Object partial(int taskPartition, int rows, ObjectInspector[] partialOI)
+      throws Exception {
+    GenericUDAFEvaluator evaluator = newEvaluator(taskPartition);
+    partialOI[0] = evaluator.init(Mode.PARTIAL1, INPUT);
+    AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+    iterate(evaluator, agg, rows);
+    // evaluators reuse their partial results
+    return ObjectInspectorUtils.copyToStandardObject(evaluator.terminatePartial(agg),
+        partialOI[0]);
+  }
+
+  private static double get(Object[] result, int field) {
+    return ((DoubleWritable) result[field]).get();
+  }
+
+  private static void assertPoissonInterval(Object[] result) {
+    assertEquals(ROWS, get(result, 0), 1e-9);
+    // the standard deviation of the replicates is sqrt(ROWS), estimated from
+    // REPLICATES replicates with a relative standard error of 3.5%
+    double stderr = get(result, 3);
+    assertEquals(Math.sqrt(ROWS), stderr, 0.15 * Math.sqrt(ROWS));
+    // the 2.5% and 97.5% quantiles of the replicates
+    double halfWidth = 1.96 * Math.sqrt(ROWS);
+    assertEquals(ROWS - halfWidth, get(result, 1), 0.25 * halfWidth);
+    assertEquals(ROWS + halfWidth, get(result, 2), 0.25 * halfWidth);
+    assertEquals(0.95, get(result, 4), 1e-9);
+  }
+
+  public void testPoissonWeights() throws Exception {
+    GenericUDAFEvaluator evaluator = newEvaluator(0);
+    evaluator.init(Mode.COMPLETE, INPUT);
+    AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+    iterate(evaluator, agg, ROWS);
+    assertPoissonInterval((Object[]) evaluator.terminate(agg));
+  }
+
+  /**
+   * Tasks draw different weights, and a rerun of a task the same weights.
+   */
+  public void testSeededPerTask() throws Exception {
+    Object[] results = new Object[3];
+    int[] partitions = {0, 0, 1};
+    for (int i = 0; i < results.length; i++) {
+      GenericUDAFEvaluator evaluator = newEvaluator(partitions[i]);
+      evaluator.init(Mode.COMPLETE, INPUT);
+      AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+      iterate(evaluator, agg, ROWS);
+      Object[] result = (Object[]) evaluator.terminate(agg);
+      results[i] = new double[] {get(result, 1), get(result, 2), get(result, 3)};
+    }
+    assertTrue(Arrays.equals((double[]) results[0], (double[]) results[1]));
+    assertFalse(Arrays.equals((double[]) results[0], (double[]) results[2]));
+  }
+
+  /**
+   * Replicates are merged one by one from the map tasks through a map-side
+   * and a reduce-side aggregation.
+   */
+  public void testMergeReplicates() throws Exception {
+    ObjectInspector[] partialOI = new ObjectInspector[1];
+    Object first = partial(0, ROWS / 4, partialOI);
+    Object second = partial(1, ROWS - ROWS / 4, partialOI);
+
+    GenericUDAFEvaluator partial2 = newEvaluator(0);
+    ObjectInspector partial2OI = partial2.init(Mode.PARTIAL2, partialOI);
+    AggregationBuffer agg = partial2.getNewAggregationBuffer();
+    partial2.merge(agg, first);
+    partial2.merge(agg, second);
+    Object merged = ObjectInspectorUtils.copyToStandardObject(partial2.terminatePartial(agg),
+        partial2OI);
+
+    GenericUDAFEvaluator finalEvaluator = newEvaluator(0);
+    finalEvaluator.init(Mode.FINAL, new ObjectInspector[] {partial2OI});
+    AggregationBuffer finalAgg = finalEvaluator.getNewAggregationBuffer();
+    finalEvaluator.merge(finalAgg, merged);
+    Object[] result = (Object[]) finalEvaluator.terminate(finalAgg);
+    assertPoissonInterval(result);
+
+    // the same as merging the map outputs directly
+    GenericUDAFEvaluator direct = newEvaluator(0);
+    direct.init(Mode.FINAL, partialOI);
+    AggregationBuffer directAgg = direct.getNewAggregationBuffer();
+    direct.merge(directAgg, first);
+    direct.merge(directAgg, second);
+    Object[] directResult = (Object[]) direct.terminate(directAgg);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(get(directResult, i), get(result, i), 1e-9);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
+import org.apache.hadoop.hive.ql.udf.generic.SimpleGenericUDAFParameterInfo;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * JUnit test for ApproxUDAFCount.
+ */
+public class TestApproxUDAFCount extends TestCase {
+
+  /**
+   * The interval of a group of five sampled rows has the t quantile with four
+   * degrees of freedom, however many rows the sample has.
+   */
+  public void testSmallGroupInterval() throws Exception {
+    ObjectInspector[] inputOIs = {
+        PrimitiveObjectInspectorFactory.writableLongObjectInspector,
+        PrimitiveObjectInspectorFactory.writableLongObjectInspector};
+    GenericUDAFEvaluator evaluator = new ApproxUDAFCount().getEvaluator(
+        new SimpleGenericUDAFParameterInfo(inputOIs, false, true));
+    ((ApproxEvaluator) evaluator).setConfidence(0.95);
+    evaluator.init(Mode.COMPLETE, inputOIs);
+
+    AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+    for (int i = 0; i < 5; i++) {
+      evaluator.iterate(agg, new Object[] {new LongWritable(10000), new LongWritable(1000000)});
+    }
+    Object[] result = (Object[]) evaluator.terminate(agg);
+
+    double estimate = ((DoubleWritable) result[0]).get();
+    double stderr = ((DoubleWritable) result[3]).get();
+    assertEquals(500.0, estimate, 1e-9);
+    assertTrue(stderr > 0);
+    assertEquals(ApproxStatistics.tQuantile(0.975, 4) * stderr,
+        estimate - ((DoubleWritable) result[1]).get(), 1e-6);
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFNdv.ApproxUDAFNdvEvaluator.NdvAgg;
+import org.apache.hadoop.hive.ql.util.Murmur3;
+
+/**
+ * JUnit test for ApproxUDAFNdv.
+ */
+public class TestApproxUDAFNdv extends TestCase {
+
+  public void testGee() {
+    double[] e = ApproxUDAFNdv.gee(10, 4, 4.0);
+    assertEquals(14.0, e[0], 0.0);
+    assertEquals(10.0, e[1], 0.0);
+    assertEquals(22.0, e[2], 0.0);
+  }
+
+  public void testKeepsAllValuesUnderCap() {
+    NdvAgg agg = new NdvAgg();
+    for (int i = 0; i < 1000; i++) {
+      agg.add(Murmur3.fmix(i), 1);
+      agg.add(Murmur3.fmix(i % 10), 1);
+    }
+    assertEquals(0, agg.level);
+    assertEquals(1000, agg.counts.size());
+    assertEquals(Long.valueOf(101), agg.counts.get(Murmur3.fmix(3)));
+  }
+
+  public void testCapsValues() {
+    int n = 4 * ApproxUDAFNdv.MAX_VALUES + 12345;
+    NdvAgg agg = new NdvAgg();
+    for (int i = 0; i < n; i++) {
+      agg.add(Murmur3.fmix(i), 1);
+    }
+    assertTrue(agg.level > 0);
+    assertTrue(agg.counts.size() <= ApproxUDAFNdv.MAX_VALUES);
+    long estimate = ((long) agg.counts.size()) << agg.level;
+    assertEquals(n, estimate, 0.05 * n);
+    for (Long hash : agg.counts.keySet()) {
+      assertTrue(agg.keeps(hash));
+    }
+  }
+
+  public void testMergeKeepsSameValues() {
+    int n = 3 * ApproxUDAFNdv.MAX_VALUES;
+    NdvAgg single = new NdvAgg();
+    NdvAgg left = new NdvAgg();
+    NdvAgg right = new NdvAgg();
+    for (int i = 0; i < n; i++) {
+      long hash = Murmur3.fmix(i % (n / 2));
+      single.add(hash, 1);
+      (i % 3 == 0 ? left : right).add(hash, 1);
+    }
+
+    // merge right into left, as merge() does with a partial aggregation
+    left.raiseLevel(right.level);
+    for (Map.Entry<Long, Long> e : right.counts.entrySet()) {
+      left.add(e.getKey(), e.getValue());
+    }
+    assertEquals(single.level, left.level);
+    assertEquals(single.counts, left.counts);
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFSum.ApproxUDAFSumDouble;
+import org.apache.hadoop.hive.ql.udf.approx.ApproxUDAFSum.ApproxUDAFSumLong;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * JUnit test for ApproxUDAFSum.
+ */
+public class TestApproxUDAFSum extends TestCase {
+
+  private static final long SAMPLE_ROWS = 10000;
+  private static final long TOTAL_ROWS = 1000000;
+
+  private static Object[] sum(GenericUDAFEvaluator evaluator, ObjectInspector valueOI,
+      Object[] values) throws HiveException {
+    evaluator.init(Mode.COMPLETE, new ObjectInspector[] {valueOI,
+        PrimitiveObjectInspectorFactory.writableLongObjectInspector,
+        PrimitiveObjectInspectorFactory.writableLongObjectInspector});
+    AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+    for (Object value : values) {
+      evaluator.iterate(agg, new Object[] {value, new LongWritable(SAMPLE_ROWS),
+          new LongWritable(TOTAL_ROWS)});
+    }
+    return (Object[]) evaluator.terminate(agg);
+  }
+
+  private static double get(Object[] result, int field) {
+    return ((DoubleWritable) result[field]).get();
+  }
+
+  /**
+   * The interval of a group of three sampled rows has the t quantile with two
+   * degrees of freedom, however many rows the sample has.
+   */
+  public void testSmallGroupInterval() throws HiveException {
+    ApproxUDAFSumDouble evaluator = new ApproxUDAFSumDouble();
+    evaluator.setConfidence(0.95);
+    Object[] result = sum(evaluator,
+        PrimitiveObjectInspectorFactory.writableDoubleObjectInspector,
+        new Object[] {new DoubleWritable(1), new DoubleWritable(2), new DoubleWritable(3)});
+
+    double estimate = get(result, 0);
+    double stderr = get(result, 3);
+    assertEquals(6.0 * TOTAL_ROWS / SAMPLE_ROWS, estimate, 1e-9);
+    assertTrue(stderr > 0);
+    assertEquals(ApproxStatistics.tQuantile(0.975, 2) * stderr, estimate - get(result, 1), 1e-6);
+    assertEquals(ApproxStatistics.tQuantile(0.975, 2) * stderr, get(result, 2) - estimate, 1e-6);
+    assertEquals(0.95, get(result, 4), 1e-9);
+  }
+
+  public void testSmallGroupIntervalLong() throws HiveException {
+    ApproxUDAFSumLong evaluator = new ApproxUDAFSumLong();
+    evaluator.setConfidence(0.95);
+    Object[] result = sum(evaluator,
+        PrimitiveObjectInspectorFactory.writableLongObjectInspector,
+        new Object[] {new LongWritable(1), new LongWritable(2), new LongWritable(3),
+            new LongWritable(4)});
+
+    double stderr = get(result, 3);
+    assertEquals(10.0 * TOTAL_ROWS / SAMPLE_ROWS, get(result, 0), 1e-9);
+    assertEquals(ApproxStatistics.tQuantile(0.975, 3) * stderr, get(result, 2) - get(result, 0),
+        1e-6);
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+/**
+ * JUnit test for ApproxUDFLower and ApproxUDFUpper.
+ */
+public class TestApproxUDFBound extends TestCase {
+
+  private static Object evaluate(ApproxUDFBound udf, Object struct) throws Exception {
+    udf.initialize(new ObjectInspector[] {ApproxStatistics.getResultObjectInspector()});
+    return udf.evaluate(new DeferredObject[] {new DeferredJavaObject(struct)});
+  }
+
+  public void testBounds() throws Exception {
+    Object[] result = ApproxStatistics.setResult(ApproxStatistics.newResult(), 10, 8, 12.5, 1,
+        0.95);
+    assertEquals(8.0, ((DoubleWritable) evaluate(new ApproxUDFLower(), result)).get(), 0);
+    assertEquals(12.5, ((DoubleWritable) evaluate(new ApproxUDFUpper(), result)).get(), 0);
+  }
+
+  public void testNull() throws Exception {
+    assertNull(evaluate(new ApproxUDFLower(), null));
+    assertNull(evaluate(new ApproxUDFUpper(), null));
+
+    // a group whose bound is NULL
+    Object[] result = ApproxStatistics.newResult();
+    result[1] = null;
+    assertNull(evaluate(new ApproxUDFLower(), result));
+    assertNotNull(evaluate(new ApproxUDFUpper(), result));
+  }
+
+  public void testArguments() {
+    ApproxUDFLower udf = new ApproxUDFLower();
+    try {
+      udf.initialize(new ObjectInspector[] {
+          PrimitiveObjectInspectorFactory.writableDoubleObjectInspector});
+      fail("ci_lower of a double");
+    } catch (UDFArgumentException e) {
+      // expected
+    }
+    try {
+      udf.initialize(new ObjectInspector[0]);
+      fail("ci_lower without argument");
+    } catch (UDFArgumentException e) {
+      // expected
+    }
+
+    // a struct without the field
+    ObjectInspector other = ObjectInspectorFactory.getStandardStructObjectInspector(
+        new ArrayList<String>(Arrays.asList("estimate")),
+        new ArrayList<ObjectInspector>(Arrays.asList((ObjectInspector)
+            PrimitiveObjectInspectorFactory.writableDoubleObjectInspector)));
+    try {
+      udf.initialize(new ObjectInspector[] {other});
+      fail("ci_lower of a struct without lower");
+    } catch (UDFArgumentException e) {
+      // expected
+    }
+  }
+}
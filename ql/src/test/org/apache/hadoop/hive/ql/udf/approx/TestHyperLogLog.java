@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.util.Murmur3;
+
+/**
+ * JUnit test for HyperLogLog.
+ */
+public class TestHyperLogLog extends TestCase {
+
+  /**
+   * Compare with the reference implementation of MurmurHash3_x64_128.
+   */
+  public void testMurmur3() throws Exception {
+    long[] out = new long[2];
+    byte[] hello = "hello".getBytes("UTF-8");
+    Murmur3.hash128(hello, 0, hello.length, 0, out);
+    assertEquals(0xcbd8a7b341bd9b02L, out[0]);
+    assertEquals(0x5b1e906a48ae1d19L, out[1]);
+
+    byte[] fox = "The quick brown fox jumps over the lazy dog".getBytes("UTF-8");
+    Murmur3.hash128(fox, 0, fox.length, 0, out);
+    assertEquals(0xe34bbc7bbc071b6cL, out[0]);
+    assertEquals(0x7a433ca9c49a9347L, out[1]);
+
+    Murmur3.hash128(new byte[0], 0, 0, 0, out);
+    assertEquals(0L, out[0]);
+    assertEquals(0L, out[1]);
+  }
+
+  public void testSmallCardinality() {
+    HyperLogLog hll = new HyperLogLog(12);
+    assertEquals(0.0, hll.estimate(), 0);
+    for (int i = 0; i < 10; i++) {
+      // duplicates do not count
+      hll.add(Murmur3.fmix(i));
+      hll.add(Murmur3.fmix(i));
+    }
+    assertEquals(10.0, hll.estimate(), 0.5);
+  }
+
+  public void testLargeCardinality() {
+    HyperLogLog hll = new HyperLogLog(12);
+    int n = 1000000;
+    for (int i = 0; i < n; i++) {
+      hll.add(Murmur3.fmix(i));
+    }
+    // within four standard errors
+    assertEquals(n, hll.estimate(), 4 * n * hll.getRelativeError());
+  }
+
+  public void testMerge() {
+    HyperLogLog a = new HyperLogLog(10);
+    HyperLogLog b = new HyperLogLog(10);
+    HyperLogLog all = new HyperLogLog(10);
+    for (int i = 0; i < 50000; i++) {
+      long hash = Murmur3.fmix(i);
+      (i % 3 == 0 ? a : b).add(hash);
+      all.add(hash);
+    }
+
+    byte[] bytes = new byte[b.getSerializedSize()];
+    b.serialize(bytes);
+    a.merge(bytes, 0, bytes.length);
+    assertEquals(all.estimate(), a.estimate(), 0);
+
+    try {
+      a.merge(new HyperLogLog(11));
+      fail("Merged sketches of different precision");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
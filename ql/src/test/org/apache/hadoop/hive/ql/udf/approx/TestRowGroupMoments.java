@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.io.IOContext;
+
+/**
+ * JUnit test for RowGroupMoments.
+ */
+public class TestRowGroupMoments extends TestCase {
+
+  private static final int ROW_GROUPS = 10;
+  private static final int ROWS = 10;
+
+  @Override
+  protected void tearDown() {
+    IOContext.get().setInputFile(null);
+    IOContext.get().setCurrentBlockStart(0);
+  }
+
+  private static void setRowGroup(String file, long blockStart) {
+    IOContext.get().setInputFile(file);
+    IOContext.get().setCurrentBlockStart(blockStart);
+  }
+
+  /**
+   * Adds ROWS values to each of the row groups from first to last, the value
+   * of a row being value(row group, row).
+   */
+  private interface Values {
+    double value(int rowGroup, int row);
+  }
+
+  private static void add(RowGroupMoments moments, int first, int last, Values values) {
+    for (int g = first; g <= last; g++) {
+      setRowGroup("file" + (g % 2), g * 1000L);
+      for (int r = 0; r < ROWS; r++) {
+        moments.add(values.value(g, r));
+      }
+    }
+  }
+
+  private static final Values ALIKE = new Values() {
+    public double value(int rowGroup, int row) {
+      return rowGroup;
+    }
+  };
+
+  private static final Values ALTERNATING = new Values() {
+    public double value(int rowGroup, int row) {
+      return row % 2 == 0 ? 1 : -1;
+    }
+  };
+
+  public void testAlikeRowGroups() {
+    RowGroupMoments moments = new RowGroupMoments();
+    add(moments, 0, ROW_GROUPS - 1, ALIKE);
+
+    // sum(t_i^2) / sum(y_j^2) = sum((10 g)^2) / sum(10 g^2)
+    assertEquals(ROWS, moments.getTotalDesignEffect(ROWS * 285.0), 1e-9);
+    // the mean 4.5 and the sum of squared deviations 10 * 82.5
+    assertEquals(ROWS, moments.getMeanDesignEffect(4.5, ROWS * 82.5), 1e-9);
+  }
+
+  public void testUnrelatedRows() {
+    RowGroupMoments moments = new RowGroupMoments();
+    add(moments, 0, ROW_GROUPS - 1, ALTERNATING);
+
+    // Row groups total 0, which is never narrower than a sample of rows
+    assertEquals(1.0, moments.getTotalDesignEffect(ROW_GROUPS * ROWS), 1e-9);
+    assertEquals(1.0, moments.getMeanDesignEffect(0, ROW_GROUPS * ROWS), 1e-9);
+  }
+
+  public void testCount() {
+    RowGroupMoments moments = new RowGroupMoments();
+    add(moments, 0, ROW_GROUPS - 1, new Values() {
+      public double value(int rowGroup, int row) {
+        return 1;
+      }
+    });
+    assertEquals(ROWS, moments.getTotalDesignEffect(ROW_GROUPS * ROWS), 1e-9);
+  }
+
+  public void testMerge() {
+    RowGroupMoments first = new RowGroupMoments();
+    add(first, 0, 3, ALIKE);
+    first.flush();
+    RowGroupMoments second = new RowGroupMoments();
+    add(second, 4, ROW_GROUPS - 1, ALIKE);
+    second.flush();
+
+    RowGroupMoments merged = new RowGroupMoments();
+    merged.merge(first.getSquares(), first.getProducts(), first.getSizeSquares());
+    merged.merge(second.getSquares(), second.getProducts(), second.getSizeSquares());
+    assertEquals(ROWS, merged.getTotalDesignEffect(ROWS * 285.0), 1e-9);
+    assertEquals(ROWS, merged.getMeanDesignEffect(4.5, ROWS * 82.5), 1e-9);
+    assertEquals(ROW_GROUPS * ROWS * ROWS, merged.getSizeSquares(), 1e-9);
+
+    merged.reset();
+    assertEquals(1.0, merged.getTotalDesignEffect(ROWS * 285.0), 1e-9);
+  }
+
+  public void testWithoutInput() {
+    // Reduce-side aggregations have no input file and no row groups
+    RowGroupMoments moments = new RowGroupMoments();
+    for (int i = 0; i < 100; i++) {
+      moments.add(1);
+    }
+    assertEquals(0.0, moments.getSizeSquares(), 1e-9);
+    assertEquals(1.0, moments.getTotalDesignEffect(100), 1e-9);
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test for SpaceSaving.
+ */
+public class TestSpaceSaving extends TestCase {
+
+  private static void add(SpaceSaving summary, Object item) {
+    if (!summary.increment(item, 1)) {
+      summary.add(item, 1, 0);
+    }
+  }
+
+  /**
+   * Adds value i, i times, for every step-th i from from + 1 to 200.
+   */
+  private static long fill(SpaceSaving summary, int from, int step) {
+    long n = 0;
+    for (int round = 200; round > 0; round--) {
+      for (int i = from + 1; i <= 200; i += step) {
+        if (i >= round) {
+          add(summary, i);
+          n++;
+        }
+      }
+    }
+    return n;
+  }
+
+  private static void checkBounds(SpaceSaving summary, long n) {
+    boolean[] counted = new boolean[201];
+    for (int pos = 0; pos < summary.size(); pos++) {
+      int item = (Integer) summary.getItem(pos);
+      long count = summary.getCount(pos);
+      assertTrue(count >= item);
+      assertTrue(count - summary.getError(pos) <= item);
+      assertTrue(summary.getError(pos) <= n / summary.getCapacity());
+      counted[item] = true;
+    }
+    // every value more frequent than n / m has a counter
+    for (long i = n / summary.getCapacity() + 1; i <= 200; i++) {
+      assertTrue(counted[(int) i]);
+    }
+  }
+
+  public void testExact() {
+    SpaceSaving summary = new SpaceSaving(10);
+    for (int i = 0; i < 5; i++) {
+      for (int j = 0; j <= i; j++) {
+        add(summary, "v" + i);
+      }
+    }
+    Integer[] top = summary.getTop();
+    assertEquals(5, top.length);
+    assertEquals("v4", summary.getItem(top[0]));
+    assertEquals(5, summary.getCount(top[0]));
+    assertEquals(0, summary.getError(top[0]));
+    assertEquals(0, summary.getMinCount());
+  }
+
+  public void testBounds() {
+    SpaceSaving summary = new SpaceSaving(150);
+    long n = fill(summary, 0, 1);
+    assertEquals(20100, n);
+    checkBounds(summary, n);
+  }
+
+  public void testMerge() {
+    SpaceSaving a = new SpaceSaving(40);
+    SpaceSaving b = new SpaceSaving(40);
+    long n = fill(a, 0, 2) + fill(b, 1, 2);
+
+    List<Object> items = new ArrayList<Object>();
+    List<Long> counts = new ArrayList<Long>();
+    List<Long> errors = new ArrayList<Long>();
+    for (int pos = 0; pos < b.size(); pos++) {
+      items.add(b.getItem(pos));
+      counts.add(b.getCount(pos));
+      errors.add(b.getError(pos));
+    }
+    a.merge(items, counts, errors, b.getMinCount());
+    assertEquals(40, a.size());
+    checkBounds(a, n);
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.approx_clean;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.approx_clean.ApproxUDAFOutlierBoundsClean.ApproxUDAFOutlierBoundsCleanEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
+import org.apache.hadoop.hive.ql.udf.generic.NumericHistogram;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.Text;
+
+/**
+ * JUnit test for ApproxUDAFOutlierBoundsClean.
+ */
+public class TestApproxUDAFOutlierBoundsClean extends TestCase {
+
+  private static ApproxUDAFOutlierBoundsCleanEvaluator newEvaluator(String method,
+      double alpha) {
+    ApproxUDAFOutlierBoundsCleanEvaluator evaluator = new ApproxUDAFOutlierBoundsCleanEvaluator();
+    evaluator.setMethod(method);
+    evaluator.setAlpha(alpha);
+    return evaluator;
+  }
+
+  private static final ObjectInspector[] INPUT = {
+      PrimitiveObjectInspectorFactory.writableDoubleObjectInspector};
+
+  /**
+   * @return the bounds over the values, in one aggregation
+   */
+  private static double[] bounds(String method, double alpha, double[] values)
+      throws HiveException {
+    ApproxUDAFOutlierBoundsCleanEvaluator evaluator = newEvaluator(method, alpha);
+    evaluator.init(Mode.COMPLETE, INPUT);
+    AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+    for (double value : values) {
+      evaluator.iterate(agg, new Object[] {new DoubleWritable(value)});
+    }
+    return toBounds(evaluator.terminate(agg));
+  }
+
+  /**
+   * @return the bounds over the values, in two partial aggregations of the
+   *         even and odd values merged
+   */
+  private static double[] mergedBounds(String method, double alpha, double[] values)
+      throws HiveException {
+    ApproxUDAFOutlierBoundsCleanEvaluator partial = newEvaluator(method, alpha);
+    ObjectInspector partialOI = partial.init(Mode.PARTIAL1, INPUT);
+    ApproxUDAFOutlierBoundsCleanEvaluator evaluator = newEvaluator(method, alpha);
+    evaluator.init(Mode.FINAL, new ObjectInspector[] {partialOI});
+    AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+    for (int part = 0; part < 2; part++) {
+      AggregationBuffer partialAgg = partial.getNewAggregationBuffer();
+      for (int i = part; i < values.length; i += 2) {
+        partial.iterate(partialAgg, new Object[] {new DoubleWritable(values[i])});
+      }
+      evaluator.merge(agg, partial.terminatePartial(partialAgg));
+    }
+    return toBounds(evaluator.terminate(agg));
+  }
+
+  private static double[] toBounds(Object result) {
+    Object[] struct = (Object[]) result;
+    return new double[] {((DoubleWritable) struct[0]).get(), ((DoubleWritable) struct[1]).get()};
+  }
+
+  /**
+   * 1, 2, ..., 99 and an outlier 10000
+   */
+  private static double[] withOutlier() {
+    double[] values = new double[100];
+    for (int i = 0; i < 99; i++) {
+      values[i] = i + 1;
+    }
+    values[99] = 10000;
+    return values;
+  }
+
+  public void testParametric() throws HiveException {
+    // mean 5 and standard deviation 2
+    double[] values = {2, 4, 4, 4, 5, 5, 7, 9};
+    double[] bounds = bounds(ApproxUDAFOutlierBoundsClean.NORM, 1.5, values);
+    assertEquals(2.0, bounds[0], 1e-9);
+    assertEquals(8.0, bounds[1], 1e-9);
+
+    bounds = mergedBounds(ApproxUDAFOutlierBoundsClean.NORM, 1.5, values);
+    assertEquals(2.0, bounds[0], 1e-9);
+    assertEquals(8.0, bounds[1], 1e-9);
+  }
+
+  /**
+   * The median and the MAD are not moved by the outlier, while the mean and
+   * the standard deviation are.
+   */
+  public void testNonparametric() throws HiveException {
+    double[] values = withOutlier();
+    // median 50, MAD 25
+    double[] bounds = bounds(ApproxUDAFOutlierBoundsClean.MAD, 3, values);
+    assertEquals(-25.0, bounds[0], 1e-6);
+    assertEquals(125.0, bounds[1], 1e-6);
+    assertTrue(bounds[1] < 10000);
+
+    bounds = mergedBounds(ApproxUDAFOutlierBoundsClean.MAD, 3, values);
+    assertEquals(-25.0, bounds[0], 1e-6);
+    assertEquals(125.0, bounds[1], 1e-6);
+
+    bounds = bounds(ApproxUDAFOutlierBoundsClean.NORM, 3, values);
+    assertTrue(bounds[1] > 2000);
+  }
+
+  /**
+   * The MAD of a standard normal distribution is 0.6745.
+   */
+  public void testMadOfNormal() {
+    NumericHistogram histogram = new NumericHistogram();
+    histogram.allocate(ApproxUDAFOutlierBoundsClean.NUM_BINS);
+    Random rnd = new Random(3);
+    for (int i = 0; i < 100000; i++) {
+      histogram.add(rnd.nextGaussian());
+    }
+    double median = histogram.quantile(0.5);
+    assertEquals(0.0, median, 0.02);
+    assertEquals(0.6745, ApproxUDAFOutlierBoundsClean.mad(histogram, median), 0.01);
+  }
+
+  /**
+   * Values that are not numbers are neither inliers nor outliers.
+   */
+  public void testSkipsNonNumbers() throws HiveException {
+    ApproxUDAFOutlierBoundsCleanEvaluator evaluator =
+        newEvaluator(ApproxUDAFOutlierBoundsClean.NORM, 1);
+    evaluator.init(Mode.COMPLETE, new ObjectInspector[] {
+        PrimitiveObjectInspectorFactory.writableStringObjectInspector});
+    AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+    assertNull(evaluator.terminate(agg));
+    for (String value : new String[] {"4", "abc", "6", null}) {
+      evaluator.iterate(agg, new Object[] {value == null ? null : new Text(value)});
+    }
+    double[] bounds = toBounds(evaluator.terminate(agg));
+    assertEquals(4.0, bounds[0], 1e-9);
+    assertEquals(6.0, bounds[1], 1e-9);
+  }
+}
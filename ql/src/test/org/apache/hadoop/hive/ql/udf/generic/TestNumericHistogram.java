@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.generic;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test for NumericHistogram.
+ */
+public class TestNumericHistogram extends TestCase {
+
+  /**
+   * @return a histogram of 1, 2, ..., n, one bin per value
+   */
+  private static NumericHistogram range(int n) {
+    NumericHistogram histogram = new NumericHistogram();
+    histogram.allocate(n + 1);
+    for (int i = 1; i <= n; i++) {
+      histogram.add(i);
+    }
+    return histogram;
+  }
+
+  public void testCdf() {
+    NumericHistogram histogram = range(100);
+    assertEquals(0.0, histogram.cdf(0.5), 0);
+    assertEquals(0.01, histogram.cdf(1), 1e-9);
+    assertEquals(0.5, histogram.cdf(50), 1e-9);
+    // halfway between the bins of 50 and 51
+    assertEquals(0.505, histogram.cdf(50.5), 1e-9);
+    assertEquals(1.0, histogram.cdf(100), 1e-9);
+    assertEquals(1.0, histogram.cdf(1000), 0);
+  }
+
+  /**
+   * cdf is the inverse of quantile, on merged bins too.
+   */
+  public void testCdfInvertsQuantile() {
+    NumericHistogram histogram = new NumericHistogram();
+    histogram.allocate(50);
+    Random rnd = new Random(3);
+    for (int i = 0; i < 100000; i++) {
+      histogram.add(rnd.nextGaussian());
+    }
+    for (double q = 0.05; q < 1; q += 0.05) {
+      assertEquals(q, histogram.cdf(histogram.quantile(q)), 1e-9);
+    }
+    for (double v = -2; v <= 2; v += 0.25) {
+      assertEquals(v, histogram.quantile(histogram.cdf(v)), 1e-9);
+    }
+  }
+}